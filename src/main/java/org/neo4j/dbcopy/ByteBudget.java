@@ -0,0 +1,101 @@
+package org.neo4j.dbcopy;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Bounds the estimated size of the batches being written at the same time, whatever the number of writers.
+ * <p>
+ * Reservations are granted in order. A batch larger than the whole budget is only written when nothing else is,
+ * so that it cannot block the copy.
+ */
+class ByteBudget {
+
+	private final long maxBytes;
+	private final Deque<Waiter> waiters = new ArrayDeque<>();
+	private long reservedBytes = 0;
+
+	ByteBudget(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	long maxBytes() {
+		return maxBytes;
+	}
+
+	synchronized long reservedBytes() {
+		return reservedBytes;
+	}
+
+	Mono<Reservation> reserve(long bytes) {
+		return Mono.create(sink -> {
+			synchronized (this) {
+				if (waiters.isEmpty() && fits(bytes)) {
+					reservedBytes += bytes;
+				} else {
+					var waiter = new Waiter(bytes, sink);
+					waiters.add(waiter);
+					sink.onCancel(() -> {
+						synchronized (this) {
+							waiters.remove(waiter);
+						}
+						grantWaiters();
+					});
+					return;
+				}
+			}
+			sink.success(new Reservation(bytes));
+		});
+	}
+
+	private boolean fits(long bytes) {
+		return reservedBytes == 0 || reservedBytes + bytes <= maxBytes;
+	}
+
+	private void release(long bytes) {
+		synchronized (this) {
+			reservedBytes -= bytes;
+		}
+		grantWaiters();
+	}
+
+	private void grantWaiters() {
+		List<Waiter> granted = new ArrayList<>();
+		synchronized (this) {
+			while (!waiters.isEmpty() && fits(waiters.peek().bytes())) {
+				Waiter waiter = waiters.poll();
+				reservedBytes += waiter.bytes();
+				granted.add(waiter);
+			}
+		}
+		granted.forEach(waiter -> waiter.sink().success(new Reservation(waiter.bytes())));
+	}
+
+	private record Waiter(long bytes, MonoSink<Reservation> sink) {
+	}
+
+	final class Reservation {
+
+		private final long bytes;
+		private boolean released = false;
+
+		private Reservation(long bytes) {
+			this.bytes = bytes;
+		}
+
+		void release() {
+			synchronized (ByteBudget.this) {
+				if (released) {
+					return;
+				}
+				released = true;
+			}
+			ByteBudget.this.release(bytes);
+		}
+	}
+}
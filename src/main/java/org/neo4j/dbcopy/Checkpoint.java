@@ -0,0 +1,53 @@
+package org.neo4j.dbcopy;
+
+import java.util.List;
+
+/**
+ * Records what has been committed on the target, so that an interrupted copy can be resumed without copying twice
+ * what was already copied. The default implementation records nothing.
+ */
+public interface Checkpoint extends AutoCloseable {
+
+    Checkpoint NONE = new Checkpoint() {
+    };
+
+    default boolean isEnabled() {
+        return false;
+    }
+
+    /**
+     * Adds the node mappings of a previous run to the mapping context.
+     *
+     * @return the number of nodes already copied
+     */
+    default long restore(MappingContext mappingContext) {
+        return 0;
+    }
+
+    default boolean isWritten(RelationshipData relationship) {
+        return false;
+    }
+
+    /**
+     * @return the number of relationships already copied
+     */
+    default long writtenRelationshipCount() {
+        return 0;
+    }
+
+    /**
+     * Called once a node batch is committed, returns once the batch is durably recorded.
+     */
+    default void nodesWritten(List<MappingContext.Mapping> mappings) {
+    }
+
+    /**
+     * Called once a relationship batch is committed, returns once the batch is durably recorded.
+     */
+    default void relationshipsWritten(List<RelationshipData> relationships) {
+    }
+
+    @Override
+    default void close() {
+    }
+}
@@ -1,5 +1,9 @@
 package org.neo4j.dbcopy;
 
+import org.neo4j.dbcopy.bolt.WriteMode;
+import org.neo4j.dbcopy.mapping.MappingStorage;
+
+import java.nio.file.Path;
 import java.util.Collections;
 import java.util.Objects;
 import java.util.Set;
@@ -11,11 +15,61 @@ public class CopyOptions {
     private final Set<String> nodePropertiesToExclude;
     private final Set<String> relationshipPropertiesToExclude;
     private final int batchSize;
+    private final long maxBatchBytes;
+    private final long maxInFlightBytes;
+    private final MappingStorage mappingStorage;
+    private final Path mappingDirectory;
+    private final long diskMappingThreshold;
+    private final boolean rangeEncodedMapping;
+    private final boolean spoolRelationships;
+    private final Path spoolDirectory;
+    private final int readerConcurrency;
+    private final long readPartitionSize;
+    private final int writerConcurrency;
+    private final int relationshipWriterConcurrency;
+    private final boolean adaptiveWrites;
+    private final WriteMode writeMode;
+    private final boolean idempotentWrites;
+    private final Path metricsReport;
+    private final int metricsPort;
+    private final Path checkpointDirectory;
+    private final boolean resume;
+    private final Path syncStateDirectory;
+    private final Set<String> labelsToInclude;
+    private final Set<String> labelsToExclude;
+    private final Set<String> relationshipTypesToInclude;
+    private final Set<String> relationshipTypesToExclude;
+    private final String nodePredicate;
 
     private CopyOptions(Builder builder) {
         this.nodePropertiesToExclude = builder.nodePropertiesToExclude;
         this.relationshipPropertiesToExclude = builder.relationshipPropertiesToExclude;
         this.batchSize = builder.batchSize;
+        this.maxBatchBytes = builder.maxBatchBytes;
+        this.maxInFlightBytes = builder.maxInFlightBytes;
+        this.mappingStorage = builder.mappingStorage;
+        this.mappingDirectory = builder.mappingDirectory;
+        this.diskMappingThreshold = builder.diskMappingThreshold;
+        this.rangeEncodedMapping = builder.rangeEncodedMapping;
+        this.spoolRelationships = builder.spoolRelationships;
+        this.spoolDirectory = builder.spoolDirectory;
+        this.readerConcurrency = builder.readerConcurrency;
+        this.readPartitionSize = builder.readPartitionSize;
+        this.writerConcurrency = builder.writerConcurrency;
+        this.relationshipWriterConcurrency = builder.relationshipWriterConcurrency;
+        this.adaptiveWrites = builder.adaptiveWrites;
+        this.writeMode = builder.writeMode;
+        this.idempotentWrites = builder.idempotentWrites;
+        this.metricsReport = builder.metricsReport;
+        this.metricsPort = builder.metricsPort;
+        this.checkpointDirectory = builder.checkpointDirectory;
+        this.resume = builder.resume;
+        this.syncStateDirectory = builder.syncStateDirectory;
+        this.labelsToInclude = builder.labelsToInclude;
+        this.labelsToExclude = builder.labelsToExclude;
+        this.relationshipTypesToInclude = builder.relationshipTypesToInclude;
+        this.relationshipTypesToExclude = builder.relationshipTypesToExclude;
+        this.nodePredicate = builder.nodePredicate;
     }
 
     public Set<String> getNodePropertiesToExclude() {
@@ -30,10 +84,224 @@ public class CopyOptions {
         return batchSize;
     }
 
+    /**
+     * Estimated size above which a batch is written, whatever the number of entities it holds.
+     */
+    public long maxBatchBytes() {
+        return maxBatchBytes;
+    }
+
+    /**
+     * Maximum estimated size of all the batches being written at once, a larger batch being written alone.
+     */
+    public long maxInFlightBytes() {
+        return maxInFlightBytes;
+    }
+
+    public MappingStorage mappingStorage() {
+        return mappingStorage;
+    }
+
+    public Path mappingDirectory() {
+        return mappingDirectory;
+    }
+
+    /**
+     * Node count above which the mapping is kept in memory-mapped files, whatever the configured mapping storage.
+     */
+    public long diskMappingThreshold() {
+        return diskMappingThreshold;
+    }
+
+    public boolean rangeEncodedMapping() {
+        return rangeEncodedMapping;
+    }
+
+    public boolean spoolRelationships() {
+        return spoolRelationships;
+    }
+
+    public Path spoolDirectory() {
+        return spoolDirectory;
+    }
+
+    public int readerConcurrency() {
+        return readerConcurrency;
+    }
+
+    /**
+     * Maximum number of ids in a node or relationship read partition, relationship types having fewer
+     * relationships being read in a single partition.
+     */
+    public long readPartitionSize() {
+        return readPartitionSize;
+    }
+
+    public int writerConcurrency() {
+        return writerConcurrency;
+    }
+
+    public int relationshipWriterConcurrency() {
+        return relationshipWriterConcurrency;
+    }
+
+    /**
+     * Whether the batch size and the writer concurrencies are adjusted at runtime, from the batch commit latencies
+     * and the transient errors. When enabled, they are the initial and maximum values respectively.
+     */
+    public boolean adaptiveWrites() {
+        return adaptiveWrites;
+    }
+
+    public WriteMode writeMode() {
+        return writeMode;
+    }
+
+    /**
+     * Whether entities are written along with their source id until the end of the copy, so that batches retried after
+     * a commit of unknown outcome are not duplicated.
+     */
+    public boolean idempotentWrites() {
+        return idempotentWrites;
+    }
+
+    /**
+     * File the JSON run report is written to at the end of the copy, or null.
+     */
+    public Path metricsReport() {
+        return metricsReport;
+    }
+
+    /**
+     * Port of the HTTP endpoint exposing the metrics in the Prometheus format during the copy, or 0 for none.
+     */
+    public int metricsPort() {
+        return metricsPort;
+    }
+
+    /**
+     * Directory of the journal recording the committed batches, or null when the copy is not checkpointed.
+     */
+    public Path checkpointDirectory() {
+        return checkpointDirectory;
+    }
+
+    /**
+     * Whether the copy resumes from the journal in the checkpoint directory, skipping what it records.
+     */
+    public boolean resume() {
+        return resume;
+    }
+
+    /**
+     * Directory of the state of the previous sync, or null when the source is copied rather than synced.
+     */
+    public Path syncStateDirectory() {
+        return syncStateDirectory;
+    }
+
+    /**
+     * @return the labels of the nodes to copy, all nodes being copied when empty
+     */
+    public Set<String> getLabelsToInclude() {
+        return Collections.unmodifiableSet(labelsToInclude);
+    }
+
+    public Set<String> getLabelsToExclude() {
+        return Collections.unmodifiableSet(labelsToExclude);
+    }
+
+    /**
+     * @return the types of the relationships to copy, all types being copied when empty
+     */
+    public Set<String> getRelationshipTypesToInclude() {
+        return Collections.unmodifiableSet(relationshipTypesToInclude);
+    }
+
+    public Set<String> getRelationshipTypesToExclude() {
+        return Collections.unmodifiableSet(relationshipTypesToExclude);
+    }
+
+    /**
+     * @return a Cypher condition on {@code n} that the nodes to copy match, or null
+     */
+    public String nodePredicate() {
+        return nodePredicate;
+    }
+
+    /**
+     * @return whether only part of the nodes are copied, relationships to the other ones being dropped
+     */
+    public boolean filtersNodes() {
+        return !labelsToInclude.isEmpty() || !labelsToExclude.isEmpty() || nodePredicate != null;
+    }
+
+    /**
+     * @return a builder initialized with these options
+     */
+    public Builder toBuilder() {
+        var builder = new Builder();
+        builder.nodePropertiesToExclude = nodePropertiesToExclude;
+        builder.relationshipPropertiesToExclude = relationshipPropertiesToExclude;
+        builder.batchSize = batchSize;
+        builder.maxBatchBytes = maxBatchBytes;
+        builder.maxInFlightBytes = maxInFlightBytes;
+        builder.mappingStorage = mappingStorage;
+        builder.mappingDirectory = mappingDirectory;
+        builder.diskMappingThreshold = diskMappingThreshold;
+        builder.rangeEncodedMapping = rangeEncodedMapping;
+        builder.spoolRelationships = spoolRelationships;
+        builder.spoolDirectory = spoolDirectory;
+        builder.readerConcurrency = readerConcurrency;
+        builder.readPartitionSize = readPartitionSize;
+        builder.writerConcurrency = writerConcurrency;
+        builder.relationshipWriterConcurrency = relationshipWriterConcurrency;
+        builder.adaptiveWrites = adaptiveWrites;
+        builder.writeMode = writeMode;
+        builder.idempotentWrites = idempotentWrites;
+        builder.metricsReport = metricsReport;
+        builder.metricsPort = metricsPort;
+        builder.checkpointDirectory = checkpointDirectory;
+        builder.resume = resume;
+        builder.syncStateDirectory = syncStateDirectory;
+        builder.labelsToInclude = labelsToInclude;
+        builder.labelsToExclude = labelsToExclude;
+        builder.relationshipTypesToInclude = relationshipTypesToInclude;
+        builder.relationshipTypesToExclude = relationshipTypesToExclude;
+        builder.nodePredicate = nodePredicate;
+        return builder;
+    }
+
     public static class Builder {
         private Set<String> nodePropertiesToExclude = Collections.emptySet();
         private Set<String> relationshipPropertiesToExclude = Collections.emptySet();
         private int batchSize = 5000;
+        private long maxBatchBytes = 32L << 20;
+        private long maxInFlightBytes = 256L << 20;
+        private MappingStorage mappingStorage = MappingStorage.HEAP;
+        private Path mappingDirectory = Path.of(System.getProperty("java.io.tmpdir"));
+        // a quarter of the heap, at less than 48 bytes per mapped node
+        private long diskMappingThreshold = Runtime.getRuntime().maxMemory() / 4 / 48;
+        private boolean rangeEncodedMapping = false;
+        private boolean spoolRelationships = false;
+        private Path spoolDirectory = Path.of(System.getProperty("java.io.tmpdir"));
+        private int readerConcurrency = 4;
+        private long readPartitionSize = 1_000_000;
+        private int writerConcurrency = 4;
+        private int relationshipWriterConcurrency = 4;
+        private boolean adaptiveWrites = false;
+        private WriteMode writeMode = WriteMode.CYPHER;
+        private boolean idempotentWrites = false;
+        private Path metricsReport = null;
+        private int metricsPort = 0;
+        private Path checkpointDirectory = null;
+        private boolean resume = false;
+        private Path syncStateDirectory = null;
+        private Set<String> labelsToInclude = Collections.emptySet();
+        private Set<String> labelsToExclude = Collections.emptySet();
+        private Set<String> relationshipTypesToInclude = Collections.emptySet();
+        private Set<String> relationshipTypesToExclude = Collections.emptySet();
+        private String nodePredicate = null;
 
         public Builder excludeNodeProperties(Set<String> properties) {
             Objects.requireNonNull(properties);
@@ -47,12 +315,181 @@ public class CopyOptions {
             return this;
         }
 
+        public Builder includeLabels(Set<String> labels) {
+            Objects.requireNonNull(labels);
+            this.labelsToInclude = labels;
+            return this;
+        }
+
+        public Builder excludeLabels(Set<String> labels) {
+            Objects.requireNonNull(labels);
+            this.labelsToExclude = labels;
+            return this;
+        }
+
+        public Builder includeRelationshipTypes(Set<String> types) {
+            Objects.requireNonNull(types);
+            this.relationshipTypesToInclude = types;
+            return this;
+        }
+
+        public Builder excludeRelationshipTypes(Set<String> types) {
+            Objects.requireNonNull(types);
+            this.relationshipTypesToExclude = types;
+            return this;
+        }
+
+        /**
+         * @param nodePredicate a Cypher condition on {@code n}, such as {@code n.tenant = 'acme'}
+         */
+        public Builder nodePredicate(String nodePredicate) {
+            this.nodePredicate = nodePredicate;
+            return this;
+        }
+
         public Builder batchSize(int batchSize) {
+            if (batchSize < 1) {
+                throw new IllegalArgumentException("Batch size must be at least 1, got " + batchSize);
+            }
             this.batchSize = batchSize;
             return this;
         }
 
+        public Builder maxBatchBytes(long maxBatchBytes) {
+            if (maxBatchBytes < 1) {
+                throw new IllegalArgumentException("Max batch bytes must be at least 1, got " + maxBatchBytes);
+            }
+            this.maxBatchBytes = maxBatchBytes;
+            return this;
+        }
+
+        public Builder maxInFlightBytes(long maxInFlightBytes) {
+            if (maxInFlightBytes < 1) {
+                throw new IllegalArgumentException("Max in-flight bytes must be at least 1, got " + maxInFlightBytes);
+            }
+            this.maxInFlightBytes = maxInFlightBytes;
+            return this;
+        }
+
+        public Builder mappingStorage(MappingStorage mappingStorage) {
+            Objects.requireNonNull(mappingStorage);
+            this.mappingStorage = mappingStorage;
+            return this;
+        }
+
+        public Builder mappingDirectory(Path mappingDirectory) {
+            Objects.requireNonNull(mappingDirectory);
+            this.mappingDirectory = mappingDirectory;
+            return this;
+        }
+
+        public Builder diskMappingThreshold(long diskMappingThreshold) {
+            this.diskMappingThreshold = diskMappingThreshold;
+            return this;
+        }
+
+        public Builder rangeEncodedMapping(boolean rangeEncodedMapping) {
+            this.rangeEncodedMapping = rangeEncodedMapping;
+            return this;
+        }
+
+        public Builder spoolRelationships(boolean spoolRelationships) {
+            this.spoolRelationships = spoolRelationships;
+            return this;
+        }
+
+        public Builder spoolDirectory(Path spoolDirectory) {
+            Objects.requireNonNull(spoolDirectory);
+            this.spoolDirectory = spoolDirectory;
+            return this;
+        }
+
+        public Builder readerConcurrency(int readerConcurrency) {
+            if (readerConcurrency < 1) {
+                throw new IllegalArgumentException("Reader concurrency must be at least 1, got " + readerConcurrency);
+            }
+            this.readerConcurrency = readerConcurrency;
+            return this;
+        }
+
+        public Builder readPartitionSize(long readPartitionSize) {
+            if (readPartitionSize < 1) {
+                throw new IllegalArgumentException("Read partition size must be at least 1, got " + readPartitionSize);
+            }
+            this.readPartitionSize = readPartitionSize;
+            return this;
+        }
+
+        public Builder writerConcurrency(int writerConcurrency) {
+            if (writerConcurrency < 1) {
+                throw new IllegalArgumentException("Writer concurrency must be at least 1, got " + writerConcurrency);
+            }
+            this.writerConcurrency = writerConcurrency;
+            return this;
+        }
+
+        public Builder relationshipWriterConcurrency(int relationshipWriterConcurrency) {
+            if (relationshipWriterConcurrency < 1) {
+                throw new IllegalArgumentException("Relationship writer concurrency must be at least 1, got " + relationshipWriterConcurrency);
+            }
+            this.relationshipWriterConcurrency = relationshipWriterConcurrency;
+            return this;
+        }
+
+        public Builder adaptiveWrites(boolean adaptiveWrites) {
+            this.adaptiveWrites = adaptiveWrites;
+            return this;
+        }
+
+        public Builder writeMode(WriteMode writeMode) {
+            Objects.requireNonNull(writeMode);
+            this.writeMode = writeMode;
+            return this;
+        }
+
+        public Builder idempotentWrites(boolean idempotentWrites) {
+            this.idempotentWrites = idempotentWrites;
+            return this;
+        }
+
+        public Builder metricsReport(Path metricsReport) {
+            Objects.requireNonNull(metricsReport);
+            this.metricsReport = metricsReport;
+            return this;
+        }
+
+        public Builder metricsPort(int metricsPort) {
+            if (metricsPort < 0 || metricsPort > 65535) {
+                throw new IllegalArgumentException("Metrics port must be between 0 and 65535, got " + metricsPort);
+            }
+            this.metricsPort = metricsPort;
+            return this;
+        }
+
+        public Builder checkpointDirectory(Path checkpointDirectory) {
+            Objects.requireNonNull(checkpointDirectory);
+            this.checkpointDirectory = checkpointDirectory;
+            return this;
+        }
+
+        public Builder resume(boolean resume) {
+            this.resume = resume;
+            return this;
+        }
+
+        public Builder syncStateDirectory(Path syncStateDirectory) {
+            Objects.requireNonNull(syncStateDirectory);
+            this.syncStateDirectory = syncStateDirectory;
+            return this;
+        }
+
         public CopyOptions build() {
+            if (resume && checkpointDirectory == null) {
+                throw new IllegalArgumentException("Resuming a copy requires a checkpoint directory");
+            }
+            if (syncStateDirectory != null && checkpointDirectory != null) {
+                throw new IllegalArgumentException("A sync cannot be checkpointed, its state already records what it synced");
+            }
             return new CopyOptions(this);
         }
     }
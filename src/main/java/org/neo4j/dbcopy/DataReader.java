@@ -1,14 +1,12 @@
 package org.neo4j.dbcopy;
 
-import org.neo4j.driver.types.Node;
-import org.neo4j.driver.types.Relationship;
 import reactor.core.publisher.Flux;
 
 public interface DataReader {
 
-    Flux<Node> readNodes();
+    Flux<NodeData> readNodes();
 
-    Flux<Relationship> readRelationships();
+    Flux<RelationshipData> readRelationships();
 
     long getTotalNodeCount();
 
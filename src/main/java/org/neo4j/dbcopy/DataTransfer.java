@@ -1,23 +1,39 @@
 package org.neo4j.dbcopy;
 
-import org.neo4j.driver.types.Node;
-import org.neo4j.driver.types.Relationship;
+import org.neo4j.dbcopy.io.CheckpointJournal;
+import org.neo4j.dbcopy.io.RelationshipSpool;
+import org.neo4j.dbcopy.jfr.BatchSealedEvent;
+import org.neo4j.dbcopy.mapping.MappingContexts;
+import org.neo4j.dbcopy.metrics.CopyMetrics;
+import org.neo4j.dbcopy.metrics.MetricsReporter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+import java.util.function.ToLongFunction;
 
 class DataTransfer {
 
 	protected static final Logger LOG = LoggerFactory.getLogger(DataTransfer.class);
 
-	protected static final int WRITER_CONCURRENCY = 4;
+	protected static final int MAX_PARKED_RELATIONSHIP_BATCHES = 16;
 
     private final DataReader dataReader;
 	private final DataWriter dataWriter;
     private final CopyOptions copyOptions;
+	private final CopyMetrics metrics = new CopyMetrics();
+	private Runnable onSourceReadComplete = () -> {};
+	private boolean printProgress = true;
+	private TransactionBudget transactions = TransactionBudget.unbounded();
 
 	public DataTransfer(DataReader dataReader, DataWriter dataWriter, CopyOptions copyOptions) {
 		this.dataReader = dataReader;
@@ -25,45 +41,300 @@ class DataTransfer {
         this.copyOptions = copyOptions;
     }
 
+	/**
+	 * @param callback called once all the nodes and relationships have been read from the source,
+	 *                 which can happen before the end of the copy
+	 */
+	DataTransfer onSourceReadComplete(Runnable callback) {
+		this.onSourceReadComplete = callback;
+		return this;
+	}
+
+	/**
+	 * @param printProgress whether the progress line is printed, rather than logged at debug level
+	 */
+	DataTransfer printProgress(boolean printProgress) {
+		this.printProgress = printProgress;
+		return this;
+	}
+
+	/**
+	 * @param transactions a budget shared with other copies, from which each write transaction acquires a permit
+	 *                     once it got the permit of its controller, and until it commits or fails for good
+	 */
+	DataTransfer transactionBudget(TransactionBudget transactions) {
+		this.transactions = transactions;
+		return this;
+	}
+
+	CopyMetrics metrics() {
+		return metrics;
+	}
+
 	Mono<Long> copyAllNodesAndRels() {
-		var mappingContext = new MappingContext(10000);
-
-        var batchSize = copyOptions.batchSize();
-        ProgressBar nodeProgressBar = new ProgressBar("Nodes", dataReader.getTotalNodeCount());
-		ProgressBar relationshipProgressBar = new ProgressBar("Relationships", dataReader.getTotalRelationshipCount());
-
-		return readNodes()
-				// ideally we should filter out properties to exclude here
-				// but the nodes are immutable and that would require duplicating the node data structure here
-				// which I don't want to do (yet)
-				.buffer(batchSize)
-				.doOnNext(batch -> nodeProgressBar.updateProgress(batch.size()))
-				.flatMap(this::writeNodes, WRITER_CONCURRENCY)
-				.collectList()
-				.map(mappingContext::add)
-				.flatMap(mappings -> readRels()
-					.buffer(batchSize)
-					.doOnNext(batch -> relationshipProgressBar.updateProgress(batch.size()))
-					.flatMap((List<Relationship> relationships) -> writeRels(relationships, mappings), 1)
-					.reduce(0L, Long::sum)
-				)
+		return Mono.usingWhen(Mono.fromCallable(() -> new MetricsReporter(metrics, copyOptions.metricsReport(), copyOptions.metricsPort(), printProgress)),
+				reporter -> dataWriter.prepare(copyOptions)
+						.then(copy())
+						.flatMap(relationshipCount -> dataWriter.complete(copyOptions).thenReturn(relationshipCount)),
+				reporter -> Mono.fromRunnable(() -> reporter.complete("completed", null)),
+				(reporter, error) -> Mono.fromRunnable(() -> reporter.complete("failed", error)),
+				reporter -> Mono.fromRunnable(reporter::close));
+	}
+
+	private Mono<Long> copy() {
+		long totalNodeCount = dataReader.getTotalNodeCount();
+		metrics.nodes().total(totalNodeCount);
+		metrics.relationships().total(dataReader.getTotalRelationshipCount());
+		Runnable sourceStreamComplete = sourceStreamCompletion();
+		var nodeWriteController = new WriteController("Nodes", copyOptions.batchSize(), copyOptions.writerConcurrency(), copyOptions.adaptiveWrites(), metrics.nodes());
+		// shared by the node and relationship writes
+		var budget = new ByteBudget(copyOptions.maxInFlightBytes());
+
+		// with a subgraph filter, the mapping also tells which nodes were copied, whatever the writer
+		return Mono.using(() -> dataWriter.usesSourceIds() && !copyOptions.filtersNodes() ? MappingContext.SOURCE_IDS : MappingContexts.create(totalNodeCount, copyOptions),
+				(MappingContext mappingContext) -> Mono.using(this::openCheckpoint,
+						(Checkpoint checkpoint) -> {
+							metrics.mapping(mappingContext::size, mappingContext::memoryUsage);
+							long restoredNodes = checkpoint.restore(mappingContext);
+							if (checkpoint.isEnabled() && restoredNodes > 0) {
+								LOG.info("Resuming the copy, {} nodes and {} relationships already copied", restoredNodes, checkpoint.writtenRelationshipCount());
+								metrics.nodes().alreadyWritten(restoredNodes);
+								metrics.relationships().alreadyWritten(checkpoint.writtenRelationshipCount());
+								if (!copyOptions.idempotentWrites()) {
+									LOG.warn("Batches committed but not journaled when the copy stopped are written again, and duplicated without idempotent writes");
+								}
+							}
+							var parking = new RelationshipParking(mappingContext);
+							Mono<Long> nodes = readNodes()
+									.doOnNext(node -> metrics.nodes().read(1))
+									.doOnComplete(sourceStreamComplete)
+									.filter(node -> restoredNodes == 0 || mappingContext.find(node.id()) == MappingContext.NO_MAPPING)
+									.transform(it -> batches(it, "nodes", nodeWriteController::batchSize, NodeData::estimatedSize))
+									.flatMap(batch -> writeNodeBatch(batch, nodeWriteController, budget)
+											.flatMap(mappings -> record(mappings, checkpoint, checkpoint::nodesWritten)), nodeWriteController.maxConcurrency())
+									// keep batches together so that runs of contiguous ids can be detected
+									.doOnNext(mappingContext::add)
+									.doOnNext(mappings -> parking.nodesMapped())
+									.then(Mono.fromCallable(() -> {
+										LOG.info("Nodes writing complete - {} nodes mapped using {} bytes", mappingContext.size(), mappingContext.memoryUsage());
+										parking.nodesComplete();
+										return mappingContext.size();
+									}));
+							Flux<RelationshipData> relationships = readRels()
+									.doOnNext(relationship -> metrics.relationships().read(1))
+									.doOnComplete(sourceStreamComplete)
+									.filter(relationship -> !checkpoint.isWritten(relationship));
+
+							if (copyOptions.spoolRelationships()) {
+								// relationships are read into the spool while nodes are written, and written from it afterwards
+								// the spool file is written off the reader threads, which must not block
+								return Mono.using(() -> new RelationshipSpool(copyOptions.spoolDirectory()),
+										spool -> Mono.zip(nodes, relationshipBatches(relationships)
+														.concatMap(batch -> Mono.fromRunnable(() -> spool.append(batch)).subscribeOn(Schedulers.boundedElastic()))
+														.then(Mono.fromCallable(spool::finish).subscribeOn(Schedulers.boundedElastic())))
+												.doOnNext(counts -> LOG.info("{} relationships spooled in a {} bytes file", counts.getT2(), spool.size()))
+												.then(writeRelationshipBatches(relationshipBatches(spool.replay()), mappingContext, checkpoint, budget)),
+										RelationshipSpool::close);
+							}
+							// relationships are read while nodes are written, and written as soon as their nodes are
+							Flux<List<RelationshipData>> mappedBatches = relationshipBatches(relationships)
+									.flatMap(parking::whenMapped, MAX_PARKED_RELATIONSHIP_BATCHES);
+							return Mono.zip(nodes, writeRelationshipBatches(mappedBatches, mappingContext, checkpoint, budget),
+									(nodeCount, relationshipCount) -> relationshipCount);
+						},
+						Checkpoint::close),
+				mappingContext -> {
+					metrics.freezeMapping();
+					mappingContext.close();
+				})
 				.doOnSuccess(it -> LOG.info("Relationships writing complete - {} relationships written", it));
 	}
 
-	private Flux<Node> readNodes() {
+	private Checkpoint openCheckpoint() {
+		Path directory = copyOptions.checkpointDirectory();
+		if (directory == null) {
+			return Checkpoint.NONE;
+		}
+		return copyOptions.resume() ? CheckpointJournal.resume(directory) : CheckpointJournal.create(directory);
+	}
+
+	/**
+	 * Records a committed batch in the checkpoint, away from the driver threads as the recording waits for the disk.
+	 */
+	private static <T> Mono<T> record(T batch, Checkpoint checkpoint, Consumer<T> recorder) {
+		if (!checkpoint.isEnabled()) {
+			return Mono.just(batch);
+		}
+		return Mono.fromCallable(() -> {
+			recorder.accept(batch);
+			return batch;
+		}).subscribeOn(Schedulers.boundedElastic());
+	}
+
+	private Mono<List<MappingContext.Mapping>> writeNodeBatch(Batch<NodeData> batch, WriteController controller, ByteBudget budget) {
+		return Mono.usingWhen(budget.reserve(batch.bytes()),
+				reservation -> Mono.usingWhen(controller.acquire(),
+						permit -> Mono.usingWhen(transactions.acquire(),
+								transaction -> {
+									metrics.nodes().bufferWait(System.nanoTime() - batch.sealedAt());
+									return controller.write(batch.entities(), mergesOnResume() ? this::rewriteNodes : this::writeNodes,
+											copyOptions.idempotentWrites() ? this::rewriteNodes : null, DataTransfer::concat);
+								},
+								transaction -> Mono.fromRunnable(transaction::release)),
+						permit -> Mono.fromRunnable(permit::release)),
+				reservation -> Mono.fromRunnable(reservation::release));
+	}
+
+	/**
+	 * Relationships are regrouped before being written, these batches only bound what is held back or spooled at once.
+	 */
+	private Flux<List<RelationshipData>> relationshipBatches(Flux<RelationshipData> relationships) {
+		return batches(relationships, "relationships read", copyOptions::batchSize, RelationshipData::estimatedSize).map(Batch::entities);
+	}
+
+	private Mono<Long> writeRelationshipBatches(Flux<List<RelationshipData>> batches, MappingContext mappingContext, Checkpoint checkpoint,
+												ByteBudget budget) {
+		var controller = new WriteController("Relationships", copyOptions.batchSize(), copyOptions.relationshipWriterConcurrency(), copyOptions.adaptiveWrites(),
+				metrics.relationships());
+		var scheduler = new RelationshipWriteScheduler(mappingContext, controller, budget, copyOptions.maxBatchBytes()).transactionBudget(transactions);
+		var droppedCount = new AtomicLong();
+		return scheduler.schedule(
+				copyOptions.filtersNodes() ? batches.map(batch -> withCopiedEndpoints(batch, mappingContext, droppedCount)).filter(batch -> !batch.isEmpty()) : batches,
+				mergesOnResume()
+						? batch -> rewriteRels(batch, mappingContext).flatMap(count -> record(batch, checkpoint, checkpoint::relationshipsWritten).thenReturn(count))
+						: batch -> writeRels(batch, mappingContext).flatMap(count -> record(batch, checkpoint, checkpoint::relationshipsWritten).thenReturn(count)),
+				copyOptions.idempotentWrites()
+						? batch -> rewriteRels(batch, mappingContext).flatMap(count -> record(batch, checkpoint, checkpoint::relationshipsWritten).thenReturn(count))
+						: null)
+				.doOnSuccess(it -> {
+					if (droppedCount.get() > 0) {
+						LOG.info("{} relationships dropped, their start or end node not being copied", droppedCount.get());
+					}
+				});
+	}
+
+	/**
+	 * Keeps the relationships whose endpoints were both copied. Batches are only released by the parking once all their
+	 * endpoints are mapped or all the nodes written, so an unmapped endpoint is one that was filtered out.
+	 */
+	private static List<RelationshipData> withCopiedEndpoints(List<RelationshipData> relationships, MappingContext mappingContext, AtomicLong droppedCount) {
+		List<RelationshipData> copied = new ArrayList<>(relationships.size());
+		for (RelationshipData relationship : relationships) {
+			if (mappingContext.find(relationship.startNodeId()) != MappingContext.NO_MAPPING
+					&& mappingContext.find(relationship.endNodeId()) != MappingContext.NO_MAPPING) {
+				copied.add(relationship);
+			}
+		}
+		droppedCount.addAndGet(relationships.size() - copied.size());
+		return copied.size() == relationships.size() ? relationships : copied;
+	}
+
+	/**
+	 * Buffers the entities in batches, a batch being sealed once it holds the current batch size,
+	 * or once its estimated size reaches the maximum batch size in bytes.
+	 */
+	private <T> Flux<Batch<T>> batches(Flux<T> entities, String stage, IntSupplier batchSize, ToLongFunction<T> estimatedSize) {
+		long maxBatchBytes = copyOptions.maxBatchBytes();
+		return Flux.defer(() -> {
+			var batcher = new Batcher<T>(stage);
+			return entities.<Batch<T>>handle((entity, sink) -> {
+						batcher.add(entity, estimatedSize.applyAsLong(entity));
+						if (batcher.size() >= batchSize.getAsInt() || batcher.bytes() >= maxBatchBytes) {
+							sink.next(batcher.seal());
+						}
+					})
+					.concatWith(Mono.fromSupplier(() -> batcher.size() == 0 ? null : batcher.seal()));
+		});
+	}
+
+	record Batch<T>(List<T> entities, long bytes, long sealedAt) {
+	}
+
+	private static final class Batcher<T> {
+		private final String stage;
+		private List<T> entities = new ArrayList<>();
+		private long bytes = 0;
+
+		Batcher(String stage) {
+			this.stage = stage;
+		}
+
+		void add(T entity, long size) {
+			entities.add(entity);
+			bytes += size;
+		}
+
+		int size() {
+			return entities.size();
+		}
+
+		long bytes() {
+			return bytes;
+		}
+
+		Batch<T> seal() {
+			var batch = new Batch<>(entities, bytes, System.nanoTime());
+			BatchSealedEvent.emit(stage, entities.size(), bytes);
+			entities = new ArrayList<>();
+			bytes = 0;
+			return batch;
+		}
+	}
+
+	private static <T> List<T> concat(List<T> first, List<T> second) {
+		List<T> all = new ArrayList<>(first.size() + second.size());
+		all.addAll(first);
+		all.addAll(second);
+		return all;
+	}
+
+	private Runnable sourceStreamCompletion() {
+		var pendingStreams = new AtomicInteger(2);
+		return () -> {
+			if (pendingStreams.decrementAndGet() == 0) {
+				LOG.info("Source database read complete");
+				// the callback may block, keep it away from the driver threads
+				Schedulers.boundedElastic().schedule(() -> {
+					try {
+						onSourceReadComplete.run();
+					} catch (RuntimeException e) {
+						LOG.warn("Source read completion callback failed", e);
+					}
+				});
+			}
+		};
+	}
+
+	private Flux<NodeData> readNodes() {
 		return dataReader.readNodes();
 	}
 
-	private Flux<Relationship> readRels() {
+	private Flux<RelationshipData> readRels() {
 		return dataReader.readRelationships();
 	}
 
-	private Flux<MappingContext.Mapping> writeNodes(List<Node> nodes) {
-		return dataWriter.writeNodes(nodes, copyOptions);
+	/**
+	 * A batch is journaled once committed, so an interrupted copy may have committed batches that its journal does not
+	 * record. With idempotent writes, a resumed copy merges everything it writes so as not to duplicate them.
+	 */
+	private boolean mergesOnResume() {
+		return copyOptions.resume() && copyOptions.idempotentWrites();
 	}
 
-	private Mono<Long> writeRels(List<Relationship> relationships, MappingContext mappingContext) {
+	private Mono<List<MappingContext.Mapping>> writeNodes(List<NodeData> nodes) {
+		return dataWriter.writeNodes(nodes, copyOptions).collectList();
+	}
+
+	private Mono<List<MappingContext.Mapping>> rewriteNodes(List<NodeData> nodes) {
+		return dataWriter.rewriteNodes(nodes, copyOptions).collectList();
+	}
+
+	private Mono<Long> writeRels(List<RelationshipData> relationships, MappingContext mappingContext) {
 		return dataWriter.writeRelationships(relationships, mappingContext, copyOptions);
 	}
 
+	private Mono<Long> rewriteRels(List<RelationshipData> relationships, MappingContext mappingContext) {
+		return dataWriter.rewriteRelationships(relationships, mappingContext, copyOptions);
+	}
+
 }
@@ -1,8 +1,6 @@
 package org.neo4j.dbcopy;
 
 import org.neo4j.dbcopy.MappingContext.Mapping;
-import org.neo4j.driver.types.Node;
-import org.neo4j.driver.types.Relationship;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
@@ -10,7 +8,45 @@ import java.util.List;
 
 public interface DataWriter {
 
-    Flux<Mapping> writeNodes(List<Node> nodes, CopyOptions copyOptions);
+    /**
+     * Called before anything is written.
+     */
+    default Mono<Void> prepare(CopyOptions copyOptions) {
+        return Mono.empty();
+    }
 
-    Mono<Long> writeRelationships(List<Relationship> relationships, MappingContext mappingContext, CopyOptions copyOptions);
+    /**
+     * @return whether nodes are identified by their source ids on the target side, in which case no mapping is kept
+     * and relationships are written without waiting for their nodes
+     */
+    default boolean usesSourceIds() {
+        return false;
+    }
+
+    Flux<Mapping> writeNodes(List<NodeData> nodes, CopyOptions copyOptions);
+
+    /**
+     * Writes again nodes that a previous attempt of unknown outcome may have written, without duplicating them
+     * when writes are idempotent.
+     */
+    default Flux<Mapping> rewriteNodes(List<NodeData> nodes, CopyOptions copyOptions) {
+        return writeNodes(nodes, copyOptions);
+    }
+
+    Mono<Long> writeRelationships(List<RelationshipData> relationships, MappingContext mappingContext, CopyOptions copyOptions);
+
+    /**
+     * Writes again relationships that a previous attempt of unknown outcome may have written, without duplicating them
+     * when writes are idempotent.
+     */
+    default Mono<Long> rewriteRelationships(List<RelationshipData> relationships, MappingContext mappingContext, CopyOptions copyOptions) {
+        return writeRelationships(relationships, mappingContext, copyOptions);
+    }
+
+    /**
+     * Called once everything has been written.
+     */
+    default Mono<Void> complete(CopyOptions copyOptions) {
+        return Mono.empty();
+    }
 }
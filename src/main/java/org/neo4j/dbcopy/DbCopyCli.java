@@ -1,16 +1,31 @@
 package org.neo4j.dbcopy;
 
+import org.neo4j.dbcopy.MultiDatabaseCopy.DatabasePair;
 import org.neo4j.dbcopy.bolt.BoltReader;
 import org.neo4j.dbcopy.bolt.BoltWriter;
+import org.neo4j.dbcopy.bolt.SchemaCopy;
+import org.neo4j.dbcopy.bolt.WriteMode;
+import org.neo4j.dbcopy.csv.ImportCsvWriter;
+import org.neo4j.dbcopy.jfr.FlightRecording;
+import org.neo4j.dbcopy.mapping.MappingStorage;
+import org.neo4j.dbcopy.snapshot.SnapshotReader;
+import org.neo4j.dbcopy.snapshot.SnapshotWriter;
+import org.neo4j.dbcopy.verify.Verifier;
 import org.neo4j.driver.AuthTokens;
 import org.neo4j.driver.Driver;
 import org.neo4j.driver.GraphDatabase;
 import picocli.CommandLine;
 import picocli.CommandLine.Command;
+import picocli.CommandLine.Model.CommandSpec;
 import picocli.CommandLine.Option;
+import picocli.CommandLine.ParameterException;
+import picocli.CommandLine.Spec;
 
 import java.net.URI;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Callable;
 
@@ -18,28 +33,28 @@ import java.util.concurrent.Callable;
          description = "Copy the content of a Neo4j database to another Neo4j database, via the network, through the bolt protocol.")
 class DbCopyCli implements Callable<Integer> {
 
-    @Option(names = {"-sa", "--source-address"}, required = true, description = "The source database address (ex: neo4j+s://my-server:7687)")
+    @Option(names = {"-sa", "--source-address"}, description = "The source database address (ex: neo4j+s://my-server:7687), required unless --from-snapshot is set")
     private URI sourceAddress;
 
     @Option(names = {"-su", "--source-username"}, description = "The source database username to connect as (default: neo4j)")
     private String sourceUserName = "neo4j";
 
-    @Option(names = {"-sp", "--source-password"}, required = true, interactive = true, description = "The source database password to connect with")
+    @Option(names = {"-sp", "--source-password"}, interactive = true, description = "The source database password to connect with")
     private String sourcePassword;
 
-    @Option(names = {"-sd", "--source-database"}, required = true, description = "The source database to connect to.")
+    @Option(names = {"-sd", "--source-database"}, description = "The source database to connect to.")
     private String sourceDatabase;
 
-    @Option(names = {"-ta", "--target-address"}, required = true, description = "The target database address (ex: neo4j+s://my-server:7687)")
+    @Option(names = {"-ta", "--target-address"}, description = "The target database address (ex: neo4j+s://my-server:7687), required unless --to-snapshot or --to-import-directory is set")
     private URI targetAddress;
 
     @Option(names = {"-tu", "--target-username"}, description = "The target database username to connect as (default: neo4j)")
     private String targetUserName = "neo4j";
 
-    @Option(names = {"-tp", "--target-password"}, required = true, interactive = true, description = "The target database password to connect with")
+    @Option(names = {"-tp", "--target-password"}, interactive = true, description = "The target database password to connect with")
     private String targetPassword;
 
-    @Option(names = {"-td", "--target-database"}, required = true, description = "The target database to connect to.")
+    @Option(names = {"-td", "--target-database"}, description = "The target database to connect to.")
     private String targetDatabase;
 
     @Option(names = {"-enp", "--exclude-node-properties"}, split = ",", description = "Comma-separated list of node properties to exclude from the copy")
@@ -48,28 +63,203 @@ class DbCopyCli implements Callable<Integer> {
     @Option(names = {"-erp", "--exclude-relationship-properties"}, split = ",", description = "Comma-separated list of relationship properties to exclude from the copy")
     private Set<String> excludeRelationshipProperties = new HashSet<>();
 
+    @Option(names = {"-il", "--include-labels"}, split = ",", description = "Comma-separated list of labels of the nodes to copy, nodes having none of them being left out along with their relationships")
+    private Set<String> includeLabels = new HashSet<>();
+
+    @Option(names = {"-el", "--exclude-labels"}, split = ",", description = "Comma-separated list of labels of the nodes to leave out, along with their relationships")
+    private Set<String> excludeLabels = new HashSet<>();
+
+    @Option(names = {"-irt", "--include-relationship-types"}, split = ",", description = "Comma-separated list of types of the relationships to copy")
+    private Set<String> includeRelationshipTypes = new HashSet<>();
+
+    @Option(names = {"-ert", "--exclude-relationship-types"}, split = ",", description = "Comma-separated list of types of the relationships to leave out")
+    private Set<String> excludeRelationshipTypes = new HashSet<>();
+
+    @Option(names = {"-np", "--node-predicate"}, paramLabel = "<cypherCondition>", description = "Cypher condition on n that the nodes to copy match, such as \"n.tenant = 'acme'\". Relationships to nodes not matching it are left out")
+    private String nodePredicate;
+
     @Option(names = {"-lock", "--lock-source-database"}, description = "Set the source database to read-only mode before copying")
     private boolean lockSourceDatabase = false;
 
+    @Option(names = {"-bs", "--batch-size"}, description = "Number of nodes or relationships written per transaction, the initial one with --adaptive-writes (default: ${DEFAULT-VALUE})")
+    private int batchSize = 5000;
+
+    @Option(names = {"-mbb", "--max-batch-bytes"}, description = "Estimated size in bytes above which a batch is written, whatever its number of nodes or relationships (default: ${DEFAULT-VALUE})")
+    private long maxBatchBytes = 32L << 20;
+
+    @Option(names = {"-mifb", "--max-in-flight-bytes"}, description = "Maximum estimated size in bytes of all the batches being written at once (default: ${DEFAULT-VALUE})")
+    private long maxInFlightBytes = 256L << 20;
+
+    @Option(names = {"-wc", "--writer-concurrency"}, description = "Number of node batches written in parallel, the maximum one with --adaptive-writes (default: ${DEFAULT-VALUE})")
+    private int writerConcurrency = 4;
+
+    @Option(names = {"-aw", "--adaptive-writes"}, description = "Adjust the batch size and the writer concurrencies at runtime, from the transaction latencies and errors")
+    private boolean adaptiveWrites = false;
+
+    @Option(names = {"-ms", "--mapping-storage"}, description = "Where to keep the source to target node id mapping: ${COMPLETION-CANDIDATES} (default: ${DEFAULT-VALUE}). OFF_HEAP memory is limited by -XX:MaxDirectMemorySize")
+    private MappingStorage mappingStorage = MappingStorage.HEAP;
+
+    @Option(names = {"-md", "--mapping-directory"}, description = "Scratch directory for the DISK mapping storage (default: ${DEFAULT-VALUE})")
+    private Path mappingDirectory = Path.of(System.getProperty("java.io.tmpdir"));
+
+    @Option(names = {"-dmt", "--disk-mapping-threshold"}, description = "Number of source nodes above which the node id mapping is stored on disk (default: a quarter of the max heap size, at 48 bytes per node)")
+    private Long diskMappingThreshold;
+
+    @Option(names = {"-rem", "--range-encoded-mapping"}, description = "Store runs of contiguous source and target node ids as ranges. Very compact when the target database is empty")
+    private boolean rangeEncodedMapping = false;
+
+    @Option(names = {"-spool", "--spool-relationships"}, description = "Read the relationships into a local spool file while the nodes are written, to release the source database sooner")
+    private boolean spoolRelationships = false;
+
+    @Option(names = {"-sdir", "--spool-directory"}, description = "Directory of the relationship spool file (default: ${DEFAULT-VALUE})")
+    private Path spoolDirectory = Path.of(System.getProperty("java.io.tmpdir"));
+
+    @Option(names = {"-rc", "--reader-concurrency"}, description = "Maximum number of partitions read in parallel from the source database (default: ${DEFAULT-VALUE})")
+    private int readerConcurrency = 4;
+
+    @Option(names = {"-rps", "--read-partition-size"}, description = "Maximum number of ids per read partition. Relationship types with fewer relationships are read in a single partition (default: ${DEFAULT-VALUE})")
+    private long readPartitionSize = 1_000_000;
+
+    @Option(names = {"-rwc", "--relationship-writer-concurrency"}, description = "Number of relationship batches written in parallel, batches never sharing nodes, the maximum one with --adaptive-writes (default: ${DEFAULT-VALUE})")
+    private int relationshipWriterConcurrency = 4;
+
+    @Option(names = {"-wm", "--write-mode"}, description = "How entities are created in the target database: ${COMPLETION-CANDIDATES} (default: ${DEFAULT-VALUE}). APOC requires the APOC plugin on the target")
+    private WriteMode writeMode = WriteMode.CYPHER;
+
+    @Option(names = {"-iw", "--idempotent-writes"}, description = "Write entities along with their source id, removed at the end of the copy, so that batches whose commit had an unknown outcome are retried without duplicates, and a resumed copy does not duplicate the batches committed but not journaled when it stopped. Otherwise such a batch fails the copy")
+    private boolean idempotentWrites;
+
+    @Option(names = {"-mr", "--metrics-report"}, description = "Write a JSON report of the copy metrics to this file at the end of the copy: rates, batch write latencies, buffer waits, retries, mapping size and client load")
+    private Path metricsReport;
+
+    @Option(names = {"-mp", "--metrics-port"}, description = "Expose the copy metrics in the Prometheus format on this port, at /metrics, during the copy")
+    private int metricsPort;
+
+    @Option(names = {"--jfr"}, arity = "0..1", fallbackValue = "neo4j-db-copy.jfr", paramLabel = "<recordingFile>",
+            description = "Record the run with Java Flight Recorder, along with the copy events, to this file (default: ${FALLBACK-VALUE})")
+    private Path jfrFile;
+
+    @Option(names = {"-cpd", "--checkpoint-directory"}, description = "Record the committed batches in a journal in this directory, so that an interrupted copy can be resumed with --resume")
+    private Path checkpointDirectory;
+
+    @Option(names = {"-res", "--resume"}, paramLabel = "<checkpointDirectory>", description = "Resume an interrupted copy from the journal in this checkpoint directory, skipping what was already copied. The source database must not have changed in between. Batches committed but not yet journaled when the copy stopped are written again, and so duplicated unless the copies use --idempotent-writes")
+    private Path resumeDirectory;
+
+    @Option(names = {"-fs", "--from-snapshot"}, paramLabel = "<snapshotFile>", description = "Read the nodes and relationships from this snapshot file rather than from a source database")
+    private Path fromSnapshot;
+
+    @Option(names = {"-ts", "--to-snapshot"}, paramLabel = "<snapshotFile>", description = "Write the nodes and relationships to this snapshot file rather than to a target database, to copy them later with --from-snapshot")
+    private Path toSnapshot;
+
+    @Option(names = {"-ti", "--to-import-directory"}, paramLabel = "<importDirectory>", description = "Write the nodes and relationships as CSV files for neo4j-admin database import to this directory, rather than to a target database")
+    private Path importDirectory;
+
+    @Option(names = {"-ic", "--compress-import-files"}, description = "Compress the CSV files written with --to-import-directory with gzip")
+    private boolean compressImportFiles = false;
+
+    @Option(names = {"-ss", "--sync-state"}, paramLabel = "<syncStateDirectory>", description = "Sync a target previously synced from the source, writing only what changed since then, as recorded in this directory. The first sync copies everything")
+    private Path syncStateDirectory;
+
+    @Option(names = {"-ver", "--verify"}, description = "Compare the content of the source and the target rather than copying, per label set and relationship type, and report the ids of the differing entities. Exits with 1 when they differ")
+    private boolean verify = false;
+
+    @Option(names = {"-cs", "--copy-schema"}, description = "Copy the indexes and constraints of the source once the data is copied, building them in parallel and waiting for them to be online. Those already on the target, by name, are left as they are")
+    private boolean copySchema = false;
+
+    @Option(names = {"-dbs", "--databases"}, split = ",", paramLabel = "<source[:target]>", description = "Comma-separated list of databases to copy at the same time, each to the target database of the same name or to the one after the colon, in place of --source-database and --target-database")
+    private List<String> databases = new ArrayList<>();
+
+    @Option(names = {"-mcc", "--max-concurrent-copies"}, description = "Number of databases copied at the same time with --databases (default: ${DEFAULT-VALUE})")
+    private int maxConcurrentCopies = 4;
+
+    @Option(names = {"-mit", "--max-in-flight-transactions"}, description = "Maximum number of write transactions running at the same time on the target with --databases, across all the copies (default: ${DEFAULT-VALUE})")
+    private int maxInFlightTransactions = 8;
+
+    @Spec
+    private CommandSpec spec;
+
     @Override
     public Integer call() {
+        validate();
 
-        try (Driver sourceDriver = GraphDatabase.driver(sourceAddress, AuthTokens.basic(sourceUserName, sourcePassword));
-             Driver targetDriver = GraphDatabase.driver(targetAddress, AuthTokens.basic(targetUserName, targetPassword))) {
-             sourceDriver.verifyConnectivity();
-             targetDriver.verifyConnectivity();
+        try (FlightRecording recording = jfrFile != null ? FlightRecording.start(jfrFile) : null;
+             Driver sourceDriver = fromSnapshot == null ? connect(sourceAddress, sourceUserName, sourcePassword) : null;
+             Driver targetDriver = toSnapshot == null && importDirectory == null ? connect(targetAddress, targetUserName, targetPassword) : null) {
 
-            CopyOptions copyOptions = new CopyOptions.Builder()
+            CopyOptions.Builder copyOptionsBuilder = new CopyOptions.Builder()
                     .excludeNodeProperties(excludeNodeProperties)
                     .excludeRelationshipProperties(excludeRelationshipProperties)
-                    .build();
+                    .includeLabels(includeLabels)
+                    .excludeLabels(excludeLabels)
+                    .includeRelationshipTypes(includeRelationshipTypes)
+                    .excludeRelationshipTypes(excludeRelationshipTypes)
+                    .nodePredicate(nodePredicate)
+                    .batchSize(batchSize)
+                    .maxBatchBytes(maxBatchBytes)
+                    .maxInFlightBytes(maxInFlightBytes)
+                    .writerConcurrency(writerConcurrency)
+                    .adaptiveWrites(adaptiveWrites)
+                    .mappingStorage(mappingStorage)
+                    .mappingDirectory(mappingDirectory)
+                    .rangeEncodedMapping(rangeEncodedMapping)
+                    .spoolRelationships(spoolRelationships)
+                    .spoolDirectory(spoolDirectory)
+                    .readerConcurrency(readerConcurrency)
+                    .readPartitionSize(readPartitionSize)
+                    .relationshipWriterConcurrency(relationshipWriterConcurrency)
+                    .writeMode(writeMode)
+                    .idempotentWrites(idempotentWrites)
+                    .metricsPort(metricsPort);
+            if (diskMappingThreshold != null) {
+                copyOptionsBuilder.diskMappingThreshold(diskMappingThreshold);
+            }
+            if (metricsReport != null) {
+                copyOptionsBuilder.metricsReport(metricsReport);
+            }
+            if (resumeDirectory != null) {
+                copyOptionsBuilder.checkpointDirectory(resumeDirectory).resume(true);
+            } else if (checkpointDirectory != null) {
+                copyOptionsBuilder.checkpointDirectory(checkpointDirectory);
+            }
+            if (syncStateDirectory != null) {
+                copyOptionsBuilder.syncStateDirectory(syncStateDirectory);
+            }
+            CopyOptions copyOptions = copyOptionsBuilder.build();
+
+            if (!databases.isEmpty()) {
+                List<DatabasePair> pairs = databases.stream().map(DatabasePair::parse).toList();
+                MultiDatabaseCopy.overBolt(sourceDriver, targetDriver, pairs, copyOptions, maxConcurrentCopies, maxInFlightTransactions)
+                        .schemaCopies(pair -> copySchema ? new SchemaCopy(sourceDriver, pair.source(), targetDriver, pair.target(), writerConcurrency) : null)
+                        .copyAll()
+                        .block();
+                return 0;
+            }
+
+            SchemaCopy schemaCopy = copySchema ? new SchemaCopy(sourceDriver, sourceDatabase, targetDriver, targetDatabase, writerConcurrency) : null;
+            List<SchemaCopy.Definition> schema = schemaCopy != null ? schemaCopy.read().block() : List.of();
 
-            DatabaseStateManager databaseStateManager = (lockSourceDatabase) ? new LockingDatabaseStateManager(sourceDriver, sourceDatabase) : new DatabaseStateManager(){};
+            DatabaseStateManager databaseStateManager = (lockSourceDatabase && sourceDriver != null) ? new LockingDatabaseStateManager(sourceDriver, sourceDatabase) : new DatabaseStateManager(){};
             databaseStateManager.makeReadOnly();
-            DataReader reader = new BoltReader(sourceDriver, sourceDatabase);
-            DataWriter writer = new BoltWriter(targetDriver, targetDatabase);
-            try {
-                new DataTransfer(reader, writer, copyOptions).copyAllNodesAndRels().block();
+            try (SnapshotReader snapshotReader = fromSnapshot != null ? new SnapshotReader(fromSnapshot, copyOptions) : null;
+                 SnapshotWriter snapshotWriter = toSnapshot != null ? new SnapshotWriter(toSnapshot) : null;
+                 ImportCsvWriter importWriter = importDirectory != null ? new ImportCsvWriter(importDirectory, compressImportFiles) : null) {
+                DataReader reader = snapshotReader != null ? snapshotReader : new BoltReader(sourceDriver, sourceDatabase, copyOptions);
+                BoltWriter targetWriter = targetDriver != null ? new BoltWriter(targetDriver, targetDatabase) : null;
+                DataWriter writer = targetWriter != null ? targetWriter : snapshotWriter != null ? snapshotWriter : importWriter;
+                if (verify) {
+                    boolean matches = new Verifier(reader, new BoltReader(targetDriver, targetDatabase, copyOptions), copyOptions).verify().block().matches();
+                    return matches ? 0 : 1;
+                } else if (syncStateDirectory != null) {
+                    new DeltaSync(reader, targetWriter, copyOptions).sync().block();
+                } else {
+                    new DataTransfer(reader, writer, copyOptions)
+                            .onSourceReadComplete(databaseStateManager::restoreInitialState)
+                            .copyAllNodesAndRels()
+                            .block();
+                }
+                if (schemaCopy != null) {
+                    schemaCopy.create(schema).block();
+                }
             } finally {
                 databaseStateManager.restoreInitialState();
             }
@@ -77,6 +267,87 @@ class DbCopyCli implements Callable<Integer> {
         return 0;
     }
 
+    private void validate() {
+        if (fromSnapshot == null) {
+            require(sourceAddress, "--source-address");
+            require(sourcePassword, "--source-password");
+            if (databases.isEmpty()) {
+                require(sourceDatabase, "--source-database");
+            }
+        }
+        if (toSnapshot != null && importDirectory != null) {
+            throw new ParameterException(spec.commandLine(), "--to-snapshot and --to-import-directory are mutually exclusive");
+        }
+        if (toSnapshot == null && importDirectory == null) {
+            require(targetAddress, "--target-address");
+            require(targetPassword, "--target-password");
+            if (databases.isEmpty()) {
+                require(targetDatabase, "--target-database");
+            }
+        } else if (resumeDirectory != null) {
+            throw new ParameterException(spec.commandLine(), "A copy to files cannot be resumed, as the files are written again");
+        } else if (syncStateDirectory != null) {
+            throw new ParameterException(spec.commandLine(), "Only a target database can be synced");
+        } else if (verify) {
+            throw new ParameterException(spec.commandLine(), "Only a target database can be verified");
+        } else if (copySchema) {
+            throw new ParameterException(spec.commandLine(), "The schema can only be copied to a target database");
+        }
+        if (copySchema && (fromSnapshot != null || verify)) {
+            throw new ParameterException(spec.commandLine(), "--copy-schema requires a source database, and cannot be combined with --verify");
+        }
+        if (!databases.isEmpty()) {
+            validateDatabases();
+        }
+        boolean filtered = !includeLabels.isEmpty() || !excludeLabels.isEmpty() || !includeRelationshipTypes.isEmpty() || !excludeRelationshipTypes.isEmpty() || nodePredicate != null;
+        if (filtered && (fromSnapshot != null || verify || syncStateDirectory != null)) {
+            throw new ParameterException(spec.commandLine(), "Label, relationship type and node filters are applied when reading a source database, and cannot be combined with --verify or --sync-state");
+        }
+        if (syncStateDirectory != null && (checkpointDirectory != null || resumeDirectory != null)) {
+            throw new ParameterException(spec.commandLine(), "--sync-state cannot be combined with --checkpoint-directory or --resume, the sync state already records what was synced");
+        }
+    }
+
+    private void validateDatabases() {
+        if (sourceDatabase != null || targetDatabase != null) {
+            throw new ParameterException(spec.commandLine(), "--databases cannot be combined with --source-database or --target-database");
+        }
+        if (fromSnapshot != null || toSnapshot != null || importDirectory != null) {
+            throw new ParameterException(spec.commandLine(), "--databases copies between a source and a target server, not from or to files");
+        }
+        if (verify || syncStateDirectory != null || lockSourceDatabase || metricsPort != 0) {
+            throw new ParameterException(spec.commandLine(), "--databases cannot be combined with --verify, --sync-state, --lock-source-database or --metrics-port");
+        }
+        if (maxConcurrentCopies < 1 || maxInFlightTransactions < 1) {
+            throw new ParameterException(spec.commandLine(), "--max-concurrent-copies and --max-in-flight-transactions must be positive");
+        }
+        try {
+            List<DatabasePair> pairs = databases.stream().map(DatabasePair::parse).toList();
+            if (pairs.stream().map(DatabasePair::source).distinct().count() < pairs.size() || pairs.stream().map(DatabasePair::target).distinct().count() < pairs.size()) {
+                throw new ParameterException(spec.commandLine(), "Each source and target database of --databases must be listed once");
+            }
+        } catch (IllegalArgumentException e) {
+            throw new ParameterException(spec.commandLine(), e.getMessage());
+        }
+    }
+
+    private void require(Object value, String option) {
+        if (value == null) {
+            throw new ParameterException(spec.commandLine(), "Missing required option: '" + option + "'");
+        }
+    }
+
+    private static Driver connect(URI address, String userName, String password) {
+        Driver driver = GraphDatabase.driver(address, AuthTokens.basic(userName, password));
+        try {
+            driver.verifyConnectivity();
+        } catch (RuntimeException e) {
+            driver.close();
+            throw e;
+        }
+        return driver;
+    }
+
     public static void main(String... args) {
         int exitCode = new CommandLine(new DbCopyCli()).execute(args);
         System.exit(exitCode);
@@ -0,0 +1,359 @@
+package org.neo4j.dbcopy;
+
+import org.neo4j.dbcopy.io.Fingerprint;
+import org.neo4j.dbcopy.io.SyncState;
+import org.neo4j.dbcopy.metrics.CopyMetrics;
+import org.neo4j.dbcopy.metrics.MetricsReporter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Brings a target previously copied from the source up to date, writing only what changed since the previous sync
+ * rather than copying everything again.
+ * <p>
+ * The {@link SyncState} of the previous sync maps each source entity to its target id and to the {@link Fingerprint}
+ * of its content. Entities read from the source are fingerprinted in parallel and compared to it: new ones are
+ * created, changed nodes are updated in place and changed relationships replaced, unchanged ones only recorded in the
+ * new state. Entities of the previous state not read from the source are deleted once everything was read.
+ * <p>
+ * Nodes are synced before relationships, which are created between the mapped nodes, and relationships deleted
+ * before nodes. Changed nodes deleted from the target since the previous sync are created again, along with their
+ * relationships.
+ */
+class DeltaSync {
+
+	private static final Logger LOG = LoggerFactory.getLogger(DeltaSync.class);
+
+	private final DataReader dataReader;
+	private final SyncWriter dataWriter;
+	private final CopyOptions copyOptions;
+	private final CopyMetrics metrics = new CopyMetrics();
+
+	DeltaSync(DataReader dataReader, SyncWriter dataWriter, CopyOptions copyOptions) {
+		if (copyOptions.syncStateDirectory() == null) {
+			throw new IllegalArgumentException("Syncing requires a sync state directory");
+		}
+		this.dataReader = dataReader;
+		this.dataWriter = dataWriter;
+		this.copyOptions = copyOptions;
+	}
+
+	CopyMetrics metrics() {
+		return metrics;
+	}
+
+	/**
+	 * The new state replaces the previous one whether the sync completes or not, entities that were not synced
+	 * keeping their previous record so that they are synced next time. Unless writes are idempotent, a creation of
+	 * unknown outcome fails the sync rather than being retried.
+	 */
+	Mono<Changes> sync() {
+		return Mono.usingWhen(Mono.fromCallable(() -> new MetricsReporter(metrics, copyOptions.metricsReport(), copyOptions.metricsPort(), true)),
+				reporter -> Mono.using(() -> SyncState.open(copyOptions.syncStateDirectory(), dataReader.getTotalNodeCount(), copyOptions),
+						state -> {
+							var changes = new Changes();
+							return dataWriter.prepare(copyOptions)
+									.then(sync(state, changes))
+									.then(dataWriter.complete(copyOptions))
+									.onErrorResume(e -> commit(state, false)
+											.onErrorResume(commitError -> {
+												e.addSuppressed(commitError);
+												return Mono.empty();
+											})
+											.then(Mono.error(e)))
+									.then(commit(state, true))
+									.thenReturn(changes)
+									.doOnSuccess(it -> LOG.info("Sync complete - {}", it));
+						},
+						SyncState::close),
+				reporter -> Mono.fromRunnable(() -> reporter.complete("completed", null)),
+				(reporter, error) -> Mono.fromRunnable(() -> reporter.complete("failed", error)),
+				reporter -> Mono.fromRunnable(reporter::close));
+	}
+
+	private static Mono<Void> commit(SyncState state, boolean complete) {
+		return Mono.<Void>fromRunnable(() -> state.commit(complete)).subscribeOn(Schedulers.boundedElastic());
+	}
+
+	private Mono<Void> sync(SyncState state, Changes changes) {
+		metrics.nodes().total(dataReader.getTotalNodeCount());
+		metrics.relationships().total(dataReader.getTotalRelationshipCount());
+		NodeIdLookup nodeMapping = state.nodes().mapping();
+		metrics.mapping(nodeMapping::size, nodeMapping::memoryUsage);
+		// shared by the node and relationship writes
+		var budget = new ByteBudget(copyOptions.maxInFlightBytes());
+		// source ids of the nodes created again, whose previous relationships were deleted along with them
+		Set<Long> recreatedNodes = ConcurrentHashMap.newKeySet();
+		return syncNodes(state.nodes(), budget, recreatedNodes, changes)
+				.then(syncRelationships(state.relationships(), nodeMapping, budget, recreatedNodes, changes))
+				.then(deleteUnseen(state.relationships(), copyOptions.relationshipWriterConcurrency(),
+						targetIds -> dataWriter.deleteRelationships(targetIds, copyOptions), changes.deletedRelationships))
+				.then(deleteUnseen(state.nodes(), copyOptions.writerConcurrency(),
+						targetIds -> dataWriter.deleteNodes(targetIds, copyOptions), changes.deletedNodes))
+				.doFinally(signal -> metrics.freezeMapping());
+	}
+
+	private Mono<Void> syncNodes(SyncState.Table table, ByteBudget budget, Set<Long> recreatedNodes, Changes changes) {
+		var controller = new WriteController("Nodes", copyOptions.batchSize(), copyOptions.writerConcurrency(), copyOptions.adaptiveWrites(), metrics.nodes());
+		return classify(dataReader.readNodes().doOnNext(node -> metrics.nodes().read(1)), table, NodeData::id, Fingerprint::of, node -> false)
+				.groupBy(Change::isNew)
+				.flatMap(group -> group.buffer(copyOptions.batchSize())
+						.flatMap(batch -> writeNodeBatch(batch, controller, budget,
+										group.key() ? createNodes(batch, table, controller, changes) : updateNodes(batch, table, controller, recreatedNodes, changes)),
+								controller.maxConcurrency()))
+				.then(Mono.fromRunnable(() -> LOG.info("Nodes sync complete - {} created, {} updated", changes.createdNodes, changes.updatedNodes)));
+	}
+
+	/**
+	 * Created and updated nodes are written under the permits of the same controller, so that their writes together
+	 * do not exceed its concurrency.
+	 */
+	private static Mono<Void> writeNodeBatch(List<Change<NodeData>> batch, WriteController controller, ByteBudget budget, Mono<Void> write) {
+		long bytes = batch.stream().mapToLong(change -> change.entity().estimatedSize()).sum();
+		return Mono.usingWhen(budget.reserve(bytes),
+				reservation -> Mono.usingWhen(controller.acquire(), permit -> write, permit -> Mono.fromRunnable(permit::release)),
+				reservation -> Mono.fromRunnable(reservation::release));
+	}
+
+	private Mono<Void> createNodes(List<Change<NodeData>> batch, SyncState.Table table, WriteController controller, Changes changes) {
+		List<NodeData> nodes = batch.stream().map(Change::entity).toList();
+		return controller.write(nodes,
+						it -> dataWriter.writeNodes(it, copyOptions).collectList(),
+						copyOptions.idempotentWrites() ? it -> dataWriter.rewriteNodes(it, copyOptions).collectList() : null,
+						DeltaSync::concat)
+				.doOnNext(mappings -> {
+					record(batch, mappings, table);
+					changes.createdNodes.add(mappings.size());
+				})
+				.then();
+	}
+
+	/**
+	 * Only the nodes actually updated are recorded. Those deleted from the target since the previous sync are created
+	 * again, their previous records being forgotten once they are.
+	 */
+	private Mono<Void> updateNodes(List<Change<NodeData>> batch, SyncState.Table table, WriteController controller, Set<Long> recreatedNodes,
+								   Changes changes) {
+		List<NodeData> nodes = batch.stream().map(Change::entity).toList();
+		return controller.write(nodes, it -> dataWriter.updateNodes(it, table.mapping(), copyOptions).collectList(), DeltaSync::concat)
+				.flatMap(mappings -> {
+					record(batch, mappings, table);
+					changes.updatedNodes.add(mappings.size());
+					Set<Long> updated = mappings.stream().map(MappingContext.Mapping::sourceNodeId).collect(Collectors.toSet());
+					List<Change<NodeData>> deleted = batch.stream().filter(change -> !updated.contains(change.sourceId())).toList();
+					if (deleted.isEmpty()) {
+						return Mono.empty();
+					}
+					LOG.warn("{} changed nodes were deleted from the target since the previous sync, creating them again", deleted.size());
+					List<Change<NodeData>> created = deleted.stream()
+							.map(change -> new Change<>(change.entity(), change.sourceId(), -1, change.fingerprint()))
+							.toList();
+					return createNodes(created, table, controller, changes)
+							.then(Mono.fromRunnable(() -> deleted.forEach(change -> {
+								table.forget(change.index());
+								recreatedNodes.add(change.sourceId());
+							})));
+				})
+				.then();
+	}
+
+	/**
+	 * Relationships are created through a {@link RelationshipWriteScheduler}, as when copying, which regroups them in
+	 * its own batches. The changes being created are kept by source id until then, to be recorded with their target ids.
+	 * Changed relationships are replaced in the batches of the scheduler too, so that their deletes never run
+	 * concurrently with a write touching the same nodes. Relationships of nodes created again are created again too.
+	 */
+	private Mono<Void> syncRelationships(SyncState.Table table, NodeIdLookup nodeMapping, ByteBudget budget, Set<Long> recreatedNodes,
+										 Changes changes) {
+		var controller = new WriteController("Relationships", copyOptions.batchSize(), copyOptions.relationshipWriterConcurrency(), copyOptions.adaptiveWrites(),
+				metrics.relationships());
+		var scheduler = new RelationshipWriteScheduler(nodeMapping, controller, budget, copyOptions.maxBatchBytes());
+		Map<Long, Change<RelationshipData>> pending = new ConcurrentHashMap<>();
+		// source ids of the changed relationships whose previous version was deleted, but which are not created yet
+		Set<Long> replaced = ConcurrentHashMap.newKeySet();
+		Flux<List<RelationshipData>> batches = classify(dataReader.readRelationships().doOnNext(relationship -> metrics.relationships().read(1)), table,
+				RelationshipData::id, Fingerprint::of,
+				relationship -> recreatedNodes.contains(relationship.startNodeId()) || recreatedNodes.contains(relationship.endNodeId()))
+				.buffer(copyOptions.batchSize())
+				.map(batch -> {
+					batch.forEach(change -> pending.put(change.sourceId(), change));
+					return batch.stream().map(Change::entity).toList();
+				});
+		return scheduler.schedule(batches,
+						it -> replaceRelationships(it, pending, replaced, table, changes)
+								.then(createRelationships(dataWriter.createRelationships(it, nodeMapping, copyOptions), pending, replaced, table, changes)),
+						copyOptions.idempotentWrites()
+								? it -> replaceRelationships(it, pending, replaced, table, changes)
+								.then(createRelationships(dataWriter.recreateRelationships(it, nodeMapping, copyOptions), pending, replaced, table, changes))
+								: null)
+				.then(Mono.fromRunnable(() -> LOG.info("Relationships sync complete - {} created, {} replaced",
+						changes.createdRelationships, changes.replacedRelationships)));
+	}
+
+	/**
+	 * Deletes the previous version of the changed relationships of a batch, which are then created again, unless a
+	 * previous attempt at writing the batch already did. Their previous records are forgotten, so that they are created
+	 * again rather than replaced should the sync fail before.
+	 */
+	private Mono<Void> replaceRelationships(List<RelationshipData> batch, Map<Long, Change<RelationshipData>> pending, Set<Long> replaced,
+											SyncState.Table table, Changes changes) {
+		List<Change<RelationshipData>> changed = batch.stream()
+				.map(relationship -> pending.get(relationship.id()))
+				.filter(change -> !change.isNew() && !replaced.contains(change.sourceId()))
+				.toList();
+		if (changed.isEmpty()) {
+			return Mono.empty();
+		}
+		List<Long> targetIds = changed.stream().map(change -> table.target(change.index())).toList();
+		return dataWriter.deleteRelationships(targetIds, copyOptions)
+				.doOnNext(count -> {
+					changed.forEach(change -> {
+						table.forget(change.index());
+						replaced.add(change.sourceId());
+					});
+					changes.replacedRelationships.add(changed.size());
+				})
+				.then();
+	}
+
+	private static Mono<Long> createRelationships(Flux<MappingContext.Mapping> created, Map<Long, Change<RelationshipData>> pending, Set<Long> replaced,
+												  SyncState.Table table, Changes changes) {
+		return created.collectList()
+				.map(mappings -> {
+					for (MappingContext.Mapping mapping : mappings) {
+						Change<RelationshipData> change = pending.remove(mapping.sourceNodeId());
+						replaced.remove(mapping.sourceNodeId());
+						// replaced relationships are recorded as new ones, their previous records being forgotten
+						table.record(-1, mapping.sourceNodeId(), mapping.targetNodeId(), change.fingerprint());
+						if (change.isNew()) {
+							changes.createdRelationships.increment();
+						}
+					}
+					return (long) mappings.size();
+				});
+	}
+
+	/**
+	 * Records created entities in the new state, with the target ids they were given.
+	 */
+	private static <T> void record(List<Change<T>> batch, List<MappingContext.Mapping> mappings, SyncState.Table table) {
+		Map<Long, Change<T>> changesBySourceId = new HashMap<>(batch.size() * 2);
+		for (Change<T> change : batch) {
+			changesBySourceId.put(change.sourceId(), change);
+		}
+		for (MappingContext.Mapping mapping : mappings) {
+			Change<T> change = changesBySourceId.get(mapping.sourceNodeId());
+			table.record(change.index(), mapping.sourceNodeId(), mapping.targetNodeId(), change.fingerprint());
+		}
+	}
+
+	/**
+	 * Fingerprints the entities in parallel, batch by batch, and compares them to their previous records. Unchanged
+	 * entities are recorded in the new state as they are, the others are emitted. Stale entities, already deleted from
+	 * the target, are emitted as new ones, their previous records being forgotten rather than deleted by a target id
+	 * that may have been reused since.
+	 */
+	private <T> Flux<Change<T>> classify(Flux<T> entities, SyncState.Table table, ToLongFunction<T> sourceId,
+										 ToLongFunction<T> fingerprint, Predicate<T> stale) {
+		return entities.buffer(copyOptions.batchSize())
+				.flatMap(batch -> Mono.fromCallable(() -> {
+									List<Change<T>> changes = new ArrayList<>();
+									for (T entity : batch) {
+										long id = sourceId.applyAsLong(entity);
+										long hash = fingerprint.applyAsLong(entity);
+										long index = table.find(id);
+										if (index < 0) {
+											changes.add(new Change<>(entity, id, -1, hash));
+											continue;
+										}
+										table.seen(index);
+										if (stale.test(entity)) {
+											table.forget(index);
+											changes.add(new Change<>(entity, id, -1, hash));
+										} else if (table.fingerprint(index) == hash) {
+											table.record(index, id, table.target(index), hash);
+										} else {
+											changes.add(new Change<>(entity, id, index, hash));
+										}
+									}
+									return changes;
+								})
+								.subscribeOn(Schedulers.parallel()),
+						Schedulers.DEFAULT_POOL_SIZE)
+				.flatMapIterable(changes -> changes);
+	}
+
+	/**
+	 * Deletes the entities of the previous state that were not read from the source, forgetting their records.
+	 */
+	private Mono<Void> deleteUnseen(SyncState.Table table, int concurrency, Function<List<Long>, Mono<Long>> delete, LongAdder deleted) {
+		var controller = new WriteController("Deletes", copyOptions.batchSize(), concurrency, copyOptions.adaptiveWrites());
+		return Flux.<Long, Long>generate(() -> 0L, (from, sink) -> {
+					long index = table.nextUnseen(from);
+					if (index < 0) {
+						sink.complete();
+						return from;
+					}
+					sink.next(index);
+					return index + 1;
+				})
+				.buffer(copyOptions.batchSize())
+				.flatMap(indexes -> controller.write(indexes.stream().map(table::target).toList(), delete, Long::sum)
+						.doOnNext(count -> {
+							indexes.forEach(table::forget);
+							deleted.add(indexes.size());
+						}), concurrency)
+				.then();
+	}
+
+	private static <T> List<T> concat(List<T> first, List<T> second) {
+		List<T> all = new ArrayList<>(first.size() + second.size());
+		all.addAll(first);
+		all.addAll(second);
+		return all;
+	}
+
+	/**
+	 * A new or changed entity.
+	 *
+	 * @param index the index of its previous record, or -1 if it is new
+	 */
+	private record Change<T>(T entity, long sourceId, long index, long fingerprint) {
+		boolean isNew() {
+			return index < 0;
+		}
+	}
+
+	/**
+	 * Counts of the changes written to the target.
+	 */
+	static final class Changes {
+		final LongAdder createdNodes = new LongAdder();
+		final LongAdder updatedNodes = new LongAdder();
+		final LongAdder deletedNodes = new LongAdder();
+		final LongAdder createdRelationships = new LongAdder();
+		final LongAdder replacedRelationships = new LongAdder();
+		final LongAdder deletedRelationships = new LongAdder();
+
+		@Override
+		public String toString() {
+			return "nodes: %s created, %s updated, %s deleted - relationships: %s created, %s replaced, %s deleted".formatted(
+					createdNodes, updatedNodes, deletedNodes, createdRelationships, replacedRelationships, deletedRelationships);
+		}
+	}
+}
@@ -45,9 +45,10 @@ class LockingDatabaseStateManager implements DatabaseStateManager {
     }
 
     @Override
-    public void restoreInitialState() {
+    public synchronized void restoreInitialState() {
         if (wasInReadWriteState) {
             setDatabaseAccessMode("READ WRITE");
+            wasInReadWriteState = false;
         }
     }
 
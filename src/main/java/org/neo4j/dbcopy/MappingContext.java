@@ -1,31 +1,50 @@
 package org.neo4j.dbcopy;
 
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
-public class MappingContext {
+/**
+ * Keeps track of the source node id to target node id association, so that relationships can be recreated
+ * between the right nodes on the target side.
+ * Node ids are expected to be positive.
+ */
+public interface MappingContext extends NodeIdLookup, AutoCloseable {
 
-    public record Mapping(long sourceNodeId, long targetNodeId){}
+    record Mapping(long sourceNodeId, long targetNodeId){}
 
-    private static Map<Long, Long> MAPPINGS;
+    /**
+     * Maps every node to its source id, for the writers identifying nodes by their source ids.
+     */
+    MappingContext SOURCE_IDS = new MappingContext() {
+        @Override
+        public void put(long sourceNodeId, long targetNodeId) {
+        }
 
-    public MappingContext(int initialCapacity) {
-        MAPPINGS = new ConcurrentHashMap<>(initialCapacity);
-    }
+        @Override
+        public long find(long sourceNodeId) {
+            return sourceNodeId;
+        }
+
+        @Override
+        public long size() {
+            return 0;
+        }
 
-    public MappingContext add(List<Mapping> mappings) {
+        @Override
+        public long memoryUsage() {
+            return 0;
+        }
+    };
+
+    void put(long sourceNodeId, long targetNodeId);
+
+    default MappingContext add(List<Mapping> mappings) {
         for (Mapping mapping : mappings) {
-            MAPPINGS.put(mapping.sourceNodeId, mapping.targetNodeId);
+            put(mapping.sourceNodeId(), mapping.targetNodeId());
         }
         return this;
     }
 
-    public Long get(Long sourceId) {
-        var targetId = MAPPINGS.get(sourceId);
-        if (targetId == null) {
-            throw new IllegalStateException("Unable to find source node with id " + sourceId);
-        }
-        return targetId;
+    @Override
+    default void close() {
     }
 }
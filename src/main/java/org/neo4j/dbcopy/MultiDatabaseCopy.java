@@ -0,0 +1,183 @@
+package org.neo4j.dbcopy;
+
+import org.neo4j.dbcopy.bolt.BoltReader;
+import org.neo4j.dbcopy.bolt.BoltWriter;
+import org.neo4j.dbcopy.bolt.SchemaCopy;
+import org.neo4j.dbcopy.metrics.CopyMetrics;
+import org.neo4j.driver.Driver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Copies several databases at once, between the same source and target servers.
+ * <p>
+ * The copies share the source and target drivers, and so their connection pools, and a budget of write transactions
+ * running at the same time on the target, whatever the number of copies. Each copy otherwise runs as a single
+ * database one, with its own metrics report and checkpoint journal. A failed copy does not stop the others, the
+ * failures being reported once they are all over.
+ */
+class MultiDatabaseCopy {
+
+	private static final Logger LOG = LoggerFactory.getLogger(MultiDatabaseCopy.class);
+
+	static final Duration PROGRESS_INTERVAL = Duration.ofSeconds(10);
+
+	private final DataReaderFactory readers;
+	private final DataWriterFactory writers;
+	private final List<DatabasePair> databases;
+	private final CopyOptions copyOptions;
+	private final int maxConcurrentCopies;
+	private final TransactionBudget transactions;
+	private final Map<DatabasePair, CopyMetrics> running = new ConcurrentHashMap<>();
+	private SchemaCopyFactory schemaCopies = pair -> null;
+
+	/**
+	 * A source database and the target database it is copied to.
+	 */
+	record DatabasePair(String source, String target) {
+
+		/**
+		 * @param value {@code source} or {@code source:target}, the target having the name of the source by default
+		 */
+		static DatabasePair parse(String value) {
+			int separator = value.indexOf(':');
+			if (separator < 0) {
+				return new DatabasePair(value, value);
+			}
+			if (separator == 0 || separator == value.length() - 1) {
+				throw new IllegalArgumentException("Invalid database pair '" + value + "', expected <source>[:<target>]");
+			}
+			return new DatabasePair(value.substring(0, separator), value.substring(separator + 1));
+		}
+
+		@Override
+		public String toString() {
+			return source.equals(target) ? source : source + " -> " + target;
+		}
+	}
+
+	interface DataReaderFactory {
+		DataReader create(String database, CopyOptions copyOptions);
+	}
+
+	interface DataWriterFactory {
+		DataWriter create(String database);
+	}
+
+	interface SchemaCopyFactory {
+		SchemaCopy create(DatabasePair pair);
+	}
+
+	/**
+	 * @param maxConcurrentCopies     number of databases copied at the same time
+	 * @param maxInFlightTransactions number of write transactions running at the same time, across all the copies
+	 */
+	MultiDatabaseCopy(DataReaderFactory readers, DataWriterFactory writers, List<DatabasePair> databases, CopyOptions copyOptions,
+					  int maxConcurrentCopies, int maxInFlightTransactions) {
+		this.readers = readers;
+		this.writers = writers;
+		this.databases = databases;
+		this.copyOptions = copyOptions;
+		this.maxConcurrentCopies = maxConcurrentCopies;
+		this.transactions = new TransactionBudget(maxInFlightTransactions);
+	}
+
+	/**
+	 * Copies between databases of the same servers, through the given drivers.
+	 */
+	static MultiDatabaseCopy overBolt(Driver sourceDriver, Driver targetDriver, List<DatabasePair> databases,
+									  CopyOptions copyOptions, int maxConcurrentCopies, int maxInFlightTransactions) {
+		return new MultiDatabaseCopy((database, options) -> new BoltReader(sourceDriver, database, options),
+				database -> new BoltWriter(targetDriver, database),
+				databases, copyOptions, maxConcurrentCopies, maxInFlightTransactions);
+	}
+
+	/**
+	 * Copies the schema of each database once its data is copied, the schema copy failing the database copy.
+	 */
+	MultiDatabaseCopy schemaCopies(SchemaCopyFactory schemaCopies) {
+		this.schemaCopies = schemaCopies;
+		return this;
+	}
+
+	Mono<Void> copyAll() {
+		Map<DatabasePair, Throwable> failures = new ConcurrentHashMap<>();
+		return Mono.using(this::reportProgress,
+				progress -> Flux.fromIterable(databases)
+						.flatMap(pair -> copy(pair)
+								.onErrorResume(e -> {
+									LOG.error("Copy of {} failed", pair, e);
+									failures.put(pair, e);
+									return Mono.empty();
+								}), maxConcurrentCopies)
+						.then(Mono.defer(() -> {
+							LOG.info("{} of {} databases copied", databases.size() - failures.size(), databases.size());
+							if (failures.isEmpty()) {
+								return Mono.empty();
+							}
+							var error = new IllegalStateException("Copy failed for " + failures.entrySet().stream()
+									.map(failure -> failure.getKey() + " (" + failure.getValue().getMessage() + ")")
+									.collect(Collectors.joining(", ")));
+							failures.values().forEach(error::addSuppressed);
+							return Mono.error(error);
+						})),
+				Disposable::dispose);
+	}
+
+	private Mono<Void> copy(DatabasePair pair) {
+		return Mono.defer(() -> {
+			CopyOptions options = optionsOf(pair);
+			SchemaCopy schemaCopy = schemaCopies.create(pair);
+			Mono<List<SchemaCopy.Definition>> schema = schemaCopy != null ? schemaCopy.read() : Mono.just(List.of());
+			return schema.flatMap(definitions -> {
+				LOG.info("Copying {}", pair);
+				var transfer = new DataTransfer(readers.create(pair.source(), options), writers.create(pair.target()), options)
+						.transactionBudget(transactions)
+						.printProgress(false);
+				running.put(pair, transfer.metrics());
+				return transfer.copyAllNodesAndRels()
+						.doFinally(signal -> running.remove(pair))
+						.doOnSuccess(relationshipCount -> LOG.info("Copy of {} complete in {}", pair, transfer.metrics().elapsed()))
+						.then(schemaCopy != null ? Mono.defer(() -> schemaCopy.create(definitions)) : Mono.empty());
+			});
+		}).subscribeOn(Schedulers.boundedElastic());
+	}
+
+	/**
+	 * Each copy gets its own metrics report file and checkpoint directory, suffixed with the source database name.
+	 */
+	CopyOptions optionsOf(DatabasePair pair) {
+		CopyOptions.Builder builder = copyOptions.toBuilder();
+		Path metricsReport = copyOptions.metricsReport();
+		if (metricsReport != null) {
+			String fileName = metricsReport.getFileName().toString();
+			int extension = fileName.lastIndexOf('.');
+			builder.metricsReport(metricsReport.resolveSibling(extension > 0
+					? fileName.substring(0, extension) + "-" + pair.source() + fileName.substring(extension)
+					: fileName + "-" + pair.source()));
+		}
+		if (copyOptions.checkpointDirectory() != null) {
+			builder.checkpointDirectory(copyOptions.checkpointDirectory().resolve(pair.source()));
+		}
+		return builder.build();
+	}
+
+	private Disposable reportProgress() {
+		return Flux.interval(PROGRESS_INTERVAL, Schedulers.boundedElastic())
+				.onBackpressureDrop()
+				.subscribe(tick -> running.forEach((pair, metrics) -> LOG.info("{}: {}/{} nodes, {}/{} relationships written", pair,
+						metrics.nodes().written(), metrics.nodes().total(),
+						metrics.relationships().written(), metrics.relationships().total())));
+	}
+}
@@ -0,0 +1,24 @@
+package org.neo4j.dbcopy;
+
+import org.neo4j.dbcopy.io.ValueSizes;
+import org.neo4j.driver.Value;
+
+import java.util.List;
+
+/**
+ * A source node, reduced to what is copied: excluded properties are not part of it.
+ * The properties are kept as the driver map value they were read as, so that they can be written without conversion.
+ */
+public record NodeData(long id, List<String> labels, Value properties) {
+
+    /**
+     * @return the estimated size of the node in a write query
+     */
+    public long estimatedSize() {
+        long size = ValueSizes.estimate(properties) + 2 * Long.BYTES;
+        for (String label : labels) {
+            size += ValueSizes.estimate(label);
+        }
+        return size;
+    }
+}
@@ -0,0 +1,30 @@
+package org.neo4j.dbcopy;
+
+/**
+ * Finds the target node id of a source node, without recording new associations.
+ * Node ids are expected to be positive.
+ */
+public interface NodeIdLookup {
+
+    long NO_MAPPING = -1L;
+
+    /**
+     * @return the target node id, or {@link #NO_MAPPING} if the source node is not known (yet)
+     */
+    long find(long sourceNodeId);
+
+    long size();
+
+    /**
+     * @return an estimation of the memory (heap, off-heap or mapped) used by this lookup, in bytes
+     */
+    long memoryUsage();
+
+    default long get(long sourceNodeId) {
+        long targetId = find(sourceNodeId);
+        if (targetId == NO_MAPPING) {
+            throw new IllegalStateException("Unable to find source node with id " + sourceNodeId);
+        }
+        return targetId;
+    }
+}
@@ -0,0 +1,18 @@
+package org.neo4j.dbcopy;
+
+import org.neo4j.dbcopy.io.ValueSizes;
+import org.neo4j.driver.Value;
+
+/**
+ * A source relationship, reduced to what is copied: excluded properties are not part of it.
+ * The properties are kept as the driver map value they were read as, so that they can be written without conversion.
+ */
+public record RelationshipData(long id, long startNodeId, long endNodeId, String type, Value properties) {
+
+    /**
+     * @return the estimated size of the relationship in a write query
+     */
+    public long estimatedSize() {
+        return ValueSizes.estimate(properties) + ValueSizes.estimate(type) + 3 * Long.BYTES;
+    }
+}
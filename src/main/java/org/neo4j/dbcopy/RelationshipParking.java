@@ -0,0 +1,94 @@
+package org.neo4j.dbcopy;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Holds back the relationship batches whose start or end nodes have not been mapped yet, while the node copy is
+ * still in progress, and releases them as soon as all their endpoints are mapped.
+ * Once all the nodes are written, every batch is released, unmapped endpoints being the writer's problem.
+ */
+class RelationshipParking {
+
+    private final MappingContext mappingContext;
+    private final List<ParkedBatch> parkedBatches = new ArrayList<>();
+    private boolean nodesComplete = false;
+
+    RelationshipParking(MappingContext mappingContext) {
+        this.mappingContext = mappingContext;
+    }
+
+    Mono<List<RelationshipData>> whenMapped(List<RelationshipData> relationships) {
+        return Mono.create(sink -> {
+            var batch = new ParkedBatch(relationships, sink);
+            synchronized (this) {
+                if (!nodesComplete && !batch.isMapped()) {
+                    parkedBatches.add(batch);
+                    sink.onCancel(() -> unpark(batch));
+                    return;
+                }
+            }
+            batch.release();
+        });
+    }
+
+    /**
+     * To be called after each batch of node mappings has been added to the mapping context.
+     */
+    void nodesMapped() {
+        List<ParkedBatch> ready = new ArrayList<>();
+        synchronized (this) {
+            parkedBatches.removeIf(batch -> batch.isMapped() && ready.add(batch));
+        }
+        ready.forEach(ParkedBatch::release);
+    }
+
+    void nodesComplete() {
+        List<ParkedBatch> ready;
+        synchronized (this) {
+            nodesComplete = true;
+            ready = new ArrayList<>(parkedBatches);
+            parkedBatches.clear();
+        }
+        ready.forEach(ParkedBatch::release);
+    }
+
+    synchronized int parkedBatchCount() {
+        return parkedBatches.size();
+    }
+
+    private synchronized void unpark(ParkedBatch batch) {
+        parkedBatches.remove(batch);
+    }
+
+    private class ParkedBatch {
+        private final List<RelationshipData> relationships;
+        private final MonoSink<List<RelationshipData>> sink;
+        // mappings are never removed, no need to check again what has already been found
+        private int checkedCount = 0;
+
+        ParkedBatch(List<RelationshipData> relationships, MonoSink<List<RelationshipData>> sink) {
+            this.relationships = relationships;
+            this.sink = sink;
+        }
+
+        boolean isMapped() {
+            while (checkedCount < relationships.size()) {
+                RelationshipData relationship = relationships.get(checkedCount);
+                if (mappingContext.find(relationship.startNodeId()) == MappingContext.NO_MAPPING
+                        || mappingContext.find(relationship.endNodeId()) == MappingContext.NO_MAPPING) {
+                    return false;
+                }
+                checkedCount++;
+            }
+            return true;
+        }
+
+        void release() {
+            sink.success(relationships);
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package org.neo4j.dbcopy;
+
+import org.neo4j.dbcopy.jfr.BatchSealedEvent;
+import org.reactivestreams.Subscription;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Writes relationship batches concurrently, without two concurrent transactions ever touching the same node,
+ * so that they cannot deadlock on the target database.
+ * <p>
+ * Target nodes are hashed into buckets, and relationships are regrouped in one batch per pair of start/end node buckets.
+ * A batch is only written when none of its two buckets is used by a batch being written.
+ * To keep the target busy, the fullest incomplete batch is written when nothing else can be.
+ * <p>
+ * The batch size and the number of concurrent writes are the current ones of the {@link WriteController}.
+ * Batches are also sealed once their estimated size reaches the maximum batch size in bytes, and the relationships
+ * held back are bounded by the {@link ByteBudget} size.
+ */
+class RelationshipWriteScheduler {
+
+	private final NodeIdLookup nodeIds;
+	private final WriteController controller;
+	private final ByteBudget budget;
+	private final long maxBatchBytes;
+	private final int bucketCount;
+	private TransactionBudget transactions = TransactionBudget.unbounded();
+
+	RelationshipWriteScheduler(NodeIdLookup nodeIds, WriteController controller, ByteBudget budget, long maxBatchBytes) {
+		this.nodeIds = nodeIds;
+		this.controller = controller;
+		this.budget = budget;
+		this.maxBatchBytes = maxBatchBytes;
+		// twice as many buckets as concurrent writes, so that there is always some batch that can be written
+		this.bucketCount = controller.maxConcurrency() * 2;
+	}
+
+	/**
+	 * @param transactions a budget from which each write transaction acquires a permit, once its batch can be written
+	 */
+	RelationshipWriteScheduler transactionBudget(TransactionBudget transactions) {
+		this.transactions = transactions;
+		return this;
+	}
+
+	Mono<Long> schedule(Flux<List<RelationshipData>> batches, Function<List<RelationshipData>, Mono<Long>> writer) {
+		return schedule(batches, writer, writer);
+	}
+
+	/**
+	 * @param rewriter writes the batches again after an attempt of unknown outcome, or null, see {@link WriteController#write}
+	 */
+	Mono<Long> schedule(Flux<List<RelationshipData>> batches, Function<List<RelationshipData>, Mono<Long>> writer,
+						Function<List<RelationshipData>, Mono<Long>> rewriter) {
+		return Mono.create(sink -> {
+			var run = new Run(writer, rewriter, sink);
+			sink.onCancel(run::abort);
+			batches.subscribe(run);
+		});
+	}
+
+	private int bucket(long sourceNodeId) {
+		long targetNodeId = nodeIds.find(sourceNodeId);
+		return (int) Long.remainderUnsigned(targetNodeId * 0x9E3779B97F4A7C15L, bucketCount);
+	}
+
+	private record Cell(int lowBucket, int highBucket, List<RelationshipData> relationships, long bytes, long sealedAt) {
+	}
+
+	private final class Run extends BaseSubscriber<List<RelationshipData>> {
+
+		private final Function<List<RelationshipData>, Mono<Long>> writer;
+		private final Function<List<RelationshipData>, Mono<Long>> rewriter;
+		private final MonoSink<Long> sink;
+		private final List<List<RelationshipData>> cells = new ArrayList<>();
+		private final Deque<Cell> ready = new ArrayDeque<>();
+		private final long[] cellBytes = new long[bucketCount * bucketCount];
+		private final boolean[] busyBuckets = new boolean[bucketCount];
+		private long buffered = 0;
+		private long bufferedBytes = 0;
+		private int inFlight = 0;
+		private long written = 0;
+		private boolean requested = false;
+		private boolean upstreamComplete = false;
+		private boolean terminated = false;
+
+		Run(Function<List<RelationshipData>, Mono<Long>> writer, Function<List<RelationshipData>, Mono<Long>> rewriter, MonoSink<Long> sink) {
+			this.writer = writer;
+			this.rewriter = rewriter;
+			this.sink = sink;
+			for (int i = 0; i < bucketCount * bucketCount; i++) {
+				cells.add(new ArrayList<>());
+			}
+		}
+
+		@Override
+		protected void hookOnSubscribe(Subscription subscription) {
+			dispatch();
+		}
+
+		@Override
+		protected void hookOnNext(List<RelationshipData> relationships) {
+			synchronized (this) {
+				requested = false;
+				buffered += relationships.size();
+				int batchSize = controller.batchSize();
+				for (RelationshipData relationship : relationships) {
+					int startBucket = bucket(relationship.startNodeId());
+					int endBucket = bucket(relationship.endNodeId());
+					int low = Math.min(startBucket, endBucket);
+					int high = Math.max(startBucket, endBucket);
+					int index = low * bucketCount + high;
+					List<RelationshipData> cell = cells.get(index);
+					long bytes = relationship.estimatedSize();
+					cell.add(relationship);
+					cellBytes[index] += bytes;
+					bufferedBytes += bytes;
+					if (cell.size() >= batchSize || cellBytes[index] >= maxBatchBytes) {
+						ready.add(seal(low, high));
+					}
+				}
+			}
+			dispatch();
+		}
+
+		@Override
+		protected void hookOnComplete() {
+			synchronized (this) {
+				upstreamComplete = true;
+				for (int low = 0; low < bucketCount; low++) {
+					for (int high = low; high < bucketCount; high++) {
+						if (!cells.get(low * bucketCount + high).isEmpty()) {
+							ready.add(seal(low, high));
+						}
+					}
+				}
+			}
+			dispatch();
+		}
+
+		@Override
+		protected void hookOnError(Throwable throwable) {
+			fail(throwable);
+		}
+
+		private Cell seal(int low, int high) {
+			int index = low * bucketCount + high;
+			Cell cell = new Cell(low, high, cells.get(index), cellBytes[index], System.nanoTime());
+			BatchSealedEvent.emit(controller.metrics().name(), cell.relationships().size(), cell.bytes());
+			cells.set(index, new ArrayList<>());
+			cellBytes[index] = 0;
+			return cell;
+		}
+
+		private Cell sealFullestCell() {
+			int fullest = -1;
+			for (int i = 0; i < cells.size(); i++) {
+				if (!cells.get(i).isEmpty() && (fullest < 0 || cells.get(i).size() > cells.get(fullest).size())) {
+					fullest = i;
+				}
+			}
+			return fullest < 0 ? null : seal(fullest / bucketCount, fullest % bucketCount);
+		}
+
+		private void dispatch() {
+			List<Cell> toWrite = new ArrayList<>();
+			boolean requestMore = false;
+			boolean complete = false;
+			synchronized (this) {
+				if (terminated) {
+					return;
+				}
+				Iterator<Cell> candidates = ready.iterator();
+				int concurrency = controller.concurrency();
+				while (inFlight < concurrency && candidates.hasNext()) {
+					Cell cell = candidates.next();
+					if (!busyBuckets[cell.lowBucket()] && !busyBuckets[cell.highBucket()]) {
+						candidates.remove();
+						toWrite.add(acquire(cell));
+					}
+				}
+				if (inFlight == 0) {
+					Cell cell = sealFullestCell();
+					if (cell != null) {
+						toWrite.add(acquire(cell));
+					}
+				}
+				if (!upstreamComplete && !requested && buffered < (long) bucketCount * bucketCount * controller.batchSize()
+						&& bufferedBytes < budget.maxBytes()) {
+					requested = true;
+					requestMore = true;
+				}
+				if (upstreamComplete && inFlight == 0 && buffered == 0) {
+					terminated = true;
+					complete = true;
+				}
+			}
+			toWrite.forEach(this::write);
+			if (requestMore) {
+				request(1);
+			}
+			if (complete) {
+				sink.success(written);
+			}
+		}
+
+		private Cell acquire(Cell cell) {
+			busyBuckets[cell.lowBucket()] = true;
+			busyBuckets[cell.highBucket()] = true;
+			inFlight++;
+			return cell;
+		}
+
+		private void write(Cell cell) {
+			Mono.usingWhen(budget.reserve(cell.bytes()),
+							reservation -> Mono.usingWhen(transactions.acquire(),
+									transaction -> {
+										controller.metrics().bufferWait(System.nanoTime() - cell.sealedAt());
+										return controller.write(cell.relationships(), writer, rewriter, Long::sum);
+									},
+									transaction -> Mono.fromRunnable(transaction::release)),
+							reservation -> Mono.fromRunnable(reservation::release))
+					.subscribe(
+							count -> {
+								synchronized (this) {
+									written += count;
+								}
+							},
+							this::fail,
+							() -> {
+								synchronized (this) {
+									busyBuckets[cell.lowBucket()] = false;
+									busyBuckets[cell.highBucket()] = false;
+									inFlight--;
+									buffered -= cell.relationships().size();
+									bufferedBytes -= cell.bytes();
+								}
+								dispatch();
+							});
+		}
+
+		private void fail(Throwable throwable) {
+			synchronized (this) {
+				if (terminated) {
+					return;
+				}
+				terminated = true;
+			}
+			dispose();
+			sink.error(throwable);
+		}
+
+		private void abort() {
+			synchronized (this) {
+				terminated = true;
+			}
+			dispose();
+		}
+	}
+}
@@ -0,0 +1,47 @@
+package org.neo4j.dbcopy;
+
+import org.neo4j.dbcopy.MappingContext.Mapping;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * A writer able to bring a previously copied target up to date, creating, updating and deleting entities by the
+ * target ids recorded in the state of the previous sync.
+ */
+public interface SyncWriter extends DataWriter {
+
+    /**
+     * Creates relationships during a sync, whose target ids are kept in its state.
+     *
+     * @return the source to target id mappings of the created relationships
+     */
+    Flux<Mapping> createRelationships(List<RelationshipData> relationships, NodeIdLookup nodeIds, CopyOptions copyOptions);
+
+    /**
+     * Creates again relationships that a previous attempt of unknown outcome may have created, without duplicating them
+     * when writes are idempotent.
+     */
+    default Flux<Mapping> recreateRelationships(List<RelationshipData> relationships, NodeIdLookup nodeIds, CopyOptions copyOptions) {
+        return createRelationships(relationships, nodeIds, copyOptions);
+    }
+
+    /**
+     * Replaces the labels and properties of nodes previously written, found by their source ids.
+     *
+     * @return the source to target id mappings of the updated nodes, leaving out those deleted from the target since
+     * they were written
+     */
+    Flux<Mapping> updateNodes(List<NodeData> nodes, NodeIdLookup nodeIds, CopyOptions copyOptions);
+
+    /**
+     * Deletes relationships previously written, by their target ids.
+     */
+    Mono<Long> deleteRelationships(List<Long> targetIds, CopyOptions copyOptions);
+
+    /**
+     * Deletes nodes previously written, along with their remaining relationships, by their target ids.
+     */
+    Mono<Long> deleteNodes(List<Long> targetIds, CopyOptions copyOptions);
+}
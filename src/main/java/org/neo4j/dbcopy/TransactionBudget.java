@@ -0,0 +1,96 @@
+package org.neo4j.dbcopy;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Bounds the number of write transactions running at the same time, whatever the number of copies sharing it.
+ * <p>
+ * Permits are granted in order, each write transaction holding one until it commits or fails for good.
+ */
+class TransactionBudget {
+
+	private final int maxTransactions;
+	private final Deque<MonoSink<Permit>> waiters = new ArrayDeque<>();
+	private int inFlight = 0;
+
+	TransactionBudget(int maxTransactions) {
+		if (maxTransactions < 1) {
+			throw new IllegalArgumentException("At least one transaction must be allowed, got " + maxTransactions);
+		}
+		this.maxTransactions = maxTransactions;
+	}
+
+	/**
+	 * @return a budget that never holds back a transaction
+	 */
+	static TransactionBudget unbounded() {
+		return new TransactionBudget(Integer.MAX_VALUE);
+	}
+
+	int maxTransactions() {
+		return maxTransactions;
+	}
+
+	synchronized int inFlight() {
+		return inFlight;
+	}
+
+	Mono<Permit> acquire() {
+		return Mono.create(sink -> {
+			synchronized (this) {
+				if (!waiters.isEmpty() || inFlight >= maxTransactions) {
+					waiters.add(sink);
+					sink.onCancel(() -> {
+						synchronized (this) {
+							waiters.remove(sink);
+						}
+						grantWaiters();
+					});
+					return;
+				}
+				inFlight++;
+			}
+			sink.success(new Permit());
+		});
+	}
+
+	private void release() {
+		synchronized (this) {
+			inFlight--;
+		}
+		grantWaiters();
+	}
+
+	private void grantWaiters() {
+		Deque<MonoSink<Permit>> granted = new ArrayDeque<>();
+		synchronized (this) {
+			while (!waiters.isEmpty() && inFlight < maxTransactions) {
+				granted.add(waiters.poll());
+				inFlight++;
+			}
+		}
+		granted.forEach(sink -> sink.success(new Permit()));
+	}
+
+	final class Permit {
+
+		private boolean released = false;
+
+		private Permit() {
+		}
+
+		void release() {
+			synchronized (TransactionBudget.this) {
+				if (released) {
+					return;
+				}
+				released = true;
+			}
+			TransactionBudget.this.release();
+		}
+	}
+}
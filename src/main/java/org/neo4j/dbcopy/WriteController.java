@@ -0,0 +1,267 @@
+package org.neo4j.dbcopy;
+
+import org.neo4j.dbcopy.jfr.RetryEvent;
+import org.neo4j.dbcopy.metrics.StageMetrics;
+import org.neo4j.driver.exceptions.Neo4jException;
+import org.neo4j.driver.exceptions.ServiceUnavailableException;
+import org.neo4j.driver.exceptions.SessionExpiredException;
+import org.neo4j.driver.exceptions.TransientException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+
+/**
+ * Controls the size and the number of concurrent write transactions of a stream of batches.
+ * <p>
+ * When adaptive, the batch size and the concurrency follow an AIMD (additive increase, multiplicative decrease) scheme:
+ * they grow a bit after each batch committed within the target latency, and are halved when a batch commits too slowly,
+ * or when a transaction fails with a transient error. Otherwise they stay as configured.
+ * <p>
+ * In both cases, batches failing because they do not fit in the transaction memory limit are split in two and retried,
+ * and the batch size is halved. Other transient errors are retried batch by batch, without holding back the other
+ * batches being written.
+ */
+class WriteController {
+
+	private static final Logger LOG = LoggerFactory.getLogger(WriteController.class);
+
+	static final Duration TARGET_LATENCY = Duration.ofSeconds(2);
+
+	private static final int MAX_BATCH_SIZE_FACTOR = 10;
+	private static final int MIN_BATCH_SIZE = 100;
+	private static final int MAX_RETRIES = 10;
+	private static final Duration MAX_BACKOFF = Duration.ofSeconds(10);
+
+	// the transaction memory limit errors, transient or client ones depending on the server version
+	private static final Set<String> MEMORY_LIMIT_ERRORS = Set.of("TransactionMemoryLimit", "MemoryPoolOutOfMemoryError", "TransactionOutOfMemoryError");
+
+	private final String name;
+	private final StageMetrics metrics;
+	private final boolean adaptive;
+	private final int maxConcurrency;
+	private final int minBatchSize;
+	private final int maxBatchSize;
+	private final int batchSizeIncrement;
+	private final Deque<MonoSink<Permit>> waiters = new ArrayDeque<>();
+	private int batchSize;
+	private int concurrency;
+	private int inFlight = 0;
+	private int successesSinceIncrease = 0;
+
+	WriteController(String name, int batchSize, int maxConcurrency, boolean adaptive) {
+		this(name, batchSize, maxConcurrency, adaptive, new StageMetrics(name));
+	}
+
+	WriteController(String name, int batchSize, int maxConcurrency, boolean adaptive, StageMetrics metrics) {
+		this.name = name;
+		this.metrics = metrics;
+		metrics.maxConcurrency(maxConcurrency);
+		this.adaptive = adaptive;
+		this.maxConcurrency = maxConcurrency;
+		this.batchSize = batchSize;
+		this.minBatchSize = Math.min(batchSize, MIN_BATCH_SIZE);
+		this.maxBatchSize = adaptive ? batchSize * MAX_BATCH_SIZE_FACTOR : batchSize;
+		this.batchSizeIncrement = Math.max(1, batchSize / 10);
+		this.concurrency = maxConcurrency;
+	}
+
+	synchronized int batchSize() {
+		return batchSize;
+	}
+
+	synchronized int concurrency() {
+		return concurrency;
+	}
+
+	int maxConcurrency() {
+		return maxConcurrency;
+	}
+
+	StageMetrics metrics() {
+		return metrics;
+	}
+
+	/**
+	 * @return a permit to write a batch, emitted once fewer than {@link #concurrency()} batches are being written
+	 */
+	Mono<Permit> acquire() {
+		return Mono.create(sink -> {
+			synchronized (this) {
+				if (inFlight < concurrency) {
+					inFlight++;
+				} else {
+					waiters.add(sink);
+					sink.onCancel(() -> {
+						synchronized (this) {
+							waiters.remove(sink);
+						}
+					});
+					return;
+				}
+			}
+			sink.success(new Permit());
+		});
+	}
+
+	/**
+	 * Writes a batch with a writer that can be repeated without duplicating anything, such as updates or deletes.
+	 */
+	<T, R> Mono<R> write(List<T> batch, Function<List<T>, Mono<R>> writer, BinaryOperator<R> merge) {
+		return write(batch, writer, writer, merge);
+	}
+
+	/**
+	 * Writes a batch, retrying it with an exponential backoff and jitter on transient and connection errors,
+	 * and splitting it in two halves written one after the other when it exceeds the transaction memory limit.
+	 * <p>
+	 * Once an attempt failed without knowing whether it committed, the batch is written with the rewriter,
+	 * which is expected not to duplicate what may have been committed. Without a rewriter, as when creating entities
+	 * without idempotent writes, such an attempt fails the write rather than risking duplicates.
+	 *
+	 * @param rewriter the writer of the attempts following one of unknown outcome, or null
+	 */
+	<T, R> Mono<R> write(List<T> batch, Function<List<T>, Mono<R>> writer, Function<List<T>, Mono<R>> rewriter, BinaryOperator<R> merge) {
+		var outcomeUnknown = new AtomicBoolean();
+		return Mono.defer(() -> {
+					long start = System.nanoTime();
+					metrics.batchStarted();
+					return (outcomeUnknown.get() ? rewriter : writer).apply(batch)
+							.doOnSuccess(it -> {
+								long latency = System.nanoTime() - start;
+								metrics.batchWritten(batch.size(), latency);
+								onSuccess(Duration.ofNanos(latency));
+							})
+							.doFinally(signal -> metrics.batchEnded());
+				})
+				.doOnError(e -> {
+					if (isOutcomeUnknown(e)) {
+						outcomeUnknown.set(true);
+					}
+				})
+				.retryWhen(Retry.backoff(MAX_RETRIES, Duration.ofMillis(100))
+						.maxBackoff(MAX_BACKOFF)
+						.jitter(0.5)
+						.filter(e -> isRetryable(e) && (rewriter != null || !isOutcomeUnknown(e)))
+						.doBeforeRetry(signal -> {
+							LOG.warn("Retrying {} batch after error: {}", name, signal.failure().getMessage());
+							metrics.retry();
+							RetryEvent.emit(metrics.name(), signal.totalRetries() + 1, signal.failure());
+							onTransientError();
+						}))
+				.onErrorMap(e -> rewriter == null && isOutcomeUnknown(e), e -> new IllegalStateException(
+						"%s batch may have been committed, and cannot be written again without duplicates unless writes are idempotent".formatted(name), e))
+				.onErrorResume(e -> isMemoryLimitError(e) && batch.size() > 1, e -> {
+					onMemoryLimitError(batch.size());
+					int half = batch.size() / 2;
+					List<T> first = new ArrayList<>(batch.subList(0, half));
+					List<T> second = new ArrayList<>(batch.subList(half, batch.size()));
+					Function<List<T>, Mono<R>> halfWriter = outcomeUnknown.get() ? rewriter : writer;
+					// the halves run under the permit of the whole batch, so they must not run at the same time
+					return write(first, halfWriter, rewriter, merge)
+							.flatMap(firstResult -> write(second, halfWriter, rewriter, merge).map(secondResult -> merge.apply(firstResult, secondResult)));
+				});
+	}
+
+	static boolean isRetryable(Throwable throwable) {
+		return throwable instanceof TransientException && !isMemoryLimitError(throwable) || isOutcomeUnknown(throwable);
+	}
+
+	/**
+	 * Connection errors, as when the cluster leader switches, can happen while the transaction commits.
+	 * Transient errors are always rolled back.
+	 */
+	static boolean isOutcomeUnknown(Throwable throwable) {
+		return throwable instanceof SessionExpiredException || throwable instanceof ServiceUnavailableException;
+	}
+
+	static boolean isMemoryLimitError(Throwable throwable) {
+		if (throwable instanceof Neo4jException neo4jException && neo4jException.code() != null) {
+			String code = neo4jException.code();
+			return MEMORY_LIMIT_ERRORS.contains(code.substring(code.lastIndexOf('.') + 1));
+		}
+		return false;
+	}
+
+	private void onSuccess(Duration latency) {
+		if (!adaptive) {
+			return;
+		}
+		synchronized (this) {
+			if (latency.compareTo(TARGET_LATENCY) > 0) {
+				batchSize = Math.max(minBatchSize, batchSize / 2);
+				successesSinceIncrease = 0;
+				LOG.debug("{} batch committed in {}, batch size decreased to {}", name, latency, batchSize);
+				return;
+			}
+			batchSize = Math.min(maxBatchSize, batchSize + batchSizeIncrement);
+			// about one more concurrent write per round of concurrent writes
+			if (++successesSinceIncrease < concurrency || concurrency == maxConcurrency) {
+				return;
+			}
+			successesSinceIncrease = 0;
+			concurrency++;
+			LOG.debug("{} writer concurrency increased to {}", name, concurrency);
+		}
+		releaseWaiters();
+	}
+
+	private synchronized void onTransientError() {
+		if (adaptive) {
+			concurrency = Math.max(1, concurrency / 2);
+			successesSinceIncrease = 0;
+			LOG.debug("{} writer concurrency decreased to {}", name, concurrency);
+		}
+	}
+
+	private synchronized void onMemoryLimitError(int failedBatchSize) {
+		// whatever the mode, batches of that size cannot be committed
+		batchSize = Math.max(1, Math.min(batchSize, failedBatchSize / 2));
+		successesSinceIncrease = 0;
+		LOG.info("{} batch of {} exceeded the transaction memory limit, splitting it and decreasing the batch size to {}", name, failedBatchSize, batchSize);
+	}
+
+	private void release() {
+		synchronized (this) {
+			inFlight--;
+		}
+		releaseWaiters();
+	}
+
+	private void releaseWaiters() {
+		List<MonoSink<Permit>> released = new ArrayList<>();
+		synchronized (this) {
+			while (inFlight < concurrency && !waiters.isEmpty()) {
+				inFlight++;
+				released.add(waiters.poll());
+			}
+		}
+		released.forEach(sink -> sink.success(new Permit()));
+	}
+
+	final class Permit {
+
+		private boolean released = false;
+
+		void release() {
+			synchronized (WriteController.this) {
+				if (released) {
+					return;
+				}
+				released = true;
+			}
+			WriteController.this.release();
+		}
+	}
+}
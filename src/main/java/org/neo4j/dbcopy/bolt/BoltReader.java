@@ -1,62 +1,480 @@
 package org.neo4j.dbcopy.bolt;
 
+import org.neo4j.dbcopy.CopyOptions;
 import org.neo4j.dbcopy.DataReader;
+import org.neo4j.dbcopy.NodeData;
+import org.neo4j.dbcopy.RelationshipData;
+import org.neo4j.dbcopy.jfr.PartitionReadEvent;
+import org.neo4j.dbcopy.jfr.RetryEvent;
 import org.neo4j.driver.Driver;
+import org.neo4j.driver.Record;
+import org.neo4j.driver.Session;
 import org.neo4j.driver.SessionConfig;
+import org.neo4j.driver.Value;
+import org.neo4j.driver.Values;
+import org.neo4j.driver.exceptions.RetryableException;
 import org.neo4j.driver.reactivestreams.ReactiveResult;
 import org.neo4j.driver.reactivestreams.ReactiveSession;
-import org.neo4j.driver.types.Node;
-import org.neo4j.driver.types.Relationship;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
 import java.util.function.Supplier;
 
+import static org.neo4j.driver.Values.parameters;
+
 public class BoltReader implements DataReader {
 
     protected static final Logger LOG = LoggerFactory.getLogger(BoltReader.class);
 
+    private static final int PARTITION_PREFETCH = 256;
+    private static final int PARTITION_MAX_RETRIES = 5;
+
     private final Driver driver;
     private final String databaseName;
+    private final CopyOptions copyOptions;
+    private final SubgraphFilter filter;
+    // by labels, probed once for both the node and the relationship partitions
+    private final Map<List<String>, Long> maxNodeIds = new ConcurrentHashMap<>();
 
     public BoltReader(Driver driver, String databaseName) {
+        this(driver, databaseName, CopyOptions.DEFAULT);
+    }
+
+    public BoltReader(Driver driver, String databaseName, CopyOptions copyOptions) {
         this.driver = driver;
         this.databaseName = databaseName;
+        this.copyOptions = copyOptions;
+        this.filter = new SubgraphFilter(copyOptions);
     }
 
     @Override
-    public Flux<Node> readNodes() {
+    public Flux<NodeData> readNodes() {
+        return Mono.fromCallable(() -> nodePartitions(this::readNodesWithLabel, this::readNodes))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapIterable(partitions -> partitions)
+                .flatMap(partition -> partition, copyOptions.readerConcurrency(), PARTITION_PREFETCH)
+                .doOnSubscribe(it -> LOG.info("Start reading nodes"));
+    }
+
+    /**
+     * Nodes are read by id ranges. When only some labels are copied, each one is read by a label scan instead, large
+     * labels still being read by id ranges, and a node having several of them is only read with the first one.
+     *
+     * @param labelReader reads the partition of a label, with the condition on its nodes
+     * @param rangeReader reads the partition of an id range, with the condition on its nodes
+     */
+    private <T> List<Flux<T>> nodePartitions(BiFunction<String, String, Flux<T>> labelReader, BiFunction<IdRange, String, Flux<T>> rangeReader) {
+        List<Flux<T>> partitions = new ArrayList<>();
+        List<String> largeLabels = new ArrayList<>();
+        if (!filter.labelsToInclude().isEmpty()) {
+            Map<String, Long> countsByLabel = getNodeCountsByLabel(filter.labelsToInclude());
+            countsByLabel.forEach((label, count) -> {
+                if (count > copyOptions.readPartitionSize()) {
+                    largeLabels.add(label);
+                }
+            });
+            List<String> readBefore = new ArrayList<>(largeLabels);
+            countsByLabel.forEach((label, count) -> {
+                if (count > 0 && count <= copyOptions.readPartitionSize()) {
+                    partitions.add(labelReader.apply(label, filter.nodeCondition(List.of(), readBefore)));
+                    readBefore.add(label);
+                }
+            });
+            if (largeLabels.isEmpty()) {
+                return partitions;
+            }
+            LOG.info("Reading labels {} in id range partitions", largeLabels);
+        }
+        String condition = filter.nodeCondition(largeLabels, List.of());
+        IdRange.split(getMaxNodeId(largeLabels), copyOptions.readerConcurrency(), copyOptions.readPartitionSize())
+                .forEach(range -> partitions.add(rangeReader.apply(range, condition)));
+        return partitions;
+    }
+
+    // ids are sought in ascending order, so a failed partition can resume after the last node it returned
+    private Flux<NodeData> readNodes(IdRange range, String condition) {
+        var nextId = new AtomicLong(range.from());
         return Flux.usingWhen(Mono.fromSupplier(getRxSession()),
-                session -> session.executeRead(tx -> Flux.from(tx.run("MATCH (n) RETURN n")).flatMap(ReactiveResult::records)
-                        .map(record -> record.get(0).asNode())
-                        .doOnSubscribe(it -> LOG.info("Start reading nodes")))
-                , ReactiveSession::close);
+                        session -> session.executeRead(tx -> Mono.from(tx.run("""
+                                        UNWIND range($from, $to - 1) AS nodeId
+                                        MATCH (n)%s
+                                        RETURN id(n) AS id, labels(n) AS labels, %s"""
+                                                .formatted(SubgraphFilter.where("id(n) = nodeId", condition), propertiesColumns("n", copyOptions.getNodePropertiesToExclude())),
+                                        parameters("from", nextId.get(), "to", range.to(), "excluded", copyOptions.getNodePropertiesToExclude())))
+                                .flatMapMany(ReactiveResult::records)
+                                .map(BoltReader::toNode)),
+                        ReactiveSession::close)
+                .doOnSubscribe(it -> LOG.debug("Reading nodes partition {}", range))
+                .transform(read -> PartitionReadEvent.record(read, "nodes", range))
+                .doOnNext(node -> nextId.set(node.id() + 1))
+                .retryWhen(Retry.backoff(PARTITION_MAX_RETRIES, Duration.ofSeconds(1))
+                        .filter(RetryableException.class::isInstance)
+                        .doBeforeRetry(signal -> {
+                            LOG.warn("Retrying nodes partition {} from id {}", range, nextId.get(), signal.failure());
+                            RetryEvent.emit("nodes read", signal.totalRetries() + 1, signal.failure());
+                        }));
     }
 
+    // the order of a label scan is not known, so the partition can only be restarted if nothing was returned yet
+    private Flux<NodeData> readNodesWithLabel(String label, String condition) {
+        var returnedCount = new AtomicLong();
+        return Flux.usingWhen(Mono.fromSupplier(getRxSession()),
+                        session -> session.executeRead(tx -> Mono.from(tx.run("""
+                                        MATCH (n:%s)%s
+                                        RETURN id(n) AS id, labels(n) AS labels, %s"""
+                                                .formatted(Cypher.escapeName(label), SubgraphFilter.where(condition),
+                                                        propertiesColumns("n", copyOptions.getNodePropertiesToExclude())),
+                                        parameters("excluded", copyOptions.getNodePropertiesToExclude())))
+                                .flatMapMany(ReactiveResult::records)
+                                .map(BoltReader::toNode)),
+                        ReactiveSession::close)
+                .transform(read -> PartitionReadEvent.record(read, "nodes", label))
+                .doOnNext(node -> returnedCount.incrementAndGet())
+                .retryWhen(Retry.backoff(PARTITION_MAX_RETRIES, Duration.ofSeconds(1))
+                        .filter(e -> e instanceof RetryableException && returnedCount.get() == 0)
+                        .doBeforeRetry(signal -> {
+                            LOG.warn("Retrying nodes partition of label {}", label, signal.failure());
+                            RetryEvent.emit("nodes read", signal.totalRetries() + 1, signal.failure());
+                        }));
+    }
+
+    /**
+     * Relationships are read in partitions: one per relationship type, large types being read by id ranges instead.
+     * When nodes are filtered, they are read from their start nodes instead, in the same partitions as the nodes.
+     */
     @Override
-    public Flux<Relationship> readRelationships() {
+    public Flux<RelationshipData> readRelationships() {
+        return Mono.fromCallable(this::relationshipPartitions)
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapIterable(partitions -> partitions)
+                .flatMap(partition -> partition, copyOptions.readerConcurrency(), PARTITION_PREFETCH)
+                .doOnSubscribe(it -> LOG.info("Start reading relationships"));
+    }
+
+    private List<Flux<RelationshipData>> relationshipPartitions() {
+        if (filter.filtersNodes()) {
+            List<String> types = filter.filtersRelationshipTypes() ? getRelationshipTypes() : null;
+            if (types != null && types.isEmpty()) {
+                return List.of();
+            }
+            return nodePartitions((label, condition) -> readRelationshipsFromLabel(label, condition, types),
+                    (range, condition) -> readRelationshipsFrom(range, condition, types));
+        }
+        Map<String, Long> countsByType = getRelationshipCountsByType();
+        List<Flux<RelationshipData>> partitions = new ArrayList<>();
+        List<String> largeTypes = new ArrayList<>();
+        countsByType.forEach((type, count) -> {
+            if (count > copyOptions.readPartitionSize()) {
+                largeTypes.add(type);
+            } else if (count > 0) {
+                partitions.add(readRelationshipsOfType(type));
+            }
+        });
+        if (!largeTypes.isEmpty()) {
+            List<IdRange> ranges = IdRange.split(getMaxRelationshipId(largeTypes), copyOptions.readerConcurrency(), copyOptions.readPartitionSize());
+            LOG.info("Reading relationship types {} in {} id range partitions", largeTypes, ranges.size());
+            ranges.forEach(range -> partitions.add(readRelationships(range, largeTypes)));
+        }
+        return partitions;
+    }
+
+    // the order of a type scan is not known, so the partition can only be restarted if nothing was returned yet
+    private Flux<RelationshipData> readRelationshipsOfType(String type) {
+        var returnedCount = new AtomicLong();
         return Flux.usingWhen(Mono.fromSupplier(getRxSession()),
-                session -> session.executeRead(tx -> Mono.from(tx.run("MATCH ()-[rel]->() RETURN rel")).flatMapMany(ReactiveResult::records)
-                        .map(record -> record.get(0).asRelationship())
-                        .doOnSubscribe(it -> LOG.info("Start reading relationships")))
-                , ReactiveSession::close);
+                        session -> session.executeRead(tx -> Mono.from(tx.run("""
+                                        MATCH (start)-[rel:%s]->(end)
+                                        RETURN id(rel) AS id, id(start) AS startNodeId, id(end) AS endNodeId, %s"""
+                                                .formatted(Cypher.escapeName(type),
+                                                        propertiesColumns("rel", copyOptions.getRelationshipPropertiesToExclude())),
+                                        parameters("excluded", copyOptions.getRelationshipPropertiesToExclude())))
+                                .flatMapMany(ReactiveResult::records)
+                                // the type is known, no need to have it sent for each relationship
+                                .map(record -> toRelationship(record, type))),
+                        ReactiveSession::close)
+                .transform(read -> PartitionReadEvent.record(read, "relationships", type))
+                .doOnNext(rel -> returnedCount.incrementAndGet())
+                .retryWhen(Retry.backoff(PARTITION_MAX_RETRIES, Duration.ofSeconds(1))
+                        .filter(e -> e instanceof RetryableException && returnedCount.get() == 0)
+                        .doBeforeRetry(signal -> {
+                            LOG.warn("Retrying relationships partition of type {}", type, signal.failure());
+                            RetryEvent.emit("relationships read", signal.totalRetries() + 1, signal.failure());
+                        }));
+    }
+
+    private Flux<RelationshipData> readRelationships(IdRange range, List<String> types) {
+        var nextId = new AtomicLong(range.from());
+        return Flux.usingWhen(Mono.fromSupplier(getRxSession()),
+                        session -> session.executeRead(tx -> Mono.from(tx.run("""
+                                        UNWIND range($from, $to - 1) AS relId
+                                        MATCH (start)-[rel]->(end)%s
+                                        RETURN id(rel) AS id, id(start) AS startNodeId, id(end) AS endNodeId, type(rel) AS type, %s"""
+                                                .formatted(SubgraphFilter.where("id(rel) = relId", "type(rel) IN $types"),
+                                                        propertiesColumns("rel", copyOptions.getRelationshipPropertiesToExclude())),
+                                        parameters("from", nextId.get(), "to", range.to(), "types", types,
+                                                "excluded", copyOptions.getRelationshipPropertiesToExclude())))
+                                .flatMapMany(ReactiveResult::records)
+                                .map(record -> toRelationship(record, record.get("type").asString()))),
+                        ReactiveSession::close)
+                .transform(read -> PartitionReadEvent.record(read, "relationships", range))
+                .doOnNext(rel -> nextId.set(rel.id() + 1))
+                .retryWhen(Retry.backoff(PARTITION_MAX_RETRIES, Duration.ofSeconds(1))
+                        .filter(RetryableException.class::isInstance)
+                        .doBeforeRetry(signal -> {
+                            LOG.warn("Retrying relationships partition {} from id {}", range, nextId.get(), signal.failure());
+                            RetryEvent.emit("relationships read", signal.totalRetries() + 1, signal.failure());
+                        }));
+    }
+
+    /**
+     * The start nodes are bound to {@code n} first, for the node condition, and the end nodes next, so that they are
+     * checked against the same condition.
+     *
+     * @param types the types of the relationships to read, or null to read all of them
+     */
+    private String relationshipsFromNodesQuery(String startNodes, String startCondition, List<String> types) {
+        return """
+                %s%s
+                WITH n AS start
+                MATCH (start)-[rel]->(n)%s
+                RETURN id(rel) AS id, id(start) AS startNodeId, id(n) AS endNodeId, type(rel) AS type, %s"""
+                .formatted(startNodes, startCondition,
+                        SubgraphFilter.where(types == null ? "" : "type(rel) IN $types", filter.nodeCondition(filter.labelsToInclude(), List.of())),
+                        propertiesColumns("rel", copyOptions.getRelationshipPropertiesToExclude()));
+    }
+
+    // the order of a label scan is not known, so the partition can only be restarted if nothing was returned yet
+    private Flux<RelationshipData> readRelationshipsFromLabel(String label, String condition, List<String> types) {
+        var returnedCount = new AtomicLong();
+        return Flux.usingWhen(Mono.fromSupplier(getRxSession()),
+                        session -> session.executeRead(tx -> Mono.from(tx.run(
+                                        relationshipsFromNodesQuery("MATCH (n:%s)".formatted(Cypher.escapeName(label)), SubgraphFilter.where(condition), types),
+                                        parameters("types", types, "excluded", copyOptions.getRelationshipPropertiesToExclude())))
+                                .flatMapMany(ReactiveResult::records)
+                                .map(record -> toRelationship(record, record.get("type").asString()))),
+                        ReactiveSession::close)
+                .transform(read -> PartitionReadEvent.record(read, "relationships", label))
+                .doOnNext(rel -> returnedCount.incrementAndGet())
+                .retryWhen(Retry.backoff(PARTITION_MAX_RETRIES, Duration.ofSeconds(1))
+                        .filter(e -> e instanceof RetryableException && returnedCount.get() == 0)
+                        .doBeforeRetry(signal -> {
+                            LOG.warn("Retrying relationships partition of label {}", label, signal.failure());
+                            RetryEvent.emit("relationships read", signal.totalRetries() + 1, signal.failure());
+                        }));
+    }
+
+    // start nodes are sought in ascending id order, so a failed partition can resume from the start node of the last
+    // relationship it returned, skipping the relationships of that node already returned
+    private Flux<RelationshipData> readRelationshipsFrom(IdRange range, String condition, List<String> types) {
+        var progress = new StartNodeProgress(range.from());
+        return Flux.usingWhen(Mono.fromSupplier(getRxSession()),
+                        session -> session.executeRead(tx -> Mono.from(tx.run(
+                                        relationshipsFromNodesQuery("UNWIND range($from, $to - 1) AS nodeId\nMATCH (n)", SubgraphFilter.where("id(n) = nodeId", condition), types),
+                                        parameters("from", progress.startNodeId(), "to", range.to(), "types", types,
+                                                "excluded", copyOptions.getRelationshipPropertiesToExclude())))
+                                .flatMapMany(ReactiveResult::records)
+                                .map(record -> toRelationship(record, record.get("type").asString()))),
+                        ReactiveSession::close)
+                .filter(progress::advance)
+                .transform(read -> PartitionReadEvent.record(read, "relationships", range))
+                .retryWhen(Retry.backoff(PARTITION_MAX_RETRIES, Duration.ofSeconds(1))
+                        .filter(RetryableException.class::isInstance)
+                        .doBeforeRetry(signal -> {
+                            LOG.warn("Retrying relationships partition {} from start node id {}", range, progress.startNodeId(), signal.failure());
+                            RetryEvent.emit("relationships read", signal.totalRetries() + 1, signal.failure());
+                        }));
+    }
+
+    /**
+     * The start node of the last relationship read from a partition, along with the relationships of that node already read.
+     */
+    private static final class StartNodeProgress {
+        private long startNodeId;
+        private final Set<Long> returned = new HashSet<>();
+
+        StartNodeProgress(long from) {
+            this.startNodeId = from;
+        }
+
+        synchronized long startNodeId() {
+            return startNodeId;
+        }
+
+        /**
+         * @return whether the relationship was not returned yet
+         */
+        synchronized boolean advance(RelationshipData relationship) {
+            if (relationship.startNodeId() != startNodeId) {
+                startNodeId = relationship.startNodeId();
+                returned.clear();
+            }
+            return returned.add(relationship.id());
+        }
+    }
+
+    private static NodeData toNode(Record record) {
+        return new NodeData(record.get("id").asLong(), record.get("labels").asList(Value::asString), properties(record));
+    }
+
+    private static RelationshipData toRelationship(Record record, String type) {
+        return new RelationshipData(record.get("id").asLong(), record.get("startNodeId").asLong(), record.get("endNodeId").asLong(),
+                type, properties(record));
+    }
+
+    /**
+     * Without exclusions, the properties map is returned as is, and handed to the writer without any conversion.
+     * Otherwise the kept keys and their values are returned as two lists, Cypher having no way to build a map from dynamic keys.
+     */
+    static String propertiesColumns(String variable, Set<String> excluded) {
+        if (excluded.isEmpty()) {
+            return "properties(%s) AS properties".formatted(variable);
+        }
+        return "[key IN keys(%1$s) WHERE NOT key IN $excluded] AS keys, [key IN keys(%1$s) WHERE NOT key IN $excluded | %1$s[key]] AS values"
+                .formatted(variable);
+    }
+
+    private static Value properties(Record record) {
+        if (record.containsKey("properties")) {
+            return record.get("properties");
+        }
+        Value keys = record.get("keys");
+        Value values = record.get("values");
+        Map<String, Object> properties = new HashMap<>(keys.size() * 2);
+        for (int i = 0; i < keys.size(); i++) {
+            properties.put(keys.get(i).asString(), values.get(i));
+        }
+        return Values.value(properties);
     }
 
     private Supplier<ReactiveSession> getRxSession() {
         return () -> driver.session(ReactiveSession.class, SessionConfig.forDatabase(databaseName));
     }
 
+    /**
+     * With included labels and no predicate, the nodes to copy are counted through the same label scans as they are read.
+     * Counting the other filtered nodes would take a scan of all of them, so their count is the upper bound given by
+     * the count store: the number of nodes having the included labels, or of all the nodes.
+     */
     public long getTotalNodeCount() {
+        if (!filter.labelsToInclude().isEmpty() && filter.hasNodePredicate()) {
+            return getNodeCountsByLabel(filter.labelsToInclude()).values().stream().mapToLong(Long::longValue).sum();
+        }
         try (var session = driver.session(SessionConfig.forDatabase(databaseName))) {
-            return session.run("MATCH (n) RETURN count(n) AS count").single().get("count").asLong();
+            if (filter.labelsToInclude().isEmpty()) {
+                // served by the count store
+                return session.run("MATCH (n) RETURN count(n) AS count").single().get("count").asLong();
+            }
+            long count = 0;
+            List<String> countedBefore = new ArrayList<>();
+            for (String label : filter.labelsToInclude()) {
+                count += session.run("MATCH (n:%s)%s RETURN count(n) AS count".formatted(Cypher.escapeName(label),
+                        SubgraphFilter.where(filter.nodeCondition(List.of(), countedBefore)))).single().get("count").asLong();
+                countedBefore.add(label);
+            }
+            return count;
         }
     }
 
+    /**
+     * With filters, the relationships of the copied types are counted, whether their endpoints are copied or not.
+     */
     public long getTotalRelationshipCount() {
+        if (filter.filtersRelationships()) {
+            return getRelationshipCountsByType().values().stream().mapToLong(Long::longValue).sum();
+        }
         try (var session = driver.session(SessionConfig.forDatabase(databaseName))) {
             return session.run("MATCH ()-[r]->() RETURN count(r) AS count").single().get("count").asLong();
         }
     }
+
+    Map<String, Long> getNodeCountsByLabel(List<String> labels) {
+        try (var session = driver.session(SessionConfig.forDatabase(databaseName))) {
+            Map<String, Long> countsByLabel = new LinkedHashMap<>();
+            for (String label : labels) {
+                // served by the count store
+                countsByLabel.put(label, session.run("MATCH (n:" + Cypher.escapeName(label) + ") RETURN count(n) AS count").single().get("count").asLong());
+            }
+            return countsByLabel;
+        }
+    }
+
+    List<String> getRelationshipTypes() {
+        try (var session = driver.session(SessionConfig.forDatabase(databaseName))) {
+            return session.run("CALL db.relationshipTypes() YIELD relationshipType RETURN relationshipType")
+                    .list(record -> record.get(0).asString())
+                    .stream()
+                    .filter(filter::includesType)
+                    .toList();
+        }
+    }
+
+    Map<String, Long> getRelationshipCountsByType() {
+        List<String> types = getRelationshipTypes();
+        try (var session = driver.session(SessionConfig.forDatabase(databaseName))) {
+            Map<String, Long> countsByType = new LinkedHashMap<>();
+            for (String type : types) {
+                // served by the count store
+                long count = session.run("MATCH ()-[r:" + Cypher.escapeName(type) + "]->() RETURN count(r) AS count").single().get("count").asLong();
+                countsByType.put(type, count);
+            }
+            return countsByType;
+        }
+    }
+
+    /**
+     * Each type is probed from the end of the relationship type lookup index, which returns relationships in id order,
+     * rather than aggregating all of its relationships.
+     */
+    long getMaxRelationshipId(List<String> types) {
+        try (var session = driver.session(SessionConfig.forDatabase(databaseName))) {
+            long maxId = -1;
+            for (String type : types) {
+                maxId = Math.max(maxId, maxId(session, "MATCH ()-[r:" + Cypher.escapeName(type) + "]->() RETURN id(r) AS maxId ORDER BY id(r) DESC LIMIT 1"));
+            }
+            return maxId;
+        }
+    }
+
+    /**
+     * Each label is probed from the end of the label lookup index, which returns nodes in id order. Without labels, the
+     * probe takes a scan of all the nodes, so the result is kept for the relationships partitioned like the nodes.
+     *
+     * @param labels the labels of the nodes to consider, all nodes being considered when empty
+     */
+    long getMaxNodeId(List<String> labels) {
+        return maxNodeIds.computeIfAbsent(List.copyOf(labels), this::probeMaxNodeId);
+    }
+
+    private long probeMaxNodeId(List<String> labels) {
+        try (var session = driver.session(SessionConfig.forDatabase(databaseName))) {
+            if (labels.isEmpty()) {
+                return maxId(session, "MATCH (n) RETURN id(n) AS maxId ORDER BY id(n) DESC LIMIT 1");
+            }
+            long maxId = -1;
+            for (String label : labels) {
+                maxId = Math.max(maxId, maxId(session, "MATCH (n:" + Cypher.escapeName(label) + ") RETURN id(n) AS maxId ORDER BY id(n) DESC LIMIT 1"));
+            }
+            return maxId;
+        }
+    }
+
+    private static long maxId(Session session, String query) {
+        List<Record> records = session.run(query).list();
+        return records.isEmpty() ? -1 : records.get(0).get("maxId").asLong();
+    }
 }
@@ -1,94 +1,457 @@
 package org.neo4j.dbcopy.bolt;
 
 import org.neo4j.dbcopy.CopyOptions;
-import org.neo4j.dbcopy.DataWriter;
 import org.neo4j.dbcopy.MappingContext;
+import org.neo4j.dbcopy.NodeData;
+import org.neo4j.dbcopy.NodeIdLookup;
+import org.neo4j.dbcopy.RelationshipData;
+import org.neo4j.dbcopy.SyncWriter;
+import org.neo4j.dbcopy.jfr.MappingLookupsEvent;
+import org.neo4j.dbcopy.jfr.WriteTransactionEvent;
 import org.neo4j.driver.Driver;
+import org.neo4j.driver.Record;
 import org.neo4j.driver.SessionConfig;
+import org.neo4j.driver.Value;
+import org.neo4j.driver.Values;
 import org.neo4j.driver.reactivestreams.ReactiveResult;
 import org.neo4j.driver.reactivestreams.ReactiveSession;
-import org.neo4j.driver.types.Node;
-import org.neo4j.driver.types.Relationship;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
 
 import static org.neo4j.driver.Values.parameters;
 
-public class BoltWriter implements DataWriter {
+/**
+ * Writes nodes and relationships as read by the {@link BoltReader}, excluded properties having already been left out.
+ * <p>
+ * With idempotent writes, entities are created along with their source id, so that a batch retried after a commit of
+ * unknown outcome merges on it rather than duplicating what was committed. The source ids are removed once the copy
+ * is complete.
+ */
+public class BoltWriter implements SyncWriter {
+
+    /**
+     * Temporary label and property identifying the written entities by their source id, when writes are idempotent.
+     */
+    static final String SOURCE_ID_LABEL = "__DbCopy";
+    static final String SOURCE_ID_PROPERTY = "__dbCopySourceId";
+    static final String SOURCE_ID_INDEX = "db_copy_source_id";
+
+    private static final int CLEAN_UP_BATCH_SIZE = 10_000;
 
     private final Driver targetDriver;
     private final String targetDatabase;
+    private final Map<NodesQuery, String> nodesQueries = new ConcurrentHashMap<>();
+    private final Map<RelationshipsQuery, String> relationshipsQueries = new ConcurrentHashMap<>();
+
+    /**
+     * How the rows of a batch are written: created, created along with their source id when writes are idempotent,
+     * or merged on their source id when a previous attempt of unknown outcome may have written some of them already.
+     */
+    enum Statement {
+        CREATE, TAGGED_CREATE, MERGE
+    }
+
+    private record NodesQuery(List<String> labels, Statement statement) {
+    }
+
+    private record RelationshipsQuery(String type, Statement statement, boolean mapped) {
+    }
 
     public BoltWriter(Driver targetDriver, String targetDatabase) {
         this.targetDriver = targetDriver;
         this.targetDatabase = targetDatabase;
     }
 
-    @SuppressWarnings("deprecation")
+    /**
+     * With idempotent writes, creates the index used to find the nodes already written by their source id.
+     */
+    @Override
+    public Mono<Void> prepare(CopyOptions copyOptions) {
+        if (!copyOptions.idempotentWrites()) {
+            return Mono.empty();
+        }
+        return run("CREATE INDEX %s IF NOT EXISTS FOR (n:%s) ON (n.%s)"
+                        .formatted(SOURCE_ID_INDEX, Cypher.escapeName(SOURCE_ID_LABEL), Cypher.escapeName(SOURCE_ID_PROPERTY)))
+                .then(run("CALL db.awaitIndex('%s')".formatted(SOURCE_ID_INDEX)));
+    }
+
+    /**
+     * With idempotent writes, removes the source ids from the written entities, and drops their index.
+     */
     @Override
-    public Flux<MappingContext.Mapping> writeNodes(List<Node> nodes, CopyOptions copyOptions) {
+    public Mono<Void> complete(CopyOptions copyOptions) {
+        if (!copyOptions.idempotentWrites()) {
+            return Mono.empty();
+        }
+        String property = Cypher.escapeName(SOURCE_ID_PROPERTY);
+        return run("""
+                MATCH ()-[r]->() WHERE r.%s IS NOT NULL
+                CALL { WITH r REMOVE r.%s } IN TRANSACTIONS OF %d ROWS"""
+                .formatted(property, property, CLEAN_UP_BATCH_SIZE))
+                .then(run("""
+                        MATCH (n:%s)
+                        CALL { WITH n REMOVE n:%s, n.%s } IN TRANSACTIONS OF %d ROWS"""
+                        .formatted(Cypher.escapeName(SOURCE_ID_LABEL), Cypher.escapeName(SOURCE_ID_LABEL), property, CLEAN_UP_BATCH_SIZE)))
+                .then(run("DROP INDEX %s IF EXISTS".formatted(SOURCE_ID_INDEX)));
+    }
+
+    // auto-commit transactions, as required by CALL { } IN TRANSACTIONS
+    private Mono<Void> run(String query) {
         return Flux.usingWhen(Mono.fromSupplier(getRxSession()),
+                        session -> Mono.from(session.run(query)).flatMapMany(ReactiveResult::consume),
+                        ReactiveSession::close)
+                .then();
+    }
+
+    @Override
+    public Flux<MappingContext.Mapping> writeNodes(List<NodeData> nodes, CopyOptions copyOptions) {
+        return writeNodes(nodes, copyOptions, false);
+    }
+
+    @Override
+    public Flux<MappingContext.Mapping> rewriteNodes(List<NodeData> nodes, CopyOptions copyOptions) {
+        return writeNodes(nodes, copyOptions, true);
+    }
+
+    private Flux<MappingContext.Mapping> writeNodes(List<NodeData> nodes, CopyOptions copyOptions, boolean rewrite) {
+        var attempts = new AtomicInteger();
+        Flux<Record> transaction = Flux.usingWhen(Mono.fromSupplier(getRxSession()),
                         session -> session.executeWrite(tx -> {
-                            List<Map<String, Object>> nodeData = nodes.stream()
-                                    .map(node -> Map.of(
-                                            "s", node.id(),
-                                            "l", labels(node),
-                                            "p", filterProperties(node.asMap(), copyOptions.getNodePropertiesToExclude())
-                                    ))
-                                    .toList();
-                            return Mono.from(tx.run("""
-                                    UNWIND $inputList as input
-                                    CREATE (n) SET n = input.p
-                                    WITH n, input.s as sourceNodeId, input.l as labels
-                                    CALL apoc.create.addLabels(n, labels) YIELD node
-                                    RETURN sourceNodeId, id(n) as targetNodeId""",
-                                    parameters("inputList", nodeData))).flatMapMany(ReactiveResult::records);
+                            Statement statement = statement(copyOptions, rewrite, attempts.getAndIncrement());
+                            return switch (copyOptions.writeMode()) {
+                                case CYPHER -> Flux.fromIterable(nodeRowsByLabels(nodes).entrySet())
+                                        .concatMap(rowsOfLabels -> Mono.from(tx.run(nodesQuery(rowsOfLabels.getKey(), statement),
+                                                        parameters("rows", rows(rowsOfLabels.getValue()))))
+                                                .flatMapMany(ReactiveResult::records));
+                                case APOC -> Mono.from(tx.run(apocNodesQuery(statement),
+                                        parameters("inputList", rows(apocNodeRows(nodes))))).flatMapMany(ReactiveResult::records);
+                            };
                         }),
-                        ReactiveSession::close)
+                        ReactiveSession::close);
+        return WriteTransactionEvent.record(transaction, "nodes", nodes.size(),
+                        () -> nodes.stream().mapToLong(NodeData::estimatedSize).sum(), attempts::get, rewrite ? "rewrite" : "write")
                 .map(r -> new MappingContext.Mapping(r.get("sourceNodeId").asLong(), r.get("targetNodeId").asLong()));
     }
 
+    /**
+     * The driver retries the transaction function itself, including when a commit outcome is unknown,
+     * so any attempt but the first one of a write merges rather than creates.
+     */
+    private static Statement statement(CopyOptions copyOptions, boolean rewrite, int attempt) {
+        if (!copyOptions.idempotentWrites()) {
+            return Statement.CREATE;
+        }
+        return rewrite || attempt > 0 ? Statement.MERGE : Statement.TAGGED_CREATE;
+    }
+
+    Map<List<String>, List<Value>> nodeRowsByLabels(List<NodeData> nodes) {
+        Map<List<String>, List<Value>> rowsByLabels = new LinkedHashMap<>();
+        for (NodeData node : nodes) {
+            rowsByLabels.computeIfAbsent(labels(node), labels -> new ArrayList<>())
+                    .add(row("s", Values.value(node.id()), "p", node.properties()));
+        }
+        return rowsByLabels;
+    }
+
+    private List<Value> apocNodeRows(List<NodeData> nodes) {
+        return nodes.stream()
+                .map(node -> row(
+                        "s", Values.value(node.id()),
+                        "l", Values.value(node.labels()),
+                        "p", node.properties()
+                ))
+                .toList();
+    }
+
+    /**
+     * The labels being part of the query text, there is one query (and one cached plan on the target) per label set.
+     */
+    String nodesQuery(List<String> labels, Statement statement) {
+        return nodesQueries.computeIfAbsent(new NodesQuery(labels, statement), it -> {
+            String labelsText = it.labels().stream().map(label -> ":" + Cypher.escapeName(label)).collect(Collectors.joining());
+            String write = switch (it.statement()) {
+                case CREATE -> "CREATE (n%s) SET n = r.p".formatted(labelsText);
+                case TAGGED_CREATE -> "CREATE (n%s:%s) SET n = r.p, n.%s = r.s"
+                        .formatted(labelsText, Cypher.escapeName(SOURCE_ID_LABEL), Cypher.escapeName(SOURCE_ID_PROPERTY));
+                case MERGE -> "MERGE (n:%s {%s: r.s}) ON CREATE SET n += r.p%s"
+                        .formatted(Cypher.escapeName(SOURCE_ID_LABEL), Cypher.escapeName(SOURCE_ID_PROPERTY), labelsText.isEmpty() ? "" : ", n" + labelsText);
+            };
+            return """
+                    UNWIND $rows AS r
+                    %s
+                    RETURN r.s AS sourceNodeId, id(n) AS targetNodeId"""
+                    .formatted(write);
+        });
+    }
+
+    private static String apocNodesQuery(Statement statement) {
+        String write = switch (statement) {
+            case CREATE -> "CREATE (n) SET n = input.p";
+            case TAGGED_CREATE -> "CREATE (n:%s) SET n = input.p, n.%s = input.s"
+                    .formatted(Cypher.escapeName(SOURCE_ID_LABEL), Cypher.escapeName(SOURCE_ID_PROPERTY));
+            case MERGE -> "MERGE (n:%s {%s: input.s}) ON CREATE SET n += input.p"
+                    .formatted(Cypher.escapeName(SOURCE_ID_LABEL), Cypher.escapeName(SOURCE_ID_PROPERTY));
+        };
+        return """
+                UNWIND $inputList as input
+                %s
+                WITH n, input.s as sourceNodeId, input.l as labels
+                CALL apoc.create.addLabels(n, labels) YIELD node
+                RETURN sourceNodeId, id(n) as targetNodeId"""
+                .formatted(write);
+    }
+
+    @Override
+    public Mono<Long> writeRelationships(List<RelationshipData> relationships, MappingContext mappingContext, CopyOptions copyOptions) {
+        return writeRelationships(relationships, mappingContext, copyOptions, false);
+    }
+
     @Override
-    @SuppressWarnings("deprecation")
-    public Mono<Long> writeRelationships(List<Relationship> relationships, MappingContext mappingContext, CopyOptions copyOptions) {
-        var relData = relationships.stream()
-                .map(rel -> Map.of(
-                        "s", mappingContext.get(rel.startNodeId()),
-                        "t", mappingContext.get(rel.endNodeId()),
-                        "type", rel.type(),
-                        "properties", filterProperties(rel.asMap(), copyOptions.getRelationshipPropertiesToExclude())))
+    public Mono<Long> rewriteRelationships(List<RelationshipData> relationships, MappingContext mappingContext, CopyOptions copyOptions) {
+        return writeRelationships(relationships, mappingContext, copyOptions, true);
+    }
+
+    private Mono<Long> writeRelationships(List<RelationshipData> relationships, MappingContext mappingContext, CopyOptions copyOptions, boolean rewrite) {
+        return writeRelationships(relationships, mappingContext, copyOptions, rewrite, false)
+                .map(record -> record.get(0).asLong())
+                .reduce(0L, Long::sum);
+    }
+
+    @Override
+    public Flux<MappingContext.Mapping> createRelationships(List<RelationshipData> relationships, NodeIdLookup nodeIds, CopyOptions copyOptions) {
+        return createRelationships(relationships, nodeIds, copyOptions, false);
+    }
+
+    @Override
+    public Flux<MappingContext.Mapping> recreateRelationships(List<RelationshipData> relationships, NodeIdLookup nodeIds, CopyOptions copyOptions) {
+        return createRelationships(relationships, nodeIds, copyOptions, true);
+    }
+
+    private Flux<MappingContext.Mapping> createRelationships(List<RelationshipData> relationships, NodeIdLookup nodeIds, CopyOptions copyOptions, boolean rewrite) {
+        return writeRelationships(relationships, nodeIds, copyOptions, rewrite, true)
+                .map(r -> new MappingContext.Mapping(r.get("sourceId").asLong(), r.get("targetId").asLong()));
+    }
+
+    /**
+     * @param mapped whether the source and target ids of the relationships are returned, rather than their count
+     */
+    private Flux<Record> writeRelationships(List<RelationshipData> relationships, NodeIdLookup nodeIds, CopyOptions copyOptions,
+                                            boolean rewrite, boolean mapped) {
+        var attempts = new AtomicInteger();
+        Flux<Record> transaction = Flux.usingWhen(Mono.fromSupplier(getRxSession()),
+                        session -> session.executeWrite(tx -> {
+                            Statement statement = statement(copyOptions, rewrite, attempts.getAndIncrement());
+                            return switch (copyOptions.writeMode()) {
+                                case CYPHER -> Flux.fromIterable(relationshipRowsByType(relationships, nodeIds).entrySet())
+                                        .concatMap(rowsOfType -> Mono.from(tx.run(relationshipsQuery(rowsOfType.getKey(), statement, mapped),
+                                                        parameters("rows", rows(rowsOfType.getValue()))))
+                                                .flatMapMany(ReactiveResult::records));
+                                case APOC -> Mono.from(tx.run(apocRelationshipsQuery(statement, mapped),
+                                        parameters("inputList", rows(apocRelationshipRows(relationships, nodeIds))))).flatMapMany(ReactiveResult::records);
+                            };
+                        }),
+                        ReactiveSession::close);
+        return WriteTransactionEvent.record(transaction, "relationships", relationships.size(),
+                () -> relationships.stream().mapToLong(RelationshipData::estimatedSize).sum(), attempts::get, rewrite ? "rewrite" : "write");
+    }
+
+    private Map<String, List<Value>> relationshipRowsByType(List<RelationshipData> relationships, NodeIdLookup nodeIds) {
+        var lookups = new MappingLookupsEvent();
+        lookups.begin();
+        Map<String, List<Value>> rowsByType = new LinkedHashMap<>();
+        for (RelationshipData rel : relationships) {
+            rowsByType.computeIfAbsent(rel.type(), type -> new ArrayList<>())
+                    .add(row(
+                            "i", Values.value(rel.id()),
+                            "s", Values.value(nodeIds.get(rel.startNodeId())),
+                            "t", Values.value(nodeIds.get(rel.endNodeId())),
+                            "p", rel.properties()));
+        }
+        lookups.commit(relationships.size() * 2L);
+        return rowsByType;
+    }
+
+    private List<Value> apocRelationshipRows(List<RelationshipData> relationships, NodeIdLookup nodeIds) {
+        var lookups = new MappingLookupsEvent();
+        lookups.begin();
+        List<Value> rows = relationships.stream()
+                .map(rel -> row(
+                        "i", Values.value(rel.id()),
+                        "s", Values.value(nodeIds.get(rel.startNodeId())),
+                        "t", Values.value(nodeIds.get(rel.endNodeId())),
+                        "type", Values.value(rel.type()),
+                        "properties", rel.properties()))
                 .toList();
-        return Flux.usingWhen(Mono.fromSupplier(getRxSession()),
-                        session -> session.executeWrite(tx -> Mono.from(tx.run("""
-                        UNWIND $inputList as input
-                        MATCH (sourceNode) WHERE id(sourceNode)=input.s
-                        MATCH (targetNode) WHERE id(targetNode)=input.t
-                        CALL apoc.create.relationship(sourceNode, input.type, input.properties, targetNode) YIELD rel
-                        RETURN count(*)""",
-                                parameters("inputList", relData))).flatMapMany(ReactiveResult::records)),
-                        ReactiveSession::close)
+        lookups.commit(relationships.size() * 2L);
+        return rows;
+    }
+
+    /**
+     * The type being part of the query text, there is one query per relationship type.
+     * The end nodes are matched by id, which the planner turns into node by id seeks. Merging on the source id
+     * only expands the relationships of the start node.
+     */
+    String relationshipsQuery(String type, Statement statement) {
+        return relationshipsQuery(type, statement, false);
+    }
+
+    private String relationshipsQuery(String type, Statement statement, boolean mapped) {
+        return relationshipsQueries.computeIfAbsent(new RelationshipsQuery(type, statement, mapped), it -> {
+            String write = switch (it.statement()) {
+                case CREATE -> "CREATE (a)-[r:%s]->(b) SET r = row.p".formatted(Cypher.escapeName(it.type()));
+                case TAGGED_CREATE -> "CREATE (a)-[r:%s]->(b) SET r = row.p, r.%s = row.i"
+                        .formatted(Cypher.escapeName(it.type()), Cypher.escapeName(SOURCE_ID_PROPERTY));
+                case MERGE -> "MERGE (a)-[r:%s {%s: row.i}]->(b) ON CREATE SET r += row.p"
+                        .formatted(Cypher.escapeName(it.type()), Cypher.escapeName(SOURCE_ID_PROPERTY));
+            };
+            return """
+                    UNWIND $rows AS row
+                    MATCH (a) WHERE id(a) = row.s
+                    MATCH (b) WHERE id(b) = row.t
+                    %s
+                    RETURN %s"""
+                    .formatted(write, it.mapped() ? "row.i AS sourceId, id(r) AS targetId" : "count(*)");
+        });
+    }
+
+    private static String apocRelationshipsQuery(Statement statement, boolean mapped) {
+        String write = switch (statement) {
+            case CREATE -> "CALL apoc.create.relationship(sourceNode, input.type, input.properties, targetNode) YIELD rel";
+            case TAGGED_CREATE -> "CALL apoc.create.relationship(sourceNode, input.type, input.properties, targetNode) YIELD rel SET rel.%s = input.i"
+                    .formatted(Cypher.escapeName(SOURCE_ID_PROPERTY));
+            case MERGE -> "CALL apoc.merge.relationship(sourceNode, input.type, {%s: input.i}, input.properties, targetNode, {}) YIELD rel"
+                    .formatted(Cypher.escapeName(SOURCE_ID_PROPERTY));
+        };
+        return """
+                UNWIND $inputList as input
+                MATCH (sourceNode) WHERE id(sourceNode)=input.s
+                MATCH (targetNode) WHERE id(targetNode)=input.t
+                %s
+                RETURN %s"""
+                .formatted(write, mapped ? "input.i AS sourceId, id(rel) AS targetId" : "count(*)");
+    }
+
+    /**
+     * Replaces the properties of the nodes, and the labels they gained or lost. The labels being part of the query
+     * text, the current labels of the nodes are read first, in the same transaction, and the nodes grouped by the
+     * labels to remove and to add. This is done with Cypher, whatever the write mode.
+     */
+    @Override
+    public Flux<MappingContext.Mapping> updateNodes(List<NodeData> nodes, NodeIdLookup nodeIds, CopyOptions copyOptions) {
+        var attempts = new AtomicInteger();
+        List<Long> targetIds = nodes.stream().map(node -> nodeIds.get(node.id())).toList();
+        Flux<Record> transaction = Flux.usingWhen(Mono.fromSupplier(getRxSession()),
+                        session -> session.executeWrite(tx -> {
+                            attempts.incrementAndGet();
+                            return Mono.from(tx.run("UNWIND $ids AS id MATCH (n) WHERE id(n) = id RETURN id, labels(n) AS labels",
+                                            parameters("ids", targetIds)))
+                                    .flatMapMany(ReactiveResult::records)
+                                    .collectMap(r -> r.get("id").asLong(), r -> r.get("labels").asList(Value::asString))
+                                    .flatMapMany(currentLabels -> Flux.fromIterable(updateRowsByLabelChanges(nodes, targetIds, currentLabels).entrySet()))
+                                    .concatMap(rowsOfChanges -> Mono.from(tx.run(updateNodesQuery(rowsOfChanges.getKey()),
+                                                    parameters("rows", rows(rowsOfChanges.getValue()))))
+                                            .flatMapMany(ReactiveResult::records));
+                        }),
+                        ReactiveSession::close);
+        return WriteTransactionEvent.record(transaction, "nodes", nodes.size(),
+                        () -> nodes.stream().mapToLong(NodeData::estimatedSize).sum(), attempts::get, "update")
+                .map(r -> new MappingContext.Mapping(r.get("sourceId").asLong(), r.get("targetId").asLong()));
+    }
+
+    record LabelChanges(List<String> removed, List<String> added) {
+    }
+
+    /**
+     * Nodes deleted from the target since the previous sync are left out.
+     */
+    private static Map<LabelChanges, List<Value>> updateRowsByLabelChanges(List<NodeData> nodes, List<Long> targetIds, Map<Long, List<String>> currentLabels) {
+        Map<LabelChanges, List<Value>> rowsByChanges = new LinkedHashMap<>();
+        for (int i = 0; i < nodes.size(); i++) {
+            List<String> current = currentLabels.get(targetIds.get(i));
+            if (current == null) {
+                continue;
+            }
+            List<String> labels = labels(nodes.get(i));
+            var changes = new LabelChanges(
+                    current.stream().filter(label -> !labels.contains(label) && !label.equals(SOURCE_ID_LABEL)).sorted().toList(),
+                    labels.stream().filter(label -> !current.contains(label)).toList());
+            rowsByChanges.computeIfAbsent(changes, c -> new ArrayList<>())
+                    .add(row("s", Values.value(nodes.get(i).id()), "t", Values.value(targetIds.get(i)), "p", nodes.get(i).properties()));
+        }
+        return rowsByChanges;
+    }
+
+    static String updateNodesQuery(LabelChanges changes) {
+        String removed = changes.removed().isEmpty() ? "" : " REMOVE n" + changes.removed().stream().map(label -> ":" + Cypher.escapeName(label)).collect(Collectors.joining());
+        String added = changes.added().isEmpty() ? "" : " SET n" + changes.added().stream().map(label -> ":" + Cypher.escapeName(label)).collect(Collectors.joining());
+        return """
+                UNWIND $rows AS r
+                MATCH (n) WHERE id(n) = r.t
+                SET n = r.p%s%s
+                RETURN r.s AS sourceId, id(n) AS targetId"""
+                .formatted(removed, added);
+    }
+
+    @Override
+    public Mono<Long> deleteRelationships(List<Long> targetIds, CopyOptions copyOptions) {
+        return delete("relationships", "UNWIND $ids AS id MATCH ()-[r]->() WHERE id(r) = id DELETE r RETURN count(*)", targetIds);
+    }
+
+    @Override
+    public Mono<Long> deleteNodes(List<Long> targetIds, CopyOptions copyOptions) {
+        return delete("nodes", "UNWIND $ids AS id MATCH (n) WHERE id(n) = id DETACH DELETE n RETURN count(*)", targetIds);
+    }
+
+    private Mono<Long> delete(String stage, String query, List<Long> targetIds) {
+        var attempts = new AtomicInteger();
+        Flux<Record> transaction = Flux.usingWhen(Mono.fromSupplier(getRxSession()),
+                        session -> session.executeWrite(tx -> {
+                            attempts.incrementAndGet();
+                            return Mono.from(tx.run(query, parameters("ids", targetIds))).flatMapMany(ReactiveResult::records);
+                        }),
+                        ReactiveSession::close);
+        return WriteTransactionEvent.record(transaction, stage, targetIds.size(), () -> targetIds.size() * 8L, attempts::get, "delete")
                 .map(record -> record.get(0).asLong())
                 .reduce(0L, Long::sum);
     }
 
-    protected Supplier<ReactiveSession> getRxSession() {
-        return () -> targetDriver.session(ReactiveSession.class, SessionConfig.forDatabase(targetDatabase));
+    // rows are built as driver values, so that the read property values are passed through to the query parameters
+    private static Value row(String key1, Value value1, String key2, Value value2) {
+        return parameters(key1, value1, key2, value2);
+    }
+
+    private static Value row(String key1, Value value1, String key2, Value value2, String key3, Value value3) {
+        return parameters(key1, value1, key2, value2, key3, value3);
+    }
+
+    private static Value row(String key1, Value value1, String key2, Value value2, String key3, Value value3, String key4, Value value4) {
+        return parameters(key1, value1, key2, value2, key3, value3, key4, value4);
     }
 
-    private static List<String> labels(Node node) {
-        return StreamSupport.stream(node.labels().spliterator(), false).toList();
+    private static Value row(String key1, Value value1, String key2, Value value2, String key3, Value value3, String key4, Value value4,
+                             String key5, Value value5) {
+        return parameters(key1, value1, key2, value2, key3, value3, key4, value4, key5, value5);
+    }
+
+    static Value rows(List<Value> rows) {
+        return Values.value(rows.toArray(Value[]::new));
+    }
+
+    protected Supplier<ReactiveSession> getRxSession() {
+        return () -> targetDriver.session(ReactiveSession.class, SessionConfig.forDatabase(targetDatabase));
     }
 
-    private Map<String, Object> filterProperties(Map<String, Object> properties, Set<String> propertiesToExclude) {
-        return properties.entrySet().stream()
-                .filter(entry -> !propertiesToExclude.contains(entry.getKey()))
-                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+    // sorted, so that label sets are grouped whatever the order the labels are returned in
+    private static List<String> labels(NodeData node) {
+        return node.labels().stream().sorted().toList();
     }
 }
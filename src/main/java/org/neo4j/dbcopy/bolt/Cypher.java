@@ -0,0 +1,14 @@
+package org.neo4j.dbcopy.bolt;
+
+final class Cypher {
+
+    private Cypher() {
+    }
+
+    /**
+     * Quotes a label, relationship type or property key so that it can be used in a query text.
+     */
+    static String escapeName(String name) {
+        return "`" + name.replace("`", "``") + "`";
+    }
+}
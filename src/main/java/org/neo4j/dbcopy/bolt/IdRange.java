@@ -0,0 +1,27 @@
+package org.neo4j.dbcopy.bolt;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A range of entity ids, from inclusive, to exclusive.
+ */
+record IdRange(long from, long to) {
+
+    /**
+     * Splits [0, maxId] in at least {@code minPartitions} ranges of at most {@code maxPartitionSize} ids.
+     */
+    static List<IdRange> split(long maxId, int minPartitions, long maxPartitionSize) {
+        if (maxId < 0) {
+            return List.of();
+        }
+        long idCount = maxId + 1;
+        long partitionCount = Math.max(minPartitions, (idCount + maxPartitionSize - 1) / maxPartitionSize);
+        long partitionSize = Math.max(1, (idCount + partitionCount - 1) / partitionCount);
+        List<IdRange> ranges = new ArrayList<>();
+        for (long from = 0; from < idCount; from += partitionSize) {
+            ranges.add(new IdRange(from, Math.min(idCount, from + partitionSize)));
+        }
+        return ranges;
+    }
+}
@@ -0,0 +1,167 @@
+package org.neo4j.dbcopy.bolt;
+
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.Record;
+import org.neo4j.driver.SessionConfig;
+import org.neo4j.driver.reactivestreams.ReactiveResult;
+import org.neo4j.driver.reactivestreams.ReactiveSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Copies the indexes and constraints of the source database to the target.
+ * <p>
+ * The schema is read before the copy, and created once the data is loaded, so that the writes do not maintain
+ * indexes nor check constraints along the way. Definitions are created in parallel, the index populations running
+ * in the background of the target, which are then awaited. Indexes and constraints already on the target, by name,
+ * are left as they are.
+ */
+public class SchemaCopy {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SchemaCopy.class);
+
+    static final Duration POLL_INTERVAL = Duration.ofSeconds(5);
+
+    private final Driver sourceDriver;
+    private final String sourceDatabase;
+    private final Driver targetDriver;
+    private final String targetDatabase;
+    private final int concurrency;
+
+    /**
+     * An index or a constraint, as listed by {@code SHOW INDEXES} and {@code SHOW CONSTRAINTS}.
+     *
+     * @param owningConstraint the constraint backed by the index, or null
+     */
+    public record Definition(String name, String type, String owningConstraint, String createStatement) {
+    }
+
+    /**
+     * @param concurrency number of definitions created in parallel
+     */
+    public SchemaCopy(Driver sourceDriver, String sourceDatabase, Driver targetDriver, String targetDatabase, int concurrency) {
+        this.sourceDriver = sourceDriver;
+        this.sourceDatabase = sourceDatabase;
+        this.targetDriver = targetDriver;
+        this.targetDatabase = targetDatabase;
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Reads the constraints, then the indexes of the source.
+     */
+    public Mono<List<Definition>> read() {
+        return Mono.fromCallable(() -> {
+            try (var session = sourceDriver.session(SessionConfig.forDatabase(sourceDatabase))) {
+                List<Definition> definitions = new ArrayList<>();
+                session.run("SHOW CONSTRAINTS YIELD name, type, createStatement")
+                        .forEachRemaining(r -> definitions.add(new Definition(r.get("name").asString(), r.get("type").asString(), null,
+                                r.get("createStatement").asString())));
+                session.run("SHOW INDEXES YIELD name, type, owningConstraint, createStatement")
+                        .forEachRemaining(r -> definitions.add(new Definition(r.get("name").asString(), r.get("type").asString(),
+                                r.get("owningConstraint").asString(null), r.get("createStatement").asString())));
+                LOG.info("Source schema read - {} indexes and constraints", definitions.size());
+                return definitions;
+            }
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Creates the definitions missing from the target, then waits for all the target indexes to be online.
+     */
+    public Mono<Void> create(List<Definition> definitions) {
+        return targetNames()
+                .map(existing -> statements(definitions, existing))
+                .flatMapMany(statements -> {
+                    LOG.info("Creating {} indexes and constraints", statements.size());
+                    return Flux.fromIterable(statements);
+                })
+                .flatMap(statement -> run(statement).doOnSuccess(it -> LOG.debug("Created: {}", statement)), concurrency)
+                .then(awaitIndexes());
+    }
+
+    /**
+     * Indexes backing a constraint are created along with it. Token lookup indexes are left out, a database having
+     * them by default and allowing only one of each, as is the index the writer maintains during the copy.
+     */
+    static List<String> statements(List<Definition> definitions, Set<String> existingNames) {
+        List<String> statements = new ArrayList<>();
+        for (Definition definition : definitions) {
+            if (definition.owningConstraint() != null || "LOOKUP".equals(definition.type()) || BoltWriter.SOURCE_ID_INDEX.equals(definition.name())) {
+                continue;
+            }
+            if (existingNames.contains(definition.name())) {
+                LOG.info("Index or constraint {} already exists on the target, left as it is", definition.name());
+                continue;
+            }
+            statements.add(definition.createStatement());
+        }
+        return statements;
+    }
+
+    private Mono<Set<String>> targetNames() {
+        return Mono.fromCallable(() -> {
+            try (var session = targetDriver.session(SessionConfig.forDatabase(targetDatabase))) {
+                Set<String> names = session.run("SHOW INDEXES YIELD name").stream().map(r -> r.get("name").asString()).collect(Collectors.toCollection(HashSet::new));
+                session.run("SHOW CONSTRAINTS YIELD name").forEachRemaining(r -> names.add(r.get("name").asString()));
+                return names;
+            }
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private Mono<Void> run(String statement) {
+        return Flux.usingWhen(Mono.fromSupplier(() -> targetDriver.session(ReactiveSession.class, SessionConfig.forDatabase(targetDatabase))),
+                        session -> Mono.from(session.run(statement)).flatMapMany(ReactiveResult::consume),
+                        ReactiveSession::close)
+                .then();
+    }
+
+    /**
+     * Polls the index states rather than calling {@code db.awaitIndexes}, so that the population progress is logged
+     * and a large population does not hit a timeout.
+     */
+    private Mono<Void> awaitIndexes() {
+        return Flux.interval(Duration.ZERO, POLL_INTERVAL, Schedulers.boundedElastic())
+                .onBackpressureDrop()
+                .concatMap(tick -> indexStates())
+                .takeUntil(states -> states.stream().noneMatch(state -> state.get("state").asString().equals("POPULATING")))
+                .doOnNext(states -> {
+                    List<Record> populating = states.stream().filter(state -> state.get("state").asString().equals("POPULATING")).toList();
+                    if (!populating.isEmpty()) {
+                        LOG.info("Waiting for {} indexes to be online - {}", populating.size(), populating.stream()
+                                .map(state -> "%s %.1f%%".formatted(state.get("name").asString(), state.get("populationPercent").asDouble()))
+                                .collect(Collectors.joining(", ")));
+                    }
+                })
+                .last()
+                .flatMap(states -> {
+                    List<String> failed = states.stream()
+                            .filter(state -> state.get("state").asString().equals("FAILED"))
+                            .map(state -> state.get("name").asString() + ": " + state.get("failureMessage").asString(""))
+                            .toList();
+                    if (!failed.isEmpty()) {
+                        return Mono.error(new IllegalStateException("Index population failed on the target - " + String.join(", ", failed)));
+                    }
+                    LOG.info("Target indexes online");
+                    return Mono.empty();
+                });
+    }
+
+    private Mono<List<Record>> indexStates() {
+        return Mono.fromCallable(() -> {
+            try (var session = targetDriver.session(SessionConfig.forDatabase(targetDatabase))) {
+                return session.run("SHOW INDEXES YIELD name, state, populationPercent, failureMessage").list();
+            }
+        });
+    }
+}
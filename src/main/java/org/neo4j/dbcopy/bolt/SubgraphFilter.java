@@ -0,0 +1,96 @@
+package org.neo4j.dbcopy.bolt;
+
+import org.neo4j.dbcopy.CopyOptions;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compiles the label, relationship type and predicate filters of a copy into conditions of the read queries, so that
+ * the source only reads and sends what is copied.
+ * <p>
+ * Nodes of the included labels are found through label scans, along with the predicate, which is given as a Cypher
+ * condition on {@code n}. When nodes are filtered, relationships are read from the nodes to copy, through the same
+ * scans, and their end nodes checked against the same conditions, so that only relationships between copied nodes
+ * are read.
+ */
+final class SubgraphFilter {
+
+    // sorted, so that the label scans are split the same way when counting and when reading
+    private final List<String> labelsToInclude;
+    private final List<String> labelsToExclude;
+    private final Set<String> relationshipTypesToInclude;
+    private final Set<String> relationshipTypesToExclude;
+    private final String nodePredicate;
+
+    SubgraphFilter(CopyOptions copyOptions) {
+        this.labelsToInclude = List.copyOf(new TreeSet<>(copyOptions.getLabelsToInclude()));
+        this.labelsToExclude = List.copyOf(new TreeSet<>(copyOptions.getLabelsToExclude()));
+        this.relationshipTypesToInclude = copyOptions.getRelationshipTypesToInclude();
+        this.relationshipTypesToExclude = copyOptions.getRelationshipTypesToExclude();
+        this.nodePredicate = copyOptions.nodePredicate();
+    }
+
+    List<String> labelsToInclude() {
+        return labelsToInclude;
+    }
+
+    boolean filtersNodes() {
+        return !labelsToInclude.isEmpty() || !labelsToExclude.isEmpty() || nodePredicate != null;
+    }
+
+    boolean filtersRelationships() {
+        return filtersNodes() || filtersRelationshipTypes();
+    }
+
+    boolean filtersRelationshipTypes() {
+        return !relationshipTypesToInclude.isEmpty() || !relationshipTypesToExclude.isEmpty();
+    }
+
+    boolean hasNodePredicate() {
+        return nodePredicate != null;
+    }
+
+    boolean includesType(String type) {
+        return (relationshipTypesToInclude.isEmpty() || relationshipTypesToInclude.contains(type)) && !relationshipTypesToExclude.contains(type);
+    }
+
+    /**
+     * Condition on the nodes to copy, as {@code n}, having one of the given labels if any, and none of the other
+     * ones. The labels to include are left to the caller, which either scans them or checks them as the given labels.
+     */
+    String nodeCondition(Collection<String> anyOfLabels, Collection<String> noneOfLabels) {
+        List<String> excluded = new ArrayList<>(noneOfLabels);
+        excluded.addAll(labelsToExclude);
+        return and(anyOf("n", anyOfLabels), noneOf("n", excluded), nodePredicate == null ? "" : "(" + nodePredicate + ")");
+    }
+
+    /**
+     * @return the non-empty conditions as a WHERE clause, or an empty string if there is none
+     */
+    static String where(String... conditions) {
+        String condition = and(conditions);
+        return condition.isEmpty() ? "" : " WHERE " + condition;
+    }
+
+    private static String and(String... conditions) {
+        return Stream.of(conditions).filter(condition -> !condition.isEmpty()).collect(Collectors.joining(" AND "));
+    }
+
+    private static String anyOf(String variable, Collection<String> labels) {
+        if (labels.isEmpty()) {
+            return "";
+        }
+        String condition = labels.stream().map(label -> variable + ":" + Cypher.escapeName(label)).collect(Collectors.joining(" OR "));
+        return labels.size() == 1 ? condition : "(" + condition + ")";
+    }
+
+    private static String noneOf(String variable, Collection<String> labels) {
+        return labels.stream().map(label -> "NOT " + variable + ":" + Cypher.escapeName(label)).collect(Collectors.joining(" AND "));
+    }
+}
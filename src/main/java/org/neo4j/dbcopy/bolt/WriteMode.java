@@ -0,0 +1,16 @@
+package org.neo4j.dbcopy.bolt;
+
+/**
+ * How the {@link BoltWriter} creates the entities in the target database.
+ */
+public enum WriteMode {
+    /**
+     * Batches are grouped by label set or relationship type, which are part of the query text.
+     * Does not need APOC on the target.
+     */
+    CYPHER,
+    /**
+     * Labels and relationship types are set row by row with APOC procedures, which must be installed on the target.
+     */
+    APOC
+}
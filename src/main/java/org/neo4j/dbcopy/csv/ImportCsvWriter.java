@@ -0,0 +1,158 @@
+package org.neo4j.dbcopy.csv;
+
+import org.neo4j.dbcopy.CopyOptions;
+import org.neo4j.dbcopy.DataWriter;
+import org.neo4j.dbcopy.MappingContext;
+import org.neo4j.dbcopy.MappingContext.Mapping;
+import org.neo4j.dbcopy.NodeData;
+import org.neo4j.dbcopy.RelationshipData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Writes the copied nodes and relationships as CSV files for {@code neo4j-admin database import}, rather than to a
+ * database, which is much faster to seed a new database.
+ * <p>
+ * There is one file per label set and one per relationship type, each with a separate header file written once the
+ * copy completes, so that properties found along the way can be added as columns. Files are written in parallel.
+ * Nodes are identified by their source ids, so no node mapping is needed. The import arguments are written to an
+ * {@value #ARGUMENTS_FILE} file, to be passed to the import command as {@code @import.args}.
+ */
+public class ImportCsvWriter implements DataWriter, AutoCloseable {
+
+    static final String ARGUMENTS_FILE = "import.args";
+
+    private static final Logger LOG = LoggerFactory.getLogger(ImportCsvWriter.class);
+
+    private final Path directory;
+    private final boolean compress;
+    private final Map<List<String>, ImportFile> nodeFiles = new ConcurrentHashMap<>();
+    private final Map<String, ImportFile> relationshipFiles = new ConcurrentHashMap<>();
+    private final AtomicInteger fileCount = new AtomicInteger();
+
+    /**
+     * @param compress whether to gzip the data files
+     */
+    public ImportCsvWriter(Path directory, boolean compress) {
+        this.directory = directory;
+        this.compress = compress;
+    }
+
+    @Override
+    public boolean usesSourceIds() {
+        return true;
+    }
+
+    @Override
+    public Mono<Void> prepare(CopyOptions copyOptions) {
+        return Mono.<Void>fromRunnable(() -> {
+            try {
+                Files.createDirectories(directory);
+                try (Stream<Path> files = Files.list(directory)) {
+                    if (files.anyMatch(file -> file.getFileName().toString().matches("(nodes|relationships)-\\d+.*\\.csv(\\.gz)?|" + ARGUMENTS_FILE))) {
+                        throw new IllegalArgumentException("Directory " + directory + " already holds import files, remove them first");
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to create the import directory " + directory, e);
+            }
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public Flux<Mapping> writeNodes(List<NodeData> nodes, CopyOptions copyOptions) {
+        return Mono.fromCallable(() -> {
+                    Map<List<String>, List<NodeData>> byLabels = nodes.stream()
+                            .collect(Collectors.groupingBy(node -> node.labels().stream().sorted().toList(), LinkedHashMap::new, Collectors.toList()));
+                    for (Map.Entry<List<String>, List<NodeData>> entry : byLabels.entrySet()) {
+                        ImportFile file = nodeFiles.computeIfAbsent(entry.getKey(), labels -> ImportFile.forNodes(path("nodes", String.join("_", labels)), labels));
+                        file.append(file.nodeRows(entry.getValue()));
+                    }
+                    List<Mapping> mappings = new ArrayList<>(nodes.size());
+                    for (NodeData node : nodes) {
+                        mappings.add(new Mapping(node.id(), node.id()));
+                    }
+                    return mappings;
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapIterable(mappings -> mappings);
+    }
+
+    @Override
+    public Mono<Long> writeRelationships(List<RelationshipData> relationships, MappingContext mappingContext, CopyOptions copyOptions) {
+        return Mono.fromCallable(() -> {
+                    Map<String, List<RelationshipData>> byType = relationships.stream()
+                            .collect(Collectors.groupingBy(RelationshipData::type, LinkedHashMap::new, Collectors.toList()));
+                    for (Map.Entry<String, List<RelationshipData>> entry : byType.entrySet()) {
+                        ImportFile file = relationshipFiles.computeIfAbsent(entry.getKey(), type -> ImportFile.forRelationships(path("relationships", type)));
+                        file.append(file.relationshipRows(entry.getValue()));
+                    }
+                    return (long) relationships.size();
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * @return the data file path, named after the label set or type, header files being named after it
+     */
+    private Path path(String kind, String name) {
+        String sanitized = name.replaceAll("[^A-Za-z0-9_]", "_");
+        if (sanitized.length() > 64) {
+            sanitized = sanitized.substring(0, 64);
+        }
+        String suffix = sanitized.isEmpty() ? "" : "-" + sanitized;
+        return directory.resolve("%s-%04d%s.csv%s".formatted(kind, fileCount.incrementAndGet(), suffix, compress ? ".gz" : ""));
+    }
+
+    /**
+     * Writes the header files and the import arguments.
+     */
+    @Override
+    public Mono<Void> complete(CopyOptions copyOptions) {
+        return Mono.<Void>fromRunnable(() -> {
+            List<String> arguments = new ArrayList<>();
+            arguments.add("--id-type=integer");
+            arguments.add("--multiline-fields=true");
+            arguments.add("--array-delimiter=" + ImportFile.ARRAY_DELIMITER);
+            for (ImportFile file : nodeFiles.values()) {
+                arguments.add("--nodes=" + file.finish());
+            }
+            for (ImportFile file : relationshipFiles.values()) {
+                arguments.add("--relationships=" + file.finish());
+            }
+            Path argumentsFile = directory.resolve(ARGUMENTS_FILE);
+            try {
+                Files.write(argumentsFile, arguments);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to write the import arguments to " + argumentsFile, e);
+            }
+            LOG.info("Import files written to {} - {} node files and {} relationship files. Import them with: "
+                            + "neo4j-admin database import full @{} <database>",
+                    directory, nodeFiles.size(), relationshipFiles.size(), argumentsFile.toAbsolutePath());
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Releases the data files, left without headers unless the copy completed.
+     */
+    @Override
+    public void close() {
+        Stream.concat(nodeFiles.values().stream(), relationshipFiles.values().stream()).forEach(ImportFile::close);
+    }
+}
@@ -0,0 +1,311 @@
+package org.neo4j.dbcopy.csv;
+
+import org.neo4j.dbcopy.NodeData;
+import org.neo4j.dbcopy.RelationshipData;
+import org.neo4j.driver.Value;
+import org.neo4j.driver.types.IsoDuration;
+import org.neo4j.driver.types.Point;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A data file of {@code neo4j-admin database import} along with its header file, the columns of the header being
+ * the properties found in the data, typed after their values.
+ * <p>
+ * Rows are formatted by the writing threads, and appended one batch at a time.
+ * Rows only have the columns known when they are formatted, the missing trailing ones being empty.
+ */
+final class ImportFile {
+
+    static final char ARRAY_DELIMITER = ';';
+
+    private static final Logger LOG = LoggerFactory.getLogger(ImportFile.class);
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Path dataFile;
+    private final Path headerFile;
+    private final List<String> idColumns;
+    // labels of all the nodes of the file, as a field of the :LABEL column
+    private final String labels;
+    private final Map<String, Column> columnsByKey = new HashMap<>();
+    private final List<Column> columns = new ArrayList<>();
+    private Writer out;
+
+    private ImportFile(Path dataFile, List<String> idColumns, String labels) {
+        this.dataFile = dataFile;
+        this.headerFile = dataFile.resolveSibling(dataFile.getFileName().toString().replaceAll("\\.csv(\\.gz)?$", "-header.csv"));
+        this.idColumns = idColumns;
+        this.labels = labels;
+    }
+
+    /**
+     * @throws IllegalArgumentException if a label holds the array delimiter, as the import would split it
+     */
+    static ImportFile forNodes(Path dataFile, List<String> labels) {
+        for (String label : labels) {
+            requireNoArrayDelimiter(label, "Label");
+        }
+        return new ImportFile(dataFile, List.of(":ID", ":LABEL"), labels.isEmpty() ? "" : quote(String.join(String.valueOf(ARRAY_DELIMITER), labels)));
+    }
+
+    static ImportFile forRelationships(Path dataFile) {
+        return new ImportFile(dataFile, List.of(":START_ID", ":END_ID", ":TYPE"), null);
+    }
+
+    String nodeRows(List<NodeData> nodes) {
+        var rows = new StringBuilder();
+        for (NodeData node : nodes) {
+            rows.append(node.id()).append(',').append(labels);
+            appendProperties(rows, node.properties());
+        }
+        return rows.toString();
+    }
+
+    String relationshipRows(List<RelationshipData> relationships) {
+        var rows = new StringBuilder();
+        for (RelationshipData relationship : relationships) {
+            rows.append(relationship.startNodeId()).append(',')
+                    .append(relationship.endNodeId()).append(',')
+                    .append(quote(relationship.type()));
+            appendProperties(rows, relationship.properties());
+        }
+        return rows.toString();
+    }
+
+    private void appendProperties(StringBuilder rows, Value properties) {
+        String[] fields = new String[0];
+        for (String key : properties.keys()) {
+            Value value = properties.get(key);
+            if (value.isNull()) {
+                continue;
+            }
+            Field field = field(value.asObject());
+            int index = column(key, field);
+            if (index >= fields.length) {
+                fields = Arrays.copyOf(fields, index + 1);
+            }
+            fields[index] = field.text();
+        }
+        for (String field : fields) {
+            rows.append(',');
+            if (field != null) {
+                rows.append(field);
+            }
+        }
+        rows.append('\n');
+    }
+
+    private synchronized int column(String key, Field field) {
+        Column column = columnsByKey.computeIfAbsent(key, k -> {
+            if (k.indexOf(':') >= 0) {
+                // the import takes what follows the colon of a header column as the type
+                throw new IllegalArgumentException("Property key '%s' of %s contains ':', which the import header cannot represent".formatted(k, dataFile.getFileName()));
+            }
+            var created = new Column(k, columns.size());
+            columns.add(created);
+            return created;
+        });
+        column.merge(field, dataFile);
+        return column.index;
+    }
+
+    synchronized void append(String rows) {
+        try {
+            if (out == null) {
+                OutputStream stream = Files.newOutputStream(dataFile);
+                if (dataFile.getFileName().toString().endsWith(".gz")) {
+                    stream = new GZIPOutputStream(stream, BUFFER_SIZE);
+                }
+                out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), BUFFER_SIZE);
+            }
+            out.write(rows);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to write the import file " + dataFile, e);
+        }
+    }
+
+    /**
+     * Closes the data file and writes the header file.
+     *
+     * @return the header and data files, as expected by the import command
+     */
+    synchronized String finish() {
+        close();
+        var header = new StringJoiner(",", "", "\n");
+        idColumns.forEach(header::add);
+        for (Column column : columns) {
+            header.add(quoteIfNeeded(column.header()));
+        }
+        try {
+            Files.writeString(headerFile, header.toString());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to write the import header file " + headerFile, e);
+        }
+        return headerFile.toAbsolutePath() + "," + dataFile.toAbsolutePath();
+    }
+
+    synchronized void close() {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to close the import file " + dataFile, e);
+        } finally {
+            out = null;
+        }
+    }
+
+    /**
+     * A property value formatted for the import, with its import type.
+     */
+    record Field(String type, boolean array, String text) {
+    }
+
+    /**
+     * @throws IllegalArgumentException if an element of a string array holds the array delimiter, as the import would split it
+     */
+    static Field field(Object value) {
+        if (value instanceof List<?> list) {
+            String type = null;
+            var elements = new StringJoiner(String.valueOf(ARRAY_DELIMITER));
+            for (Object element : list) {
+                Field field = scalar(element);
+                if (field.type().equals("string")) {
+                    requireNoArrayDelimiter(field.text(), "String array element");
+                }
+                type = type == null ? field.type() : type;
+                elements.add(field.text());
+            }
+            return new Field(type == null ? "string" : type, true, quote(elements.toString()));
+        }
+        if (value instanceof byte[] bytes) {
+            var elements = new StringJoiner(String.valueOf(ARRAY_DELIMITER));
+            for (byte b : bytes) {
+                elements.add(String.valueOf(b));
+            }
+            return new Field("byte", true, elements.toString());
+        }
+        Field field = scalar(value);
+        boolean quoted = field.type().equals("string") || field.type().equals("point");
+        return quoted ? new Field(field.type(), false, quote(field.text())) : field;
+    }
+
+    /**
+     * @return the value formatted as expected by the import, not quoted
+     */
+    private static Field scalar(Object value) {
+        if (value instanceof Boolean bool) {
+            return new Field("boolean", false, bool.toString());
+        } else if (value instanceof Long number) {
+            return new Field("long", false, number.toString());
+        } else if (value instanceof Double number) {
+            return new Field("double", false, number.toString());
+        } else if (value instanceof String string) {
+            return new Field("string", false, string);
+        } else if (value instanceof LocalDate date) {
+            return new Field("date", false, date.toString());
+        } else if (value instanceof LocalTime time) {
+            return new Field("localtime", false, time.toString());
+        } else if (value instanceof OffsetTime time) {
+            return new Field("time", false, time.toString());
+        } else if (value instanceof LocalDateTime dateTime) {
+            return new Field("localdatetime", false, dateTime.toString());
+        } else if (value instanceof ZonedDateTime dateTime) {
+            DateTimeFormatter format = dateTime.getZone() instanceof ZoneOffset ? DateTimeFormatter.ISO_OFFSET_DATE_TIME : DateTimeFormatter.ISO_ZONED_DATE_TIME;
+            return new Field("datetime", false, format.format(dateTime));
+        } else if (value instanceof IsoDuration duration) {
+            return new Field("duration", false, duration.toString());
+        } else if (value instanceof Point point) {
+            boolean is3d = !Double.isNaN(point.z());
+            String text = "{crs:'%s',x:%s,y:%s%s}".formatted(crs(point.srid()), point.x(), point.y(), is3d ? ",z:" + point.z() : "");
+            return new Field("point", false, text);
+        }
+        throw new IllegalArgumentException("Unsupported value type " + (value == null ? "null" : value.getClass().getName()));
+    }
+
+    private static String crs(int srid) {
+        return switch (srid) {
+            case 7203 -> "cartesian";
+            case 9157 -> "cartesian-3d";
+            case 4326 -> "wgs-84";
+            case 4979 -> "wgs-84-3d";
+            default -> throw new IllegalArgumentException("Unsupported point SRID " + srid);
+        };
+    }
+
+    private static void requireNoArrayDelimiter(String text, String what) {
+        if (text.indexOf(ARRAY_DELIMITER) >= 0) {
+            throw new IllegalArgumentException("%s '%s' contains the import array delimiter '%s', and cannot be imported".formatted(what, text, ARRAY_DELIMITER));
+        }
+    }
+
+    private static String quote(String text) {
+        return '"' + text.replace("\"", "\"\"") + '"';
+    }
+
+    private static String quoteIfNeeded(String text) {
+        return text.matches(".*[,\"\\r\\n].*") ? quote(text) : text;
+    }
+
+    /**
+     * A property column, its type being the common one of its values: a property both integer and float is a float,
+     * and a property of otherwise different types is a string, all values being written as text.
+     */
+    private static final class Column {
+        private final String key;
+        private final int index;
+        private String type;
+        private boolean array;
+
+        Column(String key, int index) {
+            this.key = key;
+            this.index = index;
+        }
+
+        void merge(Field field, Path file) {
+            array |= field.array();
+            if (type == null || type.equals(field.type())) {
+                type = field.type();
+            } else if (isNumber(type) && isNumber(field.type())) {
+                type = "double";
+            } else if (!type.equals("string")) {
+                LOG.warn("Property {} of {} has values of types {} and {}, imported as strings", key, file.getFileName(), type, field.type());
+                type = "string";
+            }
+        }
+
+        private static boolean isNumber(String type) {
+            return type.equals("long") || type.equals("double");
+        }
+
+        String header() {
+            return key + ":" + type + (array ? "[]" : "");
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package org.neo4j.dbcopy.io;
+
+import org.neo4j.dbcopy.Checkpoint;
+import org.neo4j.dbcopy.MappingContext;
+import org.neo4j.dbcopy.RelationshipData;
+import org.neo4j.dbcopy.mapping.LongLongHashTable;
+import org.neo4j.dbcopy.mapping.LongStorage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Append-only journal, in a local directory, of the node and relationship batches committed on the target.
+ * <p>
+ * Nodes are recorded as (source id, target id) pairs and relationships as source ids, in segment files of fixed-size
+ * records. Each batch is forced to disk before being acknowledged. On resume, the segments are memory-mapped rather than
+ * parsed, a partially written trailing record being ignored, and new batches are recorded in new segments.
+ */
+public class CheckpointJournal implements Checkpoint {
+
+    static final long SEGMENT_SIZE = 64L << 20;
+
+    private static final long MAGIC = 0x4442434f50594a4eL;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RESTORE_CHUNK_SIZE = 4096;
+
+    private final Path directory;
+    private final Log nodes;
+    private final Log relationships;
+    private LongLongHashTable writtenRelationships;
+
+    private CheckpointJournal(Path directory) {
+        this.directory = directory;
+        this.nodes = new Log(directory, "nodes", 2 * Long.BYTES);
+        this.relationships = new Log(directory, "relationships", Long.BYTES);
+    }
+
+    /**
+     * Starts a new journal, failing if the directory already holds one.
+     */
+    public static CheckpointJournal create(Path directory) {
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to create the checkpoint directory " + directory, e);
+        }
+        var journal = new CheckpointJournal(directory);
+        if (journal.nodes.segmentCount() > 0 || journal.relationships.segmentCount() > 0) {
+            throw new IllegalArgumentException("Directory " + directory + " already holds a checkpoint journal, resume the copy from it or remove it");
+        }
+        return journal;
+    }
+
+    /**
+     * Opens the journal of a previous run, failing if the directory does not hold one.
+     */
+    public static CheckpointJournal resume(Path directory) {
+        if (!Files.isDirectory(directory)) {
+            throw new IllegalArgumentException("No checkpoint journal found in " + directory);
+        }
+        var journal = new CheckpointJournal(directory);
+        if (journal.nodes.segmentCount() == 0) {
+            throw new IllegalArgumentException("No checkpoint journal found in " + directory);
+        }
+        return journal;
+    }
+
+    public Path directory() {
+        return directory;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public long restore(MappingContext mappingContext) {
+        long nodeCount = 0;
+        List<MappingContext.Mapping> chunk = new ArrayList<>(RESTORE_CHUNK_SIZE);
+        for (LongBuffer records : nodes.mapSegments()) {
+            while (records.remaining() >= 2) {
+                chunk.add(new MappingContext.Mapping(records.get(), records.get()));
+                if (chunk.size() == RESTORE_CHUNK_SIZE) {
+                    // in chunks, so that runs of contiguous ids can be detected
+                    mappingContext.add(chunk);
+                    nodeCount += chunk.size();
+                    chunk = new ArrayList<>(RESTORE_CHUNK_SIZE);
+                }
+            }
+        }
+        mappingContext.add(chunk);
+        nodeCount += chunk.size();
+
+        List<LongBuffer> relationshipSegments = relationships.mapSegments();
+        long relationshipCount = relationshipSegments.stream().mapToLong(LongBuffer::remaining).sum();
+        writtenRelationships = new LongLongHashTable(relationshipCount, LongStorage.HEAP);
+        for (LongBuffer records : relationshipSegments) {
+            while (records.hasRemaining()) {
+                writtenRelationships.put(records.get(), 0);
+            }
+        }
+        return nodeCount;
+    }
+
+    @Override
+    public boolean isWritten(RelationshipData relationship) {
+        return writtenRelationships != null && writtenRelationships.get(relationship.id()) != LongLongHashTable.NOT_FOUND;
+    }
+
+    @Override
+    public long writtenRelationshipCount() {
+        return writtenRelationships == null ? 0 : writtenRelationships.size();
+    }
+
+    @Override
+    public void nodesWritten(List<MappingContext.Mapping> mappings) {
+        ByteBuffer buffer = ByteBuffer.allocate(mappings.size() * 2 * Long.BYTES);
+        for (MappingContext.Mapping mapping : mappings) {
+            buffer.putLong(mapping.sourceNodeId()).putLong(mapping.targetNodeId());
+        }
+        nodes.append(buffer.flip());
+    }
+
+    @Override
+    public void relationshipsWritten(List<RelationshipData> written) {
+        ByteBuffer buffer = ByteBuffer.allocate(written.size() * Long.BYTES);
+        for (RelationshipData relationship : written) {
+            buffer.putLong(relationship.id());
+        }
+        relationships.append(buffer.flip());
+    }
+
+    @Override
+    public void close() {
+        nodes.close();
+        relationships.close();
+        if (writtenRelationships != null) {
+            writtenRelationships.close();
+        }
+    }
+
+    /**
+     * Segments of one kind of record, named after their kind and their sequence number.
+     */
+    private static final class Log {
+
+        private final Path directory;
+        private final String kind;
+        private final int recordSize;
+        private final List<Path> segments;
+        private FileChannel current;
+        private long currentSize;
+
+        Log(Path directory, String kind, int recordSize) {
+            this.directory = directory;
+            this.kind = kind;
+            this.recordSize = recordSize;
+            try (Stream<Path> files = Files.list(directory)) {
+                this.segments = new ArrayList<>(files
+                        .filter(file -> file.getFileName().toString().matches(kind + "-\\d+\\.journal"))
+                        .sorted()
+                        .toList());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to list the checkpoint directory " + directory, e);
+            }
+        }
+
+        int segmentCount() {
+            return segments.size();
+        }
+
+        /**
+         * @return the complete records of each segment, as long buffers over read-only mappings
+         */
+        List<LongBuffer> mapSegments() {
+            List<LongBuffer> mapped = new ArrayList<>();
+            for (Path segment : segments) {
+                try (var channel = FileChannel.open(segment, READ)) {
+                    long size = channel.size();
+                    if (size < HEADER_SIZE) {
+                        // the segment was created but its header not forced yet
+                        continue;
+                    }
+                    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                    channel.read(header, 0);
+                    header.flip();
+                    if (header.getLong() != MAGIC || header.getInt() != VERSION || header.getInt() != recordSize) {
+                        throw new IllegalStateException("File " + segment + " is not a " + kind + " checkpoint journal segment");
+                    }
+                    long records = (size - HEADER_SIZE) / recordSize;
+                    mapped.add(channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, records * recordSize).asLongBuffer());
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Unable to read checkpoint journal segment " + segment, e);
+                }
+            }
+            return mapped;
+        }
+
+        synchronized void append(ByteBuffer records) {
+            if (!records.hasRemaining()) {
+                return;
+            }
+            try {
+                if (current == null || currentSize + records.remaining() > SEGMENT_SIZE) {
+                    roll();
+                }
+                while (records.hasRemaining()) {
+                    currentSize += current.write(records);
+                }
+                current.force(false);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to append to the " + kind + " checkpoint journal in " + directory, e);
+            }
+        }
+
+        private void roll() throws IOException {
+            close();
+            Path segment = directory.resolve("%s-%06d.journal".formatted(kind, segments.size()));
+            current = FileChannel.open(segment, CREATE_NEW, WRITE);
+            segments.add(segment);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putLong(MAGIC).putInt(VERSION).putInt(recordSize).flip();
+            while (header.hasRemaining()) {
+                current.write(header);
+            }
+            currentSize = HEADER_SIZE;
+        }
+
+        synchronized void close() {
+            if (current == null) {
+                return;
+            }
+            try {
+                current.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to close the " + kind + " checkpoint journal in " + directory, e);
+            } finally {
+                current = null;
+            }
+        }
+    }
+}
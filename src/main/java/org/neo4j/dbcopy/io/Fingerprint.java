@@ -0,0 +1,95 @@
+package org.neo4j.dbcopy.io;
+
+import org.neo4j.dbcopy.NodeData;
+import org.neo4j.dbcopy.RelationshipData;
+import org.neo4j.driver.Value;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 63 bits hash of the content of an entity, to tell whether it changed since a previous copy.
+ * <p>
+ * The labels and the property keys are sorted and the values encoded with the {@link ValueCodec}, so that the
+ * fingerprint does not depend on the order they were read in. The encoding is hashed as it is written, without
+ * being buffered.
+ */
+public final class Fingerprint {
+
+    private Fingerprint() {
+    }
+
+    public static long of(NodeData node) {
+        var hash = new HashingOutputStream();
+        var out = new DataOutputStream(hash);
+        try {
+            List<String> labels = node.labels().stream().sorted().toList();
+            ValueCodec.writeVarLong(out, labels.size());
+            for (String label : labels) {
+                ValueCodec.writeString(out, label);
+            }
+            writeProperties(out, node.properties());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return hash.value();
+    }
+
+    /**
+     * The start and end nodes being part of the fingerprint, a relationship moved to other nodes has changed.
+     */
+    public static long of(RelationshipData relationship) {
+        var hash = new HashingOutputStream();
+        var out = new DataOutputStream(hash);
+        try {
+            ValueCodec.writeString(out, relationship.type());
+            ValueCodec.writeVarLong(out, relationship.startNodeId());
+            ValueCodec.writeVarLong(out, relationship.endNodeId());
+            writeProperties(out, relationship.properties());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return hash.value();
+    }
+
+    private static void writeProperties(DataOutputStream out, Value properties) throws IOException {
+        List<String> keys = new ArrayList<>();
+        properties.keys().forEach(keys::add);
+        keys.sort(null);
+        ValueCodec.writeVarLong(out, keys.size());
+        for (String key : keys) {
+            ValueCodec.writeString(out, key);
+            ValueCodec.writeValue(out, properties.get(key));
+        }
+    }
+
+    /**
+     * FNV-1a over the written bytes, finalized with the SplitMix64 mixer to spread close inputs.
+     */
+    private static final class HashingOutputStream extends OutputStream {
+        private long hash = 0xcbf29ce484222325L;
+
+        @Override
+        public void write(int b) {
+            hash = (hash ^ (b & 0xFF)) * 0x100000001b3L;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                hash = (hash ^ (bytes[i] & 0xFF)) * 0x100000001b3L;
+            }
+        }
+
+        long value() {
+            long z = hash;
+            z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+            z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+            return (z ^ (z >>> 31)) & Long.MAX_VALUE;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package org.neo4j.dbcopy.io;
+
+import org.neo4j.dbcopy.RelationshipData;
+import org.neo4j.driver.Value;
+import org.neo4j.driver.Values;
+import reactor.core.publisher.Flux;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Local spool file for relationships, so that they can be read from the source while the nodes are being written,
+ * and written once all the node mappings are known.
+ * <p>
+ * Each relationship is stored as varints: id, start node id, end node id, type dictionary id, property count,
+ * then a property key dictionary id and an encoded value per property. The dictionaries stay in memory.
+ */
+public class RelationshipSpool implements AutoCloseable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Path file;
+    private final DataOutputStream out;
+    private final Map<String, Integer> dictionary = new HashMap<>();
+    private final List<String> words = new ArrayList<>();
+    private long count = 0;
+
+    public RelationshipSpool(Path directory) {
+        try {
+            Files.createDirectories(directory);
+            this.file = Files.createTempFile(directory, "neo4j-db-copy-relationships-", ".spool");
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to create the relationship spool file in " + directory, e);
+        }
+    }
+
+    public synchronized void append(List<RelationshipData> relationships) {
+        try {
+            for (RelationshipData relationship : relationships) {
+                ValueCodec.writeVarLong(out, relationship.id());
+                ValueCodec.writeVarLong(out, relationship.startNodeId());
+                ValueCodec.writeVarLong(out, relationship.endNodeId());
+                ValueCodec.writeVarLong(out, wordId(relationship.type()));
+                Value properties = relationship.properties();
+                ValueCodec.writeVarLong(out, properties.size());
+                for (String key : properties.keys()) {
+                    ValueCodec.writeVarLong(out, wordId(key));
+                    ValueCodec.writeValue(out, properties.get(key));
+                }
+            }
+            count += relationships.size();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to write to the relationship spool file " + file, e);
+        }
+    }
+
+    /**
+     * Flushes the spool file, after which no more relationships can be appended.
+     *
+     * @return the number of spooled relationships
+     */
+    public synchronized long finish() {
+        try {
+            out.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to write to the relationship spool file " + file, e);
+        }
+        return count;
+    }
+
+    public Flux<RelationshipData> replay() {
+        return Flux.using(
+                () -> new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE)),
+                in -> Flux.<RelationshipData, Long>generate(() -> 0L, (read, sink) -> {
+                    if (read == count) {
+                        sink.complete();
+                        return read;
+                    }
+                    try {
+                        sink.next(readRelationship(in));
+                    } catch (IOException e) {
+                        sink.error(new UncheckedIOException("Unable to read the relationship spool file " + file, e));
+                    }
+                    return read + 1;
+                }),
+                in -> {
+                    try {
+                        in.close();
+                    } catch (IOException ignored) {
+                        // nothing to do, the file is deleted when the spool is closed
+                    }
+                });
+    }
+
+    private RelationshipData readRelationship(DataInputStream in) throws IOException {
+        long id = ValueCodec.readVarLong(in);
+        long startNodeId = ValueCodec.readVarLong(in);
+        long endNodeId = ValueCodec.readVarLong(in);
+        String type = word(ValueCodec.readVarLong(in));
+        int propertyCount = (int) ValueCodec.readVarLong(in);
+        Map<String, Object> properties = new HashMap<>(propertyCount * 2);
+        for (int i = 0; i < propertyCount; i++) {
+            properties.put(word(ValueCodec.readVarLong(in)), ValueCodec.readValue(in));
+        }
+        return new RelationshipData(id, startNodeId, endNodeId, type, Values.value(properties));
+    }
+
+    private int wordId(String word) {
+        return dictionary.computeIfAbsent(word, w -> {
+            words.add(w);
+            return words.size() - 1;
+        });
+    }
+
+    // only called once the spool is finished
+    private String word(long id) {
+        return words.get((int) id);
+    }
+
+    public long size() {
+        return file.toFile().length();
+    }
+
+    @Override
+    public void close() {
+        try {
+            out.close();
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            file.toFile().deleteOnExit();
+        }
+    }
+}
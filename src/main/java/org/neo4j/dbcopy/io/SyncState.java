@@ -0,0 +1,334 @@
+package org.neo4j.dbcopy.io;
+
+import org.neo4j.dbcopy.CopyOptions;
+import org.neo4j.dbcopy.NodeIdLookup;
+import org.neo4j.dbcopy.mapping.LongLongHashTable;
+import org.neo4j.dbcopy.mapping.LongStorage;
+import org.neo4j.dbcopy.mapping.MappingContexts;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * State of the previous sync of a target database, in a local directory: for each node and relationship of the
+ * source, its target id and the {@link Fingerprint} of its content.
+ * <p>
+ * The previous state is memory-mapped, only an index of the source ids being kept in the mapping storage. Entities
+ * are recorded in a new state as they are synced, which replaces the previous one once the sync is over. Should the
+ * sync fail, the previous records of the entities it did not sync are kept, so that they are synced again next time.
+ */
+public class SyncState implements AutoCloseable {
+
+    private static final long MAGIC = 0x4442434f50595353L;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_LONGS = 3;
+    // records per mapped chunk, below the 2GB limit of a mapping
+    private static final int CHUNK_BITS = 26;
+
+    private final Table nodes;
+    private final Table relationships;
+
+    private SyncState(Table nodes, Table relationships) {
+        this.nodes = nodes;
+        this.relationships = relationships;
+    }
+
+    /**
+     * Opens the state of the previous sync in the directory, which is empty for a first sync.
+     *
+     * @param expectedNodeCount number of nodes of the source, to size the mapping of the created nodes
+     */
+    public static SyncState open(Path directory, long expectedNodeCount, CopyOptions copyOptions) {
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to create the sync state directory " + directory, e);
+        }
+        Table nodes = new Table(directory, "nodes", copyOptions, expectedNodeCount);
+        try {
+            return new SyncState(nodes, new Table(directory, "relationships", copyOptions, -1));
+        } catch (RuntimeException e) {
+            nodes.close();
+            throw e;
+        }
+    }
+
+    public Table nodes() {
+        return nodes;
+    }
+
+    public Table relationships() {
+        return relationships;
+    }
+
+    /**
+     * Replaces the previous state with the new one.
+     *
+     * @param complete whether the sync completed, in which case the entities it did not record were deleted
+     */
+    public void commit(boolean complete) {
+        nodes.commit(complete);
+        relationships.commit(complete);
+    }
+
+    @Override
+    public void close() {
+        try {
+            nodes.close();
+        } finally {
+            relationships.close();
+        }
+    }
+
+    /**
+     * Previous and new records of one kind of entity.
+     */
+    public static final class Table implements AutoCloseable {
+
+        private final Path file;
+        private final Path newFile;
+        private final String kind;
+        private final List<LongBuffer> chunks = new ArrayList<>();
+        private final long previousCount;
+        private final LongStorage storage;
+        private final LongLongHashTable index;
+        private final AtomicLongArray seen;
+        private final AtomicLongArray recorded;
+        // target ids of the entities created by this sync, when they have to be looked up
+        private final LongStorage createdStorage;
+        private final LongLongHashTable created;
+        private final DataOutputStream out;
+        private long recordCount = 0;
+        private boolean committed = false;
+
+        Table(Path directory, String kind, CopyOptions copyOptions, long expectedCreatedCount) {
+            this.kind = kind;
+            this.file = directory.resolve(kind + ".state");
+            this.newFile = directory.resolve(kind + ".state.new");
+            this.previousCount = mapPrevious();
+            this.storage = MappingContexts.storage(previousCount, copyOptions);
+            this.index = new LongLongHashTable(previousCount, storage);
+            for (long i = 0; i < previousCount; i++) {
+                index.put(source(i), i);
+            }
+            this.seen = new AtomicLongArray((int) ((previousCount + 63) / 64));
+            this.recorded = new AtomicLongArray((int) ((previousCount + 63) / 64));
+            // a first sync creates all the entities, later ones only a few
+            long createdCount = previousCount == 0 ? Math.max(expectedCreatedCount, 0) : 0;
+            this.createdStorage = MappingContexts.storage(createdCount, copyOptions);
+            this.created = expectedCreatedCount < 0 ? null : new LongLongHashTable(createdCount, createdStorage);
+            try {
+                this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(newFile.toFile()), 1 << 16));
+                out.writeLong(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(RECORD_LONGS * Long.BYTES);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to create the " + kind + " sync state file " + newFile, e);
+            }
+        }
+
+        private long mapPrevious() {
+            if (!Files.exists(file)) {
+                return 0;
+            }
+            try (var channel = FileChannel.open(file, READ)) {
+                long size = channel.size();
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                channel.read(header, 0);
+                header.flip();
+                if (size < HEADER_SIZE || header.getLong() != MAGIC || header.getInt() != VERSION || header.getInt() != RECORD_LONGS * Long.BYTES) {
+                    throw new IllegalStateException("File " + file + " is not a " + kind + " sync state");
+                }
+                long count = (size - HEADER_SIZE) / (RECORD_LONGS * Long.BYTES);
+                long chunkBytes = (1L << CHUNK_BITS) * RECORD_LONGS * Long.BYTES;
+                for (long position = HEADER_SIZE; position < HEADER_SIZE + count * RECORD_LONGS * Long.BYTES; position += chunkBytes) {
+                    long length = Math.min(chunkBytes, HEADER_SIZE + count * RECORD_LONGS * Long.BYTES - position);
+                    chunks.add(channel.map(FileChannel.MapMode.READ_ONLY, position, length).asLongBuffer());
+                }
+                return count;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to read the " + kind + " sync state " + file, e);
+            }
+        }
+
+        /**
+         * @return the number of entities recorded by the previous sync
+         */
+        public long previousCount() {
+            return previousCount;
+        }
+
+        /**
+         * @return the index of the previous record of the source entity, or -1 if it is new
+         */
+        public long find(long sourceId) {
+            return index.get(sourceId);
+        }
+
+        public long source(long index) {
+            return field(index, 0);
+        }
+
+        public long target(long index) {
+            return field(index, 1);
+        }
+
+        public long fingerprint(long index) {
+            return field(index, 2);
+        }
+
+        private long field(long index, int field) {
+            return chunks.get((int) (index >>> CHUNK_BITS)).get((int) (index & ((1 << CHUNK_BITS) - 1)) * RECORD_LONGS + field);
+        }
+
+        /**
+         * Marks a previous record as still in the source.
+         */
+        public void seen(long index) {
+            set(seen, index);
+        }
+
+        /**
+         * Records an entity in the new state.
+         *
+         * @param index the index of its previous record, or -1 if it was created by this sync
+         */
+        public void record(long index, long sourceId, long targetId, long fingerprint) {
+            if (index >= 0) {
+                set(recorded, index);
+            } else if (created != null) {
+                created.put(sourceId, targetId);
+            }
+            append(sourceId, targetId, fingerprint);
+        }
+
+        private synchronized void append(long sourceId, long targetId, long fingerprint) {
+            try {
+                out.writeLong(sourceId);
+                out.writeLong(targetId);
+                out.writeLong(fingerprint);
+                recordCount++;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to write the " + kind + " sync state " + newFile, e);
+            }
+        }
+
+        /**
+         * Forgets a previous record whose entity was deleted from the target, so that it is not deleted again should
+         * the sync fail, its target id having possibly been reused since.
+         */
+        public void forget(long index) {
+            set(recorded, index);
+        }
+
+        /**
+         * @return the index of the first previous record from the given one not seen in the source, which was deleted
+         * from it, or -1 if there is none
+         */
+        public long nextUnseen(long from) {
+            for (long i = from; i < previousCount; i++) {
+                if (!isSet(seen, i)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return the target node ids, of the previous sync or created by this one
+         */
+        public NodeIdLookup mapping() {
+            return new NodeIdLookup() {
+                @Override
+                public long find(long sourceNodeId) {
+                    // an entity created again by this sync, having been deleted from the target, has a new target id
+                    long targetId = created == null ? NO_MAPPING : created.get(sourceNodeId);
+                    if (targetId != LongLongHashTable.NOT_FOUND) {
+                        return targetId;
+                    }
+                    long i = index.get(sourceNodeId);
+                    return i == LongLongHashTable.NOT_FOUND ? NO_MAPPING : target(i);
+                }
+
+                @Override
+                public long size() {
+                    return previousCount + (created == null ? 0 : created.size());
+                }
+
+                @Override
+                public long memoryUsage() {
+                    return index.memoryUsage() + (created == null ? 0 : created.memoryUsage());
+                }
+            };
+        }
+
+        public synchronized long recordCount() {
+            return recordCount;
+        }
+
+        synchronized void commit(boolean complete) {
+            if (!complete) {
+                for (long i = 0; i < previousCount; i++) {
+                    if (!isSet(recorded, i)) {
+                        append(source(i), target(i), fingerprint(i));
+                    }
+                }
+            }
+            try {
+                out.flush();
+                out.close();
+                try (var channel = FileChannel.open(newFile, WRITE)) {
+                    channel.force(true);
+                }
+                Files.move(newFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                committed = true;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to write the " + kind + " sync state " + file, e);
+            }
+        }
+
+        private static void set(AtomicLongArray bits, long index) {
+            long mask = 1L << (index & 63);
+            bits.getAndAccumulate((int) (index >>> 6), mask, (current, bit) -> current | bit);
+        }
+
+        private static boolean isSet(AtomicLongArray bits, long index) {
+            return (bits.get((int) (index >>> 6)) & (1L << (index & 63))) != 0;
+        }
+
+        @Override
+        public synchronized void close() {
+            try {
+                out.close();
+                if (!committed) {
+                    Files.deleteIfExists(newFile);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to close the " + kind + " sync state " + newFile, e);
+            } finally {
+                index.close();
+                storage.close();
+                if (created != null) {
+                    created.close();
+                }
+                createdStorage.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package org.neo4j.dbcopy.io;
+
+import org.neo4j.driver.Value;
+import org.neo4j.driver.Values;
+import org.neo4j.driver.types.IsoDuration;
+import org.neo4j.driver.types.Point;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of property values for the local files written by the tool.
+ * Integers are zig-zag varints, strings are UTF-8, temporal and spatial values keep all their components.
+ */
+public final class ValueCodec {
+
+    private static final int NULL = 0;
+    private static final int FALSE = 1;
+    private static final int TRUE = 2;
+    private static final int INTEGER = 3;
+    private static final int FLOAT = 4;
+    private static final int STRING = 5;
+    private static final int BYTES = 6;
+    private static final int LIST = 7;
+    private static final int MAP = 8;
+    private static final int DATE = 9;
+    private static final int LOCAL_TIME = 10;
+    private static final int TIME = 11;
+    private static final int LOCAL_DATE_TIME = 12;
+    private static final int DATE_TIME = 13;
+    private static final int DURATION = 14;
+    private static final int POINT_2D = 15;
+    private static final int POINT_3D = 16;
+
+    private ValueCodec() {
+    }
+
+    public static void writeValue(DataOutput out, Value value) throws IOException {
+        writeObject(out, value.asObject());
+    }
+
+    public static Value readValue(DataInput in) throws IOException {
+        return Values.value(readObject(in));
+    }
+
+    private static void writeObject(DataOutput out, Object object) throws IOException {
+        if (object == null) {
+            out.writeByte(NULL);
+        } else if (object instanceof Boolean bool) {
+            out.writeByte(bool ? TRUE : FALSE);
+        } else if (object instanceof Long number) {
+            out.writeByte(INTEGER);
+            writeSignedVarLong(out, number);
+        } else if (object instanceof Double number) {
+            out.writeByte(FLOAT);
+            out.writeDouble(number);
+        } else if (object instanceof String string) {
+            out.writeByte(STRING);
+            writeString(out, string);
+        } else if (object instanceof byte[] bytes) {
+            out.writeByte(BYTES);
+            writeVarLong(out, bytes.length);
+            out.write(bytes);
+        } else if (object instanceof List<?> list) {
+            out.writeByte(LIST);
+            writeVarLong(out, list.size());
+            for (Object item : list) {
+                writeObject(out, item);
+            }
+        } else if (object instanceof Map<?, ?> map) {
+            out.writeByte(MAP);
+            writeVarLong(out, map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeString(out, (String) entry.getKey());
+                writeObject(out, entry.getValue());
+            }
+        } else if (object instanceof LocalDate date) {
+            out.writeByte(DATE);
+            writeSignedVarLong(out, date.toEpochDay());
+        } else if (object instanceof LocalTime time) {
+            out.writeByte(LOCAL_TIME);
+            writeVarLong(out, time.toNanoOfDay());
+        } else if (object instanceof OffsetTime time) {
+            out.writeByte(TIME);
+            writeVarLong(out, time.toLocalTime().toNanoOfDay());
+            writeSignedVarLong(out, time.getOffset().getTotalSeconds());
+        } else if (object instanceof LocalDateTime dateTime) {
+            out.writeByte(LOCAL_DATE_TIME);
+            writeSignedVarLong(out, dateTime.toEpochSecond(ZoneOffset.UTC));
+            writeVarLong(out, dateTime.getNano());
+        } else if (object instanceof ZonedDateTime dateTime) {
+            out.writeByte(DATE_TIME);
+            writeSignedVarLong(out, dateTime.toEpochSecond());
+            writeVarLong(out, dateTime.getNano());
+            writeString(out, dateTime.getZone().getId());
+        } else if (object instanceof IsoDuration duration) {
+            out.writeByte(DURATION);
+            writeSignedVarLong(out, duration.months());
+            writeSignedVarLong(out, duration.days());
+            writeSignedVarLong(out, duration.seconds());
+            writeSignedVarLong(out, duration.nanoseconds());
+        } else if (object instanceof Point point) {
+            boolean is3d = !Double.isNaN(point.z());
+            out.writeByte(is3d ? POINT_3D : POINT_2D);
+            writeVarLong(out, point.srid());
+            out.writeDouble(point.x());
+            out.writeDouble(point.y());
+            if (is3d) {
+                out.writeDouble(point.z());
+            }
+        } else {
+            throw new IllegalArgumentException("Unsupported value type " + object.getClass().getName());
+        }
+    }
+
+    private static Object readObject(DataInput in) throws IOException {
+        int type = in.readByte();
+        return switch (type) {
+            case NULL -> null;
+            case FALSE -> false;
+            case TRUE -> true;
+            case INTEGER -> readSignedVarLong(in);
+            case FLOAT -> in.readDouble();
+            case STRING -> readString(in);
+            case BYTES -> {
+                byte[] bytes = new byte[(int) readVarLong(in)];
+                in.readFully(bytes);
+                yield bytes;
+            }
+            case LIST -> {
+                int size = (int) readVarLong(in);
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readObject(in));
+                }
+                yield list;
+            }
+            case MAP -> {
+                int size = (int) readVarLong(in);
+                Map<String, Object> map = new LinkedHashMap<>();
+                for (int i = 0; i < size; i++) {
+                    map.put(readString(in), readObject(in));
+                }
+                yield map;
+            }
+            case DATE -> LocalDate.ofEpochDay(readSignedVarLong(in));
+            case LOCAL_TIME -> LocalTime.ofNanoOfDay(readVarLong(in));
+            case TIME -> OffsetTime.of(LocalTime.ofNanoOfDay(readVarLong(in)), ZoneOffset.ofTotalSeconds((int) readSignedVarLong(in)));
+            case LOCAL_DATE_TIME -> LocalDateTime.ofEpochSecond(readSignedVarLong(in), (int) readVarLong(in), ZoneOffset.UTC);
+            case DATE_TIME -> {
+                Instant instant = Instant.ofEpochSecond(readSignedVarLong(in), readVarLong(in));
+                yield ZonedDateTime.ofInstant(instant, ZoneId.of(readString(in)));
+            }
+            case DURATION -> Values.isoDuration(readSignedVarLong(in), readSignedVarLong(in), readSignedVarLong(in), (int) readSignedVarLong(in)).asIsoDuration();
+            case POINT_2D -> Values.point((int) readVarLong(in), in.readDouble(), in.readDouble()).asPoint();
+            case POINT_3D -> Values.point((int) readVarLong(in), in.readDouble(), in.readDouble(), in.readDouble()).asPoint();
+            default -> throw new IOException("Unknown value type " + type);
+        };
+    }
+
+    public static void writeString(DataOutput out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    public static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[(int) readVarLong(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    public static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    public static void writeSignedVarLong(DataOutput out, long value) throws IOException {
+        writeVarLong(out, (value << 1) ^ (value >> 63));
+    }
+
+    public static long readSignedVarLong(DataInput in) throws IOException {
+        long value = readVarLong(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
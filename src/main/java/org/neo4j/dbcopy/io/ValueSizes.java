@@ -0,0 +1,52 @@
+package org.neo4j.dbcopy.io;
+
+import org.neo4j.driver.Value;
+import org.neo4j.driver.types.TypeSystem;
+
+/**
+ * Cheap estimate of the size of property values once serialized in a bolt message, used to bound the size of the
+ * batches and of the data being written. Strings are counted one byte per character.
+ */
+public final class ValueSizes {
+
+    private static final TypeSystem TYPES = TypeSystem.getDefault();
+
+    private static final int HEADER = 5;
+    private static final int SCALAR = 9;
+    private static final int STRUCTURE = 32;
+
+    private ValueSizes() {
+    }
+
+    public static long estimate(Value value) {
+        if (value.hasType(TYPES.STRING())) {
+            return HEADER + value.asString().length();
+        }
+        if (value.hasType(TYPES.BYTES())) {
+            return HEADER + value.size();
+        }
+        if (value.hasType(TYPES.LIST())) {
+            long size = HEADER;
+            for (Value element : value.values()) {
+                size += estimate(element);
+            }
+            return size;
+        }
+        if (value.hasType(TYPES.MAP())) {
+            long size = HEADER;
+            for (String key : value.keys()) {
+                size += estimate(key) + estimate(value.get(key));
+            }
+            return size;
+        }
+        if (value.hasType(TYPES.NULL()) || value.hasType(TYPES.BOOLEAN()) || value.hasType(TYPES.INTEGER()) || value.hasType(TYPES.FLOAT())) {
+            return SCALAR;
+        }
+        // temporal and spatial values
+        return STRUCTURE;
+    }
+
+    public static long estimate(String string) {
+        return HEADER + string.length();
+    }
+}
@@ -0,0 +1,37 @@
+package org.neo4j.dbcopy.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("org.neo4j.dbcopy.BatchSealed")
+@Label("Batch Sealed")
+@Category({"Neo4j DB Copy", "Buffer"})
+@Description("A batch of entities is complete, and waits to be written")
+@StackTrace(false)
+public class BatchSealedEvent extends Event {
+
+    @Label("Stage")
+    String stage;
+
+    @Label("Entities")
+    int entities;
+
+    @Label("Estimated Size")
+    @DataAmount
+    long estimatedBytes;
+
+    public static void emit(String stage, int entities, long estimatedBytes) {
+        var event = new BatchSealedEvent();
+        if (event.shouldCommit()) {
+            event.stage = stage;
+            event.entities = entities;
+            event.estimatedBytes = estimatedBytes;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package org.neo4j.dbcopy.jfr;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.List;
+
+/**
+ * Flight recording of a whole run, with the JDK "profile" settings and the copy events, written to a file at the end.
+ */
+public class FlightRecording implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FlightRecording.class);
+
+    private static final List<Class<? extends jdk.jfr.Event>> EVENTS = List.of(PartitionReadEvent.class, BatchSealedEvent.class,
+            WriteTransactionEvent.class, MappingLookupsEvent.class, RetryEvent.class);
+
+    private final Recording recording;
+    private final Path file;
+
+    private FlightRecording(Recording recording, Path file) {
+        this.recording = recording;
+        this.file = file;
+    }
+
+    public static FlightRecording start(Path file) {
+        try {
+            var recording = new Recording(Configuration.getConfiguration("profile"));
+            recording.setName("neo4j-db-copy");
+            recording.setToDisk(true);
+            recording.setDestination(file);
+            EVENTS.forEach(event -> recording.enable(event).withoutThreshold());
+            recording.start();
+            LOG.info("Flight recording started, it will be written to {}", file);
+            return new FlightRecording(recording, file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to start the flight recording to " + file, e);
+        } catch (ParseException e) {
+            throw new IllegalStateException("Unable to read the JFR profile settings", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        recording.stop();
+        recording.close();
+        LOG.info("Flight recording written to {}", file);
+    }
+}
@@ -0,0 +1,30 @@
+package org.neo4j.dbcopy.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Lookups are too many and too short to be recorded one by one, an event covers those of a whole batch.
+ */
+@Name("org.neo4j.dbcopy.MappingLookups")
+@Label("Mapping Lookups")
+@Category({"Neo4j DB Copy", "Write"})
+@Description("Source to target node id lookups of the relationships of a batch, along with the building of their rows")
+@StackTrace(false)
+public class MappingLookupsEvent extends Event {
+
+    @Label("Lookups")
+    long lookups;
+
+    public void commit(long lookups) {
+        end();
+        if (shouldCommit()) {
+            this.lookups = lookups;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package org.neo4j.dbcopy.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import reactor.core.publisher.Flux;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+@Name("org.neo4j.dbcopy.PartitionRead")
+@Label("Partition Read")
+@Category({"Neo4j DB Copy", "Read"})
+@Description("Read of a partition of nodes or relationships from the source database, from the query to the last record")
+@StackTrace(false)
+public class PartitionReadEvent extends Event {
+
+    @Label("Stage")
+    String stage;
+
+    @Label("Partition")
+    String partition;
+
+    @Label("Entities")
+    long entities;
+
+    @Label("Outcome")
+    String outcome;
+
+    /**
+     * Records an event per subscription to the partition, so per attempt when the read is retried.
+     */
+    public static <T> Flux<T> record(Flux<T> partitionRead, String stage, Object partition) {
+        return Flux.defer(() -> {
+            var event = new PartitionReadEvent();
+            if (!event.isEnabled()) {
+                return partitionRead;
+            }
+            var entities = new AtomicLong();
+            event.begin();
+            return partitionRead
+                    .doOnNext(it -> entities.incrementAndGet())
+                    .doFinally(signal -> {
+                        event.end();
+                        if (event.shouldCommit()) {
+                            event.stage = stage;
+                            event.partition = String.valueOf(partition);
+                            event.entities = entities.get();
+                            event.outcome = signal.name();
+                            event.commit();
+                        }
+                    });
+        });
+    }
+}
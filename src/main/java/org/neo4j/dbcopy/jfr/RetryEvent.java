@@ -0,0 +1,35 @@
+package org.neo4j.dbcopy.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("org.neo4j.dbcopy.Retry")
+@Label("Retry")
+@Category({"Neo4j DB Copy"})
+@Description("A partition read or a batch write is retried after an error")
+@StackTrace(false)
+public class RetryEvent extends Event {
+
+    @Label("Stage")
+    String stage;
+
+    @Label("Attempt")
+    long attempt;
+
+    @Label("Error")
+    String error;
+
+    public static void emit(String stage, long attempt, Throwable error) {
+        var event = new RetryEvent();
+        if (event.shouldCommit()) {
+            event.stage = stage;
+            event.attempt = attempt;
+            event.error = error.getClass().getSimpleName() + ": " + error.getMessage();
+            event.commit();
+        }
+    }
+}
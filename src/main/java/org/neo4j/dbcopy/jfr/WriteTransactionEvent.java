@@ -0,0 +1,67 @@
+package org.neo4j.dbcopy.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SignalType;
+
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+@Name("org.neo4j.dbcopy.WriteTransaction")
+@Label("Write Transaction")
+@Category({"Neo4j DB Copy", "Write"})
+@Description("Write of a batch in the target database, from the transaction start to its commit, driver retries included")
+@StackTrace(false)
+public class WriteTransactionEvent extends Event {
+
+    @Label("Stage")
+    String stage;
+
+    @Label("Rows")
+    int rows;
+
+    @Label("Estimated Size")
+    @DataAmount
+    long estimatedBytes;
+
+    @Label("Attempts")
+    @Description("Number of times the driver ran the transaction function")
+    int attempts;
+
+    @Label("Statement")
+    String statement;
+
+    @Label("Committed")
+    boolean committed;
+
+    /**
+     * @param estimatedBytes only called when the event is recorded
+     */
+    public static <T> Flux<T> record(Flux<T> transaction, String stage, int rows, LongSupplier estimatedBytes, IntSupplier attempts, Object statement) {
+        return Flux.defer(() -> {
+            var event = new WriteTransactionEvent();
+            if (!event.isEnabled()) {
+                return transaction;
+            }
+            event.begin();
+            return transaction.doFinally(signal -> {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.stage = stage;
+                    event.rows = rows;
+                    event.estimatedBytes = estimatedBytes.getAsLong();
+                    event.attempts = attempts.getAsInt();
+                    event.statement = String.valueOf(statement);
+                    event.committed = signal == SignalType.ON_COMPLETE;
+                    event.commit();
+                }
+            });
+        });
+    }
+}
@@ -0,0 +1,45 @@
+package org.neo4j.dbcopy.mapping;
+
+import org.neo4j.dbcopy.MappingContext;
+
+public class HashMappingContext implements MappingContext {
+
+    private final LongStorage storage;
+    private final LongLongHashTable table;
+
+    public HashMappingContext(long expectedSize, LongStorage storage) {
+        this.storage = storage;
+        this.table = new LongLongHashTable(expectedSize, storage);
+    }
+
+    @Override
+    public void put(long sourceNodeId, long targetNodeId) {
+        table.put(sourceNodeId, targetNodeId);
+    }
+
+    @Override
+    public long find(long sourceNodeId) {
+        return table.get(sourceNodeId);
+    }
+
+    @Override
+    public long size() {
+        return table.size();
+    }
+
+    @Override
+    public long memoryUsage() {
+        return table.memoryUsage();
+    }
+
+    @Override
+    public void close() {
+        table.close();
+        storage.close();
+    }
+
+    @Override
+    public String toString() {
+        return "HashMappingContext{storage=" + storage + ", size=" + size() + ", memoryUsage=" + memoryUsage() + '}';
+    }
+}
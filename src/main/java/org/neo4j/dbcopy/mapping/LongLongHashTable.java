@@ -0,0 +1,182 @@
+package org.neo4j.dbcopy.mapping;
+
+import java.nio.LongBuffer;
+
+/**
+ * Open-addressing (linear probing) hash table from positive long keys to positive long values.
+ * <p>
+ * The table is split in segments, each one guarded by its own lock for writes, so that concurrent batches do not
+ * contend much. Reads are lock-free and allocation-free. Keys and values are stored interleaved in a
+ * {@link LongBuffer}, shifted by one so that a zero-filled buffer represents an empty table, which makes the backing
+ * storage interchangeable (heap, direct or memory-mapped buffers). Each entry uses 16 bytes per slot, so between
+ * 16 / 0.75 and 16 / 0.375 bytes per entry depending on how full the table is.
+ */
+public final class LongLongHashTable implements AutoCloseable {
+
+    public static final long NOT_FOUND = -1L;
+
+    private static final int SEGMENT_BITS = 6;
+    private static final int SEGMENT_COUNT = 1 << SEGMENT_BITS;
+    private static final int MIN_SEGMENT_CAPACITY = 1 << 6;
+    private static final double LOAD_FACTOR = 0.75;
+
+    private final LongStorage storage;
+    private final Segment[] segments = new Segment[SEGMENT_COUNT];
+
+    public LongLongHashTable(long expectedSize, LongStorage storage) {
+        this.storage = storage;
+        int maxCapacity = Integer.highestOneBit(storage.maxBufferSize() / 2);
+        long perSegment = (long) Math.ceil(Math.max(0, expectedSize) / (double) SEGMENT_COUNT / LOAD_FACTOR);
+        int capacity = (int) Math.min(maxCapacity, Math.max(MIN_SEGMENT_CAPACITY, nextPowerOfTwo(perSegment)));
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment(capacity, maxCapacity);
+        }
+    }
+
+    public void put(long key, long value) {
+        if (key < 0 || value < 0) {
+            throw new IllegalArgumentException("Only positive keys and values are supported, got " + key + " -> " + value);
+        }
+        long hash = mix(key);
+        segment(hash).put(key + 1, value + 1, hash);
+    }
+
+    /**
+     * @return the value associated to the key, or {@link #NOT_FOUND}
+     */
+    public long get(long key) {
+        if (key < 0) {
+            return NOT_FOUND;
+        }
+        long hash = mix(key);
+        return segment(hash).get(key + 1, hash) - 1;
+    }
+
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size;
+        }
+        return size;
+    }
+
+    public long memoryUsage() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += (long) segment.slots.capacity() * Long.BYTES;
+        }
+        return bytes;
+    }
+
+    @Override
+    public void close() {
+        for (Segment segment : segments) {
+            segment.release();
+        }
+    }
+
+    private Segment segment(long hash) {
+        return segments[(int) (hash >>> (Long.SIZE - SEGMENT_BITS))];
+    }
+
+    private static long nextPowerOfTwo(long value) {
+        return value <= 1 ? 1 : Long.highestOneBit(value - 1) << 1;
+    }
+
+    // finalizer of SplitMix64, spreads sequential ids over the whole table
+    private static long mix(long key) {
+        long z = key;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private final class Segment {
+
+        private final int maxCapacity;
+        // interleaved stored keys and values, swapped when growing
+        private volatile LongBuffer slots;
+        // written after every update, so that reading it first publishes the slots content to readers
+        private volatile int size;
+
+        Segment(int capacity, int maxCapacity) {
+            this.maxCapacity = maxCapacity;
+            this.slots = storage.allocate(capacity * 2);
+        }
+
+        synchronized void put(long storedKey, long storedValue, long hash) {
+            if (size >= threshold(slots)) {
+                grow();
+            }
+            LongBuffer current = slots;
+            int mask = current.capacity() / 2 - 1;
+            int index = (int) hash & mask;
+            while (true) {
+                long key = current.get(index * 2);
+                if (key == 0) {
+                    current.put(index * 2 + 1, storedValue);
+                    current.put(index * 2, storedKey);
+                    size = size + 1;
+                    return;
+                }
+                if (key == storedKey) {
+                    current.put(index * 2 + 1, storedValue);
+                    size = size;
+                    return;
+                }
+                index = (index + 1) & mask;
+            }
+        }
+
+        long get(long storedKey, long hash) {
+            if (size == 0) {
+                return 0;
+            }
+            LongBuffer current = slots;
+            int mask = current.capacity() / 2 - 1;
+            int index = (int) hash & mask;
+            while (true) {
+                long key = current.get(index * 2);
+                if (key == storedKey) {
+                    return current.get(index * 2 + 1);
+                }
+                if (key == 0) {
+                    return 0;
+                }
+                index = (index + 1) & mask;
+            }
+        }
+
+        private int threshold(LongBuffer buffer) {
+            int capacity = buffer.capacity() / 2;
+            return capacity == maxCapacity ? capacity - 1 : (int) (capacity * LOAD_FACTOR);
+        }
+
+        private void grow() {
+            LongBuffer current = slots;
+            int capacity = current.capacity() / 2;
+            if (capacity >= maxCapacity) {
+                throw new IllegalStateException("Mapping table is full, " + size() + " entries stored in " + storage + " storage");
+            }
+            LongBuffer grown = storage.allocate(capacity * 4);
+            int mask = capacity * 2 - 1;
+            for (int i = 0; i < capacity; i++) {
+                long key = current.get(i * 2);
+                if (key != 0) {
+                    int index = (int) mix(key - 1) & mask;
+                    while (grown.get(index * 2) != 0) {
+                        index = (index + 1) & mask;
+                    }
+                    grown.put(index * 2 + 1, current.get(i * 2 + 1));
+                    grown.put(index * 2, key);
+                }
+            }
+            slots = grown;
+            storage.release(current);
+        }
+
+        synchronized void release() {
+            storage.release(slots);
+        }
+    }
+}
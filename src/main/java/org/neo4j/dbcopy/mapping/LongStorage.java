@@ -0,0 +1,51 @@
+package org.neo4j.dbcopy.mapping;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+
+/**
+ * Allocates the zero-filled long buffers backing the primitive mapping tables.
+ */
+public interface LongStorage extends AutoCloseable {
+
+    LongStorage HEAP = new LongStorage() {
+        @Override
+        public LongBuffer allocate(int size) {
+            return LongBuffer.wrap(new long[size]);
+        }
+
+        @Override
+        public String toString() {
+            return "heap";
+        }
+    };
+
+    /**
+     * Direct buffers are accounted against -XX:MaxDirectMemorySize, which defaults to the max heap size.
+     */
+    LongStorage OFF_HEAP = new LongStorage() {
+        @Override
+        public LongBuffer allocate(int size) {
+            return ByteBuffer.allocateDirect(size * Long.BYTES).order(ByteOrder.nativeOrder()).asLongBuffer();
+        }
+
+        @Override
+        public String toString() {
+            return "off-heap";
+        }
+    };
+
+    LongBuffer allocate(int size);
+
+    default void release(LongBuffer buffer) {
+    }
+
+    default int maxBufferSize() {
+        return Integer.MAX_VALUE / Long.BYTES;
+    }
+
+    @Override
+    default void close() {
+    }
+}
@@ -0,0 +1,90 @@
+package org.neo4j.dbcopy.mapping;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Backs each buffer with its own memory-mapped file in a scratch directory, so that the OS page cache keeps the
+ * hot part of the tables in memory while the rest stays on disk.
+ */
+public class MappedLongStorage implements LongStorage {
+
+    private final Path directory;
+    private final AtomicInteger fileCounter = new AtomicInteger();
+    private final Map<LongBuffer, Path> files = new IdentityHashMap<>();
+
+    public MappedLongStorage(Path scratchDirectory) {
+        try {
+            Files.createDirectories(scratchDirectory);
+            this.directory = Files.createTempDirectory(scratchDirectory, "neo4j-db-copy-mapping-");
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to create the mapping directory in " + scratchDirectory, e);
+        }
+    }
+
+    @Override
+    public LongBuffer allocate(int size) {
+        Path file = directory.resolve("segment-" + fileCounter.getAndIncrement() + ".bin");
+        try (var channel = FileChannel.open(file, CREATE_NEW, READ, WRITE)) {
+            LongBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) size * Long.BYTES)
+                    .order(ByteOrder.nativeOrder())
+                    .asLongBuffer();
+            synchronized (files) {
+                files.put(buffer, file);
+            }
+            return buffer;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to map file " + file, e);
+        }
+    }
+
+    @Override
+    public void release(LongBuffer buffer) {
+        Path file;
+        synchronized (files) {
+            file = files.remove(buffer);
+        }
+        // the mapping itself is released when the buffer gets garbage collected
+        if (file != null) {
+            delete(file);
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (files) {
+            files.values().forEach(MappedLongStorage::delete);
+            files.clear();
+        }
+        delete(directory);
+    }
+
+    Path directory() {
+        return directory;
+    }
+
+    private static void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            path.toFile().deleteOnExit();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "disk (" + directory + ")";
+    }
+}
@@ -0,0 +1,38 @@
+package org.neo4j.dbcopy.mapping;
+
+import org.neo4j.dbcopy.CopyOptions;
+import org.neo4j.dbcopy.MappingContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public final class MappingContexts {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MappingContexts.class);
+
+    private MappingContexts() {
+    }
+
+    public static MappingContext create(long expectedNodeCount, CopyOptions copyOptions) {
+        var storage = storage(expectedNodeCount, copyOptions);
+        LOG.info("Using {} storage for the mapping of {} nodes", storage, expectedNodeCount);
+        if (copyOptions.rangeEncodedMapping()) {
+            // the fallback only holds the mappings that are not part of a run, let it grow from a small size
+            return new RangeMappingContext(new HashMappingContext(0, storage));
+        }
+        return new HashMappingContext(expectedNodeCount, storage);
+    }
+
+    /**
+     * @return the storage for the given number of entries, memory-mapped files above the disk mapping threshold
+     */
+    public static LongStorage storage(long expectedNodeCount, CopyOptions copyOptions) {
+        if (expectedNodeCount > copyOptions.diskMappingThreshold()) {
+            return new MappedLongStorage(copyOptions.mappingDirectory());
+        }
+        return switch (copyOptions.mappingStorage()) {
+            case HEAP -> LongStorage.HEAP;
+            case OFF_HEAP -> LongStorage.OFF_HEAP;
+            case DISK -> new MappedLongStorage(copyOptions.mappingDirectory());
+        };
+    }
+}
@@ -0,0 +1,7 @@
+package org.neo4j.dbcopy.mapping;
+
+public enum MappingStorage {
+    HEAP,
+    OFF_HEAP,
+    DISK
+}
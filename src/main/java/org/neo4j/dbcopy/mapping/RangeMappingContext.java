@@ -0,0 +1,188 @@
+package org.neo4j.dbcopy.mapping;
+
+import org.neo4j.dbcopy.MappingContext;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Mapping context storing runs of contiguous source ids mapped to contiguous target ids as (sourceStart, targetStart,
+ * length) triples, sorted by source start so that lookups are a binary search.
+ * <p>
+ * This is what happens when nodes are created in read order in an empty target database: each written batch comes
+ * back as one or a few runs, so the mapping footprint is orders of magnitude smaller than a hash table.
+ * Mappings that are not part of a long enough run are kept in the fallback context.
+ * A source id is expected to be mapped only once.
+ */
+public class RangeMappingContext implements MappingContext {
+
+    static final int MIN_RUN_LENGTH = 8;
+    private static final int FIELDS = 3;
+
+    private final MappingContext fallback;
+    private final StampedLock lock = new StampedLock();
+    // interleaved sourceStart, targetStart, length
+    private long[] runs = new long[FIELDS * 64];
+    private int runCount;
+    private long rangeMappedCount;
+
+    public RangeMappingContext(MappingContext fallback) {
+        this.fallback = fallback;
+    }
+
+    @Override
+    public MappingContext add(List<Mapping> mappings) {
+        int runStart = 0;
+        for (int i = 1; i <= mappings.size(); i++) {
+            if (i == mappings.size() || !follows(mappings.get(i - 1), mappings.get(i))) {
+                addRun(mappings, runStart, i);
+                runStart = i;
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public void put(long sourceNodeId, long targetNodeId) {
+        fallback.put(sourceNodeId, targetNodeId);
+    }
+
+    @Override
+    public long find(long sourceNodeId) {
+        long stamp = lock.tryOptimisticRead();
+        long targetId = findInRuns(sourceNodeId);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                targetId = findInRuns(sourceNodeId);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return targetId != NO_MAPPING ? targetId : fallback.find(sourceNodeId);
+    }
+
+    @Override
+    public long size() {
+        long stamp = lock.readLock();
+        try {
+            return rangeMappedCount + fallback.size();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public long memoryUsage() {
+        long stamp = lock.readLock();
+        try {
+            return (long) runs.length * Long.BYTES + fallback.memoryUsage();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    int runCount() {
+        return runCount;
+    }
+
+    @Override
+    public void close() {
+        fallback.close();
+    }
+
+    private static boolean follows(Mapping previous, Mapping mapping) {
+        return mapping.sourceNodeId() == previous.sourceNodeId() + 1 && mapping.targetNodeId() == previous.targetNodeId() + 1;
+    }
+
+    private void addRun(List<Mapping> mappings, int from, int to) {
+        if (to - from < MIN_RUN_LENGTH) {
+            for (int i = from; i < to; i++) {
+                fallback.put(mappings.get(i).sourceNodeId(), mappings.get(i).targetNodeId());
+            }
+            return;
+        }
+        long stamp = lock.writeLock();
+        try {
+            insertRun(mappings.get(from).sourceNodeId(), mappings.get(from).targetNodeId(), to - from);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void insertRun(long sourceStart, long targetStart, long length) {
+        rangeMappedCount += length;
+        int position = insertionPoint(sourceStart);
+        if (position > 0) {
+            int previous = (position - 1) * FIELDS;
+            if (runs[previous] + runs[previous + 2] == sourceStart && runs[previous + 1] + runs[previous + 2] == targetStart) {
+                runs[previous + 2] += length;
+                mergeWithNext(position - 1);
+                return;
+            }
+        }
+        if (runCount * FIELDS == runs.length) {
+            runs = Arrays.copyOf(runs, runs.length * 2);
+        }
+        System.arraycopy(runs, position * FIELDS, runs, (position + 1) * FIELDS, (runCount - position) * FIELDS);
+        runs[position * FIELDS] = sourceStart;
+        runs[position * FIELDS + 1] = targetStart;
+        runs[position * FIELDS + 2] = length;
+        runCount++;
+        mergeWithNext(position);
+    }
+
+    private void mergeWithNext(int run) {
+        if (run + 1 >= runCount) {
+            return;
+        }
+        int current = run * FIELDS;
+        int next = current + FIELDS;
+        if (runs[current] + runs[current + 2] == runs[next] && runs[current + 1] + runs[current + 2] == runs[next + 1]) {
+            runs[current + 2] += runs[next + 2];
+            System.arraycopy(runs, next + FIELDS, runs, next, (runCount - run - 2) * FIELDS);
+            runCount--;
+        }
+    }
+
+    // index of the first run starting after the source id
+    private int insertionPoint(long sourceId) {
+        int low = 0;
+        int high = runCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (runs[middle * FIELDS] <= sourceId) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    // may run concurrently with a writer when called optimistically, hence the defensive bounds
+    private long findInRuns(long sourceId) {
+        long[] currentRuns = runs;
+        int low = 0;
+        int high = Math.min(runCount, currentRuns.length / FIELDS) - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int offset = middle * FIELDS;
+            long start = currentRuns[offset];
+            if (sourceId < start) {
+                high = middle - 1;
+            } else if (sourceId >= start + currentRuns[offset + 2]) {
+                low = middle + 1;
+            } else {
+                return currentRuns[offset + 1] + (sourceId - start);
+            }
+        }
+        return NO_MAPPING;
+    }
+
+    @Override
+    public String toString() {
+        return "RangeMappingContext{runs=" + runCount + ", rangeMapped=" + rangeMappedCount + ", fallback=" + fallback + '}';
+    }
+}
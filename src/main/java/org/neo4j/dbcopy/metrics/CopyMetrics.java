@@ -0,0 +1,194 @@
+package org.neo4j.dbcopy.metrics;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Metrics of a copy, per stage, along with the mapping size and the client process resources,
+ * so that a slow copy can be told bound by the source, the target or the client.
+ * <p>
+ * Roughly, writers mostly idle with short buffer waits point at the source, writers busy at their maximum concurrency
+ * with long buffer waits point at the target, and a high process CPU load or GC time points at the client.
+ */
+public final class CopyMetrics {
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private final Instant startedAt = Instant.now();
+    private final long startNanos = System.nanoTime();
+    private final long gcTimeAtStart = gcTimeMillis();
+    private final StageMetrics nodes = new StageMetrics("nodes");
+    private final StageMetrics relationships = new StageMetrics("relationships");
+    private volatile LongSupplier mappingSize = () -> 0;
+    private volatile LongSupplier mappingMemoryUsage = () -> 0;
+    private double cpuLoadSum = 0;
+    private long cpuLoadSamples = 0;
+
+    public StageMetrics nodes() {
+        return nodes;
+    }
+
+    public StageMetrics relationships() {
+        return relationships;
+    }
+
+    public void mapping(LongSupplier size, LongSupplier memoryUsage) {
+        this.mappingSize = size;
+        this.mappingMemoryUsage = memoryUsage;
+    }
+
+    /**
+     * Keeps the current mapping size and memory usage, the mapping being about to be closed.
+     */
+    public void freezeMapping() {
+        long size = mappingSize.getAsLong();
+        long memoryUsage = mappingMemoryUsage.getAsLong();
+        mapping(() -> size, () -> memoryUsage);
+    }
+
+    public Duration elapsed() {
+        return Duration.ofNanos(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Samples the values only meaningful as averages over time.
+     */
+    void sample() {
+        nodes.sampleInFlight();
+        relationships.sampleInFlight();
+        double cpuLoad = processCpuLoad();
+        if (cpuLoad >= 0) {
+            synchronized (this) {
+                cpuLoadSum += cpuLoad;
+                cpuLoadSamples++;
+            }
+        }
+    }
+
+    public Map<String, Object> report(String status, Throwable error) {
+        double seconds = elapsed().toNanos() / 1e9;
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("status", status);
+        if (error != null) {
+            report.put("error", String.valueOf(error.getMessage()));
+        }
+        report.put("startedAt", startedAt.toString());
+        report.put("durationSeconds", seconds);
+        for (StageMetrics stage : List.of(nodes, relationships)) {
+            Map<String, Object> metrics = new LinkedHashMap<>();
+            metrics.put("total", stage.total());
+            metrics.put("read", stage.read());
+            metrics.put("written", stage.written());
+            metrics.put("readPerSecond", stage.read() / seconds);
+            metrics.put("writtenPerSecond", stage.written() / seconds);
+            metrics.put("batches", stage.batches());
+            metrics.put("retries", stage.retries());
+            metrics.put("maxConcurrency", stage.maxConcurrency());
+            metrics.put("averageInFlight", stage.averageInFlight());
+            metrics.put("writeLatencyMillis", histogram(stage.writeLatency()));
+            metrics.put("bufferWaitMillis", histogram(stage.bufferWait()));
+            report.put(stage.name(), metrics);
+        }
+        Map<String, Object> mapping = new LinkedHashMap<>();
+        mapping.put("entries", mappingSize.getAsLong());
+        mapping.put("memoryBytes", mappingMemoryUsage.getAsLong());
+        report.put("mapping", mapping);
+        Map<String, Object> client = new LinkedHashMap<>();
+        client.put("averageProcessCpuLoad", averageCpuLoad());
+        client.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+        client.put("gcTimeMillis", gcTimeMillis() - gcTimeAtStart);
+        client.put("maxHeapBytes", Runtime.getRuntime().maxMemory());
+        report.put("client", client);
+        return report;
+    }
+
+    public String toJson(String status, Throwable error) {
+        return Json.write(report(status, error));
+    }
+
+    /**
+     * @return the metrics in the Prometheus text exposition format
+     */
+    public String toPrometheus() {
+        var text = new StringBuilder();
+        type(text, "dbcopy_entities_read_total", "counter");
+        type(text, "dbcopy_entities_written_total", "counter");
+        type(text, "dbcopy_entities_total", "gauge");
+        type(text, "dbcopy_batches_written_total", "counter");
+        type(text, "dbcopy_retries_total", "counter");
+        type(text, "dbcopy_batches_in_flight", "gauge");
+        type(text, "dbcopy_write_latency_seconds", "summary");
+        type(text, "dbcopy_buffer_wait_seconds", "summary");
+        for (StageMetrics stage : List.of(nodes, relationships)) {
+            String labels = "{stage=\"" + stage.name() + "\"}";
+            sample(text, "dbcopy_entities_read_total", labels, stage.read());
+            sample(text, "dbcopy_entities_written_total", labels, stage.written());
+            sample(text, "dbcopy_entities_total", labels, stage.total());
+            sample(text, "dbcopy_batches_written_total", labels, stage.batches());
+            sample(text, "dbcopy_retries_total", labels, stage.retries());
+            sample(text, "dbcopy_batches_in_flight", labels, stage.inFlight());
+            summary(text, "dbcopy_write_latency_seconds", stage.name(), stage.writeLatency());
+            summary(text, "dbcopy_buffer_wait_seconds", stage.name(), stage.bufferWait());
+        }
+        type(text, "dbcopy_mapping_entries", "gauge");
+        sample(text, "dbcopy_mapping_entries", "", mappingSize.getAsLong());
+        type(text, "dbcopy_mapping_memory_bytes", "gauge");
+        sample(text, "dbcopy_mapping_memory_bytes", "", mappingMemoryUsage.getAsLong());
+        return text.toString();
+    }
+
+    private static void type(StringBuilder text, String name, String type) {
+        text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder text, String name, String labels, double value) {
+        text.append(name).append(labels).append(' ').append(String.format(Locale.ROOT, "%s", value)).append('\n');
+    }
+
+    private static void summary(StringBuilder text, String name, String stage, LatencyHistogram histogram) {
+        for (double percentile : PERCENTILES) {
+            sample(text, name, "{stage=\"%s\",quantile=\"%s\"}".formatted(stage, percentile / 100), histogram.percentile(percentile) / 1e9);
+        }
+        sample(text, name + "_sum", "{stage=\"" + stage + "\"}", histogram.sum() / 1e9);
+        sample(text, name + "_count", "{stage=\"" + stage + "\"}", histogram.count());
+    }
+
+    private static Map<String, Object> histogram(LatencyHistogram histogram) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("count", histogram.count());
+        values.put("mean", histogram.mean() / 1e6);
+        for (double percentile : PERCENTILES) {
+            values.put("p" + String.valueOf(percentile).replace(".0", "").replace(".", ""), histogram.percentile(percentile) / 1e6);
+        }
+        values.put("max", histogram.max() / 1e6);
+        return values;
+    }
+
+    private synchronized double averageCpuLoad() {
+        return cpuLoadSamples == 0 ? processCpuLoad() : cpuLoadSum / cpuLoadSamples;
+    }
+
+    /**
+     * @return the CPU load of this process over all the cores, between 0 and 1, or a negative value if not available
+     */
+    private static double processCpuLoad() {
+        if (ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean os) {
+            return os.getProcessCpuLoad();
+        }
+        return -1;
+    }
+
+    private static long gcTimeMillis() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionTime)
+                .filter(time -> time > 0)
+                .sum();
+    }
+}
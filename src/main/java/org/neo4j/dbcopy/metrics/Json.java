@@ -0,0 +1,75 @@
+package org.neo4j.dbcopy.metrics;
+
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Minimal JSON serialization of nested maps, strings, numbers and booleans, enough for the run report.
+ */
+final class Json {
+
+    private Json() {
+    }
+
+    static String write(Map<String, ?> object) {
+        var json = new StringBuilder();
+        write(json, object, 0);
+        return json.append('\n').toString();
+    }
+
+    private static void write(StringBuilder json, Object value, int indent) {
+        if (value == null) {
+            json.append("null");
+        } else if (value instanceof Map<?, ?> map) {
+            json.append('{');
+            Iterator<? extends Map.Entry<?, ?>> entries = map.entrySet().iterator();
+            while (entries.hasNext()) {
+                Map.Entry<?, ?> entry = entries.next();
+                newLine(json, indent + 1);
+                string(json, entry.getKey().toString());
+                json.append(": ");
+                write(json, entry.getValue(), indent + 1);
+                if (entries.hasNext()) {
+                    json.append(',');
+                }
+            }
+            if (!map.isEmpty()) {
+                newLine(json, indent);
+            }
+            json.append('}');
+        } else if (value instanceof Double number) {
+            json.append(number.isNaN() || number.isInfinite() ? "null" : String.format(Locale.ROOT, "%.3f", number));
+        } else if (value instanceof Number || value instanceof Boolean) {
+            json.append(value);
+        } else {
+            string(json, value.toString());
+        }
+    }
+
+    private static void newLine(StringBuilder json, int indent) {
+        json.append('\n').append("  ".repeat(indent));
+    }
+
+    private static void string(StringBuilder json, String string) {
+        json.append('"');
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            switch (c) {
+                case '"' -> json.append("\\\"");
+                case '\\' -> json.append("\\\\");
+                case '\n' -> json.append("\\n");
+                case '\r' -> json.append("\\r");
+                case '\t' -> json.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+                }
+            }
+        }
+        json.append('"');
+    }
+}
@@ -0,0 +1,165 @@
+package org.neo4j.dbcopy.metrics;
+
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes the {@link CopyMetrics} while the copy runs: a live progress line with the rates and the ETA, an optional
+ * HTTP endpoint in the Prometheus format, and an optional JSON report written at the end.
+ */
+public class MetricsReporter implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MetricsReporter.class);
+
+    private static final Duration INTERVAL = Duration.ofSeconds(1);
+    // weight of the last interval in the smoothed rates
+    private static final double RATE_SMOOTHING = 0.3;
+
+    private final CopyMetrics metrics;
+    private final Path reportFile;
+    private final boolean printProgress;
+    private final ScheduledExecutorService scheduler;
+    private final HttpServer server;
+    private final Rate nodeRate = new Rate();
+    private final Rate relationshipRate = new Rate();
+    private boolean closed = false;
+
+    /**
+     * @param reportFile where to write the JSON report, or null
+     * @param port       port of the Prometheus endpoint, or 0 for none
+     */
+    public MetricsReporter(CopyMetrics metrics, Path reportFile, int port, boolean printProgress) {
+        this.metrics = metrics;
+        this.reportFile = reportFile;
+        this.printProgress = printProgress;
+        this.server = port > 0 ? startServer(port) : null;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "neo4j-db-copy-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(() -> {
+            try {
+                metrics.sample();
+                String line = progressLine();
+                if (printProgress) {
+                    System.out.print("\r" + line);
+                } else {
+                    LOG.debug(line);
+                }
+            } catch (RuntimeException e) {
+                LOG.debug("Unable to report the copy progress", e);
+            }
+        }, INTERVAL.toMillis(), INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private HttpServer startServer(int port) {
+        try {
+            HttpServer httpServer = HttpServer.create(new InetSocketAddress(port), 0);
+            httpServer.createContext("/metrics", exchange -> {
+                byte[] body = metrics.toPrometheus().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+            httpServer.start();
+            LOG.info("Metrics available at http://localhost:{}/metrics", port);
+            return httpServer;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to start the metrics endpoint on port " + port, e);
+        }
+    }
+
+    /**
+     * @return the written counts and rates of each stage, with the estimated remaining time
+     */
+    synchronized String progressLine() {
+        double seconds = INTERVAL.toNanos() / 1e9;
+        return stageProgress(metrics.nodes(), nodeRate.update(metrics.nodes().written(), seconds))
+                + " | " + stageProgress(metrics.relationships(), relationshipRate.update(metrics.relationships().written(), seconds));
+    }
+
+    private static String stageProgress(StageMetrics stage, double rate) {
+        long total = stage.total();
+        long written = stage.written();
+        String progress = total > 0
+                ? "%d/%d (%d%%)".formatted(written, total, Math.min(100, written * 100 / total))
+                : String.valueOf(written);
+        String eta = rate > 0 && total > written ? " ETA " + format(Duration.ofSeconds((long) ((total - written) / rate))) : "";
+        return String.format(Locale.ROOT, "%s %s %.0f/s, %d/%d in flight, p99 %d ms%s",
+                stage.name(), progress, rate, stage.inFlight(), stage.maxConcurrency(),
+                stage.writeLatency().percentile(99) / 1_000_000, eta);
+    }
+
+    private static String format(Duration duration) {
+        if (duration.toHours() > 0) {
+            return "%dh%02dm".formatted(duration.toHours(), duration.toMinutesPart());
+        }
+        return "%dm%02ds".formatted(duration.toMinutesPart(), duration.toSecondsPart());
+    }
+
+    /**
+     * Stops publishing, and writes the JSON report.
+     */
+    public void complete(String status, Throwable error) {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        scheduler.shutdownNow();
+        if (server != null) {
+            server.stop(0);
+        }
+        if (printProgress) {
+            System.out.println();
+        }
+        LOG.info("Copy {} in {} - {} nodes and {} relationships written", status, format(metrics.elapsed()),
+                metrics.nodes().written(), metrics.relationships().written());
+        if (reportFile != null) {
+            try {
+                Files.writeString(reportFile, metrics.toJson(status, error));
+                LOG.info("Run report written to {}", reportFile);
+            } catch (IOException e) {
+                LOG.warn("Unable to write the run report to {}", reportFile, e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        complete("interrupted", null);
+    }
+
+    private static final class Rate {
+        private long previous = -1;
+        private double smoothed = 0;
+
+        double update(long count, double seconds) {
+            // the first count may include what a previous run of a resumed copy wrote
+            if (previous >= 0) {
+                double instant = (count - previous) / seconds;
+                smoothed = smoothed == 0 ? instant : RATE_SMOOTHING * instant + (1 - RATE_SMOOTHING) * smoothed;
+            }
+            previous = count;
+            return smoothed;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package org.neo4j.dbcopy.metrics;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of the copy of one kind of entity: read and write counts, batch write latencies, time spent by sealed batches
+ * waiting for the in-flight budget and a writer, retries and batches being written.
+ */
+public final class StageMetrics {
+
+    private final String name;
+    private final AtomicLong total = new AtomicLong();
+    private final LongAdder read = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder alreadyWritten = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxConcurrency = new AtomicInteger();
+    private final LatencyHistogram writeLatency = new LatencyHistogram();
+    private final LatencyHistogram bufferWait = new LatencyHistogram();
+    private long inFlightSampleSum = 0;
+    private long inFlightSampleCount = 0;
+
+    public StageMetrics(String name) {
+        this.name = name;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public void total(long total) {
+        this.total.set(total);
+    }
+
+    public void maxConcurrency(int maxConcurrency) {
+        this.maxConcurrency.set(maxConcurrency);
+    }
+
+    public void read(long count) {
+        read.add(count);
+    }
+
+    /**
+     * Entities written by a previous run of a resumed copy.
+     */
+    public void alreadyWritten(long count) {
+        alreadyWritten.add(count);
+    }
+
+    public void batchStarted() {
+        inFlight.incrementAndGet();
+    }
+
+    public void batchEnded() {
+        inFlight.decrementAndGet();
+    }
+
+    public void batchWritten(int size, long latencyNanos) {
+        written.add(size);
+        batches.increment();
+        writeLatency.record(latencyNanos);
+    }
+
+    public void bufferWait(long nanos) {
+        bufferWait.record(nanos);
+    }
+
+    public void retry() {
+        retries.increment();
+    }
+
+    synchronized void sampleInFlight() {
+        inFlightSampleSum += inFlight.get();
+        inFlightSampleCount++;
+    }
+
+    public long total() {
+        return total.get();
+    }
+
+    public long read() {
+        return read.sum();
+    }
+
+    /**
+     * @return the entities written, including the ones written by a previous run of a resumed copy
+     */
+    public long written() {
+        return written.sum() + alreadyWritten.sum();
+    }
+
+    public long batches() {
+        return batches.sum();
+    }
+
+    public long retries() {
+        return retries.sum();
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    public int maxConcurrency() {
+        return maxConcurrency.get();
+    }
+
+    /**
+     * @return the average number of batches being written, sampled at each progress report
+     */
+    public synchronized double averageInFlight() {
+        return inFlightSampleCount == 0 ? 0 : inFlightSampleSum / (double) inFlightSampleCount;
+    }
+
+    public LatencyHistogram writeLatency() {
+        return writeLatency;
+    }
+
+    public LatencyHistogram bufferWait() {
+        return bufferWait;
+    }
+}
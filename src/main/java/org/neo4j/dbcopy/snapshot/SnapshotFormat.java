@@ -0,0 +1,109 @@
+package org.neo4j.dbcopy.snapshot;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Layout of a snapshot file:
+ * <pre>
+ * header   magic (8 bytes), version (4 bytes)
+ * blocks   kind (1 byte), entity count, raw size, compressed size, CRC32C of the compressed bytes (4 bytes each),
+ *          then the deflated records
+ * footer   dictionary word count and words, node count, relationship count, block count,
+ *          then the offset (8 bytes), kind (1 byte) and entity count (4 bytes) of each block
+ * trailer  footer offset (8 bytes), CRC32C of the footer (4 bytes), magic (8 bytes)
+ * </pre>
+ * Records only hold varints and dictionary ids, so that blocks can be decoded independently once the footer is read.
+ * A snapshot without its trailer was not completed, and is rejected.
+ */
+final class SnapshotFormat {
+
+    static final long MAGIC = 0x4442434f5059534eL;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = Long.BYTES + Integer.BYTES;
+    static final int BLOCK_HEADER_SIZE = 1 + 4 * Integer.BYTES;
+    static final int TRAILER_SIZE = Long.BYTES + Integer.BYTES + Long.BYTES;
+
+    static final byte NODES = 1;
+    static final byte RELATIONSHIPS = 2;
+
+    private SnapshotFormat() {
+    }
+
+    /**
+     * @return the block header followed by the compressed records
+     */
+    static ByteBuffer block(byte kind, int count, byte[] records) {
+        var deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(records);
+            deflater.finish();
+            byte[] compressed = new byte[records.length + records.length / 1000 + 64];
+            int compressedSize = 0;
+            while (!deflater.finished()) {
+                if (compressedSize == compressed.length) {
+                    compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                }
+                compressedSize += deflater.deflate(compressed, compressedSize, compressed.length - compressedSize);
+            }
+            var crc = new CRC32C();
+            crc.update(compressed, 0, compressedSize);
+            return ByteBuffer.allocate(BLOCK_HEADER_SIZE + compressedSize)
+                    .put(kind)
+                    .putInt(count)
+                    .putInt(records.length)
+                    .putInt(compressedSize)
+                    .putInt((int) crc.getValue())
+                    .put(compressed, 0, compressedSize)
+                    .flip();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * @param block the block, from its header
+     * @return the checked and uncompressed records of the block
+     */
+    static byte[] records(ByteBuffer block, long offset) {
+        block.get();
+        block.getInt();
+        int rawSize = block.getInt();
+        int compressedSize = block.getInt();
+        int checksum = block.getInt();
+        if (rawSize < 0 || compressedSize < 0 || compressedSize > block.remaining()) {
+            throw new IllegalStateException("Snapshot block at offset " + offset + " is truncated");
+        }
+        ByteBuffer compressed = block.slice(block.position(), compressedSize);
+        var crc = new CRC32C();
+        crc.update(compressed.duplicate());
+        if ((int) crc.getValue() != checksum) {
+            throw new IllegalStateException("Snapshot block at offset " + offset + " is corrupted, its checksum does not match");
+        }
+        var inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] records = new byte[rawSize];
+            int size = 0;
+            while (size < rawSize && !inflater.finished()) {
+                int inflated = inflater.inflate(records, size, rawSize - size);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                size += inflated;
+            }
+            if (size != rawSize) {
+                throw new IllegalStateException("Snapshot block at offset " + offset + " is truncated");
+            }
+            return records;
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Snapshot block at offset " + offset + " is corrupted", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package org.neo4j.dbcopy.snapshot;
+
+import org.neo4j.dbcopy.CopyOptions;
+import org.neo4j.dbcopy.DataReader;
+import org.neo4j.dbcopy.NodeData;
+import org.neo4j.dbcopy.RelationshipData;
+import org.neo4j.dbcopy.io.ValueCodec;
+import org.neo4j.driver.Value;
+import org.neo4j.driver.Values;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32C;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Replays a snapshot written by a {@link SnapshotWriter}.
+ * <p>
+ * The blocks are read from memory-mapped regions of the file and decoded in parallel, up to the reader concurrency,
+ * while being emitted in the order they were written. Excluded properties are dropped while decoding.
+ */
+public class SnapshotReader implements DataReader, AutoCloseable {
+
+    // blocks are mapped in regions of at most this size, a mapping being limited to 2GB
+    private static final long MAX_REGION_SIZE = 1L << 30;
+
+    private final Path file;
+    private final CopyOptions copyOptions;
+    private final FileChannel channel;
+    private final List<String> words = new ArrayList<>();
+    private final List<Block> nodeBlocks = new ArrayList<>();
+    private final List<Block> relationshipBlocks = new ArrayList<>();
+    private final long nodeCount;
+    private final long relationshipCount;
+
+    public SnapshotReader(Path file, CopyOptions copyOptions) {
+        this.file = file;
+        this.copyOptions = copyOptions;
+        try {
+            this.channel = FileChannel.open(file, READ);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to open the snapshot file " + file, e);
+        }
+        try {
+            long size = channel.size();
+            ByteBuffer header = read(0, SnapshotFormat.HEADER_SIZE, size);
+            if (header.getLong() != SnapshotFormat.MAGIC) {
+                throw new IllegalArgumentException("File " + file + " is not a snapshot");
+            }
+            if (header.getInt() != SnapshotFormat.VERSION) {
+                throw new IllegalArgumentException("Snapshot " + file + " was written by an incompatible version");
+            }
+            ByteBuffer trailer = read(size - SnapshotFormat.TRAILER_SIZE, SnapshotFormat.TRAILER_SIZE, size);
+            long footerOffset = trailer.getLong();
+            int footerChecksum = trailer.getInt();
+            if (trailer.getLong() != SnapshotFormat.MAGIC || footerOffset < SnapshotFormat.HEADER_SIZE || footerOffset > size - SnapshotFormat.TRAILER_SIZE) {
+                throw new IllegalArgumentException("Snapshot " + file + " is incomplete, the copy that wrote it did not complete");
+            }
+            ByteBuffer footer = read(footerOffset, (int) (size - SnapshotFormat.TRAILER_SIZE - footerOffset), size);
+            var crc = new CRC32C();
+            crc.update(footer.duplicate());
+            if ((int) crc.getValue() != footerChecksum) {
+                throw new IllegalStateException("Snapshot " + file + " is corrupted, the checksum of its index does not match");
+            }
+            var in = new DataInputStream(new ByteArrayInputStream(footer.array()));
+            long wordCount = ValueCodec.readVarLong(in);
+            for (long i = 0; i < wordCount; i++) {
+                words.add(ValueCodec.readString(in));
+            }
+            this.nodeCount = in.readLong();
+            this.relationshipCount = in.readLong();
+            readBlocks(in, footerOffset);
+        } catch (IOException e) {
+            close();
+            throw new UncheckedIOException("Unable to read the snapshot file " + file, e);
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    private ByteBuffer read(long position, int length, long fileSize) throws IOException {
+        if (position < 0 || position + length > fileSize) {
+            throw new IllegalArgumentException("File " + file + " is not a snapshot, or is incomplete");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Reads the block index, and maps the blocks in as few regions as possible.
+     */
+    private void readBlocks(DataInputStream in, long footerOffset) throws IOException {
+        int blockCount = in.readInt();
+        long[] offsets = new long[blockCount + 1];
+        byte[] kinds = new byte[blockCount];
+        int[] counts = new int[blockCount];
+        for (int i = 0; i < blockCount; i++) {
+            offsets[i] = in.readLong();
+            kinds[i] = in.readByte();
+            counts[i] = in.readInt();
+        }
+        offsets[blockCount] = footerOffset;
+        int regionStart = 0;
+        while (regionStart < blockCount) {
+            int regionEnd = regionStart + 1;
+            while (regionEnd < blockCount && offsets[regionEnd + 1] - offsets[regionStart] <= MAX_REGION_SIZE) {
+                regionEnd++;
+            }
+            ByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, offsets[regionStart], offsets[regionEnd] - offsets[regionStart]);
+            for (int i = regionStart; i < regionEnd; i++) {
+                int position = (int) (offsets[i] - offsets[regionStart]);
+                var block = new Block(offsets[i], counts[i], region.slice(position, (int) (offsets[i + 1] - offsets[i])));
+                (kinds[i] == SnapshotFormat.NODES ? nodeBlocks : relationshipBlocks).add(block);
+            }
+            regionStart = regionEnd;
+        }
+    }
+
+    @Override
+    public Flux<NodeData> readNodes() {
+        return decode(nodeBlocks, this::decodeNodes);
+    }
+
+    @Override
+    public Flux<RelationshipData> readRelationships() {
+        return decode(relationshipBlocks, this::decodeRelationships);
+    }
+
+    private <T> Flux<T> decode(List<Block> blocks, BlockDecoder<T> decoder) {
+        return Flux.fromIterable(blocks)
+                .flatMapSequential(block -> Mono.fromCallable(() -> {
+                            var in = new DataInputStream(new ByteArrayInputStream(SnapshotFormat.records(block.buffer().duplicate(), block.offset())));
+                            return decoder.decode(in, block.count());
+                        })
+                        .onErrorMap(IOException.class, e -> new UncheckedIOException("Unable to read the snapshot block at offset " + block.offset() + " in " + file, e))
+                        .subscribeOn(Schedulers.parallel()), copyOptions.readerConcurrency())
+                .flatMapIterable(entities -> entities);
+    }
+
+    private List<NodeData> decodeNodes(DataInputStream in, int count) throws IOException {
+        List<NodeData> nodes = new ArrayList<>(count);
+        long id = 0;
+        for (int i = 0; i < count; i++) {
+            id += ValueCodec.readSignedVarLong(in);
+            int labelCount = (int) ValueCodec.readVarLong(in);
+            List<String> labels = new ArrayList<>(labelCount);
+            for (int j = 0; j < labelCount; j++) {
+                labels.add(word(ValueCodec.readVarLong(in)));
+            }
+            nodes.add(new NodeData(id, labels, readProperties(in, copyOptions.getNodePropertiesToExclude())));
+        }
+        return nodes;
+    }
+
+    private List<RelationshipData> decodeRelationships(DataInputStream in, int count) throws IOException {
+        List<RelationshipData> relationships = new ArrayList<>(count);
+        long id = 0;
+        long startNodeId = 0;
+        long endNodeId = 0;
+        for (int i = 0; i < count; i++) {
+            id += ValueCodec.readSignedVarLong(in);
+            startNodeId += ValueCodec.readSignedVarLong(in);
+            endNodeId += ValueCodec.readSignedVarLong(in);
+            String type = word(ValueCodec.readVarLong(in));
+            relationships.add(new RelationshipData(id, startNodeId, endNodeId, type, readProperties(in, copyOptions.getRelationshipPropertiesToExclude())));
+        }
+        return relationships;
+    }
+
+    private Value readProperties(DataInputStream in, Set<String> excluded) throws IOException {
+        int propertyCount = (int) ValueCodec.readVarLong(in);
+        Map<String, Object> properties = new HashMap<>(propertyCount * 2);
+        for (int i = 0; i < propertyCount; i++) {
+            String key = word(ValueCodec.readVarLong(in));
+            Value value = ValueCodec.readValue(in);
+            if (!excluded.contains(key)) {
+                properties.put(key, value);
+            }
+        }
+        return Values.value(properties);
+    }
+
+    private String word(long id) throws IOException {
+        if (id < 0 || id >= words.size()) {
+            throw new IOException("Unknown dictionary id " + id);
+        }
+        return words.get((int) id);
+    }
+
+    @Override
+    public long getTotalNodeCount() {
+        return nodeCount;
+    }
+
+    @Override
+    public long getTotalRelationshipCount() {
+        return relationshipCount;
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to close the snapshot file " + file, e);
+        }
+    }
+
+    private record Block(long offset, int count, ByteBuffer buffer) {
+    }
+
+    @FunctionalInterface
+    private interface BlockDecoder<T> {
+        List<T> decode(DataInputStream in, int count) throws IOException;
+    }
+}
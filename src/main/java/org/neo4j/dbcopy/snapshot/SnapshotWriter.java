@@ -0,0 +1,231 @@
+package org.neo4j.dbcopy.snapshot;
+
+import org.neo4j.dbcopy.CopyOptions;
+import org.neo4j.dbcopy.DataWriter;
+import org.neo4j.dbcopy.MappingContext;
+import org.neo4j.dbcopy.MappingContext.Mapping;
+import org.neo4j.dbcopy.NodeData;
+import org.neo4j.dbcopy.RelationshipData;
+import org.neo4j.dbcopy.io.ValueCodec;
+import org.neo4j.driver.Value;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32C;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Writes the copied nodes and relationships to a snapshot file rather than to a database, so that the source
+ * can be read once and the snapshot replayed with a {@link SnapshotReader} into many targets.
+ * <p>
+ * Each batch is encoded and compressed in the thread writing it, batches being written in parallel, then appended
+ * as a block. Source ids are kept as they are, so no node mapping is needed.
+ */
+public class SnapshotWriter implements DataWriter, AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SnapshotWriter.class);
+
+    private final Path file;
+    private final Map<String, Integer> dictionary = new ConcurrentHashMap<>();
+    private final List<String> words = new ArrayList<>();
+    private final List<BlockEntry> blocks = new ArrayList<>();
+    private FileChannel channel;
+    private long position;
+    private long nodeCount;
+    private long relationshipCount;
+
+    public SnapshotWriter(Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public boolean usesSourceIds() {
+        return true;
+    }
+
+    @Override
+    public Mono<Void> prepare(CopyOptions copyOptions) {
+        return Mono.<Void>fromRunnable(() -> {
+            try {
+                synchronized (this) {
+                    channel = FileChannel.open(file, CREATE, TRUNCATE_EXISTING, WRITE);
+                    position = 0;
+                    write(ByteBuffer.allocate(SnapshotFormat.HEADER_SIZE).putLong(SnapshotFormat.MAGIC).putInt(SnapshotFormat.VERSION).flip());
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to create the snapshot file " + file, e);
+            }
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public Flux<Mapping> writeNodes(List<NodeData> nodes, CopyOptions copyOptions) {
+        return Mono.fromCallable(() -> {
+                    var records = new ByteArrayOutputStream();
+                    var out = new DataOutputStream(records);
+                    long previousId = 0;
+                    for (NodeData node : nodes) {
+                        ValueCodec.writeSignedVarLong(out, node.id() - previousId);
+                        previousId = node.id();
+                        ValueCodec.writeVarLong(out, node.labels().size());
+                        for (String label : node.labels()) {
+                            ValueCodec.writeVarLong(out, wordId(label));
+                        }
+                        writeProperties(out, node.properties());
+                    }
+                    append(SnapshotFormat.NODES, nodes.size(), records.toByteArray());
+                    List<Mapping> mappings = new ArrayList<>(nodes.size());
+                    for (NodeData node : nodes) {
+                        mappings.add(new Mapping(node.id(), node.id()));
+                    }
+                    return mappings;
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapIterable(mappings -> mappings);
+    }
+
+    @Override
+    public Mono<Long> writeRelationships(List<RelationshipData> relationships, MappingContext mappingContext, CopyOptions copyOptions) {
+        return Mono.fromCallable(() -> {
+                    var records = new ByteArrayOutputStream();
+                    var out = new DataOutputStream(records);
+                    long previousId = 0;
+                    long previousStartNodeId = 0;
+                    long previousEndNodeId = 0;
+                    for (RelationshipData relationship : relationships) {
+                        ValueCodec.writeSignedVarLong(out, relationship.id() - previousId);
+                        ValueCodec.writeSignedVarLong(out, relationship.startNodeId() - previousStartNodeId);
+                        ValueCodec.writeSignedVarLong(out, relationship.endNodeId() - previousEndNodeId);
+                        previousId = relationship.id();
+                        previousStartNodeId = relationship.startNodeId();
+                        previousEndNodeId = relationship.endNodeId();
+                        ValueCodec.writeVarLong(out, wordId(relationship.type()));
+                        writeProperties(out, relationship.properties());
+                    }
+                    append(SnapshotFormat.RELATIONSHIPS, relationships.size(), records.toByteArray());
+                    return (long) relationships.size();
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private void writeProperties(DataOutputStream out, Value properties) throws IOException {
+        ValueCodec.writeVarLong(out, properties.size());
+        for (String key : properties.keys()) {
+            ValueCodec.writeVarLong(out, wordId(key));
+            ValueCodec.writeValue(out, properties.get(key));
+        }
+    }
+
+    private int wordId(String word) {
+        Integer id = dictionary.get(word);
+        if (id != null) {
+            return id;
+        }
+        synchronized (words) {
+            return dictionary.computeIfAbsent(word, w -> {
+                words.add(w);
+                return words.size() - 1;
+            });
+        }
+    }
+
+    private void append(byte kind, int count, byte[] records) throws IOException {
+        ByteBuffer block = SnapshotFormat.block(kind, count, records);
+        synchronized (this) {
+            if (channel == null) {
+                throw new IllegalStateException("Snapshot file " + file + " is not open");
+            }
+            blocks.add(new BlockEntry(position, kind, count));
+            write(block);
+            if (kind == SnapshotFormat.NODES) {
+                nodeCount += count;
+            } else {
+                relationshipCount += count;
+            }
+        }
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer);
+        }
+    }
+
+    /**
+     * Writes the dictionary and the block index, which completes the snapshot.
+     */
+    @Override
+    public Mono<Void> complete(CopyOptions copyOptions) {
+        return Mono.<Void>fromRunnable(() -> {
+            try {
+                synchronized (this) {
+                    var footer = new ByteArrayOutputStream();
+                    var out = new DataOutputStream(footer);
+                    synchronized (words) {
+                        ValueCodec.writeVarLong(out, words.size());
+                        for (String word : words) {
+                            ValueCodec.writeString(out, word);
+                        }
+                    }
+                    out.writeLong(nodeCount);
+                    out.writeLong(relationshipCount);
+                    out.writeInt(blocks.size());
+                    for (BlockEntry block : blocks) {
+                        out.writeLong(block.offset());
+                        out.writeByte(block.kind());
+                        out.writeInt(block.count());
+                    }
+                    byte[] bytes = footer.toByteArray();
+                    var crc = new CRC32C();
+                    crc.update(bytes);
+                    long footerOffset = position;
+                    write(ByteBuffer.wrap(bytes));
+                    write(ByteBuffer.allocate(SnapshotFormat.TRAILER_SIZE).putLong(footerOffset).putInt((int) crc.getValue()).putLong(SnapshotFormat.MAGIC).flip());
+                    channel.force(false);
+                    channel.close();
+                    channel = null;
+                    LOG.info("Snapshot written to {} - {} nodes and {} relationships in {} bytes", file, nodeCount, relationshipCount, position);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to complete the snapshot file " + file, e);
+            }
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Releases the file, which is left incomplete unless the copy completed.
+     */
+    @Override
+    public synchronized void close() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to close the snapshot file " + file, e);
+        } finally {
+            channel = null;
+        }
+    }
+
+    private record BlockEntry(long offset, byte kind, int count) {
+    }
+}
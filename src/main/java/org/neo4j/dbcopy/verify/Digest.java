@@ -0,0 +1,33 @@
+package org.neo4j.dbcopy.verify;
+
+/**
+ * Order-independent digest of the entity hashes of a label set or relationship type: their count, sum and xor,
+ * which do not depend on the order the entities are read in, nor on how they are split across threads.
+ */
+final class Digest {
+
+    private long count;
+    private long sum;
+    private long xor;
+
+    void add(long hash) {
+        count++;
+        sum += hash;
+        xor ^= hash;
+    }
+
+    synchronized void merge(Digest other) {
+        count += other.count;
+        sum += other.sum;
+        xor ^= other.xor;
+    }
+
+    // read once the digests are complete
+    long count() {
+        return count;
+    }
+
+    boolean sameAs(Digest other) {
+        return count == other.count && sum == other.sum && xor == other.xor;
+    }
+}
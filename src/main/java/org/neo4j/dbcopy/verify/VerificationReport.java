@@ -0,0 +1,47 @@
+package org.neo4j.dbcopy.verify;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Outcome of a {@link Verifier} run.
+ *
+ * @param mismatches the label sets and relationship types whose content differs, empty when the databases match
+ */
+public record VerificationReport(long nodeCount, long relationshipCount, List<Mismatch> mismatches) {
+
+    public boolean matches() {
+        return mismatches.isEmpty();
+    }
+
+    /**
+     * A label set or relationship type whose content differs, along with the ids of the entities found only on one
+     * side, as ranges of contiguous ids.
+     *
+     * @param sourceDifferences number of source entities not found in the target
+     * @param targetDifferences number of target entities not found in the source
+     */
+    public record Mismatch(String kind, String group, long sourceCount, long targetCount,
+                           long sourceDifferences, List<IdRange> sourceRanges,
+                           long targetDifferences, List<IdRange> targetRanges) {
+
+        @Override
+        public String toString() {
+            return "%s %s: %d in source, %d in target - %d only in source%s, %d only in target%s".formatted(
+                    kind, group, sourceCount, targetCount,
+                    sourceDifferences, ranges(sourceRanges), targetDifferences, ranges(targetRanges));
+        }
+
+        private static String ranges(List<IdRange> ranges) {
+            return ranges.isEmpty() ? "" : " with ids " + ranges.stream().map(IdRange::toString).collect(Collectors.joining(", "));
+        }
+    }
+
+    public record IdRange(long first, long last) {
+
+        @Override
+        public String toString() {
+            return first == last ? String.valueOf(first) : first + ".." + last;
+        }
+    }
+}
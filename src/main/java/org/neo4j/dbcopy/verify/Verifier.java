@@ -0,0 +1,305 @@
+package org.neo4j.dbcopy.verify;
+
+import org.neo4j.dbcopy.CopyOptions;
+import org.neo4j.dbcopy.DataReader;
+import org.neo4j.dbcopy.NodeData;
+import org.neo4j.dbcopy.RelationshipData;
+import org.neo4j.dbcopy.io.Fingerprint;
+import org.neo4j.dbcopy.mapping.LongLongHashTable;
+import org.neo4j.dbcopy.mapping.LongStorage;
+import org.neo4j.dbcopy.mapping.MappingContexts;
+import org.neo4j.dbcopy.verify.VerificationReport.IdRange;
+import org.neo4j.dbcopy.verify.VerificationReport.Mismatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Checks that a target holds the same nodes and relationships as the source, without comparing them one by one.
+ * <p>
+ * Both databases are read at the same time, and each entity hashed to its {@link Fingerprint} in parallel. The hashes
+ * are summed up per label set and relationship type into order-independent {@link Digest}s, which are compared once
+ * both scans are over. Node ids differing between the source and the target, the end nodes of a relationship are
+ * identified by their fingerprints, kept per node id while the relationships are read.
+ * <p>
+ * When label sets or relationship types differ, their entities are read again to find the ones only found on one
+ * side, which are reported as ranges of ids.
+ */
+public class Verifier {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Verifier.class);
+
+    // differing ids kept per label set or relationship type and side, to report their ranges
+    static final int MAX_REPORTED_IDS = 10_000;
+
+    private final DataReader source;
+    private final DataReader target;
+    private final CopyOptions copyOptions;
+
+    public Verifier(DataReader source, DataReader target, CopyOptions copyOptions) {
+        this.source = source;
+        this.target = target;
+        this.copyOptions = copyOptions;
+    }
+
+    public Mono<VerificationReport> verify() {
+        return Mono.using(() -> new Side(source, "source"),
+                sourceSide -> Mono.using(() -> new Side(target, "target"),
+                        targetSide -> verify(sourceSide, targetSide),
+                        Side::close),
+                Side::close);
+    }
+
+    private Mono<VerificationReport> verify(Side sourceSide, Side targetSide) {
+        return Mono.when(digestNodes(sourceSide), digestNodes(targetSide))
+                .then(Mono.when(digestRelationships(sourceSide), digestRelationships(targetSide)))
+                .then(Mono.defer(() -> {
+                    Set<String> nodeGroups = mismatches(sourceSide.nodeDigests, targetSide.nodeDigests);
+                    Set<String> relationshipGroups = mismatches(sourceSide.relationshipDigests, targetSide.relationshipDigests);
+                    long nodeCount = sourceSide.nodeDigests.values().stream().mapToLong(Digest::count).sum();
+                    long relationshipCount = sourceSide.relationshipDigests.values().stream().mapToLong(Digest::count).sum();
+                    if (nodeGroups.isEmpty() && relationshipGroups.isEmpty()) {
+                        LOG.info("Verification passed - {} nodes and {} relationships match", nodeCount, relationshipCount);
+                        return Mono.just(new VerificationReport(nodeCount, relationshipCount, List.of()));
+                    }
+                    LOG.info("{} label sets and {} relationship types differ, looking for the differing entities", nodeGroups.size(), relationshipGroups.size());
+                    return narrow("nodes", nodeGroups, sourceSide, targetSide, Side::nodes, sourceSide.nodeDigests, targetSide.nodeDigests)
+                            .zipWhen(nodes -> narrow("relationships", relationshipGroups, sourceSide, targetSide, Side::relationships,
+                                    sourceSide.relationshipDigests, targetSide.relationshipDigests), (nodes, relationships) -> {
+                                List<Mismatch> mismatches = new ArrayList<>(nodes);
+                                mismatches.addAll(relationships);
+                                mismatches.forEach(mismatch -> LOG.warn("Mismatch - {}", mismatch));
+                                return new VerificationReport(nodeCount, relationshipCount, mismatches);
+                            });
+                }));
+    }
+
+    private Mono<Void> digestNodes(Side side) {
+        return digest(side.nodes(), side.nodeDigests)
+                .doOnSuccess(it -> LOG.info("{} nodes hashed", side.name));
+    }
+
+    private Mono<Void> digestRelationships(Side side) {
+        return digest(side.relationships(), side.relationshipDigests)
+                .doOnSuccess(it -> LOG.info("{} relationships hashed", side.name));
+    }
+
+    /**
+     * Each batch is summed up in its own digests first, then merged into the shared ones.
+     */
+    private static Mono<Void> digest(Flux<List<Hashed>> batches, Map<String, Digest> digests) {
+        return batches.doOnNext(batch -> {
+                    Map<String, Digest> local = new HashMap<>();
+                    for (Hashed entity : batch) {
+                        local.computeIfAbsent(entity.group(), group -> new Digest()).add(entity.hash());
+                    }
+                    local.forEach((group, digest) -> digests.computeIfAbsent(group, it -> new Digest()).merge(digest));
+                })
+                .then();
+    }
+
+    private static Set<String> mismatches(Map<String, Digest> source, Map<String, Digest> target) {
+        Set<String> groups = new TreeSet<>(source.keySet());
+        groups.addAll(target.keySet());
+        groups.removeIf(group -> source.containsKey(group) && target.containsKey(group) && source.get(group).sameAs(target.get(group)));
+        return groups;
+    }
+
+    /**
+     * Counts the hashes of the differing groups in the target, matches the source entities against them, then reads
+     * the target again to find the entities left unmatched.
+     */
+    private Mono<List<Mismatch>> narrow(String kind, Set<String> groups, Side sourceSide, Side targetSide, Function<Side, Flux<List<Hashed>>> entities,
+                                        Map<String, Digest> sourceDigests, Map<String, Digest> targetDigests) {
+        if (groups.isEmpty()) {
+            return Mono.just(List.of());
+        }
+        long expected = groups.stream().mapToLong(group -> targetDigests.containsKey(group) ? targetDigests.get(group).count() : 0).sum();
+        return Mono.using(() -> new HashCounts(expected),
+                counts -> {
+                    Map<String, DifferingIds> sourceIds = new ConcurrentHashMap<>();
+                    Map<String, DifferingIds> targetIds = new ConcurrentHashMap<>();
+                    return scan(entities.apply(targetSide), groups, counts::increment)
+                            .then(scan(entities.apply(sourceSide), groups, entity -> {
+                                if (!counts.decrement(entity.hash())) {
+                                    sourceIds.computeIfAbsent(entity.group(), it -> new DifferingIds()).add(entity.id());
+                                }
+                            }))
+                            .then(scan(entities.apply(targetSide), groups, entity -> {
+                                if (counts.decrement(entity.hash())) {
+                                    targetIds.computeIfAbsent(entity.group(), it -> new DifferingIds()).add(entity.id());
+                                }
+                            }))
+                            .then(Mono.fromCallable(() -> groups.stream()
+                                    .map(group -> {
+                                        DifferingIds inSource = sourceIds.getOrDefault(group, new DifferingIds());
+                                        DifferingIds inTarget = targetIds.getOrDefault(group, new DifferingIds());
+                                        return new Mismatch(kind, group,
+                                                sourceDigests.containsKey(group) ? sourceDigests.get(group).count() : 0,
+                                                targetDigests.containsKey(group) ? targetDigests.get(group).count() : 0,
+                                                inSource.count(), inSource.ranges(), inTarget.count(), inTarget.ranges());
+                                    })
+                                    .toList()));
+                },
+                HashCounts::close);
+    }
+
+    private static Mono<Void> scan(Flux<List<Hashed>> batches, Set<String> groups, Consumer<Hashed> action) {
+        return batches.doOnNext(batch -> {
+                    for (Hashed entity : batch) {
+                        if (groups.contains(entity.group())) {
+                            action.accept(entity);
+                        }
+                    }
+                })
+                .then();
+    }
+
+    private record Hashed(long id, String group, long hash) {
+    }
+
+    /**
+     * The entities of a database as hashes, along with the node fingerprints the relationships refer to.
+     */
+    private final class Side implements AutoCloseable {
+        private final DataReader reader;
+        private final String name;
+        private final LongStorage storage;
+        private final LongLongHashTable nodeFingerprints;
+        private final Map<String, Digest> nodeDigests = new ConcurrentHashMap<>();
+        private final Map<String, Digest> relationshipDigests = new ConcurrentHashMap<>();
+
+        Side(DataReader reader, String name) {
+            this.reader = reader;
+            this.name = name;
+            long nodeCount = reader.getTotalNodeCount();
+            this.storage = MappingContexts.storage(nodeCount, copyOptions);
+            this.nodeFingerprints = new LongLongHashTable(nodeCount, storage);
+        }
+
+        Flux<List<Hashed>> nodes() {
+            return hashed(reader.readNodes(), node -> {
+                long hash = Fingerprint.of(node);
+                nodeFingerprints.put(node.id(), hash);
+                return new Hashed(node.id(), labels(node), hash);
+            });
+        }
+
+        /**
+         * Relationships are hashed with the fingerprints of their end nodes in place of their ids.
+         */
+        Flux<List<Hashed>> relationships() {
+            return hashed(reader.readRelationships(), relationship -> new Hashed(relationship.id(), relationship.type(), Fingerprint.of(new RelationshipData(
+                    relationship.id(),
+                    nodeFingerprints.get(relationship.startNodeId()),
+                    nodeFingerprints.get(relationship.endNodeId()),
+                    relationship.type(),
+                    relationship.properties()))));
+        }
+
+        /**
+         * Hashes the entities batch by batch, in parallel across the cores.
+         */
+        private <T> Flux<List<Hashed>> hashed(Flux<T> entities, Function<T, Hashed> hash) {
+            return entities.buffer(copyOptions.batchSize())
+                    .flatMap(batch -> Mono.fromCallable(() -> batch.stream().map(hash).toList())
+                            .subscribeOn(Schedulers.parallel()), Schedulers.DEFAULT_POOL_SIZE);
+        }
+
+        @Override
+        public void close() {
+            nodeFingerprints.close();
+            storage.close();
+        }
+    }
+
+    private static String labels(NodeData node) {
+        return node.labels().stream().sorted().map(label -> ":" + label).collect(Collectors.joining("", "(", ")"));
+    }
+
+    /**
+     * Number of target entities per hash, not matched yet by a source entity.
+     */
+    private final class HashCounts implements AutoCloseable {
+        private final LongStorage storage;
+        private final LongLongHashTable counts;
+
+        HashCounts(long expectedSize) {
+            this.storage = MappingContexts.storage(expectedSize, copyOptions);
+            this.counts = new LongLongHashTable(expectedSize, storage);
+        }
+
+        synchronized void increment(Hashed entity) {
+            long count = counts.get(entity.hash());
+            counts.put(entity.hash(), count == LongLongHashTable.NOT_FOUND ? 1 : count + 1);
+        }
+
+        /**
+         * @return whether there was an unmatched entity with the hash
+         */
+        synchronized boolean decrement(long hash) {
+            long count = counts.get(hash);
+            if (count <= 0) {
+                return false;
+            }
+            counts.put(hash, count - 1);
+            return true;
+        }
+
+        @Override
+        public void close() {
+            counts.close();
+            storage.close();
+        }
+    }
+
+    /**
+     * The ids of the entities found only on one side, the first ones being kept.
+     */
+    private static final class DifferingIds {
+        private long[] ids = new long[16];
+        private long count = 0;
+
+        synchronized void add(long id) {
+            if (count < MAX_REPORTED_IDS) {
+                if (count == ids.length) {
+                    ids = Arrays.copyOf(ids, ids.length * 2);
+                }
+                ids[(int) count] = id;
+            }
+            count++;
+        }
+
+        synchronized long count() {
+            return count;
+        }
+
+        synchronized List<IdRange> ranges() {
+            long[] sorted = Arrays.copyOf(ids, (int) Math.min(count, MAX_REPORTED_IDS));
+            Arrays.sort(sorted);
+            List<IdRange> merged = new ArrayList<>();
+            for (long id : sorted) {
+                if (!merged.isEmpty() && merged.get(merged.size() - 1).last() + 1 >= id) {
+                    merged.set(merged.size() - 1, new IdRange(merged.get(merged.size() - 1).first(), id));
+                } else {
+                    merged.add(new IdRange(id, id));
+                }
+            }
+            return merged;
+        }
+    }
+}
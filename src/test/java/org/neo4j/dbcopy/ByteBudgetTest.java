@@ -0,0 +1,66 @@
+package org.neo4j.dbcopy;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ByteBudgetTest {
+
+    @Test
+    void should_grant_reservations_within_budget() {
+        var budget = new ByteBudget(100);
+
+        budget.reserve(60).block();
+        budget.reserve(40).block();
+
+        assertThat(budget.reservedBytes()).isEqualTo(100);
+    }
+
+    @Test
+    void should_wait_for_released_bytes_in_order() {
+        var budget = new ByteBudget(100);
+        var first = budget.reserve(80).block();
+        List<String> granted = new ArrayList<>();
+
+        budget.reserve(50).subscribe(it -> granted.add("second"));
+        budget.reserve(10).subscribe(it -> granted.add("third"));
+        assertThat(granted).isEmpty();
+
+        first.release();
+        first.release();
+        assertThat(granted).containsExactly("second", "third");
+        assertThat(budget.reservedBytes()).isEqualTo(60);
+    }
+
+    @Test
+    void should_grant_reservation_larger_than_budget_when_nothing_else_is_reserved() {
+        var budget = new ByteBudget(100);
+        var small = budget.reserve(10).block();
+        List<ByteBudget.Reservation> granted = new ArrayList<>();
+
+        budget.reserve(500).subscribe(granted::add);
+        assertThat(granted).isEmpty();
+
+        small.release();
+        assertThat(granted).hasSize(1);
+        granted.get(0).release();
+        assertThat(budget.reservedBytes()).isZero();
+    }
+
+    @Test
+    void should_forget_cancelled_reservations() {
+        var budget = new ByteBudget(100);
+        var first = budget.reserve(100).block();
+        List<String> granted = new ArrayList<>();
+
+        budget.reserve(50).subscribe(it -> granted.add("cancelled")).dispose();
+        budget.reserve(50).subscribe(it -> granted.add("waiting"));
+        first.release();
+
+        assertThat(granted).containsExactly("waiting");
+        assertThat(budget.reservedBytes()).isEqualTo(50);
+    }
+}
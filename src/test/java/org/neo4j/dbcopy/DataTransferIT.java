@@ -3,6 +3,8 @@ package org.neo4j.dbcopy;
 import org.junit.jupiter.api.*;
 import org.neo4j.dbcopy.bolt.BoltReader;
 import org.neo4j.dbcopy.bolt.BoltWriter;
+import org.neo4j.dbcopy.bolt.SchemaCopy;
+import org.neo4j.dbcopy.bolt.WriteMode;
 import org.neo4j.driver.*;
 import org.neo4j.driver.types.Node;
 import org.neo4j.driver.types.Path;
@@ -16,6 +18,7 @@ import org.testcontainers.utility.DockerImageName;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -118,6 +121,86 @@ public class DataTransferIT {
         assertThat(node.labels()).containsExactlyInAnyOrder("NodeOne", "NodeTwo");
     }
 
+    @Test
+    void should_copy_nodes_with_different_label_sets_in_one_batch() {
+        sourceSession.run("UNWIND range(1, 30) AS i CREATE (:A {i: i}), (:B:A {i: i}), ({i: i}), (:`With Space` {i: i})").consume();
+
+        new DataTransfer(dataReader, dataWriter, CopyOptions.DEFAULT).copyAllNodesAndRels().block();
+
+        Map<List<String>, Long> counts = targetSession.run("MATCH (n) RETURN labels(n) AS labels, count(DISTINCT n.i) AS count")
+                .stream().collect(Collectors.toMap(rec -> rec.get("labels").asList(Value::asString).stream().sorted().toList(), rec -> rec.get("count").asLong()));
+        assertThat(counts).containsOnly(Map.entry(List.of("A"), 30L), Map.entry(List.of("A", "B"), 30L),
+                Map.entry(List.of(), 30L), Map.entry(List.of("With Space"), 30L));
+    }
+
+    @Test
+    void should_copy_with_apoc_write_mode() {
+        sourceSession.run("CREATE (:NodeOne:NodeTwo {prop: 1})-[:TO {prop: 2}]->(:NodeThree)").consume();
+        CopyOptions copyOptions = new CopyOptions.Builder().writeMode(WriteMode.APOC).build();
+
+        new DataTransfer(dataReader, dataWriter, copyOptions).copyAllNodesAndRels().block();
+
+        List<Path> paths = getAllPaths();
+        assertThat(paths).hasSize(1);
+        Path path = paths.get(0);
+        assertThat(path.start().labels()).containsExactlyInAnyOrder("NodeOne", "NodeTwo");
+        assertThat(path.start().asMap()).containsExactly(Map.entry("prop", 1L));
+        assertThat(path.relationships().iterator().next().type()).isEqualTo("TO");
+        assertThat(path.relationships().iterator().next().asMap()).containsExactly(Map.entry("prop", 2L));
+    }
+
+    @Test
+    void should_remove_source_ids_after_idempotent_writes() {
+        sourceSession.run("CREATE (:NodeOne {prop: 1})-[:TO {prop: 2}]->(), (:NodeOne)").consume();
+        CopyOptions copyOptions = new CopyOptions.Builder().idempotentWrites(true).build();
+
+        new DataTransfer(dataReader, dataWriter, copyOptions).copyAllNodesAndRels().block();
+
+        List<Path> paths = getAllPaths();
+        assertThat(paths).hasSize(1);
+        assertThat(paths.get(0).start().labels()).containsExactly("NodeOne");
+        assertThat(paths.get(0).start().asMap()).containsExactly(Map.entry("prop", 1L));
+        assertThat(paths.get(0).relationships().iterator().next().asMap()).containsExactly(Map.entry("prop", 2L));
+        assertThat(targetSession.run("MATCH (n) RETURN count(n)").single().get(0).asLong()).isEqualTo(3);
+        assertThat(targetSession.run("SHOW INDEXES YIELD name WHERE name = 'db_copy_source_id' RETURN name").list()).isEmpty();
+    }
+
+    @Test
+    void should_copy_the_schema_after_the_data() {
+        sourceSession.run("CREATE CONSTRAINT it_person_id FOR (p:Person) REQUIRE p.id IS UNIQUE").consume();
+        sourceSession.run("CREATE INDEX it_person_name FOR (p:Person) ON (p.name)").consume();
+        sourceSession.run("CREATE (:Person {id: 1, name: 'a'}), (:Person {id: 2, name: 'b'})").consume();
+        var schemaCopy = new SchemaCopy(driver, SOURCE_DB, driver, TARGET_DB, 2);
+        try {
+            List<SchemaCopy.Definition> schema = schemaCopy.read().block();
+            new DataTransfer(dataReader, dataWriter, CopyOptions.DEFAULT).copyAllNodesAndRels().block();
+            schemaCopy.create(schema).block();
+
+            assertThat(targetSession.run("SHOW INDEXES YIELD name, state WHERE name STARTS WITH 'it_' RETURN name, state")
+                    .list(r -> r.get("name").asString() + " " + r.get("state").asString()))
+                    .containsExactlyInAnyOrder("it_person_id ONLINE", "it_person_name ONLINE");
+            assertThat(targetSession.run("SHOW CONSTRAINTS YIELD name RETURN name").list(r -> r.get(0).asString())).contains("it_person_id");
+        } finally {
+            for (Session session : List.of(sourceSession, targetSession)) {
+                session.run("DROP CONSTRAINT it_person_id IF EXISTS").consume();
+                session.run("DROP INDEX it_person_name IF EXISTS").consume();
+            }
+        }
+    }
+
+    @Test
+    void should_copy_relationships_of_different_types_in_one_batch() {
+        sourceSession.run("""
+                UNWIND range(1, 30) AS i
+                CREATE (a:Node)-[:ONE {i: i}]->(b:Node), (b)-[:TWO {i: i}]->(a), (a)-[:`THREE AND MORE` {i: i}]->(a)""").consume();
+
+        new DataTransfer(dataReader, dataWriter, CopyOptions.DEFAULT).copyAllNodesAndRels().block();
+
+        Map<String, Long> counts = targetSession.run("MATCH ()-[r]->() RETURN type(r) AS type, count(DISTINCT r.i) AS count")
+                .stream().collect(Collectors.toMap(rec -> rec.get("type").asString(), rec -> rec.get("count").asLong()));
+        assertThat(counts).containsOnly(Map.entry("ONE", 30L), Map.entry("TWO", 30L), Map.entry("THREE AND MORE", 30L));
+    }
+
     @Test
     void should_copy_nodes_and_relationships() {
 
@@ -147,6 +230,62 @@ public class DataTransferIT {
         assertThat(rel.asMap()).containsExactly(Map.entry("value", "foo"));
     }
 
+    @Test
+    void should_copy_nodes_read_in_parallel_partitions() {
+        sourceSession.run("UNWIND range(1, 1000) AS i CREATE (:Node {i: i})").consume();
+        sourceSession.run("MATCH (n:Node) WHERE n.i % 3 = 0 DELETE n").consume();
+        CopyOptions copyOptions = new CopyOptions.Builder().readerConcurrency(7).batchSize(50).build();
+        dataReader = new BoltReader(driver, SOURCE_DB, copyOptions);
+
+        new DataTransfer(dataReader, dataWriter, copyOptions).copyAllNodesAndRels().block();
+
+        List<Long> values = targetSession.run("MATCH (n:Node) RETURN n.i AS i ORDER BY i").list(rec -> rec.get("i").asLong());
+        assertThat(values).hasSize(667).doesNotHaveDuplicates().noneMatch(i -> i % 3 == 0);
+    }
+
+    @Test
+    void should_copy_relationships_read_in_parallel_partitions() {
+        sourceSession.run("""
+                UNWIND range(1, 300) AS i
+                CREATE (a:Node {i: i})-[:SMALL {i: i}]->(b:Node)
+                CREATE (a)-[:LARGE {i: i}]->(b), (b)-[:LARGE {i: -i}]->(a)""").consume();
+        CopyOptions copyOptions = new CopyOptions.Builder().readerConcurrency(3).readPartitionSize(400).batchSize(50).build();
+        dataReader = new BoltReader(driver, SOURCE_DB, copyOptions);
+
+        new DataTransfer(dataReader, dataWriter, copyOptions).copyAllNodesAndRels().block();
+
+        Map<String, Long> counts = targetSession.run("MATCH ()-[r]->() RETURN type(r) AS type, count(DISTINCT r.i) AS count")
+                .stream().collect(Collectors.toMap(rec -> rec.get("type").asString(), rec -> rec.get("count").asLong()));
+        assertThat(counts).containsOnly(Map.entry("SMALL", 300L), Map.entry("LARGE", 600L));
+    }
+
+    @Test
+    void should_copy_a_subgraph() {
+        sourceSession.run("""
+                UNWIND range(1, 100) AS i
+                CREATE (p:Person {i: i, tenant: CASE WHEN i <= 10 THEN 'acme' ELSE 'other' END})-[:WORKS_AT]->(c:Company {i: i})
+                CREATE (p)-[:LIKES]->(c), (p)-[:OWNS]->(:Car {i: i})
+                WITH p, i WHERE i > 1
+                MATCH (previous:Person {i: i - 1})
+                CREATE (p)-[:KNOWS]->(previous)""").consume();
+        CopyOptions copyOptions = new CopyOptions.Builder()
+                .includeLabels(Set.of("Person", "Company"))
+                .excludeRelationshipTypes(Set.of("LIKES"))
+                .nodePredicate("n.tenant = 'acme' OR n:Company")
+                .batchSize(7)
+                .build();
+        dataReader = new BoltReader(driver, SOURCE_DB, copyOptions);
+
+        new DataTransfer(dataReader, dataWriter, copyOptions).copyAllNodesAndRels().block();
+
+        Map<String, Long> nodeCounts = targetSession.run("MATCH (n) RETURN labels(n)[0] AS label, count(n) AS count")
+                .stream().collect(Collectors.toMap(rec -> rec.get("label").asString(), rec -> rec.get("count").asLong()));
+        assertThat(nodeCounts).containsOnly(Map.entry("Person", 10L), Map.entry("Company", 100L));
+        Map<String, Long> relationshipCounts = targetSession.run("MATCH ()-[r]->() RETURN type(r) AS type, count(r) AS count")
+                .stream().collect(Collectors.toMap(rec -> rec.get("type").asString(), rec -> rec.get("count").asLong()));
+        assertThat(relationshipCounts).containsOnly(Map.entry("WORKS_AT", 10L), Map.entry("KNOWS", 9L));
+    }
+
     @Test
     void should_copy_node_with_excluded_properties() {
         sourceSession.run("CREATE (one:NodeOne {prop1: 'value1', prop2: 'value2', prop3: 'value3'})").consume();
@@ -154,6 +293,7 @@ public class DataTransferIT {
         CopyOptions copyOption = new CopyOptions.Builder()
                 .excludeNodeProperties(Set.of("prop2"))
                 .build();
+        dataReader = new BoltReader(driver, SOURCE_DB, copyOption);
         DataTransfer dataTransfer = new DataTransfer(dataReader, dataWriter, copyOption);
 
         dataTransfer.copyAllNodesAndRels().block();
@@ -172,6 +312,7 @@ public class DataTransferIT {
         CopyOptions copyOption = new CopyOptions.Builder()
                 .excludeRelationshipProperties(Set.of("prop3"))
                 .build();
+        dataReader = new BoltReader(driver, SOURCE_DB, copyOption);
         DataTransfer dataTransfer = new DataTransfer(dataReader, dataWriter, copyOption);
 
         dataTransfer.copyAllNodesAndRels().block();
@@ -1,17 +1,21 @@
 package org.neo4j.dbcopy;
 
 import org.junit.jupiter.api.Test;
-import org.neo4j.driver.internal.InternalNode;
-import org.neo4j.driver.internal.InternalRelationship;
-import org.neo4j.driver.types.Node;
-import org.neo4j.driver.types.Relationship;
+import org.junit.jupiter.api.io.TempDir;
+import org.neo4j.driver.Values;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 import reactor.test.publisher.TestPublisher;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -20,7 +24,7 @@ class DataTransferTest {
     @Test
     void should_copy_nodes_in_batches() {
 
-        TestPublisher<Node> nodesPublishers = TestPublisher.create();
+        TestPublisher<NodeData> nodesPublishers = TestPublisher.create();
         var writer = new TestDataWriter();
 
         var transferService = new DataTransfer(
@@ -39,10 +43,32 @@ class DataTransferTest {
                 .verifyComplete();
     }
 
+    @Test
+    void should_seal_node_batches_on_estimated_size() {
+
+        TestPublisher<NodeData> nodesPublishers = TestPublisher.create();
+        var writer = new TestDataWriter();
+        var largeNode = new NodeData(2, List.of(), Values.value(Map.of("text", "x".repeat(1000))));
+
+        var transferService = new DataTransfer(
+                new TestDataReader(nodesPublishers.flux(), Flux.empty()),
+                writer,
+                new CopyOptions.Builder().batchSize(100).maxBatchBytes(1000).build());
+
+        StepVerifier.create(transferService.copyAllNodesAndRels())
+                .then(() -> nodesPublishers.next(node(1)))
+                .then(() -> assertThat(writer.writtenNodes).isEmpty())
+                .then(() -> nodesPublishers.next(largeNode))
+                .then(() -> assertThat(writer.writtenNodes).containsExactly(node(1), largeNode))
+                .then(nodesPublishers::complete)
+                .expectNext(0L)
+                .verifyComplete();
+    }
+
     @Test
     void should_copy_relationships_in_batches() {
 
-        TestPublisher<Relationship> relsPublishers = TestPublisher.create();
+        TestPublisher<RelationshipData> relsPublishers = TestPublisher.create();
         var writer = new TestDataWriter();
 
         var transferService = new DataTransfer(
@@ -59,6 +85,218 @@ class DataTransferTest {
                 .then(() -> assertThat(writer.writtenRelationships).containsExactly(rel(1), rel(2), rel(3), rel(4)))
                 .expectNext(4L)
                 .verifyComplete();
+
+        assertThat(transferService.metrics().relationships().read()).isEqualTo(4);
+        assertThat(transferService.metrics().relationships().written()).isEqualTo(4);
+        assertThat(transferService.metrics().relationships().batches()).isEqualTo(2);
+    }
+
+    @Test
+    void should_copy_relationships_while_nodes_are_being_copied() {
+
+        TestPublisher<NodeData> nodesPublishers = TestPublisher.create();
+        TestPublisher<RelationshipData> relsPublishers = TestPublisher.create();
+        var writer = new TestDataWriter();
+
+        var transferService = new DataTransfer(
+                new TestDataReader(nodesPublishers.flux(), relsPublishers.flux()),
+                writer,
+                new CopyOptions.Builder().batchSize(2).build());
+
+        StepVerifier.create(transferService.copyAllNodesAndRels())
+                .then(() -> nodesPublishers.next(node(1), node(2)))
+                .then(() -> relsPublishers.next(rel(1, 1, 2), rel(2, 2, 1)))
+                .then(() -> assertThat(writer.writtenRelationships).containsExactly(rel(1, 1, 2), rel(2, 2, 1)))
+                .then(() -> relsPublishers.next(rel(3, 1, 3), rel(4, 2, 2)))
+                .then(() -> assertThat(writer.writtenRelationships).hasSize(2))
+                .then(() -> nodesPublishers.next(node(3), node(4)))
+                .then(() -> assertThat(writer.writtenRelationships).hasSize(4))
+                .then(relsPublishers::complete)
+                .then(nodesPublishers::complete)
+                .expectNext(4L)
+                .verifyComplete();
+    }
+
+    @Test
+    void should_release_relationships_with_unknown_nodes_when_all_nodes_are_copied() {
+
+        TestPublisher<NodeData> nodesPublishers = TestPublisher.create();
+        var writer = new TestDataWriter();
+
+        var transferService = new DataTransfer(
+                new TestDataReader(nodesPublishers.flux(), Flux.just(rel(1, 1, 42))),
+                writer,
+                new CopyOptions.Builder().batchSize(2).build());
+
+        StepVerifier.create(transferService.copyAllNodesAndRels())
+                .then(() -> nodesPublishers.next(node(1)))
+                .then(() -> assertThat(writer.writtenRelationships).isEmpty())
+                .then(nodesPublishers::complete)
+                .then(() -> assertThat(writer.writtenRelationships).containsExactly(rel(1, 1, 42)))
+                .expectNext(1L)
+                .verifyComplete();
+    }
+
+    @Test
+    void should_drop_relationships_to_nodes_left_out_by_a_filter() {
+
+        TestPublisher<NodeData> nodesPublishers = TestPublisher.create();
+        var writer = new TestDataWriter() {
+            @Override
+            public boolean usesSourceIds() {
+                return true;
+            }
+        };
+
+        var transferService = new DataTransfer(
+                new TestDataReader(nodesPublishers.flux(), Flux.just(rel(1, 1, 2), rel(2, 2, 42), rel(3, 42, 1))),
+                writer,
+                new CopyOptions.Builder().batchSize(2).nodePredicate("n.id <> 42").build());
+
+        StepVerifier.create(transferService.copyAllNodesAndRels())
+                .then(() -> nodesPublishers.next(node(1), node(2)))
+                .then(nodesPublishers::complete)
+                .expectNext(1L)
+                .verifyComplete();
+        assertThat(writer.writtenRelationships).containsExactly(rel(1, 1, 2));
+    }
+
+    @Test
+    void should_not_hold_relationships_back_for_writers_using_source_ids() {
+
+        TestPublisher<NodeData> nodesPublishers = TestPublisher.create();
+        var writer = new TestDataWriter() {
+            @Override
+            public boolean usesSourceIds() {
+                return true;
+            }
+        };
+
+        var transferService = new DataTransfer(
+                new TestDataReader(nodesPublishers.flux(), Flux.just(rel(1, 1, 42))),
+                writer,
+                new CopyOptions.Builder().batchSize(2).build());
+
+        StepVerifier.create(transferService.copyAllNodesAndRels())
+                .then(() -> assertThat(writer.writtenRelationships).containsExactly(rel(1, 1, 42)))
+                .then(() -> nodesPublishers.next(node(1)))
+                .then(nodesPublishers::complete)
+                .expectNext(1L)
+                .verifyComplete();
+        assertThat(transferService.metrics().report("completed", null)).extractingByKey("mapping")
+                .isEqualTo(Map.of("entries", 0L, "memoryBytes", 0L));
+    }
+
+    @Test
+    void should_write_spooled_relationships_once_all_nodes_are_copied(@TempDir Path spoolDirectory) throws InterruptedException {
+
+        TestPublisher<NodeData> nodesPublishers = TestPublisher.create();
+        var writer = new TestDataWriter();
+        var sourceReadComplete = new CountDownLatch(1);
+
+        var transferService = new DataTransfer(
+                new TestDataReader(nodesPublishers.flux(), Flux.just(rel(1, 1, 2), rel(2, 2, 1))),
+                writer,
+                new CopyOptions.Builder().batchSize(2).spoolRelationships(true).spoolDirectory(spoolDirectory).build())
+                .onSourceReadComplete(sourceReadComplete::countDown);
+
+        StepVerifier.create(transferService.copyAllNodesAndRels())
+                .then(() -> nodesPublishers.next(node(1), node(2)))
+                .then(() -> assertThat(writer.writtenRelationships).isEmpty())
+                .then(nodesPublishers::complete)
+                .expectNext(2L)
+                .verifyComplete();
+
+        assertThat(writer.writtenRelationships).containsExactly(rel(1, 1, 2), rel(2, 2, 1));
+        assertThat(sourceReadComplete.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void should_resume_an_interrupted_copy_from_its_checkpoint(@TempDir Path checkpointDirectory) {
+
+        var relationships = Flux.just(rel(1, 1, 2), rel(2, 2, 1));
+        var failingWriter = new TestDataWriter() {
+            @Override
+            public Mono<Long> writeRelationships(List<RelationshipData> relationships, MappingContext mappingContext, CopyOptions copyOptions) {
+                if (relationships.contains(rel(2, 2, 1))) {
+                    return Mono.error(new IllegalStateException("interrupted"));
+                }
+                return super.writeRelationships(relationships, mappingContext, copyOptions);
+            }
+        };
+        var interrupted = new DataTransfer(
+                new TestDataReader(Flux.just(node(1), node(2)), relationships),
+                failingWriter,
+                new CopyOptions.Builder().batchSize(1).checkpointDirectory(checkpointDirectory).build());
+
+        StepVerifier.create(interrupted.copyAllNodesAndRels())
+                .verifyErrorMessage("interrupted");
+        assertThat(failingWriter.writtenNodes).containsExactly(node(1), node(2));
+        assertThat(failingWriter.writtenRelationships).containsExactly(rel(1, 1, 2));
+
+        var writer = new TestDataWriter();
+        var resumed = new DataTransfer(
+                new TestDataReader(Flux.just(node(1), node(2), node(3)), relationships),
+                writer,
+                new CopyOptions.Builder().batchSize(1).checkpointDirectory(checkpointDirectory).resume(true).build());
+
+        StepVerifier.create(resumed.copyAllNodesAndRels())
+                .expectNext(1L)
+                .verifyComplete();
+        assertThat(writer.writtenNodes).containsExactly(node(3));
+        assertThat(writer.writtenRelationships).containsExactly(rel(2, 2, 1));
+    }
+
+    @Test
+    void should_not_duplicate_a_batch_committed_but_not_journaled_on_resume(@TempDir Path checkpointDirectory) {
+
+        List<NodeData> target = new ArrayList<>();
+        var crashingWriter = new MergingWriter(target) {
+            @Override
+            public Flux<MappingContext.Mapping> writeNodes(List<NodeData> nodes, CopyOptions copyOptions) {
+                if (nodes.contains(node(2))) {
+                    // committed, the copy stopping before it is journaled
+                    return super.writeNodes(nodes, copyOptions).thenMany(Flux.error(new IllegalStateException("crashed")));
+                }
+                return super.writeNodes(nodes, copyOptions);
+            }
+        };
+        var interrupted = new DataTransfer(
+                new TestDataReader(Flux.just(node(1), node(2)), Flux.empty()),
+                crashingWriter,
+                new CopyOptions.Builder().batchSize(1).writerConcurrency(1).idempotentWrites(true).checkpointDirectory(checkpointDirectory).build());
+
+        StepVerifier.create(interrupted.copyAllNodesAndRels())
+                .verifyErrorMessage("crashed");
+        assertThat(target).containsExactly(node(1), node(2));
+
+        var resumed = new DataTransfer(
+                new TestDataReader(Flux.just(node(1), node(2), node(3)), Flux.just(rel(1, 2, 3))),
+                new MergingWriter(target),
+                new CopyOptions.Builder().batchSize(1).idempotentWrites(true).checkpointDirectory(checkpointDirectory).resume(true).build());
+
+        StepVerifier.create(resumed.copyAllNodesAndRels())
+                .expectNext(1L)
+                .verifyComplete();
+        assertThat(target).containsExactly(node(1), node(2), node(3));
+    }
+
+    @Test
+    void should_write_a_run_report(@TempDir Path directory) throws IOException {
+
+        Path report = directory.resolve("report.json");
+        var transferService = new DataTransfer(
+                new TestDataReader(Flux.just(node(1), node(2)), Flux.just(rel(1, 1, 2))),
+                new TestDataWriter(),
+                new CopyOptions.Builder().metricsReport(report).build());
+
+        StepVerifier.create(transferService.copyAllNodesAndRels())
+                .expectNext(1L)
+                .verifyComplete();
+
+        assertThat(Files.readString(report))
+                .contains("\"status\": \"completed\"")
+                .contains("\"entries\": 2");
     }
 
     @Test
@@ -78,19 +316,23 @@ class DataTransferTest {
         assertThat(dataWriter.writtenRelationships).isEmpty();
     }
 
-    private Node node(int id) {
-        return new InternalNode(id);
+    private NodeData node(int id) {
+        return new NodeData(id, List.of(), Values.EmptyMap);
+    }
+
+    private RelationshipData rel(int id) {
+        return new RelationshipData(id, 0, 0, "foo", Values.EmptyMap);
     }
 
-    private Relationship rel(int id) {
-        return new InternalRelationship(id, 0, 0, "foo");
+    private RelationshipData rel(int id, int startNodeId, int endNodeId) {
+        return new RelationshipData(id, startNodeId, endNodeId, "foo", Values.EmptyMap);
     }
 
     static class TestDataReader implements DataReader {
-        private final Flux<Node> nodes;
-        private final Flux<Relationship> relationships;
+        private final Flux<NodeData> nodes;
+        private final Flux<RelationshipData> relationships;
 
-        public TestDataReader(Flux<Node> nodes, Flux<Relationship> relationships) {
+        public TestDataReader(Flux<NodeData> nodes, Flux<RelationshipData> relationships) {
             this.nodes = nodes;
             this.relationships = relationships;
         }
@@ -106,24 +348,47 @@ class DataTransferTest {
         }
 
         @Override
-        public Flux<Node> readNodes() {
+        public Flux<NodeData> readNodes() {
             return nodes;
         }
 
         @Override
-        public Flux<Relationship> readRelationships() {
+        public Flux<RelationshipData> readRelationships() {
             return relationships;
         }
     }
 
+    /**
+     * Creates nodes in the given target, and merges them on their source ids when rewriting.
+     */
+    static class MergingWriter extends TestDataWriter {
+
+        private final List<NodeData> target;
+
+        MergingWriter(List<NodeData> target) {
+            this.target = target;
+        }
+
+        @Override
+        public Flux<MappingContext.Mapping> writeNodes(List<NodeData> nodes, CopyOptions copyOptions) {
+            target.addAll(nodes);
+            return super.writeNodes(nodes, copyOptions);
+        }
+
+        @Override
+        public Flux<MappingContext.Mapping> rewriteNodes(List<NodeData> nodes, CopyOptions copyOptions) {
+            nodes.stream().filter(node -> !target.contains(node)).forEach(target::add);
+            return super.writeNodes(nodes, copyOptions);
+        }
+    }
+
     static class TestDataWriter implements DataWriter {
 
-        List<Node> writtenNodes = new ArrayList<>();
-        List<Relationship> writtenRelationships = new ArrayList<>();
+        List<NodeData> writtenNodes = new ArrayList<>();
+        List<RelationshipData> writtenRelationships = new ArrayList<>();
 
-        @SuppressWarnings("deprecation")
         @Override
-        public Flux<MappingContext.Mapping> writeNodes(List<Node> nodes, CopyOptions copyOptions) {
+        public Flux<MappingContext.Mapping> writeNodes(List<NodeData> nodes, CopyOptions copyOptions) {
             var mapping = nodes.stream().map(n -> {
                 writtenNodes.add(n);
                 return new MappingContext.Mapping(n.id(), n.id() + 1000);
@@ -132,7 +397,7 @@ class DataTransferTest {
         }
 
         @Override
-        public Mono<Long> writeRelationships(List<Relationship> relationships, MappingContext mappingContext, CopyOptions copyOptions) {
+        public Mono<Long> writeRelationships(List<RelationshipData> relationships, MappingContext mappingContext, CopyOptions copyOptions) {
             writtenRelationships.addAll(relationships);
             return Mono.just((long) relationships.size());
         }
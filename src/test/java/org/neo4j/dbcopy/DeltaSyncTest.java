@@ -0,0 +1,202 @@
+package org.neo4j.dbcopy;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.neo4j.dbcopy.DataTransferTest.TestDataReader;
+import org.neo4j.driver.Value;
+import org.neo4j.driver.Values;
+import org.neo4j.driver.exceptions.SessionExpiredException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DeltaSyncTest {
+
+    @TempDir
+    Path stateDirectory;
+
+    private final TargetWriter target = new TargetWriter();
+
+    @Test
+    void should_copy_everything_on_first_sync() {
+        DeltaSync.Changes changes = sync(List.of(node(1, "a"), node(2, "b")), List.of(rel(10, 1, 2, "x")));
+
+        assertThat(changes.toString()).isEqualTo("nodes: 2 created, 0 updated, 0 deleted - relationships: 1 created, 0 replaced, 0 deleted");
+        assertThat(target.nodes.values()).extracting(NodeData::id).containsExactlyInAnyOrder(1L, 2L);
+        assertThat(target.relationships.values()).singleElement()
+                .satisfies(rel -> assertThat(rel.startNodeId()).isEqualTo(target.targetIdOf(1)));
+    }
+
+    @Test
+    void should_only_write_what_changed_since_previous_sync() {
+        sync(List.of(node(1, "a"), node(2, "b"), node(3, "c")), List.of(rel(10, 1, 2, "x"), rel(11, 2, 3, "y"), rel(12, 1, 3, "z")));
+        long targetOfRel12 = target.relationships.entrySet().stream().filter(e -> e.getValue().id() == 12).findFirst().orElseThrow().getKey();
+
+        DeltaSync.Changes changes = sync(
+                List.of(node(1, "a"), node(2, "changed"), node(4, "d")),
+                List.of(rel(10, 1, 2, "x"), rel(12, 1, 4, "z"), rel(13, 4, 1, "w")));
+
+        assertThat(changes.toString()).isEqualTo("nodes: 1 created, 1 updated, 1 deleted - relationships: 1 created, 1 replaced, 1 deleted");
+        assertThat(target.nodes.values()).extracting(node -> node.properties().get("name").asString())
+                .containsExactlyInAnyOrder("a", "changed", "d");
+        assertThat(target.relationships.values()).extracting(RelationshipData::id).containsExactlyInAnyOrder(10L, 12L, 13L);
+        assertThat(target.relationships).doesNotContainKey(targetOfRel12);
+
+        DeltaSync.Changes unchanged = sync(
+                List.of(node(1, "a"), node(2, "changed"), node(4, "d")),
+                List.of(rel(10, 1, 2, "x"), rel(12, 1, 4, "z"), rel(13, 4, 1, "w")));
+
+        assertThat(unchanged.toString()).isEqualTo("nodes: 0 created, 0 updated, 0 deleted - relationships: 0 created, 0 replaced, 0 deleted");
+    }
+
+    @Test
+    void should_sync_again_what_a_failed_sync_did_not() {
+        sync(List.of(node(1, "a"), node(2, "b")), List.of());
+        target.failRelationships = true;
+
+        assertThatThrownBy(() -> sync(List.of(node(1, "changed"), node(2, "b"), node(3, "c")), List.of(rel(10, 1, 3, "x"))))
+                .hasMessageContaining("failed");
+        target.failRelationships = false;
+        DeltaSync.Changes changes = sync(List.of(node(1, "changed"), node(2, "b"), node(3, "c")), List.of(rel(10, 1, 3, "x")));
+
+        assertThat(changes.toString()).isEqualTo("nodes: 0 created, 0 updated, 0 deleted - relationships: 1 created, 0 replaced, 0 deleted");
+        assertThat(target.nodes).hasSize(3);
+    }
+
+    @Test
+    void should_recreate_relationships_without_duplicates_after_a_creation_of_unknown_outcome() {
+        target.expireNextRelationshipCreation = true;
+
+        DeltaSync.Changes changes = sync(List.of(node(1, "a"), node(2, "b")), List.of(rel(10, 1, 2, "x"), rel(11, 2, 1, "y")), true);
+
+        assertThat(changes.toString()).isEqualTo("nodes: 2 created, 0 updated, 0 deleted - relationships: 2 created, 0 replaced, 0 deleted");
+        assertThat(target.relationships.values()).extracting(RelationshipData::id).containsExactlyInAnyOrder(10L, 11L);
+    }
+
+    @Test
+    void should_create_again_changed_nodes_deleted_from_the_target() {
+        sync(List.of(node(1, "a"), node(2, "b"), node(3, "c")), List.of(rel(10, 1, 2, "x"), rel(11, 1, 3, "y")));
+        long deletedTargetId = target.targetIdOf(2);
+        target.deleteNodes(List.of(deletedTargetId), null).block();
+
+        DeltaSync.Changes changes = sync(List.of(node(1, "a"), node(2, "changed"), node(3, "c")), List.of(rel(10, 1, 2, "x"), rel(11, 1, 3, "y")));
+
+        assertThat(changes.toString()).isEqualTo("nodes: 1 created, 0 updated, 0 deleted - relationships: 1 created, 0 replaced, 0 deleted");
+        assertThat(target.nodes.values()).extracting(node -> node.properties().get("name").asString())
+                .containsExactlyInAnyOrder("a", "changed", "c");
+        assertThat(target.targetIdOf(2)).isNotEqualTo(deletedTargetId);
+        assertThat(target.relationships.values()).extracting(RelationshipData::id).containsExactlyInAnyOrder(10L, 11L);
+        assertThat(target.relationships.values()).filteredOn(rel -> rel.id() == 10).singleElement()
+                .satisfies(rel -> assertThat(rel.endNodeId()).isEqualTo(target.targetIdOf(2)));
+
+        DeltaSync.Changes unchanged = sync(List.of(node(1, "a"), node(2, "changed"), node(3, "c")), List.of(rel(10, 1, 2, "x"), rel(11, 1, 3, "y")));
+
+        assertThat(unchanged.toString()).isEqualTo("nodes: 0 created, 0 updated, 0 deleted - relationships: 0 created, 0 replaced, 0 deleted");
+    }
+
+    private DeltaSync.Changes sync(List<NodeData> nodes, List<RelationshipData> relationships) {
+        return sync(nodes, relationships, false);
+    }
+
+    private DeltaSync.Changes sync(List<NodeData> nodes, List<RelationshipData> relationships, boolean idempotentWrites) {
+        var copyOptions = new CopyOptions.Builder().batchSize(2).idempotentWrites(idempotentWrites).syncStateDirectory(stateDirectory).build();
+        return new DeltaSync(new TestDataReader(Flux.fromIterable(nodes), Flux.fromIterable(relationships)), target, copyOptions)
+                .sync()
+                .block();
+    }
+
+    private static NodeData node(long id, String name) {
+        return new NodeData(id, List.of("Person"), properties(name));
+    }
+
+    private static RelationshipData rel(long id, long startNodeId, long endNodeId, String name) {
+        return new RelationshipData(id, startNodeId, endNodeId, "KNOWS", properties(name));
+    }
+
+    private static Value properties(String name) {
+        return Values.value(Map.of("name", name));
+    }
+
+    /**
+     * A target database in memory, by target id, entities keeping their source ids so that they can be told apart.
+     */
+    static class TargetWriter implements SyncWriter {
+        final Map<Long, NodeData> nodes = new ConcurrentHashMap<>();
+        final Map<Long, RelationshipData> relationships = new ConcurrentHashMap<>();
+        private final AtomicLong ids = new AtomicLong(100);
+        volatile boolean failRelationships = false;
+        volatile boolean expireNextRelationshipCreation = false;
+
+        @Override
+        public Flux<MappingContext.Mapping> writeNodes(List<NodeData> batch, CopyOptions copyOptions) {
+            return Flux.fromIterable(batch).map(node -> {
+                long targetId = ids.incrementAndGet();
+                nodes.put(targetId, node);
+                return new MappingContext.Mapping(node.id(), targetId);
+            });
+        }
+
+        @Override
+        public Mono<Long> writeRelationships(List<RelationshipData> batch, MappingContext mappingContext, CopyOptions copyOptions) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Flux<MappingContext.Mapping> createRelationships(List<RelationshipData> batch, NodeIdLookup nodeIds, CopyOptions copyOptions) {
+            if (failRelationships) {
+                return Flux.error(new IllegalStateException("Relationship write failed"));
+            }
+            Flux<MappingContext.Mapping> created = Flux.fromIterable(batch).map(rel -> {
+                long targetId = ids.incrementAndGet();
+                relationships.put(targetId, new RelationshipData(rel.id(), nodeIds.get(rel.startNodeId()), nodeIds.get(rel.endNodeId()),
+                        rel.type(), rel.properties()));
+                return new MappingContext.Mapping(rel.id(), targetId);
+            });
+            if (expireNextRelationshipCreation) {
+                expireNextRelationshipCreation = false;
+                // committed, but the outcome is lost
+                return created.thenMany(Flux.error(new SessionExpiredException("leader switched")));
+            }
+            return created;
+        }
+
+        @Override
+        public Flux<MappingContext.Mapping> recreateRelationships(List<RelationshipData> batch, NodeIdLookup nodeIds, CopyOptions copyOptions) {
+            List<Long> sourceIds = batch.stream().map(RelationshipData::id).toList();
+            relationships.values().removeIf(rel -> sourceIds.contains(rel.id()));
+            return createRelationships(batch, nodeIds, copyOptions);
+        }
+
+        @Override
+        public Flux<MappingContext.Mapping> updateNodes(List<NodeData> batch, NodeIdLookup nodeIds, CopyOptions copyOptions) {
+            return Flux.fromIterable(batch)
+                    .filter(node -> nodes.replace(nodeIds.get(node.id()), node) != null)
+                    .map(node -> new MappingContext.Mapping(node.id(), nodeIds.get(node.id())));
+        }
+
+        @Override
+        public Mono<Long> deleteRelationships(List<Long> targetIds, CopyOptions copyOptions) {
+            targetIds.forEach(relationships::remove);
+            return Mono.just((long) targetIds.size());
+        }
+
+        @Override
+        public Mono<Long> deleteNodes(List<Long> targetIds, CopyOptions copyOptions) {
+            targetIds.forEach(nodes::remove);
+            relationships.values().removeIf(rel -> targetIds.contains(rel.startNodeId()) || targetIds.contains(rel.endNodeId()));
+            return Mono.just((long) targetIds.size());
+        }
+
+        long targetIdOf(long sourceNodeId) {
+            return nodes.entrySet().stream().filter(e -> e.getValue().id() == sourceNodeId).findFirst().orElseThrow().getKey();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package org.neo4j.dbcopy;
+
+import org.junit.jupiter.api.Test;
+import org.neo4j.dbcopy.DataTransferTest.TestDataReader;
+import org.neo4j.dbcopy.MultiDatabaseCopy.DatabasePair;
+import org.neo4j.driver.Values;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MultiDatabaseCopyTest {
+
+    private static final CopyOptions OPTIONS = new CopyOptions.Builder().batchSize(10).writerConcurrency(4).relationshipWriterConcurrency(4).build();
+
+    @Test
+    void should_copy_all_databases_within_the_transaction_budget() {
+        var inFlight = new AtomicInteger();
+        var maxInFlight = new AtomicInteger();
+        Map<String, AtomicInteger> writtenNodes = new ConcurrentHashMap<>();
+        List<DatabasePair> pairs = List.of(new DatabasePair("a", "a"), new DatabasePair("b", "copy-of-b"), new DatabasePair("c", "c"));
+
+        new MultiDatabaseCopy((database, options) -> reader(100), database -> new SlowWriter(inFlight, maxInFlight, writtenNodes.computeIfAbsent(database, it -> new AtomicInteger())),
+                pairs, OPTIONS, 3, 2)
+                .copyAll()
+                .block();
+
+        assertThat(writtenNodes).containsOnlyKeys("a", "copy-of-b", "c");
+        assertThat(writtenNodes.values()).allSatisfy(count -> assertThat(count).hasValue(100));
+        assertThat(maxInFlight).hasValue(2);
+    }
+
+    @Test
+    void should_copy_the_other_databases_when_one_fails() {
+        Map<String, AtomicInteger> writtenNodes = new ConcurrentHashMap<>();
+        List<DatabasePair> pairs = List.of(new DatabasePair("a", "a"), new DatabasePair("broken", "broken"), new DatabasePair("c", "c"));
+
+        var copy = new MultiDatabaseCopy((database, options) -> database.equals("broken")
+                ? new TestDataReader(Flux.error(new IllegalStateException("source unavailable")), Flux.empty())
+                : reader(20),
+                database -> new SlowWriter(new AtomicInteger(), new AtomicInteger(), writtenNodes.computeIfAbsent(database, it -> new AtomicInteger())),
+                pairs, OPTIONS, 1, 4);
+
+        assertThatThrownBy(() -> copy.copyAll().block())
+                .hasMessageContaining("Copy failed for broken (source unavailable)");
+        assertThat(writtenNodes.get("a")).hasValue(20);
+        assertThat(writtenNodes.get("c")).hasValue(20);
+    }
+
+    @Test
+    void should_parse_database_pairs() {
+        assertThat(DatabasePair.parse("movies")).isEqualTo(new DatabasePair("movies", "movies"));
+        assertThat(DatabasePair.parse("movies:movies2")).isEqualTo(new DatabasePair("movies", "movies2"));
+        assertThatThrownBy(() -> DatabasePair.parse("movies:")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void should_suffix_the_metrics_report_and_checkpoint_directory_with_the_source_database() {
+        var options = new CopyOptions.Builder().batchSize(42).metricsReport(Path.of("out/report.json")).checkpointDirectory(Path.of("checkpoints")).build();
+        var copy = new MultiDatabaseCopy((database, it) -> reader(0), database -> new SlowWriter(new AtomicInteger(), new AtomicInteger(), new AtomicInteger()),
+                List.of(), options, 1, 1);
+
+        CopyOptions moviesOptions = copy.optionsOf(new DatabasePair("movies", "movies2"));
+
+        assertThat(moviesOptions.metricsReport()).isEqualTo(Path.of("out/report-movies.json"));
+        assertThat(moviesOptions.checkpointDirectory()).isEqualTo(Path.of("checkpoints/movies"));
+        assertThat(moviesOptions.batchSize()).isEqualTo(42);
+    }
+
+    private static DataReader reader(int nodeCount) {
+        return new TestDataReader(Flux.fromStream(IntStream.range(0, nodeCount).mapToObj(id -> new NodeData(id, List.of("Person"), Values.EmptyMap))), Flux.empty());
+    }
+
+    /**
+     * Writes the nodes after a delay, recording how many write transactions run at the same time across the writers.
+     */
+    private record SlowWriter(AtomicInteger inFlight, AtomicInteger maxInFlight, AtomicInteger writtenNodes) implements DataWriter {
+
+        @Override
+        public Flux<MappingContext.Mapping> writeNodes(List<NodeData> nodes, CopyOptions copyOptions) {
+            return Mono.fromRunnable(() -> maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max))
+                    .then(Mono.delay(Duration.ofMillis(5)))
+                    .doOnTerminate(inFlight::decrementAndGet)
+                    .thenMany(Flux.fromIterable(nodes))
+                    .map(node -> {
+                        writtenNodes.incrementAndGet();
+                        return new MappingContext.Mapping(node.id(), node.id() + 1000);
+                    });
+        }
+
+        @Override
+        public Mono<Long> writeRelationships(List<RelationshipData> relationships, MappingContext mappingContext, CopyOptions copyOptions) {
+            return Mono.just((long) relationships.size());
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package org.neo4j.dbcopy;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.neo4j.dbcopy.mapping.HashMappingContext;
+import org.neo4j.dbcopy.mapping.LongStorage;
+import org.neo4j.driver.Values;
+import org.neo4j.driver.exceptions.ClientException;
+import org.neo4j.driver.exceptions.TransientException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RelationshipWriteSchedulerTest {
+
+    private final MappingContext mappingContext = new HashMappingContext(0, LongStorage.HEAP);
+
+    @BeforeEach
+    void setUp() {
+        for (long nodeId = 0; nodeId < 100; nodeId++) {
+            mappingContext.put(nodeId, nodeId + 1000);
+        }
+    }
+
+    @Test
+    void should_never_write_batches_sharing_nodes_concurrently() {
+        var scheduler = new RelationshipWriteScheduler(mappingContext, new WriteController("Relationships", 10, 4, false), new ByteBudget(Long.MAX_VALUE), Long.MAX_VALUE);
+        Set<Long> nodesInFlight = ConcurrentHashMap.newKeySet();
+        Set<Long> writtenRelationships = ConcurrentHashMap.newKeySet();
+        var inFlight = new AtomicInteger();
+        var maxInFlight = new AtomicInteger();
+
+        var relationships = IntStream.range(0, 2000)
+                .mapToObj(i -> new RelationshipData(i, (i * 7L) % 100, (i * 13L) % 100, "REL", Values.EmptyMap))
+                .toList();
+        var batches = Flux.fromIterable(relationships).buffer(10);
+
+        StepVerifier.create(scheduler.schedule(batches, batch -> Mono.defer(() -> {
+                            Set<Long> batchNodes = new HashSet<>();
+                            batch.forEach(rel -> {
+                                batchNodes.add(mappingContext.get(rel.startNodeId()));
+                                batchNodes.add(mappingContext.get(rel.endNodeId()));
+                            });
+                            for (Long node : batchNodes) {
+                                assertThat(nodesInFlight.add(node)).as("node %d written concurrently", node).isTrue();
+                            }
+                            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                            return Mono.delay(Duration.ofMillis(2))
+                                    .doOnNext(it -> {
+                                        inFlight.decrementAndGet();
+                                        nodesInFlight.removeAll(batchNodes);
+                                        batch.forEach(rel -> writtenRelationships.add(rel.id()));
+                                    })
+                                    .thenReturn((long) batch.size());
+                        })))
+                .expectNext(2000L)
+                .verifyComplete();
+
+        assertThat(writtenRelationships).hasSize(2000);
+        assertThat(maxInFlight.get()).isGreaterThan(1);
+    }
+
+    @Test
+    void should_retry_batch_on_transient_error() {
+        var scheduler = new RelationshipWriteScheduler(mappingContext, new WriteController("Relationships", 10, 2, false), new ByteBudget(Long.MAX_VALUE), Long.MAX_VALUE);
+        var attempts = new AtomicInteger();
+
+        StepVerifier.create(scheduler.schedule(Flux.just(List.of(new RelationshipData(1, 1, 2, "REL", Values.EmptyMap))),
+                        batch -> Mono.fromCallable(() -> {
+                            if (attempts.incrementAndGet() < 3) {
+                                throw new TransientException("Neo.TransientError.Transaction.DeadlockDetected", "deadlock");
+                            }
+                            return (long) batch.size();
+                        })))
+                .expectNext(1L)
+                .verifyComplete();
+
+        assertThat(attempts).hasValue(3);
+    }
+
+    @Test
+    void should_fail_on_non_transient_error() {
+        var scheduler = new RelationshipWriteScheduler(mappingContext, new WriteController("Relationships", 10, 2, false), new ByteBudget(Long.MAX_VALUE), Long.MAX_VALUE);
+
+        StepVerifier.create(scheduler.schedule(Flux.just(List.of(new RelationshipData(1, 1, 2, "REL", Values.EmptyMap))),
+                        batch -> Mono.error(new ClientException("boom"))))
+                .verifyErrorMessage("boom");
+    }
+
+    @Test
+    void should_complete_on_empty_stream() {
+        var scheduler = new RelationshipWriteScheduler(mappingContext, new WriteController("Relationships", 10, 2, false), new ByteBudget(Long.MAX_VALUE), Long.MAX_VALUE);
+
+        StepVerifier.create(scheduler.schedule(Flux.empty(), batch -> Mono.just((long) batch.size())))
+                .expectNext(0L)
+                .verifyComplete();
+    }
+}
@@ -0,0 +1,42 @@
+package org.neo4j.dbcopy;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TransactionBudgetTest {
+
+    @Test
+    void should_grant_permits_in_order_once_released() {
+        var budget = new TransactionBudget(2);
+        var first = budget.acquire().block();
+        budget.acquire().block();
+        List<String> granted = new ArrayList<>();
+
+        budget.acquire().subscribe(it -> granted.add("third"));
+        budget.acquire().subscribe(it -> granted.add("fourth"));
+        assertThat(granted).isEmpty();
+
+        first.release();
+        first.release();
+        assertThat(granted).containsExactly("third");
+        assertThat(budget.inFlight()).isEqualTo(2);
+    }
+
+    @Test
+    void should_forget_cancelled_acquisitions() {
+        var budget = new TransactionBudget(1);
+        var first = budget.acquire().block();
+        List<String> granted = new ArrayList<>();
+
+        budget.acquire().subscribe(it -> granted.add("cancelled")).dispose();
+        budget.acquire().subscribe(it -> granted.add("waiting"));
+        first.release();
+
+        assertThat(granted).containsExactly("waiting");
+        assertThat(budget.inFlight()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,195 @@
+package org.neo4j.dbcopy;
+
+import org.junit.jupiter.api.Test;
+import org.neo4j.driver.exceptions.ClientException;
+import org.neo4j.driver.exceptions.SessionExpiredException;
+import org.neo4j.driver.exceptions.TransientException;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WriteControllerTest {
+
+    private static final String MEMORY_LIMIT = "Neo.TransientError.General.TransactionMemoryLimit";
+
+    @Test
+    void should_split_batches_exceeding_the_transaction_memory_limit() {
+        var controller = new WriteController("Nodes", 1000, 4, false);
+        List<Integer> batch = IntStream.range(0, 10).boxed().toList();
+        List<Integer> writtenBatchSizes = new ArrayList<>();
+
+        StepVerifier.create(controller.write(batch, items -> {
+                    if (items.size() > 3) {
+                        return Mono.error(new TransientException(MEMORY_LIMIT, "too large"));
+                    }
+                    writtenBatchSizes.add(items.size());
+                    return Mono.just((long) items.size());
+                }, Long::sum))
+                .expectNext(10L)
+                .verifyComplete();
+
+        assertThat(writtenBatchSizes).containsExactly(2, 3, 2, 3);
+        assertThat(controller.batchSize()).isEqualTo(2);
+    }
+
+    @Test
+    void should_write_the_halves_of_a_split_batch_one_after_the_other() {
+        var controller = new WriteController("Nodes", 1000, 4, false);
+        List<Integer> batch = IntStream.range(0, 8).boxed().toList();
+        var inFlight = new AtomicInteger();
+        var maxInFlight = new AtomicInteger();
+
+        StepVerifier.create(controller.write(batch, items -> Mono.defer(() -> {
+                            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                            return items.size() > 2
+                                    ? Mono.<Long>error(new TransientException(MEMORY_LIMIT, "too large"))
+                                    : Mono.delay(Duration.ofMillis(10)).thenReturn((long) items.size());
+                        })
+                        .doOnTerminate(inFlight::decrementAndGet), Long::sum))
+                .expectNext(8L)
+                .verifyComplete();
+
+        assertThat(maxInFlight).hasValue(1);
+    }
+
+    @Test
+    void should_fail_when_a_single_item_exceeds_the_transaction_memory_limit() {
+        var controller = new WriteController("Nodes", 1000, 4, false);
+
+        StepVerifier.create(controller.write(List.of(1), items -> Mono.<Long>error(new TransientException(MEMORY_LIMIT, "too large")), Long::sum))
+                .verifyErrorMessage("too large");
+    }
+
+    @Test
+    void should_not_retry_client_errors() {
+        var controller = new WriteController("Nodes", 1000, 4, false);
+        var attempts = new AtomicInteger();
+
+        StepVerifier.create(controller.write(List.of(1), items -> {
+                    attempts.incrementAndGet();
+                    return Mono.<Long>error(new ClientException("boom"));
+                }, Long::sum))
+                .verifyErrorMessage("boom");
+
+        assertThat(attempts).hasValue(1);
+    }
+
+    @Test
+    void should_rewrite_batches_after_a_commit_of_unknown_outcome() {
+        var controller = new WriteController("Nodes", 1000, 4, false);
+        List<String> attempts = new ArrayList<>();
+
+        StepVerifier.create(controller.write(List.of(1),
+                        items -> {
+                            attempts.add("write");
+                            return Mono.<Long>error(new SessionExpiredException("leader switched"));
+                        },
+                        items -> {
+                            attempts.add("rewrite");
+                            return attempts.size() < 3
+                                    ? Mono.error(new TransientException("Neo.TransientError.Transaction.DeadlockDetected", "deadlock"))
+                                    : Mono.just(1L);
+                        },
+                        Long::sum))
+                .expectNext(1L)
+                .verifyComplete();
+
+        assertThat(attempts).containsExactly("write", "rewrite", "rewrite");
+    }
+
+    @Test
+    void should_not_write_batches_again_after_a_commit_of_unknown_outcome_without_rewriter() {
+        var controller = new WriteController("Nodes", 1000, 4, false);
+        var attempts = new AtomicInteger();
+
+        StepVerifier.create(controller.write(List.of(1),
+                        items -> {
+                            attempts.incrementAndGet();
+                            return Mono.<Long>error(new SessionExpiredException("leader switched"));
+                        },
+                        null,
+                        Long::sum))
+                .verifyErrorSatisfies(e -> assertThat(e)
+                        .isInstanceOf(IllegalStateException.class)
+                        .hasMessageContaining("may have been committed")
+                        .hasCauseInstanceOf(SessionExpiredException.class));
+
+        assertThat(attempts).hasValue(1);
+    }
+
+    @Test
+    void should_keep_batch_size_and_concurrency_when_not_adaptive() {
+        var controller = new WriteController("Nodes", 1000, 4, false);
+        var attempts = new AtomicInteger();
+
+        for (int i = 0; i < 10; i++) {
+            controller.write(List.of(1), items -> attempts.incrementAndGet() % 2 == 0
+                    ? Mono.just(1L)
+                    : Mono.error(new TransientException("Neo.TransientError.Transaction.DeadlockDetected", "deadlock")), Long::sum).block();
+        }
+
+        assertThat(controller.batchSize()).isEqualTo(1000);
+        assertThat(controller.concurrency()).isEqualTo(4);
+    }
+
+    @Test
+    void should_increase_batch_size_additively_and_decrease_concurrency_multiplicatively() {
+        var controller = new WriteController("Nodes", 1000, 8, true);
+
+        controller.write(List.of(1), items -> Mono.just(1L), Long::sum).block();
+        assertThat(controller.batchSize()).isEqualTo(1100);
+
+        var attempts = new AtomicInteger();
+        controller.write(List.of(1), items -> attempts.incrementAndGet() < 3
+                ? Mono.error(new TransientException("Neo.TransientError.Transaction.DeadlockDetected", "deadlock"))
+                : Mono.just(1L), Long::sum).block();
+        assertThat(controller.concurrency()).isEqualTo(2);
+
+        for (int i = 0; i < 2; i++) {
+            controller.write(List.of(1), items -> Mono.just(1L), Long::sum).block();
+        }
+        assertThat(controller.concurrency()).isEqualTo(3);
+    }
+
+    @Test
+    void should_not_grow_batch_size_beyond_ten_times_the_initial_one() {
+        var controller = new WriteController("Nodes", 10, 1, true);
+
+        for (int i = 0; i < 200; i++) {
+            controller.write(List.of(1), items -> Mono.just(1L), Long::sum).block();
+        }
+
+        assertThat(controller.batchSize()).isEqualTo(100);
+    }
+
+    @Test
+    void should_limit_permits_to_current_concurrency() {
+        var controller = new WriteController("Nodes", 1000, 2, false);
+        var first = controller.acquire().block();
+        controller.acquire().block();
+        var third = new AtomicReference<WriteController.Permit>();
+
+        controller.acquire().subscribe(third::set);
+        assertThat(third).hasValue(null);
+
+        first.release();
+        first.release();
+        assertThat(third.get()).isNotNull();
+    }
+
+    @Test
+    void should_recognize_memory_limit_errors() {
+        assertThat(WriteController.isMemoryLimitError(new TransientException(MEMORY_LIMIT, "limit"))).isTrue();
+        assertThat(WriteController.isMemoryLimitError(new TransientException("Neo.TransientError.General.MemoryPoolOutOfMemoryError", "pool"))).isTrue();
+        assertThat(WriteController.isMemoryLimitError(new TransientException("Neo.TransientError.Transaction.DeadlockDetected", "deadlock"))).isFalse();
+        assertThat(WriteController.isMemoryLimitError(new IllegalStateException())).isFalse();
+    }
+}
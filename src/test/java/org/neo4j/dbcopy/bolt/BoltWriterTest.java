@@ -0,0 +1,147 @@
+package org.neo4j.dbcopy.bolt;
+
+import org.junit.jupiter.api.Test;
+import org.neo4j.dbcopy.NodeData;
+import org.neo4j.driver.Value;
+import org.neo4j.driver.Values;
+import org.neo4j.driver.internal.InternalNode;
+import org.neo4j.driver.types.Node;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.neo4j.driver.Values.parameters;
+
+class BoltWriterTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BoltWriterTest.class);
+
+    private final BoltWriter writer = new BoltWriter(null, "neo4j");
+
+    @Test
+    void should_put_escaped_labels_in_create_nodes_query() {
+        assertThat(writer.nodesQuery(List.of("Person", "Weird`Label"), BoltWriter.Statement.CREATE))
+                .contains("CREATE (n:`Person`:`Weird``Label`) SET n = r.p");
+    }
+
+    @Test
+    void should_create_nodes_without_labels() {
+        assertThat(writer.nodesQuery(List.of(), BoltWriter.Statement.CREATE)).contains("CREATE (n) SET n = r.p");
+    }
+
+    @Test
+    void should_cache_create_nodes_queries() {
+        assertThat(writer.nodesQuery(List.of("A", "B"), BoltWriter.Statement.CREATE)).isSameAs(writer.nodesQuery(List.of("A", "B"), BoltWriter.Statement.CREATE));
+    }
+
+    @Test
+    void should_put_escaped_type_in_create_relationships_query() {
+        assertThat(writer.relationshipsQuery("HAS ITEM", BoltWriter.Statement.CREATE))
+                .contains("CREATE (a)-[r:`HAS ITEM`]->(b) SET r = row.p")
+                .contains("WHERE id(a) = row.s");
+    }
+
+    @Test
+    void should_cache_create_relationships_queries() {
+        assertThat(writer.relationshipsQuery("TO", BoltWriter.Statement.CREATE)).isSameAs(writer.relationshipsQuery("TO", BoltWriter.Statement.CREATE));
+    }
+
+    @Test
+    void should_create_nodes_and_relationships_along_with_their_source_id() {
+        assertThat(writer.nodesQuery(List.of("Person"), BoltWriter.Statement.TAGGED_CREATE))
+                .contains("CREATE (n:`Person`:`__DbCopy`) SET n = r.p, n.`__dbCopySourceId` = r.s");
+        assertThat(writer.relationshipsQuery("TO", BoltWriter.Statement.TAGGED_CREATE))
+                .contains("CREATE (a)-[r:`TO`]->(b) SET r = row.p, r.`__dbCopySourceId` = row.i");
+    }
+
+    @Test
+    void should_merge_nodes_and_relationships_on_their_source_id() {
+        assertThat(writer.nodesQuery(List.of("A", "B"), BoltWriter.Statement.MERGE))
+                .contains("MERGE (n:`__DbCopy` {`__dbCopySourceId`: r.s}) ON CREATE SET n += r.p, n:`A`:`B`");
+        assertThat(writer.nodesQuery(List.of(), BoltWriter.Statement.MERGE))
+                .contains("ON CREATE SET n += r.p\n");
+        assertThat(writer.relationshipsQuery("TO", BoltWriter.Statement.MERGE))
+                .contains("MERGE (a)-[r:`TO` {`__dbCopySourceId`: row.i}]->(b) ON CREATE SET r += row.p");
+    }
+
+    @Test
+    void should_replace_properties_and_changed_labels_of_updated_nodes() {
+        assertThat(BoltWriter.updateNodesQuery(new BoltWriter.LabelChanges(List.of("Old"), List.of("New", "Weird`Label"))))
+                .contains("SET n = r.p REMOVE n:`Old` SET n:`New`:`Weird``Label`\n");
+        assertThat(BoltWriter.updateNodesQuery(new BoltWriter.LabelChanges(List.of(), List.of())))
+                .contains("SET n = r.p\n");
+    }
+
+    @Test
+    void should_pass_read_properties_through_to_query_parameters() {
+        Value properties = Values.value(Map.of("name", "foo"));
+
+        Value row = writer.nodeRowsByLabels(List.of(new NodeData(1, List.of("A"), properties))).get(List.of("A")).get(0);
+
+        assertThat(row.get("p")).isSameAs(properties);
+        assertThat(row.get("s").asLong()).isEqualTo(1);
+    }
+
+    /**
+     * Compares the bytes allocated to turn a batch of read nodes into query parameters, with the driver nodes
+     * converted to Java maps and back as it used to be done, and with the values passed through.
+     */
+    @Test
+    @SuppressWarnings("deprecation")
+    void should_allocate_less_than_converting_properties_back_and_forth() {
+        int batchSize = 5000;
+        List<Map<String, Value>> properties = IntStream.range(0, batchSize)
+                .mapToObj(i -> {
+                    Map<String, Value> nodeProperties = new HashMap<>();
+                    for (int key = 0; key < 10; key++) {
+                        nodeProperties.put("key" + key, key % 2 == 0 ? Values.value("value" + i) : Values.value(i * key));
+                    }
+                    return nodeProperties;
+                })
+                .toList();
+        List<Node> nodes = IntStream.range(0, batchSize)
+                .mapToObj(i -> (Node) new InternalNode(i, List.of("A"), properties.get(i)))
+                .toList();
+        List<NodeData> nodeData = IntStream.range(0, batchSize)
+                .mapToObj(i -> new NodeData(i, List.of("A"), Values.value(properties.get(i))))
+                .toList();
+        Set<String> excluded = Set.of();
+
+        Supplier<Value> converted = () -> parameters("inputList", nodes.stream()
+                .map(node -> Map.of(
+                        "s", node.id(),
+                        "l", StreamSupport.stream(node.labels().spliterator(), false).toList(),
+                        "p", node.asMap().entrySet().stream()
+                                .filter(entry -> !excluded.contains(entry.getKey()))
+                                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue))))
+                .toList());
+        Supplier<Value> passedThrough = () -> parameters("rows", BoltWriter.rows(writer.nodeRowsByLabels(nodeData).get(List.of("A"))));
+
+        long convertedBytes = allocatedBytes(converted);
+        long passedThroughBytes = allocatedBytes(passedThrough);
+        LOG.info("Allocated {} bytes per node converting properties, {} bytes per node passing them through",
+                convertedBytes / batchSize, passedThroughBytes / batchSize);
+
+        assertThat(passedThroughBytes).isLessThan(convertedBytes / 4);
+    }
+
+    private static long allocatedBytes(Supplier<Value> parameters) {
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        for (int i = 0; i < 20; i++) {
+            parameters.get();
+        }
+        long before = threads.getCurrentThreadAllocatedBytes();
+        parameters.get();
+        return threads.getCurrentThreadAllocatedBytes() - before;
+    }
+}
@@ -0,0 +1,33 @@
+package org.neo4j.dbcopy.bolt;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IdRangeTest {
+
+    @Test
+    void should_split_in_requested_number_of_partitions() {
+        assertThat(IdRange.split(99, 4, 1000)).containsExactly(
+                new IdRange(0, 25), new IdRange(25, 50), new IdRange(50, 75), new IdRange(75, 100));
+    }
+
+    @Test
+    void should_limit_partition_size() {
+        var ranges = IdRange.split(9_999, 2, 1000);
+
+        assertThat(ranges).hasSize(10);
+        assertThat(ranges).allMatch(range -> range.to() - range.from() == 1000);
+        assertThat(ranges.get(9).to()).isEqualTo(10_000);
+    }
+
+    @Test
+    void should_not_create_empty_partitions() {
+        assertThat(IdRange.split(1, 4, 1000)).containsExactly(new IdRange(0, 1), new IdRange(1, 2));
+    }
+
+    @Test
+    void should_have_no_partition_for_empty_database() {
+        assertThat(IdRange.split(-1, 4, 1000)).isEmpty();
+    }
+}
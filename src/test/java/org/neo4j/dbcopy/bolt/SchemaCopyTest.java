@@ -0,0 +1,28 @@
+package org.neo4j.dbcopy.bolt;
+
+import org.junit.jupiter.api.Test;
+import org.neo4j.dbcopy.bolt.SchemaCopy.Definition;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SchemaCopyTest {
+
+    @Test
+    void should_create_constraints_and_standalone_indexes_missing_from_the_target() {
+        List<Definition> source = List.of(
+                new Definition("person_id", "UNIQUENESS", null, "CREATE CONSTRAINT `person_id` FOR (n:`Person`) REQUIRE (n.`id`) IS UNIQUE"),
+                new Definition("person_id", "RANGE", "person_id", "CREATE RANGE INDEX `person_id` FOR (n:`Person`) ON (n.`id`)"),
+                new Definition("person_name", "RANGE", null, "CREATE RANGE INDEX `person_name` FOR (n:`Person`) ON (n.`name`)"),
+                new Definition("person_text", "TEXT", null, "CREATE TEXT INDEX `person_text` FOR (n:`Person`) ON (n.`bio`)"),
+                new Definition("index_343aff4e", "LOOKUP", null, "CREATE LOOKUP INDEX `index_343aff4e` FOR (n) ON EACH labels(n)"),
+                new Definition("db_copy_source_id", "RANGE", null, "CREATE RANGE INDEX `db_copy_source_id` FOR (n:`__DbCopy`) ON (n.`__dbCopySourceId`)"));
+
+        assertThat(SchemaCopy.statements(source, Set.of("person_text")))
+                .containsExactly(
+                        "CREATE CONSTRAINT `person_id` FOR (n:`Person`) REQUIRE (n.`id`) IS UNIQUE",
+                        "CREATE RANGE INDEX `person_name` FOR (n:`Person`) ON (n.`name`)");
+    }
+}
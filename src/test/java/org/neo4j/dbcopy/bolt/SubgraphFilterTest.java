@@ -0,0 +1,63 @@
+package org.neo4j.dbcopy.bolt;
+
+import org.junit.jupiter.api.Test;
+import org.neo4j.dbcopy.CopyOptions;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SubgraphFilterTest {
+
+    @Test
+    void should_not_add_conditions_without_filters() {
+        var filter = new SubgraphFilter(CopyOptions.DEFAULT);
+
+        assertThat(filter.filtersRelationships()).isFalse();
+        assertThat(SubgraphFilter.where(filter.nodeCondition(List.of(), List.of()))).isEmpty();
+        assertThat(SubgraphFilter.where("id(n) = nodeId", filter.nodeCondition(List.of(), List.of()))).isEqualTo(" WHERE id(n) = nodeId");
+        assertThat(filter.hasNodePredicate()).isFalse();
+    }
+
+    @Test
+    void should_combine_labels_and_predicate_in_node_conditions() {
+        var filter = new SubgraphFilter(new CopyOptions.Builder()
+                .includeLabels(Set.of("Person", "Company"))
+                .excludeLabels(Set.of("Weird`Label"))
+                .nodePredicate("n.tenant = 'acme'")
+                .build());
+
+        assertThat(filter.labelsToInclude()).containsExactly("Company", "Person");
+        assertThat(filter.nodeCondition(List.of("Company", "Person"), List.of()))
+                .isEqualTo("(n:`Company` OR n:`Person`) AND NOT n:`Weird``Label` AND (n.tenant = 'acme')");
+        // nodes read from the Person label scan, Company nodes being read elsewhere
+        assertThat(filter.nodeCondition(List.of(), List.of("Company")))
+                .isEqualTo("NOT n:`Company` AND NOT n:`Weird``Label` AND (n.tenant = 'acme')");
+    }
+
+    @Test
+    void should_filter_relationships_by_their_nodes() {
+        var filter = new SubgraphFilter(new CopyOptions.Builder()
+                .nodePredicate("n.tenant = 'acme'")
+                .build());
+
+        assertThat(filter.filtersRelationships()).isTrue();
+        assertThat(filter.filtersRelationshipTypes()).isFalse();
+        assertThat(filter.hasNodePredicate()).isTrue();
+    }
+
+    @Test
+    void should_filter_relationship_types() {
+        var filter = new SubgraphFilter(new CopyOptions.Builder()
+                .includeRelationshipTypes(Set.of("KNOWS", "WORKS_AT"))
+                .excludeRelationshipTypes(Set.of("WORKS_AT"))
+                .build());
+
+        assertThat(filter.filtersNodes()).isFalse();
+        assertThat(filter.filtersRelationshipTypes()).isTrue();
+        assertThat(filter.includesType("KNOWS")).isTrue();
+        assertThat(filter.includesType("WORKS_AT")).isFalse();
+        assertThat(filter.includesType("LIKES")).isFalse();
+    }
+}
@@ -0,0 +1,121 @@
+package org.neo4j.dbcopy.csv;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.neo4j.dbcopy.CopyOptions;
+import org.neo4j.dbcopy.MappingContext;
+import org.neo4j.dbcopy.NodeData;
+import org.neo4j.dbcopy.RelationshipData;
+import org.neo4j.driver.Values;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ImportCsvWriterTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void should_write_one_file_per_label_set_and_relationship_type() throws IOException {
+        try (var writer = new ImportCsvWriter(directory, false)) {
+            writer.prepare(CopyOptions.DEFAULT).block();
+            writer.writeNodes(List.of(
+                    new NodeData(1, List.of("Person"), Values.value(Map.of("name", "Ann \"the\" first"))),
+                    new NodeData(2, List.of("Person", "Admin"), Values.value(Map.of("name", "Bob"))),
+                    new NodeData(3, List.of("Admin", "Person"), Values.value(Map.of("born", LocalDate.of(2000, 1, 31))))), CopyOptions.DEFAULT).blockLast();
+            writer.writeRelationships(List.of(
+                    new RelationshipData(10, 1, 2, "KNOWS", Values.value(Map.of("since", 2020L))),
+                    new RelationshipData(11, 2, 3, "MANAGES", Values.EmptyMap)), MappingContext.SOURCE_IDS, CopyOptions.DEFAULT).block();
+            writer.complete(CopyOptions.DEFAULT).block();
+        }
+
+        assertThat(Files.readString(directory.resolve("nodes-0001-Person-header.csv"))).isEqualTo(":ID,:LABEL,name:string\n");
+        assertThat(Files.readString(directory.resolve("nodes-0001-Person.csv"))).isEqualTo("1,\"Person\",\"Ann \"\"the\"\" first\"\n");
+        assertThat(Files.readString(directory.resolve("nodes-0002-Admin_Person-header.csv"))).isEqualTo(":ID,:LABEL,name:string,born:date\n");
+        assertThat(Files.readString(directory.resolve("nodes-0002-Admin_Person.csv")))
+                .isEqualTo("2,\"Admin;Person\",\"Bob\"\n3,\"Admin;Person\",,2000-01-31\n");
+        assertThat(Files.readString(directory.resolve("relationships-0003-KNOWS-header.csv"))).isEqualTo(":START_ID,:END_ID,:TYPE,since:long\n");
+        assertThat(Files.readString(directory.resolve("relationships-0003-KNOWS.csv"))).isEqualTo("1,2,\"KNOWS\",2020\n");
+        assertThat(Files.readString(directory.resolve("relationships-0004-MANAGES.csv"))).isEqualTo("2,3,\"MANAGES\"\n");
+        assertThat(Files.readAllLines(directory.resolve(ImportCsvWriter.ARGUMENTS_FILE)))
+                .startsWith("--id-type=integer", "--multiline-fields=true", "--array-delimiter=;")
+                .contains("--nodes=%s,%s".formatted(directory.resolve("nodes-0001-Person-header.csv").toAbsolutePath(),
+                        directory.resolve("nodes-0001-Person.csv").toAbsolutePath()))
+                .hasSize(7);
+    }
+
+    @Test
+    void should_compress_data_files() throws IOException {
+        try (var writer = new ImportCsvWriter(directory, true)) {
+            writer.prepare(CopyOptions.DEFAULT).block();
+            writer.writeNodes(List.of(new NodeData(1, List.of("Person"), Values.value(Map.of("tags", List.of("a", "b"))))), CopyOptions.DEFAULT).blockLast();
+            writer.complete(CopyOptions.DEFAULT).block();
+        }
+
+        assertThat(Files.readString(directory.resolve("nodes-0001-Person-header.csv"))).isEqualTo(":ID,:LABEL,tags:string[]\n");
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(directory.resolve("nodes-0001-Person.csv.gz")))) {
+            assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("1,\"Person\",\"a;b\"\n");
+        }
+    }
+
+    @Test
+    void should_widen_properties_of_different_types() throws IOException {
+        try (var writer = new ImportCsvWriter(directory, false)) {
+            writer.prepare(CopyOptions.DEFAULT).block();
+            writer.writeNodes(List.of(
+                    new NodeData(1, List.of(), Values.value(Map.of("score", 1L, "code", 7L))),
+                    new NodeData(2, List.of(), Values.value(Map.of("score", 1.5, "code", "B7")))), CopyOptions.DEFAULT).blockLast();
+            writer.complete(CopyOptions.DEFAULT).block();
+        }
+
+        assertThat(Files.readString(directory.resolve("nodes-0001-header.csv"))).matches(":ID,:LABEL,(score:double,code:string|code:string,score:double)\n");
+    }
+
+    @Test
+    void should_format_temporal_and_spatial_values() {
+        assertThat(ImportFile.field(ZonedDateTime.of(2024, 6, 1, 8, 0, 0, 0, ZoneId.of("Europe/Paris"))))
+                .isEqualTo(new ImportFile.Field("datetime", false, "2024-06-01T08:00:00+02:00[Europe/Paris]"));
+        assertThat(ImportFile.field(Values.point(4326, 2.35, 48.85).asPoint()))
+                .isEqualTo(new ImportFile.Field("point", false, "\"{crs:'wgs-84',x:2.35,y:48.85}\""));
+        assertThat(ImportFile.field(Values.isoDuration(14, 3, 7200, 0).asIsoDuration()))
+                .isEqualTo(new ImportFile.Field("duration", false, "P14M3DT7200S"));
+    }
+
+    @Test
+    void should_refuse_what_the_import_would_misread() throws IOException {
+        try (var writer = new ImportCsvWriter(directory, false)) {
+            writer.prepare(CopyOptions.DEFAULT).block();
+
+            assertThatThrownBy(() -> writer.writeNodes(List.of(new NodeData(1, List.of("A;B"), Values.EmptyMap)), CopyOptions.DEFAULT).blockLast())
+                    .isInstanceOf(IllegalArgumentException.class)
+                    .hasMessageContaining("Label 'A;B'");
+            assertThatThrownBy(() -> writer.writeNodes(List.of(new NodeData(2, List.of("Person"), Values.value(Map.of("tags", List.of("a;b"))))), CopyOptions.DEFAULT).blockLast())
+                    .isInstanceOf(IllegalArgumentException.class)
+                    .hasMessageContaining("String array element 'a;b'");
+            assertThatThrownBy(() -> writer.writeNodes(List.of(new NodeData(3, List.of("Person"), Values.value(Map.of("a:b", 1L)))), CopyOptions.DEFAULT).blockLast())
+                    .isInstanceOf(IllegalArgumentException.class)
+                    .hasMessageContaining("Property key 'a:b'");
+        }
+    }
+
+    @Test
+    void should_refuse_a_directory_holding_import_files() throws IOException {
+        Files.writeString(directory.resolve(ImportCsvWriter.ARGUMENTS_FILE), "");
+
+        assertThatThrownBy(() -> new ImportCsvWriter(directory, false).prepare(CopyOptions.DEFAULT).block())
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,112 @@
+package org.neo4j.dbcopy.io;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.neo4j.dbcopy.MappingContext;
+import org.neo4j.dbcopy.RelationshipData;
+import org.neo4j.dbcopy.mapping.HashMappingContext;
+import org.neo4j.dbcopy.mapping.LongStorage;
+import org.neo4j.driver.Values;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CheckpointJournalTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void should_restore_recorded_mappings_and_relationships() {
+        try (var journal = CheckpointJournal.create(directory)) {
+            journal.nodesWritten(List.of(new MappingContext.Mapping(1, 101), new MappingContext.Mapping(2, 102)));
+            journal.nodesWritten(List.of(new MappingContext.Mapping(5, 7)));
+            journal.relationshipsWritten(List.of(rel(10), rel(11)));
+        }
+
+        try (var journal = CheckpointJournal.resume(directory);
+             var mappingContext = new HashMappingContext(0, LongStorage.HEAP)) {
+            assertThat(journal.restore(mappingContext)).isEqualTo(3);
+            assertThat(mappingContext.find(1)).isEqualTo(101);
+            assertThat(mappingContext.find(2)).isEqualTo(102);
+            assertThat(mappingContext.find(5)).isEqualTo(7);
+            assertThat(journal.writtenRelationshipCount()).isEqualTo(2);
+            assertThat(journal.isWritten(rel(11))).isTrue();
+            assertThat(journal.isWritten(rel(12))).isFalse();
+        }
+    }
+
+    @Test
+    void should_ignore_a_partially_written_record_and_append_to_a_new_segment() throws IOException {
+        try (var journal = CheckpointJournal.create(directory)) {
+            journal.nodesWritten(List.of(new MappingContext.Mapping(1, 101), new MappingContext.Mapping(2, 102)));
+        }
+        Path segment = directory.resolve("nodes-000000.journal");
+        try (var channel = FileChannel.open(segment, WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        try (var journal = CheckpointJournal.resume(directory);
+             var mappingContext = new HashMappingContext(0, LongStorage.HEAP)) {
+            assertThat(journal.restore(mappingContext)).isEqualTo(1);
+            assertThat(mappingContext.find(2)).isEqualTo(MappingContext.NO_MAPPING);
+            journal.nodesWritten(List.of(new MappingContext.Mapping(2, 202)));
+        }
+
+        try (var journal = CheckpointJournal.resume(directory);
+             var mappingContext = new HashMappingContext(0, LongStorage.HEAP)) {
+            assertThat(journal.restore(mappingContext)).isEqualTo(2);
+            assertThat(mappingContext.find(2)).isEqualTo(202);
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files.map(file -> file.getFileName().toString()))
+                    .containsExactlyInAnyOrder("nodes-000000.journal", "nodes-000001.journal");
+        }
+    }
+
+    @Test
+    void should_roll_segments() {
+        List<RelationshipData> relationships = LongStream.range(0, CheckpointJournal.SEGMENT_SIZE / Long.BYTES / 2 + 1)
+                .mapToObj(CheckpointJournalTest::rel)
+                .toList();
+        try (var journal = CheckpointJournal.create(directory)) {
+            journal.nodesWritten(List.of(new MappingContext.Mapping(1, 1)));
+            journal.relationshipsWritten(relationships);
+            journal.relationshipsWritten(relationships);
+        }
+
+        assertThat(directory.resolve("relationships-000001.journal")).exists();
+        try (var journal = CheckpointJournal.resume(directory);
+             var mappingContext = new HashMappingContext(0, LongStorage.HEAP)) {
+            journal.restore(mappingContext);
+            assertThat(journal.writtenRelationshipCount()).isEqualTo(relationships.size());
+        }
+    }
+
+    @Test
+    void should_not_overwrite_or_resume_from_a_missing_journal() {
+        try (var journal = CheckpointJournal.create(directory)) {
+            journal.nodesWritten(List.of(new MappingContext.Mapping(1, 1)));
+        }
+
+        assertThatThrownBy(() -> CheckpointJournal.create(directory))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("already holds a checkpoint journal");
+        assertThatThrownBy(() -> CheckpointJournal.resume(directory.resolve("missing")))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("No checkpoint journal found");
+    }
+
+    private static RelationshipData rel(long id) {
+        return new RelationshipData(id, 0, 0, "foo", Values.EmptyMap);
+    }
+}
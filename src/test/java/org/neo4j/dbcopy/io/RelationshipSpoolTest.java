@@ -0,0 +1,80 @@
+package org.neo4j.dbcopy.io;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.neo4j.dbcopy.RelationshipData;
+import org.neo4j.driver.Value;
+import org.neo4j.driver.Values;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RelationshipSpoolTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void should_replay_spooled_relationships() {
+        Map<String, Value> properties = Map.ofEntries(
+                Map.entry("null", Values.NULL),
+                Map.entry("bool", Values.value(true)),
+                Map.entry("long", Values.value(-42L)),
+                Map.entry("double", Values.value(3.14)),
+                Map.entry("string", Values.value("héllo")),
+                Map.entry("bytes", Values.value(new byte[]{1, 2, 3})),
+                Map.entry("list", Values.value(List.of("a", "b"))),
+                Map.entry("date", Values.value(LocalDate.of(2024, 2, 29))),
+                Map.entry("localTime", Values.value(LocalTime.of(12, 30, 15, 123))),
+                Map.entry("time", Values.value(OffsetTime.of(12, 30, 15, 0, ZoneOffset.ofHours(2)))),
+                Map.entry("localDateTime", Values.value(LocalDateTime.of(1969, 7, 20, 20, 17))),
+                Map.entry("offsetDateTime", Values.value(ZonedDateTime.of(2024, 1, 1, 0, 0, 0, 1, ZoneOffset.ofHours(-5)))),
+                Map.entry("zonedDateTime", Values.value(ZonedDateTime.of(2024, 6, 1, 8, 0, 0, 0, ZoneId.of("Europe/Paris")))),
+                Map.entry("duration", Values.isoDuration(14, 3, 7200, 5)),
+                Map.entry("point2d", Values.point(7203, 1.5, -2.5)),
+                Map.entry("point3d", Values.point(4979, 1, 2, 3)));
+        List<RelationshipData> relationships = List.of(
+                new RelationshipData(1, 10, 11, "KNOWS", Values.value(properties)),
+                new RelationshipData(Long.MAX_VALUE, 0, 12, "LIKES", Values.EmptyMap),
+                new RelationshipData(3, 12, 10, "KNOWS", Values.value(Map.of("long", 1))));
+
+        try (var spool = new RelationshipSpool(directory)) {
+            spool.append(relationships.subList(0, 2));
+            spool.append(relationships.subList(2, 3));
+            assertThat(spool.finish()).isEqualTo(3);
+
+            List<RelationshipData> replayed = spool.replay().collectList().block();
+
+            assertThat(replayed).hasSize(3);
+            for (int i = 0; i < replayed.size(); i++) {
+                assertThat(replayed.get(i)).isEqualTo(relationships.get(i));
+            }
+            // replays can be repeated
+            assertThat(spool.replay().count().block()).isEqualTo(3);
+        }
+    }
+
+    @Test
+    void should_delete_spool_file_on_close() throws Exception {
+        var spool = new RelationshipSpool(directory);
+        spool.append(List.of(new RelationshipData(1, 10, 11, "KNOWS", Values.EmptyMap)));
+        spool.finish();
+
+        spool.close();
+
+        try (var files = Files.list(directory)) {
+            assertThat(files).isEmpty();
+        }
+    }
+}
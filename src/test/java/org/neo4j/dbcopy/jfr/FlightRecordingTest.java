@@ -0,0 +1,54 @@
+package org.neo4j.dbcopy.jfr;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.neo4j.driver.exceptions.TransientException;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FlightRecordingTest {
+
+    @Test
+    void should_record_copy_events(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("copy.jfr");
+
+        try (var recording = FlightRecording.start(file)) {
+            PartitionReadEvent.record(Flux.range(0, 10), "nodes", "[0, 10)").blockLast();
+            BatchSealedEvent.emit("nodes", 10, 1024);
+            WriteTransactionEvent.record(Flux.just(1, 2), "nodes", 2, () -> 512, () -> 1, "write").blockLast();
+            var lookups = new MappingLookupsEvent();
+            lookups.begin();
+            lookups.commit(20);
+            RetryEvent.emit("relationships", 1, new TransientException("Neo.TransientError.Transaction.DeadlockDetected", "deadlock"));
+        }
+
+        Map<String, RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+                .filter(event -> event.getEventType().getName().startsWith("org.neo4j.dbcopy."))
+                .collect(Collectors.toMap(event -> event.getEventType().getName(), Function.identity()));
+        assertThat(events).containsOnlyKeys(List.of("org.neo4j.dbcopy.PartitionRead", "org.neo4j.dbcopy.BatchSealed",
+                "org.neo4j.dbcopy.WriteTransaction", "org.neo4j.dbcopy.MappingLookups", "org.neo4j.dbcopy.Retry"));
+        assertThat(events.get("org.neo4j.dbcopy.PartitionRead").getLong("entities")).isEqualTo(10);
+        assertThat(events.get("org.neo4j.dbcopy.BatchSealed").getLong("estimatedBytes")).isEqualTo(1024);
+        assertThat(events.get("org.neo4j.dbcopy.WriteTransaction").getBoolean("committed")).isTrue();
+        assertThat(events.get("org.neo4j.dbcopy.WriteTransaction").getInt("rows")).isEqualTo(2);
+        assertThat(events.get("org.neo4j.dbcopy.MappingLookups").getLong("lookups")).isEqualTo(20);
+        assertThat(events.get("org.neo4j.dbcopy.Retry").getString("error")).isEqualTo("TransientException: deadlock");
+    }
+
+    @Test
+    void should_pass_streams_through_when_not_recording() {
+        Flux<Integer> read = Flux.range(0, 3);
+
+        assertThat(PartitionReadEvent.record(read, "nodes", "[0, 3)").collectList().block()).containsExactly(0, 1, 2);
+    }
+}
@@ -0,0 +1,126 @@
+package org.neo4j.dbcopy.mapping;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.neo4j.dbcopy.MappingContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HashMappingContextTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HashMappingContextTest.class);
+
+    @ParameterizedTest
+    @EnumSource(Storage.class)
+    void should_store_and_find_mappings(Storage storage) {
+        try (var context = new HashMappingContext(0, storage.longStorage)) {
+            context.add(List.of(new MappingContext.Mapping(0, 10), new MappingContext.Mapping(42, 0)));
+
+            assertThat(context.find(0)).isEqualTo(10);
+            assertThat(context.find(42)).isEqualTo(0);
+            assertThat(context.find(1)).isEqualTo(MappingContext.NO_MAPPING);
+            assertThat(context.size()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void should_overwrite_existing_mapping() {
+        try (var context = new HashMappingContext(0, LongStorage.HEAP)) {
+            context.put(1, 2);
+            context.put(1, 3);
+
+            assertThat(context.get(1)).isEqualTo(3);
+            assertThat(context.size()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void should_fail_on_unknown_source_node() {
+        try (var context = new HashMappingContext(0, LongStorage.HEAP)) {
+            assertThatThrownBy(() -> context.get(123))
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasMessageContaining("Unable to find source node with id 123");
+        }
+    }
+
+    @Test
+    void should_reject_negative_ids() {
+        try (var context = new HashMappingContext(0, LongStorage.HEAP)) {
+            assertThatThrownBy(() -> context.put(-1, 2)).isInstanceOf(IllegalArgumentException.class);
+            assertThat(context.find(-1)).isEqualTo(MappingContext.NO_MAPPING);
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(Storage.class)
+    void should_grow_beyond_expected_size(Storage storage) {
+        try (var context = new HashMappingContext(10, storage.longStorage)) {
+            LongStream.range(0, 200_000).forEach(id -> context.put(id, id * 2));
+
+            assertThat(context.size()).isEqualTo(200_000);
+            LongStream.range(0, 200_000).forEach(id -> assertThat(context.find(id)).isEqualTo(id * 2));
+        }
+    }
+
+    @Test
+    void should_support_concurrent_inserts_and_reads() {
+        int batchCount = 200;
+        int batchSize = 1000;
+        try (var context = new HashMappingContext(0, LongStorage.HEAP)) {
+            Flux.range(0, batchCount)
+                    .parallel(8)
+                    .runOn(Schedulers.parallel())
+                    .doOnNext(batch -> {
+                        for (long id = (long) batch * batchSize; id < (long) (batch + 1) * batchSize; id++) {
+                            context.put(id, id + 1_000_000);
+                            assertThat(context.find(id)).isEqualTo(id + 1_000_000);
+                        }
+                    })
+                    .sequential()
+                    .blockLast();
+
+            assertThat(context.size()).isEqualTo((long) batchCount * batchSize);
+            for (long id = 0; id < (long) batchCount * batchSize; id++) {
+                assertThat(context.find(id)).isEqualTo(id + 1_000_000);
+            }
+        }
+    }
+
+    /**
+     * Sizing figure: a table pre-sized with the source node count uses between 21 and 43 bytes per entry
+     * (16 bytes per slot, load factor 0.75, power of two capacities), and at most 43 bytes once grown.
+     * The previous ConcurrentHashMap&lt;Long, Long&gt; used around 80 to 90 bytes per entry.
+     */
+    @ParameterizedTest
+    @EnumSource(Storage.class)
+    void should_use_less_than_44_bytes_per_entry(Storage storage) {
+        int nodeCount = 1_000_000;
+        try (var context = new HashMappingContext(nodeCount, storage.longStorage)) {
+            LongStream.range(0, nodeCount).forEach(id -> context.put(id * 3, id));
+
+            double bytesPerEntry = context.memoryUsage() / (double) context.size();
+            LOG.info("{} mapping storage uses {} bytes per entry for {} entries", storage, String.format("%.1f", bytesPerEntry), nodeCount);
+            assertThat(bytesPerEntry).isLessThan(44);
+        }
+    }
+
+    enum Storage {
+        HEAP(LongStorage.HEAP),
+        OFF_HEAP(LongStorage.OFF_HEAP);
+
+        final LongStorage longStorage;
+
+        Storage(LongStorage longStorage) {
+            this.longStorage = longStorage;
+        }
+    }
+}
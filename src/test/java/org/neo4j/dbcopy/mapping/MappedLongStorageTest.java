@@ -0,0 +1,57 @@
+package org.neo4j.dbcopy.mapping;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.neo4j.dbcopy.CopyOptions;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MappedLongStorageTest {
+
+    @TempDir
+    Path scratchDirectory;
+
+    @Test
+    void should_store_mappings_in_mapped_files() throws Exception {
+        var storage = new MappedLongStorage(scratchDirectory);
+        try (var context = new HashMappingContext(10, storage)) {
+            LongStream.range(0, 100_000).forEach(id -> context.put(id, id + 7));
+
+            LongStream.range(0, 100_000).forEach(id -> assertThat(context.find(id)).isEqualTo(id + 7));
+            try (var files = Files.list(storage.directory())) {
+                // one file per segment, grown ones having been deleted
+                assertThat(files.count()).isEqualTo(64);
+            }
+        }
+        assertThat(storage.directory()).doesNotExist();
+    }
+
+    @Test
+    void should_switch_to_disk_above_threshold() {
+        var copyOptions = new CopyOptions.Builder()
+                .mappingDirectory(scratchDirectory)
+                .diskMappingThreshold(1000)
+                .build();
+
+        assertThat(MappingContexts.storage(1000, copyOptions)).isSameAs(LongStorage.HEAP);
+        var storage = MappingContexts.storage(1001, copyOptions);
+        assertThat(storage).isInstanceOf(MappedLongStorage.class);
+        storage.close();
+    }
+
+    @Test
+    void should_use_disk_when_configured() {
+        var copyOptions = new CopyOptions.Builder()
+                .mappingDirectory(scratchDirectory)
+                .mappingStorage(MappingStorage.DISK)
+                .build();
+
+        var storage = MappingContexts.storage(0, copyOptions);
+        assertThat(storage).isInstanceOf(MappedLongStorage.class);
+        storage.close();
+    }
+}
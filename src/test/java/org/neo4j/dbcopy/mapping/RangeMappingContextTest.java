@@ -0,0 +1,105 @@
+package org.neo4j.dbcopy.mapping;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.neo4j.dbcopy.MappingContext;
+import org.neo4j.dbcopy.MappingContext.Mapping;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RangeMappingContextTest {
+
+    private RangeMappingContext context;
+
+    @BeforeEach
+    void setUp() {
+        context = new RangeMappingContext(new HashMappingContext(0, LongStorage.HEAP));
+    }
+
+    @Test
+    void should_store_contiguous_ids_as_a_single_run() {
+        context.add(mappings(0, 1000, 5000));
+
+        assertThat(context.runCount()).isEqualTo(1);
+        assertThat(context.size()).isEqualTo(5000);
+        assertThat(context.find(0)).isEqualTo(1000);
+        assertThat(context.find(4999)).isEqualTo(5999);
+        assertThat(context.find(5000)).isEqualTo(MappingContext.NO_MAPPING);
+    }
+
+    @Test
+    void should_merge_adjacent_batches_whatever_their_order() {
+        context.add(mappings(200, 1200, 100));
+        context.add(mappings(0, 1000, 100));
+        context.add(mappings(100, 1100, 100));
+
+        assertThat(context.runCount()).isEqualTo(1);
+        LongStream.range(0, 300).forEach(id -> assertThat(context.find(id)).isEqualTo(id + 1000));
+    }
+
+    @Test
+    void should_keep_irregular_mappings_in_fallback() {
+        var batch = new ArrayList<Mapping>();
+        batch.add(new Mapping(7, 3));
+        batch.addAll(mappings(10, 20, 50));
+        batch.add(new Mapping(100, 1));
+        batch.add(new Mapping(101, 0));
+        context.add(batch);
+
+        assertThat(context.runCount()).isEqualTo(1);
+        assertThat(context.size()).isEqualTo(53);
+        assertThat(context.find(7)).isEqualTo(3);
+        assertThat(context.find(35)).isEqualTo(45);
+        assertThat(context.find(100)).isEqualTo(1);
+        assertThat(context.find(101)).isEqualTo(0);
+        assertThat(context.find(8)).isEqualTo(MappingContext.NO_MAPPING);
+    }
+
+    @Test
+    void should_be_much_smaller_than_a_hash_table_for_sequential_ids() {
+        try (var hashContext = new HashMappingContext(1_000_000, LongStorage.HEAP)) {
+            for (int batch = 0; batch < 200; batch++) {
+                var mappings = mappings(batch * 5000L, batch * 5000L, 5000);
+                context.add(mappings);
+                hashContext.add(mappings);
+            }
+
+            assertThat(context.memoryUsage() * 100).isLessThan(hashContext.memoryUsage());
+        }
+    }
+
+    @Test
+    void should_support_concurrent_batches() {
+        int batchSize = 500;
+        Flux.range(0, 400)
+                .parallel(8)
+                .runOn(Schedulers.parallel())
+                .doOnNext(batch -> {
+                    // every other batch is not contiguous
+                    long start = (long) batch * batchSize;
+                    List<Mapping> mappings = batch % 2 == 0
+                            ? mappings(start, start + 10, batchSize)
+                            : LongStream.range(start, start + batchSize).mapToObj(id -> new Mapping(id, 1_000_000 - id)).toList();
+                    context.add(mappings);
+                    assertThat(context.find(start)).isEqualTo(mappings.get(0).targetNodeId());
+                })
+                .sequential()
+                .blockLast();
+
+        assertThat(context.size()).isEqualTo(400L * batchSize);
+        for (long id = 0; id < 400L * batchSize; id++) {
+            long expected = (id / batchSize) % 2 == 0 ? id + 10 : 1_000_000 - id;
+            assertThat(context.find(id)).isEqualTo(expected);
+        }
+    }
+
+    private static List<Mapping> mappings(long sourceStart, long targetStart, int count) {
+        return LongStream.range(0, count).mapToObj(i -> new Mapping(sourceStart + i, targetStart + i)).toList();
+    }
+}
@@ -0,0 +1,54 @@
+package org.neo4j.dbcopy.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CopyMetricsTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void should_report_stage_metrics() {
+        var metrics = new CopyMetrics();
+        metrics.nodes().total(10);
+        metrics.nodes().read(10);
+        metrics.nodes().alreadyWritten(4);
+        metrics.nodes().batchWritten(6, 2_000_000);
+        metrics.nodes().retry();
+        metrics.mapping(() -> 10, () -> 1024);
+
+        Map<String, Object> report = metrics.report("completed", null);
+
+        assertThat(report).containsEntry("status", "completed").doesNotContainKey("error");
+        Map<String, Object> nodes = (Map<String, Object>) report.get("nodes");
+        assertThat(nodes).containsEntry("total", 10L).containsEntry("read", 10L).containsEntry("written", 10L)
+                .containsEntry("batches", 1L).containsEntry("retries", 1L);
+        assertThat((Map<String, Object>) nodes.get("writeLatencyMillis")).containsEntry("count", 1L).containsKeys("p50", "p99", "p999");
+        assertThat((Map<String, Object>) report.get("mapping")).containsEntry("entries", 10L).containsEntry("memoryBytes", 1024L);
+    }
+
+    @Test
+    void should_write_the_report_as_json() {
+        var metrics = new CopyMetrics();
+
+        String json = metrics.toJson("failed", new IllegalStateException("the \"target\" is gone"));
+
+        assertThat(json).startsWith("{\n  \"status\": \"failed\",\n  \"error\": \"the \\\"target\\\" is gone\",")
+                .contains("\"relationships\": {")
+                .endsWith("}\n");
+    }
+
+    @Test
+    void should_expose_prometheus_metrics() {
+        var metrics = new CopyMetrics();
+        metrics.relationships().batchWritten(100, 1_500_000_000L);
+
+        assertThat(metrics.toPrometheus())
+                .contains("# TYPE dbcopy_write_latency_seconds summary\n")
+                .contains("dbcopy_entities_written_total{stage=\"relationships\"} 100.0\n")
+                .contains("dbcopy_write_latency_seconds_count{stage=\"relationships\"} 1.0\n")
+                .containsPattern("dbcopy_write_latency_seconds\\{stage=\"relationships\",quantile=\"0.99\"} 1\\.5\\d*\n");
+    }
+}
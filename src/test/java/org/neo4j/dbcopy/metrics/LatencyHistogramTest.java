@@ -0,0 +1,56 @@
+package org.neo4j.dbcopy.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class LatencyHistogramTest {
+
+    @Test
+    void should_report_percentiles_within_the_bucket_precision() {
+        var histogram = new LatencyHistogram();
+        for (long value = 1; value <= 1_000_000; value++) {
+            histogram.record(value * 1000);
+        }
+
+        assertThat(histogram.count()).isEqualTo(1_000_000);
+        assertThat(histogram.max()).isEqualTo(1_000_000_000L);
+        assertThat(histogram.mean()).isCloseTo(500_000_500d, within(1d));
+        assertThat((double) histogram.percentile(50)).isCloseTo(500_000_000d, within(500_000_000d / 64));
+        assertThat((double) histogram.percentile(99)).isCloseTo(990_000_000d, within(990_000_000d / 64));
+        assertThat((double) histogram.percentile(99.9)).isCloseTo(999_000_000d, within(999_000_000d / 64));
+        assertThat(histogram.percentile(100)).isEqualTo(1_000_000_000L);
+    }
+
+    @Test
+    void should_keep_small_values_exact() {
+        var histogram = new LatencyHistogram();
+        histogram.record(3);
+        histogram.record(5);
+        histogram.record(-1);
+
+        assertThat(histogram.percentile(0)).isZero();
+        assertThat(histogram.percentile(50)).isEqualTo(3);
+        assertThat(histogram.percentile(100)).isEqualTo(5);
+    }
+
+    @Test
+    void should_map_every_value_to_a_bucket_holding_it() {
+        for (int shift = 0; shift < 63; shift++) {
+            for (long value : new long[]{1L << shift, (1L << shift) + 1, (1L << shift) * 3 / 2, Long.MAX_VALUE >>> (62 - shift)}) {
+                int index = LatencyHistogram.index(value);
+                assertThat(LatencyHistogram.highestEquivalentValue(index)).isGreaterThanOrEqualTo(value);
+                assertThat(index == 0 || LatencyHistogram.highestEquivalentValue(index - 1) < value).isTrue();
+            }
+        }
+    }
+
+    @Test
+    void should_report_zero_when_empty() {
+        var histogram = new LatencyHistogram();
+
+        assertThat(histogram.percentile(99)).isZero();
+        assertThat(histogram.mean()).isZero();
+    }
+}
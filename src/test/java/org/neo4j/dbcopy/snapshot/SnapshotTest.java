@@ -0,0 +1,121 @@
+package org.neo4j.dbcopy.snapshot;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.neo4j.dbcopy.CopyOptions;
+import org.neo4j.dbcopy.MappingContext.Mapping;
+import org.neo4j.dbcopy.NodeData;
+import org.neo4j.dbcopy.RelationshipData;
+import org.neo4j.driver.Values;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SnapshotTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void should_replay_a_snapshot() {
+        Path file = directory.resolve("copy.snapshot");
+        List<NodeData> nodes = LongStream.range(0, 1000)
+                .mapToObj(id -> new NodeData(id * 3, id % 2 == 0 ? List.of("Person") : List.of("Person", "Admin"),
+                        Values.value(Map.of("name", "person " + id, "born", LocalDate.ofEpochDay(id)))))
+                .toList();
+        List<RelationshipData> relationships = List.of(
+                new RelationshipData(7, 3, 0, "KNOWS", Values.value(Map.of("since", 2020L))),
+                new RelationshipData(2, 0, 2997, "KNOWS", Values.EmptyMap),
+                new RelationshipData(Long.MAX_VALUE, 6, 6, "LIKES", Values.value(Map.of("tags", List.of("a", "b")))));
+
+        write(file, List.of(nodes.subList(0, 400), nodes.subList(400, 1000)), List.of(relationships));
+
+        try (var reader = new SnapshotReader(file, CopyOptions.DEFAULT)) {
+            assertThat(reader.getTotalNodeCount()).isEqualTo(1000);
+            assertThat(reader.getTotalRelationshipCount()).isEqualTo(3);
+            assertThat(reader.readNodes().collectList().block()).isEqualTo(nodes);
+            assertThat(reader.readRelationships().collectList().block()).isEqualTo(relationships);
+        }
+    }
+
+    @Test
+    void should_map_nodes_to_their_source_ids() {
+        Path file = directory.resolve("copy.snapshot");
+        var writer = new SnapshotWriter(file);
+        writer.prepare(CopyOptions.DEFAULT).block();
+
+        List<Mapping> mappings = writer.writeNodes(List.of(node(5), node(1)), CopyOptions.DEFAULT).collectList().block();
+
+        assertThat(mappings).containsExactly(new Mapping(5, 5), new Mapping(1, 1));
+        writer.close();
+    }
+
+    @Test
+    void should_drop_excluded_properties_on_replay() {
+        Path file = directory.resolve("copy.snapshot");
+        write(file, List.of(List.of(new NodeData(1, List.of("Person"), Values.value(Map.of("name", "Ann", "password", "secret"))))), List.of());
+
+        try (var reader = new SnapshotReader(file, new CopyOptions.Builder().excludeNodeProperties(Set.of("password")).build())) {
+            assertThat(reader.readNodes().collectList().block())
+                    .containsExactly(new NodeData(1, List.of("Person"), Values.value(Map.of("name", "Ann"))));
+        }
+    }
+
+    @Test
+    void should_reject_a_corrupted_block() throws IOException {
+        Path file = directory.resolve("copy.snapshot");
+        write(file, List.of(List.of(node(1), node(2))), List.of());
+        try (var channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{(byte) 0xFF}), SnapshotFormat.HEADER_SIZE + SnapshotFormat.BLOCK_HEADER_SIZE + 1);
+        }
+
+        try (var reader = new SnapshotReader(file, CopyOptions.DEFAULT)) {
+            assertThatThrownBy(() -> reader.readNodes().collectList().block())
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasMessageContaining("corrupted");
+        }
+    }
+
+    @Test
+    void should_reject_an_incomplete_snapshot() throws IOException {
+        Path file = directory.resolve("copy.snapshot");
+        var writer = new SnapshotWriter(file);
+        writer.prepare(CopyOptions.DEFAULT).block();
+        writer.writeNodes(List.of(node(1)), CopyOptions.DEFAULT).blockLast();
+        writer.close();
+
+        assertThat(Files.size(file)).isGreaterThan(SnapshotFormat.HEADER_SIZE);
+        assertThatThrownBy(() -> new SnapshotReader(file, CopyOptions.DEFAULT))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("incomplete");
+    }
+
+    private static void write(Path file, List<List<NodeData>> nodeBatches, List<List<RelationshipData>> relationshipBatches) {
+        try (var writer = new SnapshotWriter(file)) {
+            writer.prepare(CopyOptions.DEFAULT).block();
+            for (List<NodeData> batch : nodeBatches) {
+                writer.writeNodes(batch, CopyOptions.DEFAULT).blockLast();
+            }
+            for (List<RelationshipData> batch : relationshipBatches) {
+                writer.writeRelationships(batch, null, CopyOptions.DEFAULT).block();
+            }
+            writer.complete(CopyOptions.DEFAULT).block();
+        }
+    }
+
+    private static NodeData node(long id) {
+        return new NodeData(id, List.of("Label"), Values.value(Map.of("id", id)));
+    }
+}
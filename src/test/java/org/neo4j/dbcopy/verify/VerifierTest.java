@@ -0,0 +1,100 @@
+package org.neo4j.dbcopy.verify;
+
+import org.junit.jupiter.api.Test;
+import org.neo4j.dbcopy.CopyOptions;
+import org.neo4j.dbcopy.DataReader;
+import org.neo4j.dbcopy.NodeData;
+import org.neo4j.dbcopy.RelationshipData;
+import org.neo4j.dbcopy.verify.VerificationReport.IdRange;
+import org.neo4j.driver.Values;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class VerifierTest {
+
+    private static final CopyOptions OPTIONS = new CopyOptions.Builder().batchSize(7).build();
+
+    @Test
+    void should_match_databases_with_other_ids_and_read_order() {
+        List<NodeData> sourceNodes = LongStream.range(0, 100).mapToObj(id -> node(id, "n" + id)).toList();
+        List<RelationshipData> sourceRelationships = LongStream.range(0, 99).mapToObj(id -> rel(id, id, id + 1, "r" + id)).toList();
+        // same content, ids shifted by 1000, read backwards
+        List<NodeData> targetNodes = new ArrayList<>(sourceNodes.stream().map(node -> node(node.id() + 1000, "n" + node.id())).toList());
+        List<RelationshipData> targetRelationships = new ArrayList<>(sourceRelationships.stream()
+                .map(rel -> rel(rel.id() + 5000, rel.startNodeId() + 1000, rel.endNodeId() + 1000, "r" + rel.id())).toList());
+        Collections.reverse(targetNodes);
+        Collections.reverse(targetRelationships);
+
+        VerificationReport report = new Verifier(reader(sourceNodes, sourceRelationships), reader(targetNodes, targetRelationships), OPTIONS).verify().block();
+
+        assertThat(report.matches()).isTrue();
+        assertThat(report.nodeCount()).isEqualTo(100);
+        assertThat(report.relationshipCount()).isEqualTo(99);
+    }
+
+    @Test
+    void should_report_the_ranges_of_differing_entities() {
+        List<NodeData> sourceNodes = LongStream.range(0, 100).mapToObj(id -> node(id, "n" + id)).toList();
+        List<RelationshipData> sourceRelationships = LongStream.range(0, 99).mapToObj(id -> rel(id, id, id + 1, "r" + id)).toList();
+        List<NodeData> targetNodes = sourceNodes.stream()
+                .filter(node -> node.id() < 10 || node.id() > 12)
+                .map(node -> node.id() == 50 ? node(50, "changed") : node)
+                .toList();
+        // relationships of the missing and changed nodes differ too, as they are identified by their end nodes
+        List<RelationshipData> targetRelationships = sourceRelationships.stream().filter(rel -> rel.id() < 30 || rel.id() >= 40).toList();
+
+        VerificationReport report = new Verifier(reader(sourceNodes, sourceRelationships), reader(targetNodes, targetRelationships), OPTIONS).verify().block();
+
+        assertThat(report.matches()).isFalse();
+        assertThat(report.mismatches()).hasSize(2);
+        VerificationReport.Mismatch nodes = report.mismatches().get(0);
+        assertThat(nodes.group()).isEqualTo("(:Person)");
+        assertThat(nodes.sourceCount()).isEqualTo(100);
+        assertThat(nodes.targetCount()).isEqualTo(97);
+        assertThat(nodes.sourceRanges()).containsExactly(new IdRange(10, 12), new IdRange(50, 50));
+        assertThat(nodes.targetRanges()).containsExactly(new IdRange(50, 50));
+        VerificationReport.Mismatch relationships = report.mismatches().get(1);
+        assertThat(relationships.group()).isEqualTo("KNOWS");
+        assertThat(relationships.sourceRanges()).containsExactly(new IdRange(9, 12), new IdRange(30, 39), new IdRange(49, 50));
+        assertThat(relationships.targetRanges()).containsExactly(new IdRange(9, 12), new IdRange(49, 50));
+    }
+
+    private static NodeData node(long id, String name) {
+        return new NodeData(id, List.of("Person"), Values.value(Map.of("name", name)));
+    }
+
+    private static RelationshipData rel(long id, long startNodeId, long endNodeId, String name) {
+        return new RelationshipData(id, startNodeId, endNodeId, "KNOWS", Values.value(Map.of("name", name)));
+    }
+
+    private static DataReader reader(List<NodeData> nodes, List<RelationshipData> relationships) {
+        return new DataReader() {
+            @Override
+            public Flux<NodeData> readNodes() {
+                return Flux.fromIterable(nodes);
+            }
+
+            @Override
+            public Flux<RelationshipData> readRelationships() {
+                return Flux.fromIterable(relationships);
+            }
+
+            @Override
+            public long getTotalNodeCount() {
+                return nodes.size();
+            }
+
+            @Override
+            public long getTotalRelationshipCount() {
+                return relationships.size();
+            }
+        };
+    }
+}